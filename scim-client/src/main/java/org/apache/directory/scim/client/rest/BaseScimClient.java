@@ -109,9 +109,17 @@ public abstract class BaseScimClient<T extends ScimResource> implements AutoClos
   }
 
   public ListResponse<T> query(AttributeReferenceListWrapper attributes, AttributeReferenceListWrapper excludedAttributes, Filter filter, AttributeReference sortBy, SortOrder sortOrder, Integer startIndex, Integer count) throws ScimException {
+    return query(attributes, excludedAttributes, filter, sortBy, sortOrder, startIndex, count, null);
+  }
+
+  /**
+   * Queries resources, with cursor-based pagination if {@code cursor} is not null: an empty cursor requests the first
+   * page, the {@code nextCursor} of a response requests the next one.
+   */
+  public ListResponse<T> query(AttributeReferenceListWrapper attributes, AttributeReferenceListWrapper excludedAttributes, Filter filter, AttributeReference sortBy, SortOrder sortOrder, Integer startIndex, Integer count, String cursor) throws ScimException {
     ListResponse<T> listResponse;
     FilterWrapper filterWrapper = new FilterWrapper(filter);
-    Response response = this.scimClient.query(attributes, excludedAttributes, filterWrapper, sortBy, sortOrder, startIndex, count);
+    Response response = this.scimClient.query(attributes, excludedAttributes, filterWrapper, sortBy, sortOrder, startIndex, count, cursor);
     listResponse = handleResponse(response, scimResourceListResponseGenericType, response::readEntity);
 
     return listResponse;
@@ -214,6 +222,7 @@ public abstract class BaseScimClient<T extends ScimResource> implements AutoClos
     private static final String SORT_ORDER_QUERY_PARAM = "sortOrder";
     private static final String START_INDEX_QUERY_PARAM = "startIndex";
     private static final String COUNT_QUERY_PARAM = "count";
+    private static final String CURSOR_QUERY_PARAM = "cursor";
 
     @Override
     public Response getById(String id, AttributeReferenceListWrapper attributes, AttributeReferenceListWrapper excludedAttributes) throws ScimException {
@@ -235,7 +244,7 @@ public abstract class BaseScimClient<T extends ScimResource> implements AutoClos
     }
 
     @Override
-    public Response query(AttributeReferenceListWrapper attributes, AttributeReferenceListWrapper excludedAttributes, FilterWrapper filter, AttributeReference sortBy, SortOrder sortOrder, Integer startIndex, Integer count) throws ScimException {
+    public Response query(AttributeReferenceListWrapper attributes, AttributeReferenceListWrapper excludedAttributes, FilterWrapper filter, AttributeReference sortBy, SortOrder sortOrder, Integer startIndex, Integer count, String cursor) throws ScimException {
       Response response;
       Invocation request = BaseScimClient.this.target
           .queryParam(ATTRIBUTES_QUERY_PARAM, nullOutQueryParamIfListIsNullOrEmpty(attributes))
@@ -245,6 +254,7 @@ public abstract class BaseScimClient<T extends ScimResource> implements AutoClos
           .queryParam(SORT_ORDER_QUERY_PARAM, sortOrder != null ? sortOrder.name() : null)
           .queryParam(START_INDEX_QUERY_PARAM, startIndex)
           .queryParam(COUNT_QUERY_PARAM, count)
+          .queryParam(CURSOR_QUERY_PARAM, cursor)
           .request(getContentType())
           .buildGet();
 
@@ -0,0 +1,140 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.apache.directory.scim.core.json;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import org.apache.directory.scim.spec.schema.Schema.Attribute;
+import org.apache.directory.scim.spec.schema.Schema.Attribute.Returned;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Decides which attributes of a SCIM resource are returned to a client, following their {@link Returned} setting and
+ * the {@code attributes} or {@code excludedAttributes} of a request, see
+ * <a href="https://datatracker.ietf.org/doc/html/rfc7644#section-3.9">RFC 7644, section 3.9</a>.
+ * <p>
+ * A projection is applied while a resource is serialized, by an {@link ObjectWriter} returned from
+ * {@link #applyTo(ObjectWriter)} of an ObjectMapper created by {@link ObjectMapperFactory#createObjectMapper(
+ * org.apache.directory.scim.core.schema.SchemaRegistry)}. Attributes that are not returned are skipped, the resource
+ * itself is not copied or changed. Attributes are compared by identity, they must be resolved against the same
+ * {@link org.apache.directory.scim.core.schema.SchemaRegistry} as the mapper's.
+ */
+public final class AttributeProjection {
+
+  private static final AttributeProjection DEFAULTS = new AttributeProjection(Mode.DEFAULTS, Collections.emptySet());
+
+  private enum Mode {
+    DEFAULTS,
+    INCLUDE,
+    EXCLUDE
+  }
+
+  private final Mode mode;
+
+  private final Set<Attribute> attributes;
+
+  /**
+   * The lowercase URNs of the schemas of the included attributes.
+   */
+  private final Set<String> includedUrns;
+
+  private AttributeProjection(Mode mode, Collection<Attribute> attributes) {
+    this.mode = mode;
+    this.attributes = Collections.newSetFromMap(new IdentityHashMap<>());
+    this.attributes.addAll(attributes);
+    this.includedUrns = mode == Mode.INCLUDE
+      ? attributes.stream()
+          .map(Attribute::getSchemaUrn)
+          .filter(urn -> urn != null)
+          .map(urn -> urn.toLowerCase(Locale.ROOT))
+          .collect(Collectors.toSet())
+      : Collections.emptySet();
+  }
+
+  /**
+   * Returns the projection of a request without {@code attributes} or {@code excludedAttributes}: attributes are
+   * returned unless they are returned {@code never}, or only on {@code request}.
+   */
+  public static AttributeProjection defaults() {
+    return DEFAULTS;
+  }
+
+  /**
+   * Returns the projection of a request with {@code attributes}: attributes are returned if they are returned
+   * {@code always}, or are one of {@code attributes} and not returned {@code never}. Extensions without any of the
+   * {@code attributes} are left out.
+   *
+   * @param attributes the requested attributes, including the parents and sub-attributes of the requested paths.
+   */
+  public static AttributeProjection including(Collection<Attribute> attributes) {
+    return attributes.isEmpty() ? DEFAULTS : new AttributeProjection(Mode.INCLUDE, attributes);
+  }
+
+  /**
+   * Returns the projection of a request with {@code excludedAttributes}: attributes are returned as by
+   * {@link #defaults()}, unless they are one of {@code attributes}.
+   */
+  public static AttributeProjection excluding(Collection<Attribute> attributes) {
+    return attributes.isEmpty() ? DEFAULTS : new AttributeProjection(Mode.EXCLUDE, attributes);
+  }
+
+  /**
+   * Returns a writer that applies this projection to the resources it writes.
+   */
+  public ObjectWriter applyTo(ObjectWriter writer) {
+    return writer.withAttribute(AttributeProjection.class, this);
+  }
+
+  /**
+   * Returns the projection applied by the current serialization, or null if there is none.
+   */
+  static AttributeProjection of(SerializerProvider provider) {
+    return (AttributeProjection) provider.getAttribute(AttributeProjection.class);
+  }
+
+  public boolean isReturned(Attribute attribute) {
+    Returned returned = attribute.getReturned();
+    if (returned == Returned.NEVER) {
+      return false;
+    }
+    switch (mode) {
+      case INCLUDE:
+        return returned == Returned.ALWAYS || attributes.contains(attribute);
+      case EXCLUDE:
+        return returned != Returned.REQUEST && !attributes.contains(attribute);
+      default:
+        return returned != Returned.REQUEST;
+    }
+  }
+
+  /**
+   * Returns true if the extension with the schema {@code urn} is returned.
+   */
+  public boolean isExtensionReturned(String urn) {
+    return mode != Mode.INCLUDE || includedUrns.contains(urn.toLowerCase(Locale.ROOT));
+  }
+}
@@ -87,6 +87,7 @@ public class ObjectMapperFactory {
       super("scim-resources", Version.unknownVersion());
       this.schemaRegistry = schemaRegistry;
       addDeserializer(ScimResource.class, new ScimResourceDeserializer(schemaRegistry));
+      setSerializerModifier(new ProjectionSerializerModifier(schemaRegistry));
     }
 
     @Override
@@ -0,0 +1,260 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.apache.directory.scim.core.json;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.introspect.AnnotatedMember;
+import com.fasterxml.jackson.databind.ser.AnyGetterWriter;
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+import com.fasterxml.jackson.databind.ser.BeanSerializerBuilder;
+import com.fasterxml.jackson.databind.ser.BeanSerializerModifier;
+import com.fasterxml.jackson.databind.ser.PropertyFilter;
+import org.apache.directory.scim.core.schema.SchemaRegistry;
+import org.apache.directory.scim.spec.annotation.ScimExtensionType;
+import org.apache.directory.scim.spec.resources.ScimExtension;
+import org.apache.directory.scim.spec.resources.ScimResource;
+import org.apache.directory.scim.spec.schema.AttributeContainer;
+import org.apache.directory.scim.spec.schema.Schema.Attribute;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Applies the {@link AttributeProjection} of a serialization, if there is one, to SCIM resources and their extensions.
+ * <p>
+ * Every bean property is wrapped in a writer that looks up the attribute it holds: in the schema of the resource or
+ * extension that declares it, or in the complex attribute that is being written, and skips it if the attribute is not
+ * returned. Properties that are not attributes, like {@code schemas}, are always written. The extensions of a
+ * resource are skipped if none of their attributes are requested.
+ */
+class ProjectionSerializerModifier extends BeanSerializerModifier {
+
+  private static final long serialVersionUID = -2860637473718622593L;
+
+  private final SchemaRegistry schemaRegistry;
+
+  ProjectionSerializerModifier(SchemaRegistry schemaRegistry) {
+    this.schemaRegistry = schemaRegistry;
+  }
+
+  @Override
+  public List<BeanPropertyWriter> changeProperties(SerializationConfig config, BeanDescription beanDesc, List<BeanPropertyWriter> beanProperties) {
+    Class<?> beanClass = beanDesc.getBeanClass();
+    boolean resource = ScimResource.class.isAssignableFrom(beanClass);
+    ScimExtensionType extensionType = ScimExtension.class.isAssignableFrom(beanClass)
+      ? beanClass.getAnnotation(ScimExtensionType.class)
+      : null;
+    String extensionUrn = extensionType != null ? extensionType.id() : null;
+
+    beanProperties.replaceAll(writer -> new ProjectedPropertyWriter(writer, schemaRegistry, resource, extensionUrn));
+    return beanProperties;
+  }
+
+  @Override
+  public BeanSerializerBuilder updateBuilder(SerializationConfig config, BeanDescription beanDesc, BeanSerializerBuilder builder) {
+    AnyGetterWriter extensionsWriter = builder.getAnyGetter();
+    if (extensionsWriter != null && ScimResource.class.isAssignableFrom(beanDesc.getBeanClass())) {
+      builder.setAnyGetter(new ProjectedExtensionsWriter(extensionsWriter, beanDesc.findAnyGetter()));
+    }
+    return builder;
+  }
+
+  /**
+   * The state of a serialization with a projection, kept as an attribute of the {@link SerializerProvider}, which is
+   * created for each serialization.
+   */
+  private static final class ProjectionContext {
+
+    private final AttributeProjection projection;
+
+    /**
+     * The complex attribute whose value is being written, or null.
+     */
+    private AttributeContainer container;
+
+    private ProjectionContext(AttributeProjection projection) {
+      this.projection = projection;
+    }
+
+    /**
+     * Returns the context of the current serialization, or null if it has no projection.
+     */
+    static ProjectionContext of(SerializerProvider provider) {
+      ProjectionContext context = (ProjectionContext) provider.getAttribute(ProjectionContext.class);
+      if (context == null) {
+        AttributeProjection projection = AttributeProjection.of(provider);
+        if (projection == null) {
+          return null;
+        }
+        context = new ProjectionContext(projection);
+        provider.setAttribute(ProjectionContext.class, context);
+      }
+      return context;
+    }
+  }
+
+  private static final class ProjectedPropertyWriter extends BeanPropertyWriter {
+
+    private static final long serialVersionUID = 6413860436553812093L;
+
+    private final transient SchemaRegistry schemaRegistry;
+
+    /**
+     * True if the property is declared by a resource, and is an attribute of the resource's schema.
+     */
+    private final boolean resource;
+
+    /**
+     * The URN of the extension that declares the property, or null.
+     */
+    private final String extensionUrn;
+
+    /**
+     * Primitives are always written, like the defaults they would hold when "removed" from a resource.
+     */
+    private final boolean primitive;
+
+    /**
+     * The last attribute the property was resolved to, properties almost always belong to a single container.
+     */
+    private transient volatile ResolvedAttribute resolved;
+
+    ProjectedPropertyWriter(BeanPropertyWriter writer, SchemaRegistry schemaRegistry, boolean resource, String extensionUrn) {
+      super(writer);
+      this.schemaRegistry = schemaRegistry;
+      this.resource = resource;
+      this.extensionUrn = extensionUrn;
+      this.primitive = writer.getType().isPrimitive();
+    }
+
+    @Override
+    public void serializeAsField(Object bean, JsonGenerator gen, SerializerProvider prov) throws Exception {
+      ProjectionContext context = ProjectionContext.of(prov);
+      if (context == null) {
+        super.serializeAsField(bean, gen, prov);
+        return;
+      }
+
+      AttributeContainer container;
+      if (resource) {
+        container = schemaRegistry.getSchema(((ScimResource) bean).getBaseUrn());
+      } else if (extensionUrn != null) {
+        container = schemaRegistry.getSchema(extensionUrn);
+      } else {
+        container = context.container;
+      }
+
+      Attribute attribute = attribute(container);
+      if (attribute != null && !primitive && !context.projection.isReturned(attribute)) {
+        return;
+      }
+
+      AttributeContainer parent = context.container;
+      context.container = attribute != null && attribute.getType() == Attribute.Type.COMPLEX ? attribute : null;
+      try {
+        super.serializeAsField(bean, gen, prov);
+      } finally {
+        context.container = parent;
+      }
+    }
+
+    private Attribute attribute(AttributeContainer container) {
+      if (container == null) {
+        return null;
+      }
+      ResolvedAttribute last = resolved;
+      if (last != null && last.container == container) {
+        return last.attribute;
+      }
+
+      Attribute attribute = container.getAttribute(getName());
+      if (attribute == null && getMember() != null) {
+        attribute = container.getAttribute(getMember().getName());
+      }
+      resolved = new ResolvedAttribute(container, attribute);
+      return attribute;
+    }
+  }
+
+  private static final class ResolvedAttribute {
+
+    private final AttributeContainer container;
+
+    private final Attribute attribute;
+
+    private ResolvedAttribute(AttributeContainer container, Attribute attribute) {
+      this.container = container;
+      this.attribute = attribute;
+    }
+  }
+
+  /**
+   * Writes the extensions of a resource, the values of its {@code @JsonAnyGetter}, leaving out the extensions that are
+   * not returned.
+   */
+  private static final class ProjectedExtensionsWriter extends AnyGetterWriter {
+
+    private final AnyGetterWriter delegate;
+
+    ProjectedExtensionsWriter(AnyGetterWriter delegate, AnnotatedMember accessor) {
+      super(null, accessor, null);
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void fixAccess(SerializationConfig config) {
+      super.fixAccess(config);
+      delegate.fixAccess(config);
+    }
+
+    @Override
+    public void resolve(SerializerProvider provider) throws JsonMappingException {
+      delegate.resolve(provider);
+    }
+
+    @Override
+    public void getAndSerialize(Object bean, JsonGenerator gen, SerializerProvider provider) throws Exception {
+      ProjectionContext context = ProjectionContext.of(provider);
+      Object value = _accessor.getValue(bean);
+      if (context == null || !(value instanceof Map)) {
+        delegate.getAndSerialize(bean, gen, provider);
+        return;
+      }
+
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        String urn = String.valueOf(entry.getKey());
+        if (entry.getValue() != null && context.projection.isExtensionReturned(urn)) {
+          gen.writeFieldName(urn);
+          provider.defaultSerializeValue(entry.getValue(), gen);
+        }
+      }
+    }
+
+    @Override
+    public void getAndFilter(Object bean, JsonGenerator gen, SerializerProvider provider, PropertyFilter filter) throws Exception {
+      delegate.getAndFilter(bean, gen, provider, filter);
+    }
+  }
+}
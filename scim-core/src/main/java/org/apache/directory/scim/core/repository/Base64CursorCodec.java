@@ -0,0 +1,101 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.core.repository;
+
+import org.apache.directory.scim.spec.exception.InvalidCursorException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Writes a position as a version, the number of values, and each value as a null flag followed by the length and
+ * the bytes of its UTF-8 text, encoded as unpadded URL-safe Base64.
+ */
+final class Base64CursorCodec implements CursorCodec {
+
+  static final Base64CursorCodec INSTANCE = new Base64CursorCodec();
+
+  private static final int VERSION = 2;
+
+  private Base64CursorCodec() {
+  }
+
+  @Override
+  public String encode(List<String> position) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream output = new DataOutputStream(bytes)) {
+      output.writeByte(VERSION);
+      output.writeShort(position.size());
+      for (String value : position) {
+        output.writeBoolean(value != null);
+        if (value != null) {
+          byte[] text = value.getBytes(StandardCharsets.UTF_8);
+          output.writeInt(text.length);
+          output.write(text);
+        }
+      }
+    } catch (IOException e) {
+      // a ByteArrayOutputStream does not throw
+      throw new UncheckedIOException(e);
+    }
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+  }
+
+  @Override
+  public List<String> decode(String cursor) throws InvalidCursorException {
+    try {
+      byte[] bytes = Base64.getUrlDecoder().decode(cursor);
+      DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+      if (input.readUnsignedByte() != VERSION) {
+        throw new InvalidCursorException("Unsupported cursor: " + cursor);
+      }
+      int size = input.readUnsignedShort();
+      List<String> position = new ArrayList<>(Math.min(size, bytes.length));
+      for (int i = 0; i < size; i++) {
+        position.add(input.readBoolean() ? readText(input) : null);
+      }
+      if (input.available() > 0) {
+        throw new InvalidCursorException("Invalid cursor: " + cursor);
+      }
+      return position;
+    } catch (IllegalArgumentException | IOException e) {
+      throw new InvalidCursorException("Invalid cursor: " + cursor, e);
+    }
+  }
+
+  private static String readText(DataInputStream input) throws IOException {
+    int length = input.readInt();
+    if (length < 0 || length > input.available()) {
+      throw new EOFException("Invalid length: " + length);
+    }
+    byte[] text = new byte[length];
+    input.readFully(text);
+    return new String(text, StandardCharsets.UTF_8);
+  }
+}
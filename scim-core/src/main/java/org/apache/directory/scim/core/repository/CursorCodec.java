@@ -0,0 +1,59 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.core.repository;
+
+import org.apache.directory.scim.spec.exception.InvalidCursorException;
+
+import java.util.List;
+
+/**
+ * Converts the position of a resource in the results of a filter to and from an opaque cursor, for cursor-based
+ * pagination, see <a href="https://datatracker.ietf.org/doc/html/rfc9865">RFC 9865</a>.
+ * <p>
+ * A repository returns the cursor of the last resource of a page as the {@code nextCursor} of its
+ * {@link org.apache.directory.scim.spec.filter.FilterResponse}, and resumes after that resource when the cursor comes
+ * back in the {@link org.apache.directory.scim.spec.filter.PageRequest} of the next request. For keyset pagination,
+ * the position is the sort key of the resource followed by its id, so a page is found with an index seek instead of
+ * skipping all the resources of the previous pages.
+ * <p>
+ * Clients can read and change the cursors of {@link #base64()}, they only hold values that the client can already
+ * query. A repository can use a codec that signs or encrypts cursors instead, or that keeps positions on the server.
+ */
+public interface CursorCodec {
+
+  /**
+   * Returns the cursor of a position, the values may be null.
+   */
+  String encode(List<String> position);
+
+  /**
+   * Returns the position of a cursor returned by {@link #encode(List)}.
+   *
+   * @throws InvalidCursorException if the cursor was not returned by this codec.
+   */
+  List<String> decode(String cursor) throws InvalidCursorException;
+
+  /**
+   * Returns a codec that writes positions as URL-safe Base64 text.
+   */
+  static CursorCodec base64() {
+    return Base64CursorCodec.INSTANCE;
+  }
+}
@@ -30,7 +30,6 @@ import org.apache.directory.scim.spec.exception.MutabilityException;
 import org.apache.directory.scim.spec.exception.UnsupportedFilterException;
 import org.apache.directory.scim.spec.filter.AttributeComparisonExpression;
 import org.apache.directory.scim.spec.filter.CompareOperator;
-import org.apache.directory.scim.spec.filter.FilterExpressions;
 import org.apache.directory.scim.spec.filter.FilterParseException;
 import org.apache.directory.scim.spec.filter.ValuePathExpression;
 import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
@@ -42,6 +41,7 @@ import org.apache.directory.scim.spec.schema.Schema.Attribute;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -62,7 +62,7 @@ public class DefaultPatchHandler implements PatchHandler {
 
   public static final String PRIMARY = "primary";
 
-  private static final String VALUE_ATTRIBUTE_NAME = "value";
+  static final String VALUE_ATTRIBUTE_NAME = "value";
 
   private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<>() {};
 
@@ -132,20 +132,22 @@ public class DefaultPatchHandler implements PatchHandler {
     // if the attribute has a URN, assume it's an extension that URN does not match the baseUrn
     if (attributeReference.hasUrn() && !attributeReference.getUrn().equals(source.getBaseUrn())) {
       Schema schema = this.schemaRegistry.getSchema(attributeReference.getUrn());
-      Attribute attribute = schema.getAttribute(attributeReference.getAttributeName());
-      checkMutability(schema.getAttributeFromPath(attributeReference.getFullAttributeName()));
+      PatchPathCache.CompiledPath path = PatchPathCache.getShared().get(schema, valuePathExpression);
+      Attribute attribute = path.getAttribute();
+      checkMutability(path.getPathAttribute());
 
       patchOperationHandler.applyExtensionValue(source, sourceAsMap, schema, attribute, valuePathExpression, attributeReference.getUrn(), patchOperation.getValue());
     } else {
       Schema schema = this.schemaRegistry.getSchema(source.getBaseUrn());
-      Attribute attribute = schema.getAttribute(attributeReference.getAttributeName());
-      checkMutability(schema.getAttributeFromPath(attributeReference.getFullAttributeName()));
+      PatchPathCache.CompiledPath path = PatchPathCache.getShared().get(schema, valuePathExpression);
+      Attribute attribute = path.getAttribute();
+      checkMutability(path.getPathAttribute());
 
       patchOperationHandler.applyValue(source, sourceAsMap, schema, attribute, valuePathExpression, patchOperation.getValue());
     }
   }
 
-  private PatchOperationPath tryGetOperationPath(String key) {
+  static PatchOperationPath tryGetOperationPath(String key) {
     try {
       return PatchOperationPath.fromString(key);
     } catch (FilterParseException e) {
@@ -169,7 +171,7 @@ public class DefaultPatchHandler implements PatchHandler {
       .orElseThrow(() -> new UnsupportedFilterException("Patch operation must have an expression with a valid attribute path"));
   }
 
-  private static void checkMutability(Attribute attribute) throws MutabilityException {
+  static void checkMutability(Attribute attribute) throws MutabilityException {
     if (attribute.getMutability().equals(Attribute.Mutability.READ_ONLY)) {
       String message = "Can not update a read-only attribute '" + attribute.getName() + "'";
       log.error(message);
@@ -177,7 +179,7 @@ public class DefaultPatchHandler implements PatchHandler {
     }
   }
 
-  private static void checkMutability(Attribute attribute, Object currentValue) throws MutabilityException {
+  static void checkMutability(Attribute attribute, Object currentValue) throws MutabilityException {
     checkMutability(attribute);
     if (attribute.getMutability().equals(Attribute.Mutability.IMMUTABLE) && currentValue != null) {
       String message = "Can not update a immutable attribute that contains a value '" + attribute.getName() + "'";
@@ -186,6 +188,10 @@ public class DefaultPatchHandler implements PatchHandler {
     }
   }
 
+  private static Object valueOf(Object item) {
+    return item instanceof Map ? ((Map<String, Object>) item).get(VALUE_ATTRIBUTE_NAME) : null;
+  }
+
   private static void checkPrimary(String subAttributeName, Collection<Map<String, Object>> items, Object value)
   {
     if (subAttributeName.equals(PRIMARY) && value.equals(true)) {
@@ -198,6 +204,49 @@ public class DefaultPatchHandler implements PatchHandler {
     }
   }
 
+  /**
+   *  Detects Azure Quirk mode.
+   *  Azure uses an out of spec patch operation that does not use an express,
+   *  but instead uses a remove with a value.  Detect this and convert it to an expression
+   *  <pre><code>
+   *   {
+   *     "op":"remove",
+   *     "path":"members",
+   *     "value":[{
+   *         "value":"<id>"
+   *     }]
+   *   }
+   *   </code></pre>
+   * @param valuePathExpression The valuePathExpression to check if it has a null attribute
+   * @return true, if Azure patch REMOVE detected.
+   */
+  static boolean isAzureRemoveQuirk(Attribute attribute, ValuePathExpression valuePathExpression, Object value) {
+    return attribute.isMultiValued()
+      && attribute.getAttribute(VALUE_ATTRIBUTE_NAME) != null
+      && valuePathExpression.getAttributeExpression() == null
+      && value instanceof Collection;
+  }
+
+  static List<String> azureQuirkValuesToRemove(Collection<?> listOfMaps, Attribute attribute) {
+    return listOfMaps.stream()
+      .map(item -> {
+        if (!(item instanceof Map)) {
+          throw new IllegalArgumentException("Azure Remove Patch request quirk detected, but 'value' is not a list of maps");
+        }
+        return (Map<?,?>) item;
+      })
+      .map(item -> {
+        Attribute valueAttribute = attribute.getAttribute(VALUE_ATTRIBUTE_NAME);
+        Object itemValue = item.get(valueAttribute.getName());
+        if (!(itemValue instanceof String)) {
+          throw new IllegalArgumentException("Azure Remove Patch request quirk detected, but item 'value' is not a string");
+        }
+
+        return (String) itemValue;
+      })
+      .collect(toList());
+  }
+
   private interface PatchOperationHandler {
 
     default <T extends ScimResource> void applyValue(final T source, Map<String, Object> sourceAsMap, Schema schema, Attribute attribute, ValuePathExpression valuePathExpression, Object value) {
@@ -275,10 +324,20 @@ public class DefaultPatchHandler implements PatchHandler {
         items = new ArrayList<>();
       }
 
-      if (value instanceof Collection) {
-        items.addAll((Collection<Object>) value);
+      Collection<Object> values = value instanceof Collection
+        ? (Collection<Object>) value
+        : Collections.singletonList(value);
+      if (ValueIndex.isIdentifiedByValue(attribute)) {
+        // skip values that are already present, e.g. existing group members
+        ValueIndex index = ValueIndex.of(attribute);
+        items.forEach(item -> index.add(valueOf(item)));
+        for (Object item : values) {
+          if (index.add(valueOf(item))) {
+            items.add(item);
+          }
+        }
       } else {
-        items.add(value);
+        items.addAll(values);
       }
       sourceAsMap.put(attributeReference.getAttributeName(), items);
     }
@@ -294,7 +353,7 @@ public class DefaultPatchHandler implements PatchHandler {
 
       // apply expression filter
       Collection<Map<String, Object>> items = (Collection<Map<String, Object>>) sourceAsMap.getOrDefault(attributeName, new ArrayList<Map<String, Object>>());
-      Predicate<Object> pred = FilterExpressions.inMemoryMap(valuePathExpression.getAttributeExpression(), schema);
+      Predicate<Object> pred = PatchPathCache.getShared().get(schema, valuePathExpression).mapPredicate();
       String subAttributeName = valuePathExpression.getAttributePath().getSubAttributeName();
 
       boolean matchFound = false;
@@ -357,7 +416,7 @@ public class DefaultPatchHandler implements PatchHandler {
 
       // apply expression filter
       Collection<Map<String, Object>> items = (Collection<Map<String, Object>>) sourceAsMap.get(attributeName);
-      Predicate<Object> pred = FilterExpressions.inMemoryMap(valuePathExpression.getAttributeExpression(), schema);
+      Predicate<Object> pred = PatchPathCache.getShared().get(schema, valuePathExpression).mapPredicate();
 
       Collection<Object> updatedCollection = items.stream()
         .map(item -> {
@@ -385,6 +444,23 @@ public class DefaultPatchHandler implements PatchHandler {
       // detect Azure off-spec request
       if (isAzureRemoveQuirk(attribute, valuePathExpression, value)) {
         Collection<?> valuesToRemove = (Collection<?>) value;
+        ValueIndex index = ValueIndex.of(attribute);
+        if (index != null) {
+          // remove all items in one pass over the collection
+          azureQuirkValuesToRemove(valuesToRemove, attribute).forEach(index::add);
+          Collection<Map<String, Object>> items = (Collection<Map<String, Object>>) sourceAsMap.get(attribute.getName());
+          if (items != null) {
+            items.removeIf(item -> {
+              boolean remove = index.contains(item.get(VALUE_ATTRIBUTE_NAME));
+              if (remove) {
+                checkMutability(attribute, item);
+              }
+              return remove;
+            });
+          }
+          return;
+        }
+
         AttributeReference valueAttributeRef = new AttributeReference(attribute.getSchemaUrn(), attribute.getName(), VALUE_ATTRIBUTE_NAME);
 
         // map the Azure formatted examples in to a _normal_ scim filter expression
@@ -424,7 +500,7 @@ public class DefaultPatchHandler implements PatchHandler {
 
       AttributeReference attributeReference = valuePathExpression.getAttributePath();
       Collection<Map<String, Object>> items = (Collection<Map<String, Object>>) sourceAsMap.get(attributeReference.getAttributeName());
-      Predicate<Object> pred = FilterExpressions.inMemoryMap(valuePathExpression.getAttributeExpression(), schema);
+      Predicate<Object> pred = PatchPathCache.getShared().get(schema, valuePathExpression).mapPredicate();
 
       // if there is a sub-attribute in the filter, only that sub-attribute is removed, otherwise the whole item is
       // removed from the collection
@@ -447,48 +523,5 @@ public class DefaultPatchHandler implements PatchHandler {
         }
       }
     }
-
-    /**
-     *  Detects Azure Quirk mode.
-     *  Azure uses an out of spec patch operation that does not use an express,
-     *  but instead uses a remove with a value.  Detect this and convert it to an expression
-     *  <pre><code>
-     *   {
-     *     "op":"remove",
-     *     "path":"members",
-     *     "value":[{
-     *         "value":"<id>"
-     *     }]
-     *   }
-     *   </code></pre>
-     * @param valuePathExpression The valuePathExpression to check if it has a null attribute
-     * @return true, if Azure patch REMOVE detected.
-     */
-    private static boolean isAzureRemoveQuirk(Attribute attribute, ValuePathExpression valuePathExpression, Object value) {
-      return attribute.isMultiValued()
-        && attribute.getAttribute(VALUE_ATTRIBUTE_NAME) != null
-        && valuePathExpression.getAttributeExpression() == null
-        && value instanceof Collection;
-    }
-
-    private static List<String> azureQuirkValuesToRemove(Collection<?> listOfMaps, Attribute attribute) {
-      return listOfMaps.stream()
-        .map(item -> {
-          if (!(item instanceof Map)) {
-            throw new IllegalArgumentException("Azure Remove Patch request quirk detected, but 'value' is not a list of maps");
-          }
-          return (Map<?,?>) item;
-        })
-        .map(item -> {
-          Attribute valueAttribute = attribute.getAttribute(VALUE_ATTRIBUTE_NAME);
-          Object itemValue = item.get(valueAttribute.getName());
-          if (!(itemValue instanceof String)) {
-            throw new IllegalArgumentException("Azure Remove Patch request quirk detected, but item 'value' is not a string");
-          }
-
-          return (String) itemValue;
-        })
-        .collect(toList());
-    }
   }
 }
@@ -0,0 +1,88 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.apache.directory.scim.core.repository;
+
+import lombok.Getter;
+import org.apache.directory.scim.spec.filter.FilterResponse;
+import org.apache.directory.scim.spec.filter.PageRequest;
+
+import java.util.stream.Stream;
+
+/**
+ * A page of the resources that match a filter, which are pulled from the repository while the response is written.
+ * <p>
+ * The stream of resources is consumed at most once and is closed with this object, repositories can use
+ * {@link Stream#onClose(Runnable)} to release a cursor or a connection.
+ *
+ * @param <T> the type of the resources.
+ * @see Repository#stream(org.apache.directory.scim.spec.filter.Filter, PageRequest,
+ *      org.apache.directory.scim.spec.filter.SortRequest, java.util.Set, java.util.Set)
+ */
+@Getter
+public final class FilterResultStream<T> implements AutoCloseable {
+
+  /**
+   * The resources of the page, in order.
+   */
+  private final Stream<T> resources;
+
+  /**
+   * The page of the resources, may be null if the results are not paged.
+   */
+  private final PageRequest pageRequest;
+
+  /**
+   * The number of resources that match the filter, in all pages.
+   */
+  private final int totalResults;
+
+  /**
+   * The cursor of the next page of a cursor paged request, or null if this is the last page.
+   */
+  private final String nextCursor;
+
+  public FilterResultStream(Stream<T> resources, PageRequest pageRequest, int totalResults) {
+    this(resources, pageRequest, totalResults, null);
+  }
+
+  public FilterResultStream(Stream<T> resources, PageRequest pageRequest, int totalResults, String nextCursor) {
+    this.resources = resources;
+    this.pageRequest = pageRequest;
+    this.totalResults = totalResults;
+    this.nextCursor = nextCursor;
+  }
+
+  /**
+   * Returns the results of a {@link FilterResponse}, which may be null.
+   */
+  public static <T> FilterResultStream<T> of(FilterResponse<T> filterResponse) {
+    if (filterResponse == null || filterResponse.getResources() == null) {
+      return new FilterResultStream<>(Stream.empty(), null, 0);
+    }
+    return new FilterResultStream<>(filterResponse.getResources().stream(), filterResponse.getPageRequest(),
+      filterResponse.getTotalResults(), filterResponse.getNextCursor());
+  }
+
+  @Override
+  public void close() {
+    resources.close();
+  }
+}
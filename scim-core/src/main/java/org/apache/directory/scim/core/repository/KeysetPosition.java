@@ -0,0 +1,169 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.core.repository;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import org.apache.directory.scim.spec.exception.InvalidCursorException;
+import org.apache.directory.scim.spec.filter.SortOrder;
+import org.apache.directory.scim.spec.filter.SortRequest;
+import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * The position of a resource in sorted results: the value it is sorted by, and its id, which orders resources with
+ * the same value. The next page of a cursor starts with the first resource after the position of the last resource
+ * of the previous page.
+ * <p>
+ * Sort values are strings, numbers, booleans, {@link Date}s or {@code java.time} dates and times. A position also
+ * records the {@code sortBy} attribute and {@code sortOrder} it was taken in, a cursor is rejected when it comes back
+ * with a different sort, as its key would be compared with keys of another attribute or in another order.
+ */
+@Getter
+@EqualsAndHashCode
+@ToString
+public final class KeysetPosition {
+
+  /**
+   * The sort the position was taken in, see {@link #sort(SortRequest)}, or null if the resources are not sorted.
+   */
+  private final String sort;
+
+  /**
+   * The value the resource is sorted by, or null.
+   */
+  private final Object key;
+
+  private final String id;
+
+  public KeysetPosition(String sort, Object key, String id) {
+    this.sort = sort;
+    this.key = key;
+    this.id = id;
+  }
+
+  /**
+   * Returns the sort of the positions of resources sorted as requested by {@code sortRequest}: the lower case, fully
+   * qualified name of the {@code sortBy} attribute and the sort order, or null if there is no {@code sortBy} attribute.
+   */
+  public static String sort(SortRequest sortRequest) {
+    AttributeReference sortBy = sortRequest != null ? sortRequest.getSortBy() : null;
+    if (sortBy == null) {
+      return null;
+    }
+    SortOrder sortOrder = sortRequest.getSortOrder() != null ? sortRequest.getSortOrder() : SortOrder.ASCENDING;
+    return sortBy.getFullyQualifiedAttributeName().toLowerCase(Locale.ROOT) + " " + sortOrder.name().toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * Returns the cursor of this position.
+   *
+   * @throws IllegalArgumentException if the key is not one of the supported types.
+   */
+  public String encode(CursorCodec cursorCodec) {
+    String keyText = keyText(key);
+    if (key != null && keyText == null) {
+      throw new IllegalArgumentException("Unable to write a sort key of type " + key.getClass().getName() + " in a cursor");
+    }
+    return cursorCodec.encode(Arrays.asList(sort, keyText, id));
+  }
+
+  /**
+   * Returns the position of a cursor returned by {@link #encode(CursorCodec)}. Integral numbers are decoded as
+   * {@code Long}s and floating point numbers as {@code Double}s.
+   *
+   * @param sort the sort of the request the cursor came with, see {@link #sort(SortRequest)}.
+   * @throws InvalidCursorException if the cursor is not the cursor of a position, or of a position in another sort.
+   */
+  public static KeysetPosition decode(CursorCodec cursorCodec, String cursor, String sort) throws InvalidCursorException {
+    List<String> values = cursorCodec.decode(cursor);
+    if (values.size() != 3 || values.get(2) == null) {
+      throw new InvalidCursorException("Invalid cursor: " + cursor);
+    }
+    if (!Objects.equals(values.get(0), sort)) {
+      throw new InvalidCursorException("The cursor was returned for a different sortBy or sortOrder");
+    }
+    try {
+      return new KeysetPosition(sort, values.get(1) != null ? parseKey(values.get(1)) : null, values.get(2));
+    } catch (IllegalArgumentException | DateTimeParseException e) {
+      throw new InvalidCursorException("Invalid cursor: " + cursor, e);
+    }
+  }
+
+  /**
+   * Returns the text of a key, prefixed with its type.
+   */
+  private static String keyText(Object key) {
+    if (key instanceof String) {
+      return "s:" + key;
+    } else if (key instanceof Long || key instanceof Integer || key instanceof Short || key instanceof Byte) {
+      return "l:" + key;
+    } else if (key instanceof Double || key instanceof Float) {
+      return "d:" + key;
+    } else if (key instanceof BigDecimal) {
+      return "n:" + key;
+    } else if (key instanceof Boolean) {
+      return "b:" + key;
+    } else if (key instanceof Instant) {
+      return "i:" + key;
+    } else if (key instanceof Date) {
+      return "u:" + ((Date) key).toInstant();
+    } else if (key instanceof LocalDateTime) {
+      return "t:" + key;
+    } else if (key instanceof LocalDate) {
+      return "a:" + key;
+    } else if (key instanceof LocalTime) {
+      return "h:" + key;
+    }
+    return null;
+  }
+
+  private static Object parseKey(String text) {
+    if (text.length() < 2 || text.charAt(1) != ':') {
+      throw new IllegalArgumentException("Invalid key: " + text);
+    }
+    String value = text.substring(2);
+    switch (text.charAt(0)) {
+      case 's': return value;
+      case 'l': return Long.valueOf(value);
+      case 'd': return Double.valueOf(value);
+      case 'n': return new BigDecimal(value);
+      case 'b': return Boolean.valueOf(value);
+      case 'i': return Instant.parse(value);
+      case 'u': return Date.from(Instant.parse(value));
+      case 't': return LocalDateTime.parse(value);
+      case 'a': return LocalDate.parse(value);
+      case 'h': return LocalTime.parse(value);
+      default: throw new IllegalArgumentException("Invalid key: " + text);
+    }
+  }
+}
@@ -0,0 +1,251 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.apache.directory.scim.core.repository;
+
+import org.apache.directory.scim.spec.filter.AttributeComparisonExpression;
+import org.apache.directory.scim.spec.filter.AttributeInExpression;
+import org.apache.directory.scim.spec.filter.CompareOperator;
+import org.apache.directory.scim.spec.filter.FilterExpression;
+import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
+import org.apache.directory.scim.spec.patch.PatchOperation;
+import org.apache.directory.scim.spec.schema.Schema.Attribute;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static org.apache.directory.scim.core.repository.DefaultPatchHandler.VALUE_ATTRIBUTE_NAME;
+
+/**
+ * Removes redundant operations from a planned PATCH request, connectors often send many operations that overwrite
+ * each other. Each operation is compared with the previous operation on the same attribute, and:
+ * <ul>
+ *   <li>a {@code replace} or {@code add} of a simple single-valued attribute, or a {@code replace} or
+ *       {@code remove} of all values of a multi-valued attribute, drops the previous operation on the same target,</li>
+ *   <li>an {@code add} of values to a multi-valued attribute is merged into a previous {@code add} to it,</li>
+ *   <li>a {@code remove} of items by their {@code value} drops those values from a previous {@code add} that has
+ *       only been followed by such removes; the {@code remove} itself is kept, the values may have been there before
+ *       the request.</li>
+ * </ul>
+ * Operations on immutable attributes, and operations with filters, are kept as they are: their outcome depends on the
+ * stored resource. Every operation has been validated before it can be dropped, so a request that would fail still
+ * fails.
+ */
+final class PatchCoalescer {
+
+  private PatchCoalescer() {
+  }
+
+  /**
+   * Coalesces {@code operations} in place, {@code steps} must hold the planned step of each operation.
+   */
+  static void coalesce(List<PatchOperation> operations, List<PatchPlan.Step> steps) {
+    int size = operations.size();
+    List<PatchOperation> coalescedOperations = new ArrayList<>(size);
+    List<PatchPlan.Step> coalescedSteps = new ArrayList<>(size);
+    // the index of the last operation on each top level attribute, dropped operations are set to null
+    Map<Attribute, Integer> last = new IdentityHashMap<>();
+    // the index of the last add to each multi-valued attribute, if it has only been followed by removes by value
+    Map<Attribute, Integer> adds = new IdentityHashMap<>();
+
+    for (int i = 0; i < size; i++) {
+      PatchOperation operation = operations.get(i);
+      PatchPlan.Step step = steps.get(i);
+      Attribute attribute = step.getAttribute();
+
+      Integer previousIndex = last.get(attribute);
+      PatchPlan.Step previous = previousIndex != null ? coalescedSteps.get(previousIndex) : null;
+      Integer addIndex = adds.remove(attribute);
+      if (previous != null && !previous.isImmutable() && !step.isImmutable()) {
+        if (supersedes(step, previous)) {
+          if (previous.getOperation() == PatchOperation.Type.ADD && step.getOperation() == PatchOperation.Type.REPLACE
+            && step.isExtension() && !attribute.isMultiValued()) {
+            // the same for a single-valued attribute, but an add also creates the extension if it is missing
+            operation = operation(operation, PatchOperation.Type.ADD, operation.getValue());
+            step = step(step, PatchOperation.Type.ADD, step.getValue());
+          }
+          coalescedOperations.set(previousIndex, null);
+          coalescedSteps.set(previousIndex, null);
+        } else if (isMultiValuedAdd(step) && isMultiValuedAdd(previous)) {
+          PatchOperation previousOperation = coalescedOperations.get(previousIndex);
+          List<Object> values = new ArrayList<>(items(previousOperation.getValue()));
+          values.addAll(items(operation.getValue()));
+          List<Object> typedValues = new ArrayList<>((Collection<?>) previous.getValue());
+          typedValues.addAll((Collection<?>) step.getValue());
+
+          coalescedOperations.set(previousIndex, operation(previousOperation, values));
+          coalescedSteps.set(previousIndex, step(previous, typedValues));
+          adds.put(attribute, previousIndex);
+          continue;
+        }
+      }
+
+      if (addIndex != null && !step.isExtension() && !step.isImmutable()) {
+        ValueIndex removed = removedValues(step);
+        if (removed != null && cancel(coalescedOperations, coalescedSteps, addIndex, removed)) {
+          adds.put(attribute, addIndex);
+        }
+      }
+      if (isMultiValuedAdd(step) && !step.isImmutable()) {
+        adds.put(attribute, coalescedOperations.size());
+      }
+
+      last.put(attribute, coalescedOperations.size());
+      coalescedOperations.add(operation);
+      coalescedSteps.add(step);
+    }
+
+    coalescedOperations.removeIf(Objects::isNull);
+    coalescedSteps.removeIf(Objects::isNull);
+    operations.clear();
+    operations.addAll(coalescedOperations);
+    steps.clear();
+    steps.addAll(coalescedSteps);
+  }
+
+  /**
+   * Returns true if {@code next} overwrites whatever {@code previous} did, regardless of the stored resource.
+   */
+  private static boolean supersedes(PatchPlan.Step next, PatchPlan.Step previous) {
+    if (next.getFilter() != null || previous.getFilter() != null || next.getSubAttribute() != previous.getSubAttribute()) {
+      return false;
+    }
+
+    if (next.getAttribute().isMultiValued()) {
+      // all values are replaced or removed, an add would keep the previous values
+      return next.getSubAttribute() == null
+        && next.getOperation() != PatchOperation.Type.ADD
+        && !(next.getOperation() == PatchOperation.Type.REMOVE && next.isExtension());
+    }
+
+    // sub-attributes not in the value of a complex attribute are left unchanged
+    if (next.getTargetAttribute().getType() == Attribute.Type.COMPLEX) {
+      return false;
+    }
+
+    // a remove leaves an empty parent, or extension, behind
+    return next.getOperation() != PatchOperation.Type.REMOVE
+      || (next.getSubAttribute() == null && !next.isExtension());
+  }
+
+  private static boolean isMultiValuedAdd(PatchPlan.Step step) {
+    return step.getOperation() == PatchOperation.Type.ADD
+      && step.getValue() != null
+      && step.getAttribute().isMultiValued()
+      && step.getFilter() == null
+      && step.getSubAttribute() == null;
+  }
+
+  /**
+   * Returns the values of the items removed by {@code step}, if it removes items by their {@code value}
+   * sub-attribute, otherwise null.
+   */
+  private static ValueIndex removedValues(PatchPlan.Step step) {
+    if (step.getOperation() != PatchOperation.Type.REMOVE || step.getSubAttribute() != null) {
+      return null;
+    }
+    ValueIndex index = ValueIndex.of(step.getAttribute());
+    if (index == null) {
+      return null;
+    }
+
+    FilterExpression filter = step.getFilter();
+    if (filter instanceof AttributeInExpression && isValueAttribute(((AttributeInExpression) filter).getAttributePath())) {
+      ((AttributeInExpression) filter).getCompareValues().forEach(index::add);
+      return index;
+    }
+    if (filter instanceof AttributeComparisonExpression) {
+      AttributeComparisonExpression comparison = (AttributeComparisonExpression) filter;
+      if (comparison.getOperation() == CompareOperator.EQ && comparison.getCompareValue() != null && isValueAttribute(comparison.getAttributePath())) {
+        index.add(comparison.getCompareValue());
+        return index;
+      }
+    }
+    return null;
+  }
+
+  private static boolean isValueAttribute(AttributeReference attributeReference) {
+    return VALUE_ATTRIBUTE_NAME.equalsIgnoreCase(attributeReference.getSubAttributeName());
+  }
+
+  /**
+   * Drops the items that are removed later from the add at {@code index}, and the add if no item is left. Returns
+   * true if the add is kept.
+   */
+  private static boolean cancel(List<PatchOperation> operations, List<PatchPlan.Step> steps, int index, ValueIndex removed) {
+    PatchPlan.Step add = steps.get(index);
+    Attribute valueAttribute = add.getAttribute().getAttribute(VALUE_ATTRIBUTE_NAME);
+    List<?> values = items(operations.get(index).getValue());
+    List<?> typedValues = (List<?>) add.getValue();
+
+    List<Object> keptValues = new ArrayList<>(values.size());
+    List<Object> keptTypedValues = new ArrayList<>(typedValues.size());
+    for (int i = 0; i < typedValues.size(); i++) {
+      Object typedValue = typedValues.get(i);
+      if (typedValue == null || !removed.contains(valueAttribute.getAccessor().get(typedValue))) {
+        keptValues.add(values.get(i));
+        keptTypedValues.add(typedValue);
+      }
+    }
+
+    if (keptTypedValues.isEmpty()) {
+      operations.set(index, null);
+      steps.set(index, null);
+      return false;
+    }
+    if (keptTypedValues.size() < typedValues.size()) {
+      operations.set(index, operation(operations.get(index), keptValues));
+      steps.set(index, step(add, keptTypedValues));
+    }
+    return true;
+  }
+
+  private static List<?> items(Object value) {
+    return value instanceof List ? (List<?>) value
+      : value instanceof Collection ? new ArrayList<>((Collection<?>) value)
+      : Collections.singletonList(value);
+  }
+
+  private static PatchOperation operation(PatchOperation operation, Object value) {
+    return operation(operation, operation.getOperation(), value);
+  }
+
+  private static PatchOperation operation(PatchOperation operation, PatchOperation.Type type, Object value) {
+    PatchOperation copy = new PatchOperation();
+    copy.setOperation(type);
+    copy.setPath(operation.getPath());
+    copy.setValue(value);
+    return copy;
+  }
+
+  private static PatchPlan.Step step(PatchPlan.Step step, Object value) {
+    return step(step, step.getOperation(), value);
+  }
+
+  private static PatchPlan.Step step(PatchPlan.Step step, PatchOperation.Type type, Object value) {
+    return new PatchPlan.Step(type, step.getSchemaUrn(), step.isExtension(), step.getAttribute(),
+      step.getSubAttribute(), step.getFilter(), value);
+  }
+}
@@ -0,0 +1,236 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.core.repository;
+
+import lombok.Getter;
+import org.apache.directory.scim.spec.filter.FilterExpressions;
+import org.apache.directory.scim.spec.filter.ValuePathExpression;
+import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
+import org.apache.directory.scim.spec.schema.Schema;
+import org.apache.directory.scim.spec.schema.Schema.Attribute;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * A bounded, thread-safe, least recently used cache of compiled PATCH paths, shared by the patch handlers.
+ * <p>
+ * Entries are keyed by schema and path, e.g. {@code emails[type eq "work"].value}, and hold the resolved attributes
+ * of the path and the predicates that select the items matched by its filter, so repeated patches skip attribute
+ * resolution and filter compilation. Parsing is cached separately by {@link
+ * org.apache.directory.scim.spec.patch.PatchOperationPath#fromString(String) PatchOperationPath}.
+ */
+public final class PatchPathCache {
+
+  public static final int DEFAULT_MAXIMUM_SIZE = 1000;
+
+  /**
+   * System property used to configure the maximum size of the shared cache, a value of {@code 0} disables caching.
+   */
+  public static final String CACHE_SIZE_PROPERTY = "scim.patch.cache.size";
+
+  private static volatile PatchPathCache shared = new PatchPathCache(
+    Integer.getInteger(CACHE_SIZE_PROPERTY, DEFAULT_MAXIMUM_SIZE));
+
+  private final int maximumSize;
+
+  private final Map<Key, CompiledPath> paths;
+
+  private final AtomicLong hitCount = new AtomicLong();
+
+  private final AtomicLong missCount = new AtomicLong();
+
+  /**
+   * @param maximumSize the maximum number of paths to keep, {@code 0} disables caching.
+   */
+  public PatchPathCache(int maximumSize) {
+    if (maximumSize < 0) {
+      throw new IllegalArgumentException("maximumSize must not be negative: " + maximumSize);
+    }
+    this.maximumSize = maximumSize;
+    this.paths = new LinkedHashMap<>(16, 0.75f, true) {
+      private static final long serialVersionUID = -2307370417452196484L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, CompiledPath> eldest) {
+        return size() > PatchPathCache.this.maximumSize;
+      }
+    };
+  }
+
+  /**
+   * Returns the cache shared by the patch handlers.
+   */
+  public static PatchPathCache getShared() {
+    return shared;
+  }
+
+  /**
+   * Replaces the cache shared by the patch handlers, for example to change its size at runtime.
+   */
+  public static void setShared(PatchPathCache cache) {
+    PatchPathCache.shared = Objects.requireNonNull(cache, "cache must not be null");
+  }
+
+  public int getMaximumSize() {
+    return maximumSize;
+  }
+
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  public int size() {
+    synchronized (paths) {
+      return paths.size();
+    }
+  }
+
+  public void clear() {
+    synchronized (paths) {
+      paths.clear();
+    }
+  }
+
+  /**
+   * Returns the compiled form of {@code valuePathExpression}, resolved against {@code schema}.
+   */
+  public CompiledPath get(Schema schema, ValuePathExpression valuePathExpression) {
+    if (maximumSize == 0) {
+      return new CompiledPath(schema, valuePathExpression);
+    }
+
+    Key key = new Key(schema, valuePathExpression.toFilter());
+    CompiledPath compiledPath;
+    synchronized (paths) {
+      compiledPath = paths.get(key);
+    }
+    if (compiledPath != null) {
+      hitCount.incrementAndGet();
+      return compiledPath;
+    }
+
+    missCount.incrementAndGet();
+    compiledPath = new CompiledPath(schema, valuePathExpression);
+    synchronized (paths) {
+      paths.put(key, compiledPath);
+    }
+    return compiledPath;
+  }
+
+  /**
+   * A PATCH path resolved against a schema. Predicates are compiled the first time they are used.
+   */
+  public static final class CompiledPath {
+
+    private final Schema schema;
+
+    private final ValuePathExpression valuePathExpression;
+
+    /**
+     * The top level attribute of the path, e.g. {@code emails} for {@code emails[type eq "work"].value}, or null if the
+     * schema does not define it.
+     */
+    @Getter
+    private final Attribute attribute;
+
+    /**
+     * The attribute the path points to, e.g. {@code emails.value} for {@code emails[type eq "work"].value}, or null if
+     * the schema does not define it.
+     */
+    @Getter
+    private final Attribute pathAttribute;
+
+    private volatile Predicate<Object> mapPredicate;
+
+    private volatile Predicate<Object> elementPredicate;
+
+    CompiledPath(Schema schema, ValuePathExpression valuePathExpression) {
+      this.schema = schema;
+      this.valuePathExpression = valuePathExpression;
+
+      AttributeReference attributeReference = valuePathExpression.getAttributePath();
+      this.attribute = attributeReference != null ? schema.getAttribute(attributeReference.getAttributeName()) : null;
+      this.pathAttribute = attribute != null && attributeReference.hasSubAttribute()
+        ? attribute.getAttribute(attributeReference.getSubAttributeName())
+        : attribute;
+    }
+
+    /**
+     * Returns the predicate for the path's filter that tests items converted to maps.
+     */
+    public Predicate<Object> mapPredicate() {
+      Predicate<Object> predicate = mapPredicate;
+      if (predicate == null) {
+        predicate = FilterExpressions.inMemoryMap(valuePathExpression.getAttributeExpression(), schema);
+        mapPredicate = predicate;
+      }
+      return predicate;
+    }
+
+    /**
+     * Returns the predicate for the path's filter that tests the typed items of a multi-valued attribute.
+     */
+    public Predicate<Object> elementPredicate() {
+      Predicate<Object> predicate = elementPredicate;
+      if (predicate == null) {
+        predicate = FilterExpressions.inMemoryElement(valuePathExpression.getAttributeExpression(), schema);
+        elementPredicate = predicate;
+      }
+      return predicate;
+    }
+  }
+
+  /**
+   * Schemas are compared by identity, the same URN may be registered differently by separate SchemaRegistries.
+   */
+  private static final class Key {
+
+    private final Schema schema;
+
+    private final String path;
+
+    private Key(Schema schema, String path) {
+      this.schema = schema;
+      this.path = path;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) o;
+      return schema == key.schema && path.equals(key.path);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * System.identityHashCode(schema) + path.hashCode();
+    }
+  }
+}
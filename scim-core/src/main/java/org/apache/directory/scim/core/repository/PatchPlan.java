@@ -0,0 +1,143 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.apache.directory.scim.core.repository;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import org.apache.directory.scim.spec.filter.FilterExpression;
+import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
+import org.apache.directory.scim.spec.patch.PatchOperation;
+import org.apache.directory.scim.spec.resources.ScimResource;
+import org.apache.directory.scim.spec.schema.Schema.Attribute;
+
+import java.util.List;
+
+/**
+ * A validated form of a PATCH request, created by {@link PatchPlanner}, that a {@link Repository} can translate into
+ * targeted updates of its storage, e.g. an {@code UPDATE ... SET column = ?} or an array append, instead of reading,
+ * patching and rewriting the whole resource.
+ * <p>
+ * Each {@link Step} changes a single attribute: operations without a path are expanded into one step per attribute,
+ * paths are resolved against the resource's schemas, read-only attributes are rejected, values are converted to the
+ * Java types of the attributes they are written to, and redundant operations are coalesced. Steps must be applied in
+ * order, with the same semantics as the operations they were planned from, which remain available for repositories
+ * that fall back to a {@link PatchHandler}.
+ */
+@Getter
+@ToString
+public final class PatchPlan {
+
+  private final Class<? extends ScimResource> resourceClass;
+
+  /**
+   * The operations to apply, the operation of each step at the same index. They have the same effect as the
+   * operations of the PATCH request.
+   */
+  private final List<PatchOperation> patchOperations;
+
+  private final List<Step> steps;
+
+  /**
+   * The number of operations of the PATCH request, after expanding operations without a path, that were dropped or
+   * merged into others because they were redundant.
+   */
+  private final int eliminatedOperations;
+
+  PatchPlan(Class<? extends ScimResource> resourceClass, List<PatchOperation> patchOperations, List<Step> steps, int eliminatedOperations) {
+    this.resourceClass = resourceClass;
+    this.patchOperations = List.copyOf(patchOperations);
+    this.steps = List.copyOf(steps);
+    this.eliminatedOperations = eliminatedOperations;
+  }
+
+  /**
+   * A change to a single attribute of a resource, or of one of its extensions.
+   */
+  @Getter
+  @ToString
+  @AllArgsConstructor(access = AccessLevel.PACKAGE)
+  public static final class Step {
+
+    private final PatchOperation.Type operation;
+
+    /**
+     * The URN of the schema that defines the attribute, the resource's own schema or the schema of an extension.
+     */
+    private final String schemaUrn;
+
+    /**
+     * True if the attribute belongs to an extension, the extension is added to the resource by an {@code add} or
+     * {@code replace}.
+     */
+    private final boolean extension;
+
+    /**
+     * The top level attribute that is changed, e.g. {@code emails} for {@code emails[type eq "work"].value}.
+     */
+    private final Attribute attribute;
+
+    /**
+     * The sub-attribute that is changed, e.g. {@code value} for {@code emails[type eq "work"].value}, or null if the
+     * whole attribute, or the whole of the selected items, is changed.
+     */
+    private final Attribute subAttribute;
+
+    /**
+     * The filter that selects the items of a multi-valued attribute that are changed, or null if all of them are.
+     */
+    private final FilterExpression filter;
+
+    /**
+     * The value to write, converted to the Java type of the target attribute: a collection of items for a
+     * multi-valued attribute without a filter or sub-attribute, a single item for one selected by a filter without a
+     * sub-attribute, and null for a {@code remove}.
+     */
+    private final Object value;
+
+    /**
+     * Returns the attribute the value is written to, the sub-attribute if there is one.
+     */
+    public Attribute getTargetAttribute() {
+      return subAttribute != null ? subAttribute : attribute;
+    }
+
+    /**
+     * Returns a reference to the changed attribute, e.g. to look up the column it is stored in.
+     */
+    public AttributeReference getAttributeReference() {
+      return subAttribute != null
+        ? new AttributeReference(schemaUrn, attribute.getName(), subAttribute.getName())
+        : new AttributeReference(schemaUrn, attribute.getName());
+    }
+
+    /**
+     * Returns true if the step changes an immutable attribute, which may only be written while it has no value.
+     * Repositories must check the stored value, e.g. with {@code WHERE column IS NULL}, and fail with a
+     * {@link org.apache.directory.scim.spec.exception.MutabilityException MutabilityException} if it is set.
+     */
+    public boolean isImmutable() {
+      return attribute.getMutability() == Attribute.Mutability.IMMUTABLE
+        || getTargetAttribute().getMutability() == Attribute.Mutability.IMMUTABLE;
+    }
+  }
+}
@@ -0,0 +1,207 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.apache.directory.scim.core.repository;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.directory.scim.core.json.ObjectMapperFactory;
+import org.apache.directory.scim.core.schema.SchemaRegistry;
+import org.apache.directory.scim.spec.annotation.ScimResourceType;
+import org.apache.directory.scim.spec.exception.UnsupportedFilterException;
+import org.apache.directory.scim.spec.filter.AttributeInExpression;
+import org.apache.directory.scim.spec.filter.FilterExpression;
+import org.apache.directory.scim.spec.filter.ValuePathExpression;
+import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
+import org.apache.directory.scim.spec.patch.PatchOperation;
+import org.apache.directory.scim.spec.resources.ScimResource;
+import org.apache.directory.scim.spec.schema.Schema;
+import org.apache.directory.scim.spec.schema.Schema.Attribute;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.apache.directory.scim.core.repository.DefaultPatchHandler.VALUE_ATTRIBUTE_NAME;
+import static org.apache.directory.scim.core.repository.DefaultPatchHandler.checkMutability;
+
+/**
+ * Creates {@link PatchPlan PatchPlans} from the operations of PATCH requests, rejecting operations that no
+ * {@link PatchHandler} could apply before a repository is asked to, and dropping operations that are made redundant by
+ * later ones.
+ *
+ * @see PatchCoalescer
+ */
+@Slf4j
+@ApplicationScoped
+public class PatchPlanner {
+
+  private final SchemaRegistry schemaRegistry;
+
+  private final ObjectMapper objectMapper;
+
+  private final AtomicLong eliminatedOperationCount = new AtomicLong();
+
+  @Inject
+  public PatchPlanner(SchemaRegistry schemaRegistry) {
+    this.schemaRegistry = schemaRegistry;
+    this.objectMapper = ObjectMapperFactory.createObjectMapper(schemaRegistry);
+  }
+
+  // For CDI
+  protected PatchPlanner() {
+    this.schemaRegistry = null;
+    this.objectMapper = null;
+  }
+
+  /**
+   * Creates the plan of {@code patchOperations} for a resource of type {@code resourceClass}.
+   *
+   * @throws UnsupportedFilterException if an operation has an invalid path or value.
+   * @throws org.apache.directory.scim.spec.exception.MutabilityException if an operation changes a read-only
+   *         attribute.
+   */
+  @SuppressWarnings("unchecked")
+  public PatchPlan plan(Class<? extends ScimResource> resourceClass, List<PatchOperation> patchOperations) {
+    if (patchOperations == null) {
+      throw new UnsupportedFilterException("patchOperations is null. Cannot apply patch.");
+    }
+    ScimResourceType resourceType = resourceClass.getAnnotation(ScimResourceType.class);
+    if (resourceType == null) {
+      throw new IllegalArgumentException("Missing annotation: " + resourceClass.getName() + " must be annotated with @ScimResourceType.");
+    }
+
+    List<PatchOperation> operations = new ArrayList<>(patchOperations.size());
+    List<PatchPlan.Step> steps = new ArrayList<>(patchOperations.size());
+    for (PatchOperation patchOperation : patchOperations) {
+      if (patchOperation.getPath() == null) {
+        if (!(patchOperation.getValue() instanceof Map)) {
+          throw new UnsupportedFilterException("Cannot apply patch. value is required");
+        }
+        Map<String, Object> properties = (Map<String, Object>) patchOperation.getValue();
+
+        for (Map.Entry<String, Object> entry : properties.entrySet()) {
+          // convert SCIM patch to RFC-6902 patch
+          PatchOperation newPatchOperation = new PatchOperation();
+          newPatchOperation.setOperation(patchOperation.getOperation());
+          newPatchOperation.setPath(DefaultPatchHandler.tryGetOperationPath(entry.getKey()));
+          newPatchOperation.setValue(entry.getValue());
+
+          operations.add(newPatchOperation);
+          steps.add(step(resourceType.schema(), newPatchOperation));
+        }
+      } else {
+        operations.add(patchOperation);
+        steps.add(step(resourceType.schema(), patchOperation));
+      }
+    }
+
+    int plannedOperations = operations.size();
+    PatchCoalescer.coalesce(operations, steps);
+    int eliminatedOperations = plannedOperations - operations.size();
+    if (eliminatedOperations > 0) {
+      eliminatedOperationCount.addAndGet(eliminatedOperations);
+      log.debug("Coalesced {} patch operations into {}", plannedOperations, operations.size());
+    }
+    return new PatchPlan(resourceClass, operations, steps, eliminatedOperations);
+  }
+
+  /**
+   * Returns the number of operations that were eliminated from the plans created by this planner, because they were
+   * redundant.
+   */
+  public long getEliminatedOperationCount() {
+    return eliminatedOperationCount.get();
+  }
+
+  private PatchPlan.Step step(String baseUrn, PatchOperation patchOperation) {
+    PatchOperation.Type operation = patchOperation.getOperation();
+    ValuePathExpression valuePathExpression = DefaultPatchHandler.valuePathExpression(patchOperation);
+    Object value = patchOperation.getValue();
+    AttributeReference attributeReference = DefaultPatchHandler.attributeReference(valuePathExpression);
+
+    // if the attribute has a URN, assume it's an extension that URN does not match the baseUrn
+    boolean extension = attributeReference.hasUrn() && !attributeReference.getUrn().equals(baseUrn);
+    String urn = extension ? attributeReference.getUrn() : baseUrn;
+    Schema schema = schemaRegistry.getSchema(urn);
+    if (schema == null) {
+      throw new UnsupportedFilterException("Cannot apply patch, unknown schema '" + urn + "'");
+    }
+    PatchPathCache.CompiledPath path = PatchPathCache.getShared().get(schema, valuePathExpression);
+    Attribute attribute = path.getAttribute();
+    Attribute pathAttribute = path.getPathAttribute();
+    if (attribute == null || pathAttribute == null) {
+      throw new UnsupportedFilterException("Cannot apply patch, unknown attribute '" + attributeReference.getFullyQualifiedAttributeName() + "'");
+    }
+    checkMutability(pathAttribute);
+
+    Attribute subAttribute = attributeReference.hasSubAttribute() ? pathAttribute : null;
+    FilterExpression filter = valuePathExpression.getAttributeExpression();
+
+    if (operation == PatchOperation.Type.REMOVE) {
+      if (DefaultPatchHandler.isAzureRemoveQuirk(attribute, valuePathExpression, value)) {
+        // the values of the items to remove are the same as a filter on the value sub-attribute
+        AttributeReference valueAttributeRef = new AttributeReference(attribute.getSchemaUrn(), attribute.getName(), VALUE_ATTRIBUTE_NAME);
+        List<String> values = DefaultPatchHandler.azureQuirkValuesToRemove((Collection<?>) value, attribute);
+        filter = new AttributeInExpression(valueAttributeRef, Collections.unmodifiableSet(new LinkedHashSet<>(values)));
+      }
+      return new PatchPlan.Step(operation, urn, extension, attribute, subAttribute, filter, null);
+    }
+
+    if (filter != null && subAttribute == null && operation == PatchOperation.Type.ADD) {
+      throw new UnsupportedFilterException("Invalid filter, expecting patch filter with expression to have a sub-attribute.");
+    }
+
+    Object typedValue;
+    if (subAttribute != null) {
+      typedValue = convert(subAttribute, value, type(subAttribute));
+    } else if (!attribute.isMultiValued()) {
+      typedValue = convert(attribute, value, type(attribute));
+    } else if (filter != null) {
+      typedValue = convert(attribute, value, type(attribute).getContentType());
+    } else {
+      Object values = value == null || value instanceof Collection ? value : Collections.singletonList(value);
+      typedValue = convert(attribute, values, type(attribute));
+    }
+    return new PatchPlan.Step(operation, urn, extension, attribute, subAttribute, filter, typedValue);
+  }
+
+  private JavaType type(Attribute attribute) {
+    return objectMapper.getTypeFactory().constructType(attribute.getAccessor().getGenericType());
+  }
+
+  private Object convert(Attribute attribute, Object value, JavaType type) {
+    if (value == null) {
+      return null;
+    }
+    try {
+      return objectMapper.convertValue(value, type);
+    } catch (IllegalArgumentException e) {
+      throw new UnsupportedFilterException("Cannot apply patch, invalid value for attribute '" + attribute.getName() + "': " + e.getMessage());
+    }
+  }
+}
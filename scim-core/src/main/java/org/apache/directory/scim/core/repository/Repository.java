@@ -95,6 +95,27 @@ public interface Repository<T extends ScimResource> {
    */
   T patch(String id, String version, List<PatchOperation> patchOperations, Set<AttributeReference> includedAttributes, Set<AttributeReference> excludedAttributes) throws ResourceException;
 
+  /**
+   * Allows the SCIM server's REST implementation to update and existing
+   * resource via a PATCH to a valid end-point, with the operations already
+   * validated and resolved against the resource's schemas.
+   * <br>
+   * Repositories may override this method to push the {@link PatchPlan.Step steps} of the plan down to their storage,
+   * e.g. one {@code UPDATE ... SET column = ?} per changed attribute, without loading the resource first. The default
+   * implementation delegates to {@link #patch(String, String, List, Set, Set)} with the original operations.
+   *
+   * @param id the identifier of the ScimResource to update and persist.
+   * @param version an optional version (usually used as an ETag) that can be used to optimize update requests, may be compared against, the current {@code ScimResource.meta.version}.
+   * @param patchPlan the validated patch operations to apply to an existing resource.
+   * @param includedAttributes optional set of attributes to include from ScimResource, may be used to optimize queries.
+   * @param excludedAttributes optional set of attributes to exclude from ScimResource, may be used to optimize queries.
+   * @return The newly updated ScimResource.
+   * @throws ResourceException When the ScimResource cannot be updated.
+   */
+  default T patch(String id, String version, PatchPlan patchPlan, Set<AttributeReference> includedAttributes, Set<AttributeReference> excludedAttributes) throws ResourceException {
+    return patch(id, version, patchPlan.getPatchOperations(), includedAttributes, excludedAttributes);
+  }
+
   /**
    * Retrieves the ScimResource associated with the provided identifier.
    * @param id The identifier of the target ScimResource.
@@ -103,6 +124,25 @@ public interface Repository<T extends ScimResource> {
    *         retrieved.
    */
   T get(String id) throws ResourceException;
+
+  /**
+   * Retrieves the ScimResource associated with the provided identifier, only the requested attributes of the resource
+   * will be returned to the client.
+   * <br>
+   * Repositories may override this method to avoid loading attributes that will not be returned, e.g. the members of
+   * a group when only its {@code displayName} is requested. Attributes that are returned {@code always} must be loaded.
+   * The default implementation delegates to {@link #get(String)}.
+   *
+   * @param id The identifier of the target ScimResource.
+   * @param includedAttributes optional set of attributes to include from ScimResource, may be used to optimize queries.
+   * @param excludedAttributes optional set of attributes to exclude from ScimResource, may be used to optimize queries.
+   * @return The requested ScimResource.
+   * @throws ResourceException When the ScimResource cannot be
+   *         retrieved.
+   */
+  default T get(String id, Set<AttributeReference> includedAttributes, Set<AttributeReference> excludedAttributes) throws ResourceException {
+    return get(id);
+  }
   
   /**
    * Finds and retrieves all ScimResource objects known to the persistence
@@ -115,6 +155,10 @@ public interface Repository<T extends ScimResource> {
    *        part of the ResultList
    * @param pageRequest For paged requests, this object specifies the start
    *        index and number of ScimResources that should be returned.
+   *        Repositories that support cursor-based pagination resume after the
+   *        position of {@link PageRequest#getCursor()} instead of the start
+   *        index, and set {@link FilterResponse#getNextCursor()}, see
+   *        {@link CursorCodec}.
    * @param sortRequest Specifies which fields the returned ScimResources
    *        should be sorted by and whether the sort order is ascending or
    *        descending.
@@ -122,10 +166,98 @@ public interface Repository<T extends ScimResource> {
    *         truncated to match the requested "page" and sorted according
    *         to the provided requirements.
    * @throws ResourceException If one or more ScimResources
-   *         cannot be retrieved.
+   *         cannot be retrieved, or an
+   *         {@link org.apache.directory.scim.spec.exception.InvalidCursorException}
+   *         if the cursor is not valid.
    */
   FilterResponse<T> find(Filter filter, PageRequest pageRequest, SortRequest sortRequest) throws ResourceException;
+
+  /**
+   * Finds and retrieves all ScimResource objects known to the persistence
+   * layer that match the criteria specified by the passed Filter, only the
+   * requested attributes of the resources will be returned to the client.
+   * <br>
+   * Repositories may override this method to avoid loading attributes that will not be returned. Attributes used by
+   * the {@code filter} or {@code sortRequest}, and attributes that are returned {@code always}, must still be taken into
+   * account. The default implementation delegates to {@link #find(Filter, PageRequest, SortRequest)}.
+   *
+   * @param filter The filter that determines the ScimResources that will be
+   *        part of the ResultList
+   * @param pageRequest For paged requests, this object specifies the start
+   *        index and number of ScimResources that should be returned.
+   * @param sortRequest Specifies which fields the returned ScimResources
+   *        should be sorted by and whether the sort order is ascending or
+   *        descending.
+   * @param includedAttributes optional set of attributes to include from ScimResource, may be used to optimize queries.
+   * @param excludedAttributes optional set of attributes to exclude from ScimResource, may be used to optimize queries.
+   * @return A list of the ScimResources that pass the filter criteria,
+   *         truncated to match the requested "page" and sorted according
+   *         to the provided requirements.
+   * @throws ResourceException If one or more ScimResources
+   *         cannot be retrieved.
+   */
+  default FilterResponse<T> find(Filter filter, PageRequest pageRequest, SortRequest sortRequest, Set<AttributeReference> includedAttributes, Set<AttributeReference> excludedAttributes) throws ResourceException {
+    return find(filter, pageRequest, sortRequest);
+  }
+
+  /**
+   * Finds the ScimResource objects that match the criteria specified by the passed Filter, like
+   * {@link #find(Filter, PageRequest, SortRequest, Set, Set)}, returning them as a stream that is consumed while the
+   * response is written.
+   * <br>
+   * Repositories may override this method to pull resources from their storage one at a time, e.g. from a database
+   * cursor, so a page of resources is never held in memory at once. The returned stream is closed once the response
+   * has been written. The default implementation streams the result of
+   * {@link #find(Filter, PageRequest, SortRequest, Set, Set)}.
+   *
+   * @param filter The filter that determines the ScimResources that will be
+   *        part of the ResultList
+   * @param pageRequest For paged requests, this object specifies the start
+   *        index and number of ScimResources that should be returned.
+   * @param sortRequest Specifies which fields the returned ScimResources
+   *        should be sorted by and whether the sort order is ascending or
+   *        descending.
+   * @param includedAttributes optional set of attributes to include from ScimResource, may be used to optimize queries.
+   * @param excludedAttributes optional set of attributes to exclude from ScimResource, may be used to optimize queries.
+   * @return The ScimResources that pass the filter criteria, truncated to match
+   *         the requested "page" and sorted according to the provided requirements.
+   * @throws ResourceException If the ScimResources cannot be retrieved.
+   */
+  default FilterResultStream<T> stream(Filter filter, PageRequest pageRequest, SortRequest sortRequest, Set<AttributeReference> includedAttributes, Set<AttributeReference> excludedAttributes) throws ResourceException {
+    return FilterResultStream.of(find(filter, pageRequest, sortRequest, includedAttributes, excludedAttributes));
+  }
+
+  /**
+   * Returns the number of ScimResource objects that match the criteria
+   * specified by the passed Filter, for queries that only request the
+   * totalResults (a count of 0). The default implementation calls
+   * {@link #find(Filter, PageRequest, SortRequest)} with a page of 0
+   * resources, repositories that can count resources without reading them
+   * should override it.
+   *
+   * @param filter The filter that determines the ScimResources that are
+   *        counted, null to count all ScimResources.
+   * @return The number of ScimResources that pass the filter criteria.
+   * @throws ResourceException If the ScimResources cannot be counted.
+   */
+  default int count(Filter filter) throws ResourceException {
+    PageRequest pageRequest = new PageRequest();
+    pageRequest.setCount(0);
+    return find(filter, pageRequest, new SortRequest()).getTotalResults();
+  }
   
+  /**
+   * Returns true if this repository pages with {@link PageRequest#getCursor()}, see
+   * <a href="https://datatracker.ietf.org/doc/html/rfc9865">RFC 9865</a>. Searches with a cursor are rejected
+   * instead of being passed to repositories that would ignore the cursor and return the first page. The default
+   * implementation returns false.
+   *
+   * @return true if {@link #find(Filter, PageRequest, SortRequest)} honors the cursor of cursor paged requests.
+   */
+  default boolean supportsCursorPagination() {
+    return false;
+  }
+
   /**
    * Deletes the ScimResource with the provided identifier (if it exists).
    * This interface makes no distinction between hard and soft deletes but
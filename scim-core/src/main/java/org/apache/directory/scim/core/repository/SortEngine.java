@@ -0,0 +1,574 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.core.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.directory.scim.core.schema.SchemaRegistry;
+import org.apache.directory.scim.spec.exception.InvalidCursorException;
+import org.apache.directory.scim.spec.filter.Filter;
+import org.apache.directory.scim.spec.filter.FilterExpressions;
+import org.apache.directory.scim.spec.filter.FilterResponse;
+import org.apache.directory.scim.spec.filter.PageRequest;
+import org.apache.directory.scim.spec.filter.SortOrder;
+import org.apache.directory.scim.spec.filter.SortRequest;
+import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
+import org.apache.directory.scim.spec.resources.ScimResource;
+import org.apache.directory.scim.spec.schema.Schema;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Sorts and pages resources as described by a {@link SortRequest}, following
+ * <a href="https://datatracker.ietf.org/doc/html/rfc7644#section-3.4.2.3">RFC 7644 section 3.4.2.3</a>:
+ * <ul>
+ *   <li>values are ordered by the type of the {@code sortBy} attribute, strings of attributes that are not
+ *   {@code caseExact} are ordered case-insensitively</li>
+ *   <li>multi-valued attributes are ordered by their {@code primary} value, or else by their first value</li>
+ *   <li>a complex attribute without a sub-attribute is ordered by its {@code value} sub-attribute</li>
+ *   <li>resources without a value are ordered last, for either sort order</li>
+ * </ul>
+ * Resources that compare equal keep their original order, or are ordered by id with {@link #thenById()}. Without a
+ * {@code sortBy} attribute resources are not reordered, unless they are ordered by id.
+ * <p>
+ * When a page is much smaller than the resources it is taken from, the page is selected with a bounded heap of
+ * {@code startIndex + count} resources instead of sorting all of them.
+ * <p>
+ * Pages requested with a cursor (see {@link PageRequest#getCursor()}) are ordered by the {@code sortBy} value and then
+ * by id, also when there is no {@code sortBy} attribute, and start after the {@link KeysetPosition} of the cursor
+ * instead of skipping the resources of the previous pages.
+ * <pre>
+ * return SortEngine.find(users.values(), filter, pageRequest, sortRequest, schema);
+ * </pre>
+ *
+ * @param <T> the type of resource sorted
+ */
+@Slf4j
+public final class SortEngine<T extends ScimResource> {
+
+  private static final String PRIMARY = "primary";
+
+  private static final String VALUE = "value";
+
+  // use a heap when the resources needed for the page are at most this fraction of all resources
+  private static final int HEAP_RATIO = 4;
+
+  private static final Comparator<Object> CASE_EXACT_STRINGS = Comparator.comparing(Object::toString);
+
+  private static final Comparator<Object> CASE_IGNORE_STRINGS = Comparator.comparing(Object::toString, String.CASE_INSENSITIVE_ORDER);
+
+  private static final Comparator<Object> COMPARABLES = SortEngine::compareComparables;
+
+  private static final Comparator<Object> NUMBERS = SortEngine::compareNumbers;
+
+  private static final SortEngine<?> UNSORTED = new SortEngine<>(null, null, null, false, false);
+
+  // the sort of the keyset positions of cursors, see KeysetPosition.sort(SortRequest)
+  private final String sort;
+
+  private final Function<T, Object> key;
+
+  private final Comparator<Object> valueOrder;
+
+  private final boolean descending;
+
+  private final Comparator<Object> keyOrder;
+
+  private final boolean byId;
+
+  private SortEngine(String sort, Function<T, Object> key, Comparator<Object> valueOrder, boolean descending, boolean byId) {
+    this.sort = sort;
+    this.key = key;
+    this.valueOrder = valueOrder;
+    this.descending = descending;
+    this.keyOrder = valueOrder != null ? Comparator.nullsLast(descending ? valueOrder.reversed() : valueOrder) : null;
+    this.byId = byId;
+  }
+
+  /**
+   * Creates a SortEngine for attributes of {@code schema}.
+   *
+   * @param sortRequest the sort request, may be null.
+   * @param schema the schema of the resources sorted.
+   * @return a SortEngine, which does not reorder resources when there is no {@code sortBy} attribute, or when the
+   *         attribute can't be sorted by.
+   */
+  public static <T extends ScimResource> SortEngine<T> of(SortRequest sortRequest, Schema schema) {
+    return of(sortRequest, schema, null);
+  }
+
+  /**
+   * Creates a SortEngine for attributes of {@code schema}, or of the extension schemas in {@code schemaRegistry}.
+   *
+   * @param sortRequest the sort request, may be null.
+   * @param schema the schema of the resources sorted.
+   * @param schemaRegistry used to look up the schema of extension attributes, may be null.
+   * @return a SortEngine, which does not reorder resources when there is no {@code sortBy} attribute, or when the
+   *         attribute can't be sorted by.
+   */
+  @SuppressWarnings("unchecked")
+  public static <T extends ScimResource> SortEngine<T> of(SortRequest sortRequest, Schema schema, SchemaRegistry schemaRegistry) {
+    AttributeReference sortBy = sortRequest != null ? sortRequest.getSortBy() : null;
+    if (sortBy == null) {
+      return (SortEngine<T>) UNSORTED;
+    }
+
+    String urn = sortBy.getUrn();
+    boolean extension = urn != null && !urn.equalsIgnoreCase(schema.getId());
+    Schema attributeSchema = extension
+      ? (schemaRegistry != null ? schemaRegistry.getSchema(urn) : null)
+      : schema;
+    Schema.Attribute attribute = attributeSchema != null ? attributeSchema.getAttribute(sortBy.getAttributeName()) : null;
+    Schema.Attribute subAttribute = null;
+    if (attribute != null && sortBy.hasSubAttribute()) {
+      subAttribute = attribute.getAttribute(sortBy.getSubAttributeName());
+      if (subAttribute == null) {
+        attribute = null;
+      }
+    } else if (attribute != null && attribute.getType() == Schema.Attribute.Type.COMPLEX) {
+      subAttribute = attribute.getAttribute(VALUE);
+    }
+
+    Comparator<Object> valueOrder = attribute != null ? valueOrder(subAttribute != null ? subAttribute : attribute) : null;
+    if (valueOrder == null) {
+      log.debug("Unable to sort by attribute '{}'", sortBy.getFullyQualifiedAttributeName());
+      return (SortEngine<T>) UNSORTED;
+    }
+    Schema.Attribute sortAttribute = attribute;
+    Schema.Attribute sortSubAttribute = subAttribute;
+    Function<T, Object> key = resource -> {
+      Object root = extension ? resource.getExtension(urn) : resource;
+      return value(read(sortAttribute, root), sortAttribute, sortSubAttribute);
+    };
+    return new SortEngine<>(KeysetPosition.sort(sortRequest), key, valueOrder, sortRequest.getSortOrder() == SortOrder.DESCENDING, false);
+  }
+
+  /**
+   * Returns a SortEngine that orders resources with equal {@code sortBy} values (or all resources, when there is no
+   * {@code sortBy} attribute) by their id, for resources that are not kept in a stable order, e.g. the values of a
+   * hash map, so pages are the same between requests.
+   */
+  public SortEngine<T> thenById() {
+    return byId ? this : new SortEngine<>(sort, key, valueOrder, descending, true);
+  }
+
+  /**
+   * Filters, sorts and pages {@code resources}, the cursors of cursor paged requests are encoded with
+   * {@link CursorCodec#base64()}.
+   *
+   * @return the page, and the number of resources matching the filter.
+   * @throws InvalidCursorException if the page is requested with an invalid cursor.
+   */
+  public static <T extends ScimResource> FilterResponse<T> find(Collection<T> resources, Filter filter, PageRequest pageRequest, SortRequest sortRequest, Schema schema) throws InvalidCursorException {
+    Predicate<ScimResource> predicate = FilterExpressions.inMemory(filter, schema);
+    List<T> matches = new ArrayList<>();
+    for (T resource : resources) {
+      if (predicate.test(resource)) {
+        matches.add(resource);
+      }
+    }
+    SortEngine<T> sortEngine = SortEngine.of(sortRequest, schema);
+    if (pageRequest != null && pageRequest.isCursorPaged()) {
+      return sortEngine.cursorPage(matches, pageRequest, CursorCodec.base64());
+    }
+    return new FilterResponse<>(sortEngine.page(matches, pageRequest), pageRequest, matches.size());
+  }
+
+  /**
+   * Returns true if this SortEngine reorders resources.
+   */
+  public boolean isSorted() {
+    return key != null;
+  }
+
+  /**
+   * Returns a comparator ordering resources by their {@code sortBy} value.
+   */
+  public Comparator<T> comparator() {
+    return isSorted() ? Comparator.comparing(key, keyOrder) : (left, right) -> 0;
+  }
+
+  /**
+   * Returns the sorted resources on the page requested by {@code pageRequest}.
+   *
+   * @param resources the resources to sort.
+   * @param pageRequest the page to return, null to return all resources.
+   */
+  public List<T> page(Collection<T> resources, PageRequest pageRequest) {
+    int offset = 0;
+    int count = resources.size();
+    if (pageRequest != null) {
+      if (pageRequest.getStartIndex() != null) {
+        // SCIM is 1-based indexed, values less than 1 are interpreted as 1
+        offset = Math.max(pageRequest.getStartIndex() - 1, 0);
+      }
+      if (pageRequest.getCount() != null) {
+        count = Math.max(pageRequest.getCount(), 0);
+      }
+    }
+    if (offset >= resources.size() || count == 0) {
+      return Collections.emptyList();
+    }
+    int end = (int) Math.min((long) offset + count, resources.size());
+
+    if (!isSorted() && !byId) {
+      List<T> page = new ArrayList<>(end - offset);
+      int index = 0;
+      for (T resource : resources) {
+        if (index >= end) {
+          break;
+        }
+        if (index++ >= offset) {
+          page.add(resource);
+        }
+      }
+      return page;
+    }
+
+    Entry<T>[] sorted = end <= resources.size() / HEAP_RATIO
+      ? smallest(resources, end)
+      : sortAll(resources);
+    List<T> page = new ArrayList<>(end - offset);
+    for (int index = offset; index < end; index++) {
+      page.add(sorted[index].resource);
+    }
+    return page;
+  }
+
+  /**
+   * Returns the sorted resources on the page that follows the cursor of {@code pageRequest}, the first page if the
+   * cursor is empty, and the cursor of the next page. The page is selected with a bounded heap of {@code count + 1}
+   * resources.
+   *
+   * @param resources the resources to sort.
+   * @param pageRequest the page to return.
+   * @param cursorCodec the codec of the cursors.
+   * @throws InvalidCursorException if the cursor of {@code pageRequest} was not returned by {@code cursorCodec}, or
+   *         was returned for another sort.
+   */
+  public FilterResponse<T> cursorPage(Collection<T> resources, PageRequest pageRequest, CursorCodec cursorCodec) throws InvalidCursorException {
+    String cursor = pageRequest.getCursor();
+    KeysetPosition after = cursor != null && !cursor.isEmpty() ? KeysetPosition.decode(cursorCodec, cursor, sort) : null;
+    int count = pageRequest.getCount() != null ? Math.max(pageRequest.getCount(), 0) : resources.size();
+    // one more resource than the page tells if there is a next page
+    int limit = count < Integer.MAX_VALUE ? count + 1 : count;
+
+    Comparator<KeysetPosition> order = Comparator.comparing(KeysetPosition::getKey, isSorted() ? keyOrder : (left, right) -> 0)
+      .thenComparing(KeysetPosition::getId, Comparator.nullsLast(Comparator.naturalOrder()));
+    Comparator<Positioned<T>> entryOrder = Comparator.comparing(entry -> entry.position, order);
+    PriorityQueue<Positioned<T>> heap = new PriorityQueue<>(Math.max(Math.min(limit, resources.size()), 1), entryOrder.reversed());
+    for (T resource : resources) {
+      KeysetPosition position = new KeysetPosition(sort, isSorted() ? key.apply(resource) : null, resource.getId());
+      if (after != null && order.compare(position, after) <= 0) {
+        continue;
+      }
+      Positioned<T> entry = new Positioned<>(position, resource);
+      if (heap.size() < limit) {
+        heap.add(entry);
+      } else if (entryOrder.compare(entry, heap.peek()) < 0) {
+        heap.poll();
+        heap.add(entry);
+      }
+    }
+
+    List<Positioned<T>> selected = new ArrayList<>(heap);
+    selected.sort(entryOrder);
+    int size = Math.min(count, selected.size());
+    List<T> page = new ArrayList<>(size);
+    for (int index = 0; index < size; index++) {
+      page.add(selected.get(index).resource);
+    }
+    String nextCursor = size > 0 && selected.size() > size ? selected.get(size - 1).position.encode(cursorCodec) : null;
+    return new FilterResponse<>(page, pageRequest, resources.size(), nextCursor);
+  }
+
+  /**
+   * Merges pages that are each sorted by their own SortEngine, e.g. the resources of different types, and returns the
+   * page requested by {@code pageRequest} of all of their resources, which are taken from the pages in order.
+   * Resources with equal {@code sortBy} values are ordered by the index of their page, resources of a page without a
+   * {@code sortBy} value are ordered last.
+   * <p>
+   * All resources are ordered by the SortEngine of the first page that is sorted. When an attribute has a different
+   * type in the schema of another page, e.g. a string that is {@code caseExact} in only one of them, the resources of
+   * that page are ordered as if they had no {@code sortBy} value, so the order of all pages stays consistent.
+   *
+   * @param sortEngines the SortEngine of each page.
+   * @param pages the pages, each sorted by the SortEngine with the same index.
+   * @param pageRequest the page to return, null to return all resources.
+   */
+  public static <T extends ScimResource> List<T> merge(List<SortEngine<T>> sortEngines, List<List<T>> pages, PageRequest pageRequest) {
+    int offset = 0;
+    int count = Integer.MAX_VALUE;
+    if (pageRequest != null) {
+      if (pageRequest.getStartIndex() != null) {
+        // SCIM is 1-based indexed, values less than 1 are interpreted as 1
+        offset = Math.max(pageRequest.getStartIndex() - 1, 0);
+      }
+      if (pageRequest.getCount() != null) {
+        count = Math.max(pageRequest.getCount(), 0);
+      }
+    }
+
+    SortEngine<T> mergeOrder = null;
+    for (SortEngine<T> sortEngine : sortEngines) {
+      if (sortEngine.isSorted()) {
+        mergeOrder = sortEngine;
+        break;
+      }
+    }
+    Comparator<Head<T>> headOrder = mergeOrder != null
+      ? Comparator.comparing(head -> head.key, mergeOrder.keyOrder)
+      : (left, right) -> 0;
+    PriorityQueue<Head<T>> heads = new PriorityQueue<>(Math.max(pages.size(), 1), headOrder.thenComparingInt(head -> head.index));
+    for (int index = 0; index < pages.size(); index++) {
+      SortEngine<T> sortEngine = sortEngines.get(index);
+      // the keys of a page are only ordered by the merge order if its SortEngine orders them the same way
+      boolean keyed = mergeOrder != null && sortEngine.ordersLike(mergeOrder);
+      Head<T> head = new Head<>(index, keyed ? sortEngine : null, pages.get(index).iterator());
+      if (head.next()) {
+        heads.add(head);
+      }
+    }
+
+    List<T> page = new ArrayList<>();
+    int skipped = 0;
+    while (page.size() < count && !heads.isEmpty()) {
+      Head<T> head = heads.poll();
+      if (skipped < offset) {
+        skipped++;
+      } else {
+        page.add(head.resource);
+      }
+      if (head.next()) {
+        heads.add(head);
+      }
+    }
+    return page;
+  }
+
+  private boolean ordersLike(SortEngine<T> other) {
+    return isSorted() && valueOrder == other.valueOrder && descending == other.descending;
+  }
+
+  /**
+   * Sorts all resources, the key of each resource is read once.
+   */
+  private Entry<T>[] sortAll(Collection<T> resources) {
+    @SuppressWarnings("unchecked")
+    Entry<T>[] entries = new Entry[resources.size()];
+    int index = 0;
+    for (T resource : resources) {
+      entries[index] = new Entry<>(key(resource), resource, index);
+      index++;
+    }
+    Arrays.sort(entries, entryOrder());
+    return entries;
+  }
+
+  /**
+   * Returns the {@code limit} smallest resources in order, keeping at most {@code limit} of them in a heap.
+   */
+  private Entry<T>[] smallest(Collection<T> resources, int limit) {
+    Comparator<Entry<T>> order = entryOrder();
+    // the head of the heap is the largest resource kept, the next resource replaces it if it is smaller
+    PriorityQueue<Entry<T>> heap = new PriorityQueue<>(limit, order.reversed());
+    int index = 0;
+    for (T resource : resources) {
+      Entry<T> entry = new Entry<>(key(resource), resource, index++);
+      if (heap.size() < limit) {
+        heap.add(entry);
+      } else if (order.compare(entry, heap.peek()) < 0) {
+        heap.poll();
+        heap.add(entry);
+      }
+    }
+    @SuppressWarnings("unchecked")
+    Entry<T>[] entries = heap.toArray(new Entry[0]);
+    Arrays.sort(entries, order);
+    return entries;
+  }
+
+  private Comparator<Entry<T>> entryOrder() {
+    Comparator<Entry<T>> order = isSorted() ? Comparator.comparing(entry -> entry.key, keyOrder) : (left, right) -> 0;
+    if (byId) {
+      order = order.thenComparing(entry -> entry.resource.getId(), Comparator.nullsLast(Comparator.naturalOrder()));
+    }
+    // the original position breaks ties, so equal resources keep their order
+    return order.thenComparingInt(entry -> entry.position);
+  }
+
+  private Object key(T resource) {
+    return isSorted() ? key.apply(resource) : null;
+  }
+
+  /**
+   * Returns the order of the values of {@code attribute}, or null if its values can't be ordered.
+   */
+  private static Comparator<Object> valueOrder(Schema.Attribute attribute) {
+    switch (attribute.getType()) {
+      case STRING:
+      case REFERENCE:
+        return attribute.isCaseExact() ? CASE_EXACT_STRINGS : CASE_IGNORE_STRINGS;
+      case BOOLEAN:
+      case DATE_TIME:
+        return COMPARABLES;
+      case INTEGER:
+      case DECIMAL:
+        return NUMBERS;
+      default:
+        return null;
+    }
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static int compareComparables(Object left, Object right) {
+    if (left.getClass() == right.getClass() && left instanceof Comparable) {
+      return ((Comparable) left).compareTo(right);
+    }
+    // values of different types don't compare, keep the order total
+    return left.getClass().getName().compareTo(right.getClass().getName());
+  }
+
+  private static int compareNumbers(Object left, Object right) {
+    if (left instanceof Number && right instanceof Number) {
+      if (isIntegral(left) && isIntegral(right)) {
+        return Long.compare(((Number) left).longValue(), ((Number) right).longValue());
+      }
+      return decimal((Number) left).compareTo(decimal((Number) right));
+    }
+    return compareComparables(left, right);
+  }
+
+  private static boolean isIntegral(Object number) {
+    return number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte;
+  }
+
+  private static BigDecimal decimal(Number number) {
+    if (number instanceof BigDecimal) {
+      return (BigDecimal) number;
+    }
+    return isIntegral(number) ? BigDecimal.valueOf(number.longValue()) : BigDecimal.valueOf(number.doubleValue());
+  }
+
+  /**
+   * Selects the value to sort by: the primary (or else the first) value of a multi-valued attribute, and the
+   * sub-attribute of a complex value.
+   */
+  private static Object value(Object value, Schema.Attribute attribute, Schema.Attribute subAttribute) {
+    if (value instanceof Collection) {
+      Collection<?> values = (Collection<?>) value;
+      Schema.Attribute primary = subAttribute != null ? attribute.getAttribute(PRIMARY) : null;
+      if (primary != null) {
+        for (Object element : values) {
+          if (Boolean.TRUE.equals(read(primary, element))) {
+            Object primaryValue = read(subAttribute, element);
+            if (primaryValue != null) {
+              return primaryValue;
+            }
+          }
+        }
+      }
+      for (Object element : values) {
+        Object elementValue = subAttribute != null ? read(subAttribute, element) : element;
+        if (elementValue != null) {
+          return elementValue;
+        }
+      }
+      return null;
+    }
+    return subAttribute != null ? read(subAttribute, value) : value;
+  }
+
+  private static Object read(Schema.Attribute attribute, Object object) {
+    Schema.AttributeAccessor accessor = attribute.getAccessor();
+    if (object == null || accessor == null || !accessor.isAccessible(object)) {
+      return null;
+    }
+    return accessor.get(object);
+  }
+
+  private static final class Positioned<T> {
+
+    private final KeysetPosition position;
+
+    private final T resource;
+
+    private Positioned(KeysetPosition position, T resource) {
+      this.position = position;
+      this.resource = resource;
+    }
+  }
+
+  /**
+   * The next resource of a page that is merged, and its key, which is null if the page is not ordered by the merge
+   * order.
+   */
+  private static final class Head<T extends ScimResource> {
+
+    private final int index;
+
+    private final SortEngine<T> sortEngine;
+
+    private final Iterator<T> resources;
+
+    private T resource;
+
+    private Object key;
+
+    private Head(int index, SortEngine<T> sortEngine, Iterator<T> resources) {
+      this.index = index;
+      this.sortEngine = sortEngine;
+      this.resources = resources;
+    }
+
+    private boolean next() {
+      if (!resources.hasNext()) {
+        return false;
+      }
+      resource = resources.next();
+      key = sortEngine != null ? sortEngine.key.apply(resource) : null;
+      return true;
+    }
+  }
+
+  private static final class Entry<T> {
+
+    private final Object key;
+
+    private final T resource;
+
+    private final int position;
+
+    private Entry(Object key, T resource, int position) {
+      this.key = key;
+      this.resource = resource;
+      this.position = position;
+    }
+  }
+}
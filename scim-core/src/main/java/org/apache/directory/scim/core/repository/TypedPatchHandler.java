@@ -0,0 +1,575 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.core.repository;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Alternative;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.directory.scim.core.json.ObjectMapperFactory;
+import org.apache.directory.scim.core.schema.SchemaRegistry;
+import org.apache.directory.scim.spec.exception.UnsupportedFilterException;
+import org.apache.directory.scim.spec.filter.AttributeComparisonExpression;
+import org.apache.directory.scim.spec.filter.CompareOperator;
+import org.apache.directory.scim.spec.filter.ValuePathExpression;
+import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
+import org.apache.directory.scim.spec.patch.PatchOperation;
+import org.apache.directory.scim.spec.resources.ScimExtension;
+import org.apache.directory.scim.spec.resources.ScimResource;
+import org.apache.directory.scim.spec.schema.Schema;
+import org.apache.directory.scim.spec.schema.Schema.Attribute;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import static org.apache.directory.scim.core.repository.DefaultPatchHandler.PRIMARY;
+import static org.apache.directory.scim.core.repository.DefaultPatchHandler.VALUE_ATTRIBUTE_NAME;
+import static org.apache.directory.scim.core.repository.DefaultPatchHandler.checkMutability;
+
+/**
+ * A PatchHandler that applies PatchOperations directly to the ScimResource, reading and writing attributes through
+ * the accessors of the resource's {@link Schema}, instead of converting the whole resource to a map and back.
+ * <p>
+ * The original resource is not modified: it is copied shallowly, and only the objects and collections along a patched
+ * path are copied before they are changed. Only patch values are converted with Jackson, to the Java type of the
+ * attribute they are written to. Mutability is checked exactly as the {@link DefaultPatchHandler} does.
+ * <p>
+ * This is a CDI {@link Alternative}, select it in the application's {@code beans.xml} to use it instead of the
+ * DefaultPatchHandler.
+ */
+@Slf4j
+@Alternative
+@ApplicationScoped
+public class TypedPatchHandler implements PatchHandler {
+
+  private static final ClassValue<ObjectCopier> COPIERS = new ClassValue<>() {
+    @Override
+    protected ObjectCopier computeValue(Class<?> type) {
+      return new ObjectCopier(type);
+    }
+  };
+
+  private final ObjectMapper objectMapper;
+
+  private final SchemaRegistry schemaRegistry;
+
+  @Inject
+  public TypedPatchHandler(SchemaRegistry schemaRegistry) {
+    this.schemaRegistry = schemaRegistry;
+    this.objectMapper = ObjectMapperFactory.createObjectMapper(this.schemaRegistry);
+  }
+
+  // For CDI
+  protected TypedPatchHandler() {
+    this.objectMapper = null;
+    this.schemaRegistry = null;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T extends ScimResource> T apply(final T original, final List<PatchOperation> patchOperations) {
+    if (original == null) {
+      throw new UnsupportedFilterException("Original resource is null. Cannot apply patch.");
+    }
+    if (patchOperations == null) {
+      throw new UnsupportedFilterException("patchOperations is null. Cannot apply patch.");
+    }
+
+    Changes changes = new Changes();
+    T resource = changes.copy(original);
+    for (PatchOperation patchOperation : patchOperations) {
+      if (patchOperation.getPath() == null) {
+        if (!(patchOperation.getValue() instanceof Map)) {
+          throw new UnsupportedFilterException("Cannot apply patch. value is required");
+        }
+        Map<String, Object> properties = (Map<String, Object>) patchOperation.getValue();
+
+        for (Map.Entry<String, Object> entry : properties.entrySet()) {
+          // convert SCIM patch to RFC-6902 patch
+          PatchOperation newPatchOperation = new PatchOperation();
+          newPatchOperation.setOperation(patchOperation.getOperation());
+          newPatchOperation.setPath(DefaultPatchHandler.tryGetOperationPath(entry.getKey()));
+          newPatchOperation.setValue(entry.getValue());
+
+          apply(resource, changes, newPatchOperation);
+        }
+      } else {
+        apply(resource, changes, patchOperation);
+      }
+    }
+    return resource;
+  }
+
+  private void apply(ScimResource resource, Changes changes, PatchOperation patchOperation) {
+    ValuePathExpression valuePathExpression = DefaultPatchHandler.valuePathExpression(patchOperation);
+    AttributeReference attributeReference = DefaultPatchHandler.attributeReference(valuePathExpression);
+    PatchOperation.Type operation = patchOperation.getOperation();
+    Object value = patchOperation.getValue();
+
+    // if the attribute has a URN, assume it's an extension that URN does not match the baseUrn
+    boolean extension = attributeReference.hasUrn() && !attributeReference.getUrn().equals(resource.getBaseUrn());
+    String urn = extension ? attributeReference.getUrn() : resource.getBaseUrn();
+    Schema schema = schemaRegistry.getSchema(urn);
+    if (schema == null) {
+      throw new UnsupportedFilterException("Cannot apply patch, unknown schema '" + urn + "'");
+    }
+    PatchPathCache.CompiledPath path = PatchPathCache.getShared().get(schema, valuePathExpression);
+    Attribute attribute = path.getAttribute();
+    if (attribute == null || path.getPathAttribute() == null) {
+      throw new UnsupportedFilterException("Cannot apply patch, unknown attribute '" + attributeReference.getFullyQualifiedAttributeName() + "'");
+    }
+    checkMutability(path.getPathAttribute());
+
+    Object target = extension
+      ? extension(resource, changes, urn, operation)
+      : resource;
+    if (target == null) {
+      // there is nothing to remove from an extension the resource does not have
+      return;
+    }
+
+    if (operation == PatchOperation.Type.REMOVE && DefaultPatchHandler.isAzureRemoveQuirk(attribute, valuePathExpression, value)) {
+      ValueIndex index = ValueIndex.of(attribute);
+      if (index != null) {
+        // remove all items in one pass over the collection
+        DefaultPatchHandler.azureQuirkValuesToRemove((Collection<?>) value, attribute).forEach(index::add);
+        removeItems(target, attribute, index);
+        return;
+      }
+      // map the Azure formatted examples in to a _normal_ scim filter expression
+      AttributeReference valueAttributeRef = new AttributeReference(attribute.getSchemaUrn(), attribute.getName(), VALUE_ATTRIBUTE_NAME);
+      for (String itemToRemove : DefaultPatchHandler.azureQuirkValuesToRemove((Collection<?>) value, attribute)) {
+        ValuePathExpression adjustedValuePathExpression = new ValuePathExpression(valuePathExpression.getAttributePath(), new AttributeComparisonExpression(valueAttributeRef, CompareOperator.EQ, itemToRemove));
+        applyItems(operation, target, changes, schema, attribute, adjustedValuePathExpression, itemToRemove);
+      }
+    } else if (!attribute.isMultiValued()) {
+      applySingleValue(operation, target, changes, attribute, attributeReference, value);
+    } else if (valuePathExpression.getAttributeExpression() != null) {
+      applyItems(operation, target, changes, schema, attribute, valuePathExpression, value);
+    } else {
+      applyMultiValue(operation, target, attribute, value);
+    }
+  }
+
+  /**
+   * Returns a copy of the resource's extension that can be changed, creating the extension when a value is added to
+   * it, or null if there is no extension to change.
+   */
+  private ScimExtension extension(ScimResource resource, Changes changes, String urn, PatchOperation.Type operation) {
+    ScimExtension extension = resource.getExtension(urn);
+    if (extension == null) {
+      if (operation == PatchOperation.Type.REMOVE) {
+        return null;
+      }
+      Class<? extends ScimExtension> extensionClass = schemaRegistry.getExtensionClass(resource.getClass(), urn);
+      if (extensionClass == null) {
+        throw new UnsupportedFilterException("Cannot apply patch, extension '" + urn + "' is not registered for " + resource.getResourceType());
+      }
+      extension = changes.create(extensionClass);
+    } else {
+      extension = changes.copy(extension);
+    }
+
+    if (!resource.getSchemas().contains(urn)) {
+      // copy the schemas before adding the extension's URN, they are shared with the original resource
+      resource.setSchemas(resource.getSchemas());
+    }
+    resource.addExtension(extension);
+    return extension;
+  }
+
+  private void applySingleValue(PatchOperation.Type operation, Object target, Changes changes, Attribute attribute, AttributeReference attributeReference, Object value) {
+    Object currentValue = attribute.getAccessor().get(target);
+    if (!attributeReference.hasSubAttribute()) {
+      checkMutability(attribute, currentValue);
+      write(target, attribute, operation == PatchOperation.Type.REMOVE ? null : convert(value, type(attribute)));
+      return;
+    }
+
+    Object parent;
+    if (currentValue != null) {
+      parent = changes.copy(currentValue);
+    } else if (operation == PatchOperation.Type.REMOVE) {
+      return;
+    } else {
+      parent = changes.create(attribute.getAccessor().getType());
+    }
+
+    if (operation == PatchOperation.Type.ADD) {
+      checkMutability(attribute, currentValue);
+    }
+    Attribute subAttribute = subAttribute(attribute, attributeReference.getSubAttributeName());
+    checkMutability(subAttribute, subAttribute.getAccessor().get(parent));
+    write(parent, subAttribute, operation == PatchOperation.Type.REMOVE ? null : convert(value, type(subAttribute)));
+    write(target, attribute, parent);
+  }
+
+  private void applyMultiValue(PatchOperation.Type operation, Object target, Attribute attribute, Object value) {
+    Object currentValue = attribute.getAccessor().get(target);
+    checkMutability(attribute, currentValue);
+
+    switch (operation) {
+      case ADD:
+        List<Object> items = items(currentValue);
+        JavaType elementType = type(attribute).getContentType();
+        Collection<?> values = value instanceof Collection
+          ? (Collection<?>) value
+          : Collections.singletonList(value);
+        if (ValueIndex.isIdentifiedByValue(attribute)) {
+          // skip values that are already present, e.g. existing group members
+          Attribute valueAttribute = attribute.getAttribute(VALUE_ATTRIBUTE_NAME);
+          ValueIndex index = ValueIndex.of(attribute);
+          items.forEach(item -> index.add(valueAttribute.getAccessor().get(item)));
+          for (Object newValue : values) {
+            Object item = convert(newValue, elementType);
+            if (index.add(valueAttribute.getAccessor().get(item))) {
+              items.add(item);
+            }
+          }
+        } else {
+          for (Object item : values) {
+            items.add(convert(item, elementType));
+          }
+        }
+        writeItems(target, attribute, items);
+        break;
+      case REPLACE:
+        // replace the collection
+        Object collection = value == null || value instanceof Collection ? value : List.of(value);
+        write(target, attribute, convert(collection, type(attribute)));
+        break;
+      case REMOVE:
+        // remove the collection
+        write(target, attribute, null);
+        break;
+      default:
+        throw new UnsupportedFilterException("Unsupported patch operation: " + operation);
+    }
+  }
+
+  /**
+   * Applies an operation to the items of a multi-valued attribute that match the filter of a value path, for example
+   * {@code emails[type eq "work"].value}.
+   */
+  private void applyItems(PatchOperation.Type operation, Object target, Changes changes, Schema schema, Attribute attribute, ValuePathExpression valuePathExpression, Object value) {
+    AttributeReference attributePath = valuePathExpression.getAttributePath();
+    String subAttributeName = attributePath.getSubAttributeName();
+    Attribute subAttribute = attributePath.hasSubAttribute() ? subAttribute(attribute, subAttributeName) : null;
+    Predicate<Object> predicate = PatchPathCache.getShared().get(schema, valuePathExpression).elementPredicate();
+    Object currentValue = attribute.getAccessor().get(target);
+    List<Object> items = items(currentValue);
+
+    switch (operation) {
+      case ADD:
+        if (subAttribute == null) {
+          throw new UnsupportedFilterException("Invalid filter, expecting patch filter with expression to have a sub-attribute.");
+        }
+        Object addValue = convert(value, type(subAttribute));
+
+        boolean matchFound = false;
+        for (int index = 0; index < items.size(); index++) {
+          if (predicate.test(items.get(index))) {
+            matchFound = true;
+            checkMutability(attribute, subAttribute.getAccessor().get(items.get(index)));
+            resetPrimary(attribute, subAttributeName, items, changes, value);
+            write(changes.copy(items, index), subAttribute, addValue);
+          }
+        }
+
+        // if the value was not added to an existing item, create a new item with the patch value and the expression
+        // value, for example in the expression `emails[type eq "work"].value` with a patch value of `foo@example.com`
+        // the new item will contain `type: "work", value: "foo@example.com"`
+        if (!matchFound) {
+          if (!(valuePathExpression.getAttributeExpression() instanceof AttributeComparisonExpression)) {
+            throw new UnsupportedFilterException("Attribute cannot be added, only comparison expressions are supported when the existing item does not exist.");
+          }
+          AttributeComparisonExpression comparisonExpression = (AttributeComparisonExpression) valuePathExpression.getAttributeExpression();
+          resetPrimary(attribute, subAttributeName, items, changes, value);
+
+          Object item = changes.create(type(attribute).getContentType().getRawClass());
+          Attribute comparisonAttribute = subAttribute(attribute, comparisonExpression.getAttributePath().getSubAttributeName());
+          write(item, comparisonAttribute, convert(comparisonExpression.getCompareValue(), type(comparisonAttribute)));
+          write(item, subAttribute, addValue);
+          items.add(item);
+        }
+        break;
+      case REPLACE:
+        checkMutability(attribute, currentValue);
+        Object replaceValue = subAttribute != null
+          ? convert(value, type(subAttribute))
+          : convert(value, type(attribute).getContentType());
+
+        for (int index = 0; index < items.size(); index++) {
+          if (predicate.test(items.get(index))) {
+            // if there is a sub-attribute set it, otherwise replace the whole item
+            if (subAttribute != null) {
+              checkMutability(subAttribute, subAttribute.getAccessor().get(items.get(index)));
+              resetPrimary(attribute, subAttributeName, items, changes, value);
+              write(changes.copy(items, index), subAttribute, replaceValue);
+            } else {
+              items.set(index, replaceValue);
+            }
+          }
+        }
+        break;
+      case REMOVE:
+        // if there is a sub-attribute in the filter, only that sub-attribute is removed, otherwise the whole item is
+        // removed from the collection
+        if (subAttribute != null) {
+          for (int index = 0; index < items.size(); index++) {
+            if (predicate.test(items.get(index))) {
+              checkMutability(subAttribute, subAttribute.getAccessor().get(items.get(index)));
+              write(changes.copy(items, index), subAttribute, null);
+            }
+          }
+        } else {
+          items.removeIf(item -> {
+            boolean remove = predicate.test(item);
+            if (remove) {
+              checkMutability(attribute, item);
+            }
+            return remove;
+          });
+        }
+        break;
+      default:
+        throw new UnsupportedFilterException("Unsupported patch operation: " + operation);
+    }
+
+    if (currentValue != null || operation == PatchOperation.Type.ADD) {
+      writeItems(target, attribute, items);
+    }
+  }
+
+  /**
+   * Removes the items whose {@code value} is in the index.
+   */
+  private void removeItems(Object target, Attribute attribute, ValueIndex index) {
+    Object currentValue = attribute.getAccessor().get(target);
+    if (currentValue == null) {
+      return;
+    }
+    Attribute valueAttribute = attribute.getAttribute(VALUE_ATTRIBUTE_NAME);
+    List<Object> items = items(currentValue);
+    items.removeIf(item -> {
+      boolean remove = index.contains(valueAttribute.getAccessor().get(item));
+      if (remove) {
+        checkMutability(attribute, item);
+      }
+      return remove;
+    });
+    writeItems(target, attribute, items);
+  }
+
+  /**
+   * When an item is made primary, resets {@code primary} to false on all other items.
+   */
+  private static void resetPrimary(Attribute attribute, String subAttributeName, List<Object> items, Changes changes, Object value) {
+    Attribute primaryAttribute = attribute.getAttribute(PRIMARY);
+    if (PRIMARY.equals(subAttributeName) && Boolean.TRUE.equals(value) && primaryAttribute != null) {
+      for (int index = 0; index < items.size(); index++) {
+        Object primary = primaryAttribute.getAccessor().get(items.get(index));
+        if (primary != null && !Boolean.FALSE.equals(primary)) {
+          write(changes.copy(items, index), primaryAttribute, false);
+        }
+      }
+    }
+  }
+
+  private static Attribute subAttribute(Attribute attribute, String subAttributeName) {
+    Attribute subAttribute = attribute.getAttribute(subAttributeName);
+    if (subAttribute == null) {
+      throw new UnsupportedFilterException("Cannot apply patch, unknown attribute '" + attribute.getName() + "." + subAttributeName + "'");
+    }
+    return subAttribute;
+  }
+
+  private JavaType type(Attribute attribute) {
+    return objectMapper.getTypeFactory().constructType(attribute.getAccessor().getGenericType());
+  }
+
+  /**
+   * Converts a patch value, usually a plain JSON type, to the Java type of an attribute. Scalars that already have the
+   * right type are used as-is, any other value is converted with Jackson, which also copies it.
+   */
+  private Object convert(Object value, JavaType type) {
+    if (value == null) {
+      return null;
+    }
+    if ((value instanceof String || value instanceof Boolean || value instanceof Number || value instanceof Enum)
+      && type.getRawClass().isInstance(value)) {
+      return value;
+    }
+    return objectMapper.convertValue(value, type);
+  }
+
+  /**
+   * Returns a new, modifiable list with the items of a multi-valued attribute.
+   */
+  private static List<Object> items(Object values) {
+    if (values == null) {
+      return new ArrayList<>();
+    }
+    if (values instanceof Collection) {
+      return new ArrayList<>((Collection<?>) values);
+    }
+    int length = Array.getLength(values);
+    List<Object> items = new ArrayList<>(length);
+    for (int index = 0; index < length; index++) {
+      items.add(Array.get(values, index));
+    }
+    return items;
+  }
+
+  private void writeItems(Object target, Attribute attribute, List<Object> items) {
+    Class<?> type = attribute.getAccessor().getType();
+    if (type.isAssignableFrom(ArrayList.class)) {
+      write(target, attribute, items);
+    } else if (type.isAssignableFrom(LinkedHashSet.class)) {
+      write(target, attribute, new LinkedHashSet<>(items));
+    } else {
+      write(target, attribute, objectMapper.convertValue(items, type(attribute)));
+    }
+  }
+
+  private static void write(Object target, Attribute attribute, Object value) {
+    Schema.AttributeAccessor accessor = attribute.getAccessor();
+    if (value == null && accessor.getType().isPrimitive()) {
+      // primitives cannot be removed, reset them to their default value
+      value = Array.get(Array.newInstance(accessor.getType(), 1), 0);
+    }
+    accessor.set(target, value);
+  }
+
+  /**
+   * Tracks the objects copied or created while applying a patch, those can be changed without affecting the original
+   * resource, and are only copied once.
+   */
+  private final class Changes {
+
+    private final Set<Object> owned = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    @SuppressWarnings("unchecked")
+    <T> T copy(T object) {
+      if (owned.contains(object)) {
+        return object;
+      }
+      ObjectCopier copier = COPIERS.get(object.getClass());
+      T copy = copier.isSupported()
+        ? (T) copier.copy(object)
+        : (T) objectMapper.convertValue(object, object.getClass());
+      owned.add(copy);
+      return copy;
+    }
+
+    /**
+     * Replaces the item at {@code index} with a copy that can be changed, and returns it.
+     */
+    Object copy(List<Object> items, int index) {
+      Object item = copy(items.get(index));
+      items.set(index, item);
+      return item;
+    }
+
+    <T> T create(Class<T> type) {
+      ObjectCopier copier = COPIERS.get(type);
+      if (!copier.isSupported()) {
+        throw new UnsupportedFilterException("Cannot apply patch, unable to create " + type.getName());
+      }
+      T object = type.cast(copier.newInstance());
+      owned.add(object);
+      return object;
+    }
+  }
+
+  /**
+   * Makes shallow copies of a class with a no-argument constructor, maps are copied as well, as resources change those
+   * in place (e.g. {@link ScimResource#addExtension(ScimExtension)}).
+   */
+  private static final class ObjectCopier {
+
+    private final Constructor<?> constructor;
+
+    private final List<Field> fields = new ArrayList<>();
+
+    ObjectCopier(Class<?> type) {
+      Constructor<?> noArgs;
+      try {
+        noArgs = type.getDeclaredConstructor();
+        noArgs.setAccessible(true);
+        for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+          for (Field field : current.getDeclaredFields()) {
+            // final fields are set by the constructor
+            if (!Modifier.isStatic(field.getModifiers()) && !Modifier.isFinal(field.getModifiers())) {
+              field.setAccessible(true);
+              fields.add(field);
+            }
+          }
+        }
+      } catch (NoSuchMethodException | RuntimeException e) {
+        log.debug("Unable to copy {} field by field, falling back to Jackson", type, e);
+        noArgs = null;
+      }
+      this.constructor = noArgs;
+    }
+
+    boolean isSupported() {
+      return constructor != null;
+    }
+
+    Object newInstance() {
+      try {
+        return constructor.newInstance();
+      } catch (ReflectiveOperationException e) {
+        throw new IllegalStateException("Unable to create " + constructor.getDeclaringClass().getName(), e);
+      }
+    }
+
+    Object copy(Object source) {
+      Object copy = newInstance();
+      try {
+        for (Field field : fields) {
+          Object value = field.get(source);
+          if (value instanceof Map && field.getType().isAssignableFrom(LinkedHashMap.class)) {
+            value = new LinkedHashMap<>((Map<?, ?>) value);
+          }
+          field.set(copy, value);
+        }
+      } catch (IllegalAccessException e) {
+        throw new IllegalStateException("Unable to copy " + source.getClass().getName(), e);
+      }
+      return copy;
+    }
+  }
+}
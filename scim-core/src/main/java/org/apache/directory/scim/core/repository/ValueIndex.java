@@ -0,0 +1,86 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.core.repository;
+
+import org.apache.directory.scim.spec.filter.FilterExpressions;
+import org.apache.directory.scim.spec.schema.Schema.Attribute;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.apache.directory.scim.core.repository.DefaultPatchHandler.VALUE_ATTRIBUTE_NAME;
+
+/**
+ * A temporary hash index of the items of a multi-valued attribute keyed by their {@code value} sub-attribute, so a
+ * patch can add or remove many items, e.g. group members, in a single pass instead of scanning the collection once per
+ * item. Keys follow the {@code eq} filter semantics: values that are not case-exact are compared ignoring case.
+ */
+final class ValueIndex {
+
+  private final boolean ignoreCase;
+
+  private final Set<Object> keys = new HashSet<>();
+
+  private ValueIndex(Attribute valueAttribute) {
+    this.ignoreCase = !valueAttribute.isCaseExact();
+  }
+
+  /**
+   * Returns an empty index for the items of {@code attribute}, or null if the attribute has no string {@code value}
+   * sub-attribute.
+   */
+  static ValueIndex of(Attribute attribute) {
+    Attribute valueAttribute = attribute.isMultiValued() ? attribute.getAttribute(VALUE_ATTRIBUTE_NAME) : null;
+    if (valueAttribute == null
+      || (valueAttribute.getType() != Attribute.Type.STRING && valueAttribute.getType() != Attribute.Type.REFERENCE)) {
+      return null;
+    }
+    return new ValueIndex(valueAttribute);
+  }
+
+  /**
+   * Returns true if the {@code value} sub-attribute of {@code attribute} identifies another resource, as for group
+   * members: the attribute can hold each value only once.
+   */
+  static boolean isIdentifiedByValue(Attribute attribute) {
+    Attribute valueAttribute = attribute.isMultiValued() ? attribute.getAttribute(VALUE_ATTRIBUTE_NAME) : null;
+    return valueAttribute != null && valueAttribute.isScimResourceIdReference();
+  }
+
+  /**
+   * Adds a value to the index, returns false if it was already indexed. Null values are not indexed.
+   */
+  boolean add(Object value) {
+    return value == null || keys.add(key(value));
+  }
+
+  boolean contains(Object value) {
+    return value != null && keys.contains(key(value));
+  }
+
+  boolean isEmpty() {
+    return keys.isEmpty();
+  }
+
+  private Object key(Object value) {
+    String text = value.toString();
+    return ignoreCase ? FilterExpressions.foldCase(text) : text;
+  }
+}
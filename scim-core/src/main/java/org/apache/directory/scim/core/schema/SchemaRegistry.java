@@ -21,6 +21,7 @@ package org.apache.directory.scim.core.schema;
 
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.directory.scim.spec.annotation.ScimExtensionType;
 import org.apache.directory.scim.spec.annotation.ScimResourceType;
@@ -47,6 +48,16 @@ public class SchemaRegistry implements Serializable {
 
   private final Map<Class<? extends ScimResource>, Map<String, Class<? extends ScimExtension>>> resourceExtensionsMap = new HashMap<>();
 
+  private final AtomicLong modificationCount = new AtomicLong();
+
+  /**
+   * Returns the number of times schemas, resource types or extensions were added to this registry, data derived from
+   * the registry can be rebuilt when it changes.
+   */
+  public long getModificationCount() {
+    return modificationCount.get();
+  }
+
   public Schema getSchema(String urn) {
     return schemaMap.get(urn);
   }
@@ -72,6 +83,7 @@ public class SchemaRegistry implements Serializable {
   private void addSchema(Schema schema) {
     log.debug("Adding schema " + schema.getId() + " into the registry");
     schemaMap.put(schema.getId(), schema);
+    modificationCount.incrementAndGet();
   }
 
   public <T extends ScimResource> void addSchema(Class<T> clazz, List<Class<? extends ScimExtension>> extensionList) {
@@ -133,6 +145,7 @@ public class SchemaRegistry implements Serializable {
 
   private void addResourceType(ResourceType resourceType) {
     resourceTypeMap.put(resourceType.getName(), resourceType);
+    modificationCount.incrementAndGet();
   }
 
   public Class<? extends ScimExtension> getExtensionClass(Class<? extends ScimResource> resourceClass, String urn) {
@@ -162,6 +175,7 @@ public class SchemaRegistry implements Serializable {
 
     if(!resourceMap.containsKey(urn)) {
       resourceMap.put(urn, extensionClass);
+      modificationCount.incrementAndGet();
     }
   }
 
@@ -0,0 +1,68 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.core.repository;
+
+import org.apache.directory.scim.spec.exception.InvalidCursorException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CursorCodecTest {
+
+  private final CursorCodec codec = CursorCodec.base64();
+
+  @Test
+  public void positionRoundTrips() throws Exception {
+    List<String> position = Arrays.asList("s:Jensen, Barbara", null, "", "2819c223-7f76-453a-919d-413861904646");
+
+    String cursor = codec.encode(position);
+
+    assertThat(cursor).matches("[A-Za-z0-9_-]+");
+    assertThat(codec.decode(cursor)).containsExactlyElementsOf(position);
+  }
+
+  @Test
+  public void nonAsciiValuesRoundTrip() throws Exception {
+    List<String> position = List.of("s:Zoë Ünal 漢字", "id");
+
+    assertThat(codec.decode(codec.encode(position))).containsExactlyElementsOf(position);
+  }
+
+  @Test
+  public void longValuesRoundTrip() throws Exception {
+    List<String> position = List.of("s:" + "\u00e9".repeat(70_000), "id");
+
+    assertThat(codec.decode(codec.encode(position))).containsExactlyElementsOf(position);
+  }
+
+  @Test
+  public void malformedCursorsAreRejected() {
+    String cursor = codec.encode(List.of("a", "b"));
+
+    assertThatThrownBy(() -> codec.decode("not base64!")).isInstanceOf(InvalidCursorException.class);
+    assertThatThrownBy(() -> codec.decode(cursor.substring(0, cursor.length() - 2))).isInstanceOf(InvalidCursorException.class);
+    assertThatThrownBy(() -> codec.decode(cursor + "AA")).isInstanceOf(InvalidCursorException.class);
+    assertThatThrownBy(() -> codec.decode("")).isInstanceOf(InvalidCursorException.class);
+  }
+}
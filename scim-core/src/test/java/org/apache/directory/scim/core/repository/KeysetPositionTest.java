@@ -0,0 +1,74 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.core.repository;
+
+import org.apache.directory.scim.spec.exception.InvalidCursorException;
+import org.apache.directory.scim.spec.filter.SortOrder;
+import org.apache.directory.scim.spec.filter.SortRequest;
+import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class KeysetPositionTest {
+
+  private final CursorCodec codec = CursorCodec.base64();
+
+  @Test
+  public void positionsRoundTrip() throws Exception {
+    String sort = KeysetPosition.sort(sortRequest("name.familyName", SortOrder.DESCENDING));
+    LocalDateTime key = LocalDateTime.of(2024, 2, 29, 12, 30, 15, 123_456_789);
+
+    KeysetPosition position = KeysetPosition.decode(codec, new KeysetPosition(sort, key, "id-1").encode(codec), sort);
+
+    assertThat(position).isEqualTo(new KeysetPosition(sort, key, "id-1"));
+    assertThat(sort).isEqualTo("name.familyname descending");
+  }
+
+  @Test
+  public void cursorsOfAnotherSortAreRejected() {
+    String userName = KeysetPosition.sort(sortRequest("userName", SortOrder.ASCENDING));
+    String cursor = new KeysetPosition(userName, "bjensen", "id-1").encode(codec);
+
+    assertThatThrownBy(() -> KeysetPosition.decode(codec, cursor, KeysetPosition.sort(sortRequest("userName", SortOrder.DESCENDING))))
+      .isInstanceOf(InvalidCursorException.class);
+    assertThatThrownBy(() -> KeysetPosition.decode(codec, cursor, KeysetPosition.sort(sortRequest("meta.lastModified", SortOrder.ASCENDING))))
+      .isInstanceOf(InvalidCursorException.class);
+    assertThatThrownBy(() -> KeysetPosition.decode(codec, cursor, null))
+      .isInstanceOf(InvalidCursorException.class);
+  }
+
+  @Test
+  public void unsupportedKeysAreNotEncoded() {
+    assertThatThrownBy(() -> new KeysetPosition(null, UUID.randomUUID(), "id-1").encode(codec))
+      .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  private static SortRequest sortRequest(String sortBy, SortOrder sortOrder) {
+    SortRequest sortRequest = new SortRequest();
+    sortRequest.setSortBy(new AttributeReference(sortBy));
+    sortRequest.setSortOrder(sortOrder);
+    return sortRequest;
+  }
+}
@@ -0,0 +1,159 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.core.repository;
+
+import org.apache.directory.scim.core.schema.SchemaRegistry;
+import org.apache.directory.scim.spec.filter.FilterParseException;
+import org.apache.directory.scim.spec.patch.PatchOperation;
+import org.apache.directory.scim.spec.patch.PatchOperationPath;
+import org.apache.directory.scim.spec.resources.GroupMembership;
+import org.apache.directory.scim.spec.resources.Name;
+import org.apache.directory.scim.spec.resources.ScimGroup;
+import org.apache.directory.scim.spec.resources.ScimUser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@link DefaultPatchHandler}, which converts resources to a map and back, with the
+ * {@link TypedPatchHandler}, which changes the patched attributes directly.
+ * <p>
+ * Run from the module directory after {@code mvn test-compile} with (add {@code -prof gc} to compare allocations):
+ * <pre>
+ * java -cp target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout) \
+ *   org.openjdk.jmh.Main PatchHandlerBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PatchHandlerBenchmark {
+
+  private static final int MEMBERS = 50_000;
+
+  private static final int LARGE_GROUP_MEMBERS = 200_000;
+
+  @Param({"default", "typed"})
+  private String handler;
+
+  private PatchHandler patchHandler;
+
+  private ScimUser user;
+
+  private ScimGroup group;
+
+  private List<PatchOperation> deactivate;
+
+  private List<PatchOperation> addMember;
+
+  private List<PatchOperation> removeMember;
+
+  private ScimGroup largeGroup;
+
+  private List<PatchOperation> removeManyMembers;
+
+  @Setup
+  public void setup() throws FilterParseException {
+    SchemaRegistry schemaRegistry = new SchemaRegistry();
+    schemaRegistry.addSchema(ScimUser.class, null);
+    schemaRegistry.addSchema(ScimGroup.class, null);
+    patchHandler = "typed".equals(handler)
+      ? new TypedPatchHandler(schemaRegistry)
+      : new DefaultPatchHandler(schemaRegistry);
+
+    user = new ScimUser()
+      .setUserName("bjensen")
+      .setDisplayName("Babs Jensen")
+      .setActive(true)
+      .setName(new Name().setGivenName("Barbara").setFamilyName("Jensen"));
+    user.setId("2819c223-7f76-453a-919d-413861904646");
+
+    List<GroupMembership> members = new ArrayList<>(MEMBERS);
+    for (int i = 0; i < MEMBERS; i++) {
+      members.add(new GroupMembership()
+        .setValue("user-" + i)
+        .setType(GroupMembership.Type.USER)
+        .setRef("https://example.com/v2/Users/user-" + i));
+    }
+    group = new ScimGroup().setDisplayName("Everyone").setMembers(members);
+    group.setId("e9e30dba-f08f-4109-8486-d5c6a331660a");
+
+    deactivate = List.of(patchOperation(PatchOperation.Type.REPLACE, "active", false));
+    addMember = List.of(patchOperation(PatchOperation.Type.ADD, "members", List.of(Map.of("value", "user-new", "type", "User"))));
+    removeMember = List.of(patchOperation(PatchOperation.Type.REMOVE, "members[value eq \"user-25000\"]", null));
+
+    // the Azure style removal of 10k members from a 200k member group, with the values in the operation body
+    List<GroupMembership> largeGroupMembers = new ArrayList<>(LARGE_GROUP_MEMBERS);
+    List<Map<String, Object>> membersToRemove = new ArrayList<>();
+    for (int i = 0; i < LARGE_GROUP_MEMBERS; i++) {
+      largeGroupMembers.add(new GroupMembership().setValue("user-" + i).setType(GroupMembership.Type.USER));
+      if (i % 20 == 0) {
+        membersToRemove.add(Map.of("value", "user-" + i));
+      }
+    }
+    largeGroup = new ScimGroup().setDisplayName("Everyone").setMembers(largeGroupMembers);
+    largeGroup.setId("3fbb8bcb-5c06-4d3c-8e56-ff5ff8dc51aa");
+    removeManyMembers = List.of(patchOperation(PatchOperation.Type.REMOVE, "members", membersToRemove));
+  }
+
+  @Benchmark
+  public ScimUser replaceActive() {
+    return patchHandler.apply(user, deactivate);
+  }
+
+  @Benchmark
+  public ScimGroup addGroupMember() {
+    return patchHandler.apply(group, addMember);
+  }
+
+  @Benchmark
+  public ScimGroup removeGroupMember() {
+    return patchHandler.apply(group, removeMember);
+  }
+
+  @Benchmark
+  public ScimGroup removeManyGroupMembers() {
+    return patchHandler.apply(largeGroup, removeManyMembers);
+  }
+
+  private static PatchOperation patchOperation(PatchOperation.Type type, String path, Object value) throws FilterParseException {
+    PatchOperation operation = new PatchOperation();
+    operation.setOperation(type);
+    operation.setPath(PatchOperationPath.fromString(path));
+    operation.setValue(value);
+    return operation;
+  }
+}
@@ -41,19 +41,24 @@ import static java.util.Map.entry;
 import static org.apache.directory.scim.test.assertj.ScimpleAssertions.scimAssertThat;
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
 public class PatchHandlerTest {
 
-  DefaultPatchHandler patchHandler;
+  PatchHandler patchHandler;
 
   public PatchHandlerTest() {
     SchemaRegistry schemaRegistry = new SchemaRegistry();
     schemaRegistry.addSchema(ScimUser.class, List.of(EnterpriseExtension.class));
     schemaRegistry.addSchema(ScimGroup.class, null);
-    this.patchHandler = new DefaultPatchHandler(schemaRegistry);
+    this.patchHandler = createPatchHandler(schemaRegistry);
+  }
+
+  protected PatchHandler createPatchHandler(SchemaRegistry schemaRegistry) {
+    return new DefaultPatchHandler(schemaRegistry);
   }
 
   @Test
@@ -509,6 +514,41 @@ public class PatchHandlerTest {
     assertThat(updatedGroup.getMembers().size()).isEqualTo(1);
   }
 
+  @Test
+  public void removeManyItemsFromCollection() throws FilterParseException {
+    List<GroupMembership> members = new ArrayList<>();
+    List<Map<String, Object>> membersToRemove = new ArrayList<>();
+    for (int i = 0; i < 20_000; i++) {
+      members.add(userRef("user-" + i));
+      if (i % 2 == 0) {
+        // member values are not case-exact
+        membersToRemove.add(Map.of("value", "USER-" + i));
+      }
+    }
+    PatchOperation op = new PatchOperation();
+    op.setOperation(REMOVE);
+    op.setPath(PatchOperationPath.fromString("members"));
+    op.setValue(membersToRemove);
+
+    ScimGroup updatedGroup = patchHandler.apply(group().setMembers(members), List.of(op));
+    assertThat(updatedGroup.getMembers()).hasSize(10_000);
+    assertThat(updatedGroup.getMembers()).extracting(GroupMembership::getValue).startsWith("user-1", "user-3", "user-5");
+  }
+
+  @Test
+  public void addExistingItemToCollection() throws FilterParseException {
+    PatchOperation op = new PatchOperation();
+    op.setOperation(ADD);
+    op.setPath(PatchOperationPath.fromString("members"));
+    op.setValue(List.of(
+      Map.of("value", "1234", "type", "User"),
+      Map.of("value", "9876", "type", "User"),
+      Map.of("value", "9876", "type", "User")));
+
+    ScimGroup updatedGroup = patchHandler.apply(group(), List.of(op));
+    assertThat(updatedGroup.getMembers()).extracting(GroupMembership::getValue).containsExactly("1234", "5678", "9876");
+  }
+
   @Test
   public void addAttribute() throws FilterParseException {
     PatchOperation op = new PatchOperation();
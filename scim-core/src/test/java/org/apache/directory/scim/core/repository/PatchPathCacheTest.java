@@ -0,0 +1,99 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.core.repository;
+
+import org.apache.directory.scim.spec.filter.ValuePathExpression;
+import org.apache.directory.scim.spec.patch.PatchOperationPath;
+import org.apache.directory.scim.spec.resources.Email;
+import org.apache.directory.scim.spec.resources.ScimUser;
+import org.apache.directory.scim.spec.schema.Schema;
+import org.apache.directory.scim.spec.schema.Schemas;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+public class PatchPathCacheTest {
+
+  private final Schema schema = Schemas.schemaFor(ScimUser.class);
+
+  @Test
+  public void resolvesAttributesAndPredicates() throws Exception {
+    PatchPathCache.CompiledPath path = new PatchPathCache(10).get(schema, path("emails[type eq \"work\"].value"));
+
+    assertThat(path.getAttribute().getName()).isEqualTo("emails");
+    assertThat(path.getPathAttribute().getName()).isEqualTo("value");
+    assertThat(path.elementPredicate().test(new Email().setType("work"))).isTrue();
+    assertThat(path.elementPredicate().test(new Email().setType("home"))).isFalse();
+    assertThat(path.mapPredicate().test(Map.of("type", "work"))).isTrue();
+  }
+
+  @Test
+  public void unknownAttributesResolveToNull() throws Exception {
+    PatchPathCache.CompiledPath path = new PatchPathCache(10).get(schema, path("name.unknown"));
+
+    assertThat(path.getAttribute().getName()).isEqualTo("name");
+    assertThat(path.getPathAttribute()).isNull();
+  }
+
+  @Test
+  public void repeatedPathsAreCached() throws Exception {
+    PatchPathCache cache = new PatchPathCache(10);
+
+    PatchPathCache.CompiledPath first = cache.get(schema, path("emails[type eq \"work\"].value"));
+    PatchPathCache.CompiledPath second = cache.get(schema, path("emails[type eq \"work\"].value"));
+    cache.get(schema, path("emails[type eq \"home\"].value"));
+    cache.get(Schemas.schemaFor(ScimUser.class), path("emails[type eq \"work\"].value"));
+
+    assertThat(second).isSameAs(first);
+    assertThat(cache.getHitCount()).isEqualTo(1);
+    assertThat(cache.getMissCount()).isEqualTo(3);
+    assertThat(cache.size()).isEqualTo(3);
+  }
+
+  @Test
+  public void leastRecentlyUsedPathsAreEvicted() throws Exception {
+    PatchPathCache cache = new PatchPathCache(2);
+
+    PatchPathCache.CompiledPath userName = cache.get(schema, path("userName"));
+    cache.get(schema, path("displayName"));
+    cache.get(schema, path("userName"));
+    cache.get(schema, path("title"));
+
+    assertThat(cache.size()).isEqualTo(2);
+    assertThat(cache.get(schema, path("userName"))).isSameAs(userName);
+    assertThat(cache.getMissCount()).isEqualTo(3);
+  }
+
+  @Test
+  public void zeroDisablesCaching() throws Exception {
+    PatchPathCache cache = new PatchPathCache(0);
+
+    assertThat(cache.get(schema, path("userName"))).isNotSameAs(cache.get(schema, path("userName")));
+    assertThat(cache.size()).isZero();
+    assertThatIllegalArgumentException().isThrownBy(() -> new PatchPathCache(-1));
+  }
+
+  private static ValuePathExpression path(String path) throws Exception {
+    return PatchOperationPath.fromString(path).getValuePathExpression();
+  }
+}
@@ -0,0 +1,331 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.apache.directory.scim.core.repository;
+
+import lombok.SneakyThrows;
+import org.apache.directory.scim.core.schema.SchemaRegistry;
+import org.apache.directory.scim.spec.exception.MutabilityException;
+import org.apache.directory.scim.spec.exception.UnsupportedFilterException;
+import org.apache.directory.scim.spec.extension.EnterpriseExtension;
+import org.apache.directory.scim.spec.filter.AttributeInExpression;
+import org.apache.directory.scim.spec.patch.PatchOperation;
+import org.apache.directory.scim.spec.patch.PatchOperation.Type;
+import org.apache.directory.scim.spec.patch.PatchOperationPath;
+import org.apache.directory.scim.spec.resources.Email;
+import org.apache.directory.scim.spec.resources.GroupMembership;
+import org.apache.directory.scim.spec.resources.Name;
+import org.apache.directory.scim.spec.resources.ScimGroup;
+import org.apache.directory.scim.spec.resources.ScimResource;
+import org.apache.directory.scim.spec.resources.ScimUser;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.apache.directory.scim.spec.patch.PatchOperation.Type.ADD;
+import static org.apache.directory.scim.spec.patch.PatchOperation.Type.REMOVE;
+import static org.apache.directory.scim.spec.patch.PatchOperation.Type.REPLACE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PatchPlannerTest {
+
+  private final PatchPlanner patchPlanner;
+
+  private final PatchHandler patchHandler;
+
+  public PatchPlannerTest() {
+    SchemaRegistry schemaRegistry = new SchemaRegistry();
+    schemaRegistry.addSchema(ScimUser.class, List.of(EnterpriseExtension.class));
+    schemaRegistry.addSchema(ScimGroup.class, null);
+    this.patchPlanner = new PatchPlanner(schemaRegistry);
+    this.patchHandler = new DefaultPatchHandler(schemaRegistry);
+  }
+
+  @Test
+  public void singleValuedAttribute() {
+    PatchPlan plan = patchPlanner.plan(ScimUser.class, List.of(patchOperation(REPLACE, "active", false)));
+
+    assertThat(plan.getResourceClass()).isEqualTo(ScimUser.class);
+    assertThat(plan.getSteps()).singleElement().satisfies(step -> {
+      assertThat(step.getOperation()).isEqualTo(REPLACE);
+      assertThat(step.getSchemaUrn()).isEqualTo(ScimUser.SCHEMA_URI);
+      assertThat(step.isExtension()).isFalse();
+      assertThat(step.getAttribute().getName()).isEqualTo("active");
+      assertThat(step.getSubAttribute()).isNull();
+      assertThat(step.getFilter()).isNull();
+      assertThat(step.getValue()).isEqualTo(false);
+      assertThat(step.getAttributeReference().getFullyQualifiedAttributeName()).isEqualTo(ScimUser.SCHEMA_URI + ":active");
+    });
+  }
+
+  @Test
+  public void operationsWithoutPathAreExpanded() {
+    PatchOperation operation = patchOperation(REPLACE, null, Map.of("displayName", "Test User", "name", Map.of("givenName", "Test")));
+    PatchPlan plan = patchPlanner.plan(ScimUser.class, List.of(operation));
+
+    assertThat(plan.getPatchOperations()).hasSize(2)
+      .allSatisfy(expanded -> assertThat(expanded.getPath()).isNotNull());
+    assertThat(plan.getSteps()).hasSize(2);
+    assertThat(plan.getSteps()).filteredOn(step -> step.getAttribute().getName().equals("displayName"))
+      .singleElement()
+      .extracting(PatchPlan.Step::getValue)
+      .isEqualTo("Test User");
+    assertThat(plan.getSteps()).filteredOn(step -> step.getAttribute().getName().equals("name"))
+      .singleElement()
+      .extracting(PatchPlan.Step::getValue)
+      .isEqualTo(new Name().setGivenName("Test"));
+  }
+
+  @Test
+  public void subAttributesAndFilters() {
+    PatchPlan plan = patchPlanner.plan(ScimUser.class, List.of(
+      patchOperation(REPLACE, "name.formatted", "Maverick"),
+      patchOperation(ADD, "emails[type eq \"work\"].value", "work@example.com"),
+      patchOperation(REPLACE, "emails[type eq \"home\"]", Map.of("type", "home", "value", "home@example.com"))));
+
+    PatchPlan.Step name = plan.getSteps().get(0);
+    assertThat(name.getTargetAttribute().getName()).isEqualTo("formatted");
+    assertThat(name.getAttributeReference().getFullyQualifiedAttributeName()).isEqualTo(ScimUser.SCHEMA_URI + ":name.formatted");
+    assertThat(name.getValue()).isEqualTo("Maverick");
+
+    PatchPlan.Step workEmail = plan.getSteps().get(1);
+    assertThat(workEmail.getAttribute().getName()).isEqualTo("emails");
+    assertThat(workEmail.getSubAttribute().getName()).isEqualTo("value");
+    assertThat(workEmail.getFilter().toFilter()).contains("type EQ \"work\"");
+    assertThat(workEmail.getValue()).isEqualTo("work@example.com");
+
+    PatchPlan.Step homeEmail = plan.getSteps().get(2);
+    assertThat(homeEmail.getSubAttribute()).isNull();
+    assertThat(homeEmail.getValue()).isEqualTo(new Email().setType("home").setValue("home@example.com"));
+  }
+
+  @Test
+  public void multiValuedValuesAreCollections() {
+    PatchPlan single = patchPlanner.plan(ScimGroup.class, List.of(patchOperation(ADD, "members", Map.of("value", "1"))));
+    PatchPlan multiple = patchPlanner.plan(ScimGroup.class, List.of(patchOperation(ADD, "members", List.of(Map.of("value", "2"), Map.of("value", "3")))));
+
+    assertThat(single.getSteps().get(0).getValue()).isEqualTo(List.of(member("1")));
+    assertThat(multiple.getSteps().get(0).getValue()).isEqualTo(List.of(member("2"), member("3")));
+  }
+
+  @Test
+  public void extensionAttributes() {
+    PatchPlan plan = patchPlanner.plan(ScimUser.class, List.of(patchOperation(ADD, EnterpriseExtension.URN + ":employeeNumber", "1234")));
+
+    assertThat(plan.getSteps()).singleElement().satisfies(step -> {
+      assertThat(step.isExtension()).isTrue();
+      assertThat(step.getSchemaUrn()).isEqualTo(EnterpriseExtension.URN);
+      assertThat(step.getAttribute().getName()).isEqualTo("employeeNumber");
+      assertThat(step.getValue()).isEqualTo("1234");
+    });
+  }
+
+  @Test
+  public void removeHasNoValue() {
+    PatchPlan plan = patchPlanner.plan(ScimUser.class, List.of(patchOperation(REMOVE, "emails[type eq \"work\"]", null)));
+
+    assertThat(plan.getSteps()).singleElement().satisfies(step -> {
+      assertThat(step.getOperation()).isEqualTo(REMOVE);
+      assertThat(step.getFilter()).isNotNull();
+      assertThat(step.getValue()).isNull();
+    });
+  }
+
+  @Test
+  public void azureRemoveQuirkIsPlannedAsFilter() {
+    PatchPlan plan = patchPlanner.plan(ScimGroup.class, List.of(
+      patchOperation(REMOVE, "members", List.of(Map.of("value", "1"), Map.of("value", "2")))));
+
+    assertThat(plan.getSteps()).singleElement().satisfies(step -> {
+      assertThat(step.getFilter()).isInstanceOf(AttributeInExpression.class);
+      assertThat(((AttributeInExpression) step.getFilter()).getCompareValues()).isEqualTo(Set.of("1", "2"));
+      assertThat(((AttributeInExpression) step.getFilter()).getAttributePath().getSubAttributeName()).isEqualTo("value");
+      assertThat(step.getValue()).isNull();
+    });
+  }
+
+  @Test
+  public void immutableAttributesAreFlagged() {
+    PatchPlan plan = patchPlanner.plan(ScimGroup.class, List.of(
+      patchOperation(REPLACE, "displayName", "Test Group"),
+      patchOperation(REPLACE, "members[value eq \"1\"].value", "2")));
+
+    assertThat(plan.getSteps().get(0).isImmutable()).isFalse();
+    assertThat(plan.getSteps().get(1).isImmutable()).isTrue();
+  }
+
+  @Test
+  public void invalidOperationsAreRejected() {
+    assertThatThrownBy(() -> patchPlanner.plan(ScimUser.class, null))
+      .isInstanceOf(UnsupportedFilterException.class);
+    assertThatThrownBy(() -> patchPlanner.plan(ScimUser.class, List.of(patchOperation(REPLACE, null, "value"))))
+      .isInstanceOf(UnsupportedFilterException.class);
+    assertThatThrownBy(() -> patchPlanner.plan(ScimUser.class, List.of(patchOperation(REPLACE, "unknown", "value"))))
+      .isInstanceOf(UnsupportedFilterException.class);
+    assertThatThrownBy(() -> patchPlanner.plan(ScimUser.class, List.of(patchOperation(REPLACE, "name.unknown", "value"))))
+      .isInstanceOf(UnsupportedFilterException.class);
+    assertThatThrownBy(() -> patchPlanner.plan(ScimUser.class, List.of(patchOperation(ADD, "emails[type eq \"work\"]", Map.of("value", "a@example.com")))))
+      .isInstanceOf(UnsupportedFilterException.class);
+    assertThatThrownBy(() -> patchPlanner.plan(ScimUser.class, List.of(patchOperation(REPLACE, "active", Map.of("not", "a boolean")))))
+      .isInstanceOf(UnsupportedFilterException.class);
+  }
+
+  @Test
+  public void readOnlyAttributesAreRejected() {
+    assertThatThrownBy(() -> patchPlanner.plan(ScimUser.class, List.of(patchOperation(REPLACE, "id", "1234"))))
+      .isInstanceOf(MutabilityException.class);
+    assertThatThrownBy(() -> patchPlanner.plan(ScimUser.class, List.of(patchOperation(REPLACE, EnterpriseExtension.URN + ":manager.displayName", "Boss"))))
+      .isInstanceOf(MutabilityException.class);
+  }
+
+  @Test
+  public void replaceAfterReplaceIsCollapsed() {
+    List<PatchOperation> operations = List.of(
+      patchOperation(REPLACE, null, Map.of("active", true, "displayName", "First")),
+      patchOperation(REPLACE, "name.givenName", "First"),
+      patchOperation(ADD, "active", false),
+      patchOperation(REPLACE, "displayName", "Second"),
+      patchOperation(REPLACE, "name.givenName", "Second"),
+      patchOperation(ADD, EnterpriseExtension.URN + ":department", "First"),
+      patchOperation(REPLACE, EnterpriseExtension.URN + ":department", "Second"));
+    PatchPlan plan = patchPlanner.plan(ScimUser.class, operations);
+
+    assertThat(plan.getSteps()).extracting(step -> step.getAttributeReference().getFullyQualifiedAttributeName())
+      .containsExactly(
+        ScimUser.SCHEMA_URI + ":active",
+        ScimUser.SCHEMA_URI + ":displayName",
+        ScimUser.SCHEMA_URI + ":name.givenName",
+        EnterpriseExtension.URN + ":department");
+    assertThat(plan.getSteps()).extracting(PatchPlan.Step::getValue).containsExactly(false, "Second", "Second", "Second");
+    assertThat(plan.getEliminatedOperations()).isEqualTo(4);
+    assertThat(patchPlanner.getEliminatedOperationCount()).isEqualTo(4);
+    assertSameResult(user(), operations, plan);
+  }
+
+  @Test
+  public void addsToMultiValuedAttributeAreMerged() {
+    List<PatchOperation> operations = List.of(
+      patchOperation(ADD, "members", Map.of("value", "1")),
+      patchOperation(REPLACE, "displayName", "Test Group"),
+      patchOperation(ADD, "members", List.of(Map.of("value", "2"), Map.of("value", "1"))),
+      patchOperation(ADD, "members", List.of(Map.of("value", "3"))));
+    PatchPlan plan = patchPlanner.plan(ScimGroup.class, operations);
+
+    assertThat(plan.getSteps()).hasSize(2);
+    assertThat(plan.getSteps().get(0).getValue()).isEqualTo(List.of(member("1"), member("2"), member("1"), member("3")));
+    assertThat(plan.getPatchOperations().get(0).getValue())
+      .isEqualTo(List.of(Map.of("value", "1"), Map.of("value", "2"), Map.of("value", "1"), Map.of("value", "3")));
+    assertThat(plan.getEliminatedOperations()).isEqualTo(2);
+    assertSameResult(group(), operations, plan);
+  }
+
+  @Test
+  public void addThenRemoveOfTheSameValueIsCancelled() {
+    List<PatchOperation> operations = List.of(
+      patchOperation(ADD, "members", List.of(Map.of("value", "1"), Map.of("value", "2"), Map.of("value", "3"))),
+      patchOperation(REMOVE, "members", List.of(Map.of("value", "1"), Map.of("value", "4"))),
+      patchOperation(REMOVE, "members[value eq \"3\"]", null));
+    PatchPlan plan = patchPlanner.plan(ScimGroup.class, operations);
+
+    // the removes are kept, the values may have been there before
+    assertThat(plan.getSteps()).extracting(PatchPlan.Step::getOperation).containsExactly(ADD, REMOVE, REMOVE);
+    assertThat(plan.getSteps().get(0).getValue()).isEqualTo(List.of(member("2")));
+    assertThat(plan.getEliminatedOperations()).isZero();
+    assertSameResult(group("1", "4", "5"), operations, plan);
+
+    List<PatchOperation> cancelled = List.of(
+      patchOperation(ADD, "members", Map.of("value", "1")),
+      patchOperation(REMOVE, "members[value eq \"1\"]", null));
+    PatchPlan cancelledPlan = patchPlanner.plan(ScimGroup.class, cancelled);
+
+    assertThat(cancelledPlan.getSteps()).extracting(PatchPlan.Step::getOperation).containsExactly(REMOVE);
+    assertThat(cancelledPlan.getEliminatedOperations()).isEqualTo(1);
+    assertSameResult(group("1", "2"), cancelled, cancelledPlan);
+  }
+
+  @Test
+  public void replaceOfAllValuesDropsPreviousChanges() {
+    List<PatchOperation> operations = List.of(
+      patchOperation(ADD, "members", Map.of("value", "1")),
+      patchOperation(REPLACE, "members", List.of(Map.of("value", "2"))));
+    PatchPlan plan = patchPlanner.plan(ScimGroup.class, operations);
+
+    assertThat(plan.getSteps()).singleElement().extracting(PatchPlan.Step::getOperation).isEqualTo(REPLACE);
+    assertSameResult(group(), operations, plan);
+  }
+
+  @Test
+  public void operationsThatDependOnTheResourceAreKept() {
+    PatchPlan plan = patchPlanner.plan(ScimUser.class, List.of(
+      // complex attributes are merged with the sub-attributes in the value
+      patchOperation(REPLACE, "name", Map.of("givenName", "First")),
+      patchOperation(REPLACE, "name", Map.of("familyName", "Last")),
+      // filters may select different items once the first replace is applied
+      patchOperation(REPLACE, "emails[type eq \"work\"].value", "first@example.com"),
+      patchOperation(REPLACE, "emails[type eq \"work\"].value", "second@example.com"),
+      // the extension is left behind when removing the value
+      patchOperation(ADD, EnterpriseExtension.URN + ":department", "Sales"),
+      patchOperation(REMOVE, EnterpriseExtension.URN + ":department", null)));
+
+    assertThat(plan.getSteps()).hasSize(6);
+    assertThat(plan.getEliminatedOperations()).isZero();
+
+    PatchPlan immutable = patchPlanner.plan(ScimGroup.class, List.of(
+      patchOperation(REPLACE, "members[value eq \"1\"].value", "2"),
+      patchOperation(REPLACE, "members[value eq \"1\"].value", "3")));
+    assertThat(immutable.getSteps()).hasSize(2);
+  }
+
+  private void assertSameResult(ScimResource resource, List<PatchOperation> operations, PatchPlan plan) {
+    assertThat(patchHandler.apply(resource, plan.getPatchOperations()))
+      .isEqualTo(patchHandler.apply(resource, operations));
+  }
+
+  private static ScimUser user() {
+    return new ScimUser()
+      .setUserName("testUser@test.com")
+      .setDisplayName("Test User")
+      .setName(new Name().setFormatted("Berry"));
+  }
+
+  private static ScimGroup group(String... memberIds) {
+    return new ScimGroup()
+      .setDisplayName("Group")
+      .setMembers(Arrays.stream(memberIds).map(PatchPlannerTest::member).collect(Collectors.toList()));
+  }
+
+  private static GroupMembership member(String id) {
+    return new GroupMembership().setValue(id);
+  }
+
+  @SneakyThrows
+  private static PatchOperation patchOperation(Type operationType, String path, Object value) {
+    PatchOperation operation = new PatchOperation();
+    operation.setOperation(operationType);
+    operation.setPath(path != null ? PatchOperationPath.fromString(path) : null);
+    operation.setValue(value);
+    return operation;
+  }
+}
@@ -0,0 +1,100 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.core.repository;
+
+import org.apache.directory.scim.spec.filter.PageRequest;
+import org.apache.directory.scim.spec.filter.SortOrder;
+import org.apache.directory.scim.spec.filter.SortRequest;
+import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
+import org.apache.directory.scim.spec.resources.ScimUser;
+import org.apache.directory.scim.spec.schema.Schemas;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares selecting the top 100 of 1M resources with the {@link SortEngine}'s bounded heap, and with a full sort.
+ * <p>
+ * Run from the module directory after {@code mvn test-compile} with:
+ * <pre>
+ * java -Xmx2g -cp target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout) \
+ *   org.openjdk.jmh.Main SortEngineBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SortEngineBenchmark {
+
+  private static final int SIZE = 1_000_000;
+
+  private List<ScimUser> users;
+
+  private SortEngine<ScimUser> sortEngine;
+
+  private PageRequest firstPage;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(42);
+    users = new ArrayList<>(SIZE);
+    for (int i = 0; i < SIZE; i++) {
+      ScimUser user = new ScimUser().setUserName("user-" + random.nextInt(SIZE));
+      user.setId(String.valueOf(i));
+      users.add(user);
+    }
+
+    SortRequest sortRequest = new SortRequest();
+    sortRequest.setSortBy(new AttributeReference("userName"));
+    sortRequest.setSortOrder(SortOrder.ASCENDING);
+    sortEngine = SortEngine.of(sortRequest, Schemas.schemaFor(ScimUser.class));
+
+    firstPage = new PageRequest();
+    firstPage.setStartIndex(1);
+    firstPage.setCount(100);
+  }
+
+  @Benchmark
+  public List<ScimUser> heapTop100() {
+    return sortEngine.page(users, firstPage);
+  }
+
+  @Benchmark
+  public List<ScimUser> fullSortTop100() {
+    List<ScimUser> sorted = new ArrayList<>(users);
+    sorted.sort(sortEngine.comparator());
+    return new ArrayList<>(sorted.subList(0, 100));
+  }
+}
@@ -0,0 +1,349 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.core.repository;
+
+import org.apache.directory.scim.core.schema.SchemaRegistry;
+import org.apache.directory.scim.spec.exception.InvalidCursorException;
+import org.apache.directory.scim.spec.extension.EnterpriseExtension;
+import org.apache.directory.scim.spec.filter.Filter;
+import org.apache.directory.scim.spec.filter.FilterResponse;
+import org.apache.directory.scim.spec.filter.PageRequest;
+import org.apache.directory.scim.spec.filter.SortOrder;
+import org.apache.directory.scim.spec.filter.SortRequest;
+import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
+import org.apache.directory.scim.spec.resources.Email;
+import org.apache.directory.scim.spec.resources.Name;
+import org.apache.directory.scim.spec.resources.ScimGroup;
+import org.apache.directory.scim.spec.resources.ScimResource;
+import org.apache.directory.scim.spec.resources.ScimUser;
+import org.apache.directory.scim.spec.schema.Schema;
+import org.apache.directory.scim.spec.schema.Schemas;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SortEngineTest {
+
+  private final Schema schema = Schemas.schemaFor(ScimUser.class);
+
+  @Test
+  public void caseInsensitiveStringsIgnoreCase() {
+    List<ScimUser> users = List.of(user("1").setUserName("b"), user("2").setUserName("A"), user("3").setUserName("c"));
+
+    assertThat(sort(users, "userName", SortOrder.ASCENDING)).extracting(ScimUser::getUserName).containsExactly("A", "b", "c");
+  }
+
+  @Test
+  public void caseExactStringsUseCase() {
+    List<ScimUser> users = List.of(user("1").setExternalId("b"), user("2").setExternalId("A"), user("3").setExternalId("C"));
+
+    assertThat(sort(users, "externalId", SortOrder.ASCENDING)).extracting(ScimUser::getExternalId).containsExactly("A", "C", "b");
+  }
+
+  @Test
+  public void missingValuesAreLast() {
+    List<ScimUser> users = List.of(user("1").setTitle(null), user("2").setTitle("a"), user("3").setTitle("b"));
+
+    assertThat(sort(users, "title", SortOrder.ASCENDING)).extracting(ScimUser::getId).containsExactly("2", "3", "1");
+    assertThat(sort(users, "title", SortOrder.DESCENDING)).extracting(ScimUser::getId).containsExactly("3", "2", "1");
+  }
+
+  @Test
+  public void defaultOrderIsAscending() {
+    List<ScimUser> users = List.of(user("1").setTitle("b"), user("2").setTitle("a"));
+
+    assertThat(sort(users, "title", null)).extracting(ScimUser::getId).containsExactly("2", "1");
+  }
+
+  @Test
+  public void subAttributesAreSorted() {
+    List<ScimUser> users = List.of(
+      user("1").setName(new Name().setFamilyName("Young")),
+      user("2").setName(new Name().setFamilyName("jensen")),
+      user("3"));
+
+    assertThat(sort(users, "name.familyName", SortOrder.ASCENDING)).extracting(ScimUser::getId).containsExactly("2", "1", "3");
+  }
+
+  @Test
+  public void multiValuedAttributesUsePrimaryValue() {
+    List<ScimUser> users = List.of(
+      user("1").setEmails(List.of(email("a@example.com", false), email("z@example.com", true))),
+      user("2").setEmails(List.of(email("m@example.com", false), email("b@example.com", false))),
+      user("3").setEmails(List.of()));
+
+    assertThat(sort(users, "emails.value", SortOrder.ASCENDING)).extracting(ScimUser::getId).containsExactly("2", "1", "3");
+    // a complex attribute is sorted by its value sub-attribute
+    assertThat(sort(users, "emails", SortOrder.DESCENDING)).extracting(ScimUser::getId).containsExactly("1", "2", "3");
+  }
+
+  @Test
+  public void thenByIdOrdersTiesById() {
+    List<ScimUser> users = List.of(user("3").setTitle("a"), user("1").setTitle("b"), user("2").setTitle("a"), user("0"));
+    SortEngine<ScimUser> byTitle = SortEngine.<ScimUser>of(sortRequest("title", SortOrder.ASCENDING), Schemas.schemaFor(ScimUser.class)).thenById();
+    SortEngine<ScimUser> unsorted = SortEngine.<ScimUser>of(null, Schemas.schemaFor(ScimUser.class)).thenById();
+
+    assertThat(byTitle.page(users, null)).extracting(ScimUser::getId).containsExactly("2", "3", "1", "0");
+    assertThat(byTitle.page(users, page(1, 1))).extracting(ScimUser::getId).containsExactly("2");
+    assertThat(unsorted.page(users, null)).extracting(ScimUser::getId).containsExactly("0", "1", "2", "3");
+  }
+
+  @Test
+  public void booleansAndNumbersUseTheirType() {
+    List<ScimUser> users = List.of(user("1").setActive(true), user("2").setActive(false), user("3"));
+
+    assertThat(sort(users, "active", SortOrder.ASCENDING)).extracting(ScimUser::getId).containsExactly("2", "1", "3");
+  }
+
+  @Test
+  public void extensionAttributesAreSorted() {
+    SchemaRegistry schemaRegistry = new SchemaRegistry();
+    schemaRegistry.addSchema(ScimUser.class, List.of(EnterpriseExtension.class));
+    List<ScimUser> users = List.of(
+      user("1").addExtension(new EnterpriseExtension().setEmployeeNumber("20")),
+      user("2"),
+      user("3").addExtension(new EnterpriseExtension().setEmployeeNumber("10")));
+    SortRequest sortRequest = sortRequest(EnterpriseExtension.URN + ":employeeNumber", SortOrder.ASCENDING);
+
+    List<ScimUser> sorted = new ArrayList<>(users);
+    sorted.sort(SortEngine.<ScimUser>of(sortRequest, schema, schemaRegistry).comparator());
+    assertThat(sorted).extracting(ScimUser::getId).containsExactly("3", "1", "2");
+  }
+
+  @Test
+  public void unknownAttributesKeepOrder() {
+    List<ScimUser> users = List.of(user("2"), user("1"));
+
+    SortEngine<ScimUser> sortEngine = SortEngine.of(sortRequest("unknown", SortOrder.ASCENDING), schema);
+    assertThat(sortEngine.isSorted()).isFalse();
+    assertThat(sortEngine.page(users, null)).extracting(ScimUser::getId).containsExactly("2", "1");
+    assertThat(SortEngine.<ScimUser>of(null, schema).page(users, page(2, 5))).extracting(ScimUser::getId).containsExactly("1");
+  }
+
+  @Test
+  public void heapPagesMatchFullSort() {
+    Random random = new Random(7);
+    List<ScimUser> users = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      users.add(user(String.valueOf(i)).setTitle(random.nextInt(10) == 0 ? null : "Title-" + random.nextInt(100)));
+    }
+    for (SortOrder sortOrder : SortOrder.values()) {
+      SortEngine<ScimUser> sortEngine = SortEngine.of(sortRequest("title", sortOrder), schema);
+      List<ScimUser> all = sortEngine.page(users, null);
+
+      for (int startIndex : List.of(1, 17, 190, 995)) {
+        // small pages are selected with a heap, the rest with a full sort
+        assertThat(sortEngine.page(users, page(startIndex, 10)))
+          .containsExactlyElementsOf(all.subList(startIndex - 1, Math.min(startIndex + 9, all.size())));
+      }
+    }
+  }
+
+  @Test
+  public void equalValuesKeepOrder() {
+    List<ScimUser> users = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      users.add(user(String.valueOf(i)).setTitle("same"));
+    }
+    List<String> ids = users.stream().map(ScimUser::getId).collect(Collectors.toList());
+
+    assertThat(SortEngine.<ScimUser>of(sortRequest("title", SortOrder.DESCENDING), schema).page(users, page(1, 5)))
+      .extracting(ScimUser::getId).containsExactlyElementsOf(ids.subList(0, 5));
+  }
+
+  @Test
+  public void findFiltersBeforePaging() throws Exception {
+    List<ScimUser> users = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      users.add(user(String.valueOf(i)).setUserName("user-" + i).setActive(i % 2 == 0));
+    }
+    Collections.reverse(users);
+
+    FilterResponse<ScimUser> response = SortEngine.find(users, new Filter("active eq true"), page(2, 3),
+      sortRequest("userName", SortOrder.ASCENDING), schema);
+
+    assertThat(response.getTotalResults()).isEqualTo(10);
+    assertThat(response.getResources()).extracting(ScimUser::getUserName).containsExactly("user-10", "user-12", "user-14");
+  }
+
+  @Test
+  public void cursorPagesWalkAllResources() throws Exception {
+    Random random = new Random(11);
+    List<ScimUser> users = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      users.add(user(String.valueOf(i)).setTitle(random.nextInt(10) == 0 ? null : "Title-" + random.nextInt(30)));
+    }
+    for (SortOrder sortOrder : SortOrder.values()) {
+      SortEngine<ScimUser> sortEngine = SortEngine.of(sortRequest("title", sortOrder), schema);
+      List<ScimUser> walked = new ArrayList<>();
+      String cursor = "";
+      while (cursor != null) {
+        FilterResponse<ScimUser> response = sortEngine.cursorPage(users, cursor(cursor, 9), CursorCodec.base64());
+        assertThat(response.getTotalResults()).isEqualTo(200);
+        walked.addAll(response.getResources());
+        cursor = response.getNextCursor();
+      }
+
+      assertThat(walked).hasSize(200).doesNotHaveDuplicates();
+      List<String> titles = walked.stream().map(ScimUser::getTitle).collect(Collectors.toList());
+      assertThat(titles).containsExactlyElementsOf(sort(users, "title", sortOrder).stream().map(ScimUser::getTitle).collect(Collectors.toList()));
+    }
+  }
+
+  @Test
+  public void unsortedCursorPagesAreOrderedById() throws Exception {
+    List<ScimUser> users = List.of(user("c"), user("a"), user("d"), user("b"));
+
+    FilterResponse<ScimUser> first = SortEngine.find(users, null, cursor("", 2), null, schema);
+    assertThat(first.getResources()).extracting(ScimUser::getId).containsExactly("a", "b");
+
+    FilterResponse<ScimUser> second = SortEngine.find(users, null, cursor(first.getNextCursor(), 2), null, schema);
+    assertThat(second.getResources()).extracting(ScimUser::getId).containsExactly("c", "d");
+    assertThat(second.getNextCursor()).isNull();
+  }
+
+  @Test
+  public void cursorsOfAnotherSortAreRejected() throws Exception {
+    List<ScimUser> users = List.of(user("1").setUserName("a"), user("2").setUserName("b"), user("3").setUserName("c"));
+
+    String cursor = SortEngine.find(users, null, cursor("", 1), sortRequest("userName", SortOrder.ASCENDING), schema).getNextCursor();
+
+    assertThatThrownBy(() -> SortEngine.find(users, null, cursor(cursor, 1), sortRequest("userName", SortOrder.DESCENDING), schema))
+      .isInstanceOf(InvalidCursorException.class);
+    assertThatThrownBy(() -> SortEngine.find(users, null, cursor(cursor, 1), null, schema))
+      .isInstanceOf(InvalidCursorException.class);
+    assertThat(SortEngine.find(users, null, cursor(cursor, 1), sortRequest("userName", SortOrder.ASCENDING), schema).getResources())
+      .extracting(ScimUser::getUserName).containsExactly("b");
+  }
+
+  @Test
+  public void mergedPagesMatchSortingAll() {
+    Random random = new Random(13);
+    List<ScimResource> users = new ArrayList<>();
+    List<ScimResource> groups = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      ScimUser user = user("user-" + i);
+      user.setExternalId(random.nextInt(10) == 0 ? null : "external-" + random.nextInt(50));
+      users.add(user);
+      ScimGroup group = new ScimGroup();
+      group.setId("group-" + i);
+      group.setExternalId("external-" + random.nextInt(50));
+      groups.add(group);
+    }
+    Schema groupSchema = Schemas.schemaFor(ScimGroup.class);
+
+    for (SortOrder sortOrder : SortOrder.values()) {
+      SortEngine<ScimResource> userOrder = SortEngine.of(sortRequest("externalId", sortOrder), schema);
+      SortEngine<ScimResource> groupOrder = SortEngine.of(sortRequest("externalId", sortOrder), groupSchema);
+      List<ScimResource> all = new ArrayList<>(users);
+      all.addAll(groups);
+      List<String> expected = userOrder.page(all, null).stream().map(ScimResource::getExternalId).collect(Collectors.toList());
+
+      List<ScimResource> merged = SortEngine.merge(List.of(userOrder, groupOrder),
+        List.of(userOrder.page(users, null), groupOrder.page(groups, null)), page(21, 150));
+
+      assertThat(merged).extracting(ScimResource::getExternalId).containsExactlyElementsOf(expected.subList(20, 170));
+    }
+  }
+
+  @Test
+  public void mergedPagesWithoutSortByValueAreLast() {
+    List<ScimResource> users = List.of(user("b").setUserName("b"), user("a").setUserName("a"));
+    ScimGroup group = new ScimGroup();
+    group.setId("group");
+
+    for (SortOrder sortOrder : SortOrder.values()) {
+      SortEngine<ScimResource> userOrder = SortEngine.of(sortRequest("userName", sortOrder), schema);
+      SortEngine<ScimResource> groupOrder = SortEngine.of(sortRequest("userName", sortOrder), Schemas.schemaFor(ScimGroup.class));
+
+      List<ScimResource> merged = SortEngine.merge(List.of(groupOrder, userOrder),
+        List.of(List.of(group), userOrder.page(users, null)), null);
+
+      assertThat(merged).extracting(ScimResource::getId)
+        .containsExactly(sortOrder == SortOrder.ASCENDING ? "a" : "b", sortOrder == SortOrder.ASCENDING ? "b" : "a", "group");
+    }
+  }
+
+  @Test
+  public void mergedPagesOrderedDifferentlyAreLast() {
+    List<ScimResource> users = List.of(user("b").setUserName("b").setExternalId("B"), user("a").setUserName("A").setExternalId("a"));
+    List<ScimResource> others = List.of(user("y").setUserName("Y").setExternalId("y").setActive(true),
+      user("x").setUserName("x").setExternalId("X").setActive(false));
+
+    for (String sortBy : List.of("externalId", "active")) {
+      SortEngine<ScimResource> userOrder = SortEngine.of(sortRequest("userName", SortOrder.ASCENDING), schema);
+      SortEngine<ScimResource> otherOrder = SortEngine.of(sortRequest(sortBy, SortOrder.ASCENDING), schema);
+      SortEngine<ScimResource> descendingOrder = SortEngine.of(sortRequest("userName", SortOrder.DESCENDING), schema);
+
+      List<ScimResource> merged = SortEngine.merge(List.of(userOrder, otherOrder, descendingOrder),
+        List.of(userOrder.page(users, null), otherOrder.page(others, null), descendingOrder.page(others, null)), null);
+
+      assertThat(merged).extracting(ScimResource::getId)
+        .containsExactlyElementsOf(Stream.of(userOrder.page(users, null), otherOrder.page(others, null), descendingOrder.page(others, null))
+          .flatMap(List::stream).map(ScimResource::getId).collect(Collectors.toList()));
+    }
+  }
+
+  private List<ScimUser> sort(List<ScimUser> users, String sortBy, SortOrder sortOrder) {
+    return SortEngine.<ScimUser>of(sortRequest(sortBy, sortOrder), schema).page(users, null);
+  }
+
+  private static SortRequest sortRequest(String sortBy, SortOrder sortOrder) {
+    SortRequest sortRequest = new SortRequest();
+    sortRequest.setSortBy(new AttributeReference(sortBy));
+    sortRequest.setSortOrder(sortOrder);
+    return sortRequest;
+  }
+
+  private static PageRequest page(int startIndex, int count) {
+    PageRequest pageRequest = new PageRequest();
+    pageRequest.setStartIndex(startIndex);
+    pageRequest.setCount(count);
+    return pageRequest;
+  }
+
+  private static PageRequest cursor(String cursor, int count) {
+    PageRequest pageRequest = new PageRequest();
+    pageRequest.setCursor(cursor);
+    pageRequest.setCount(count);
+    return pageRequest;
+  }
+
+  private static ScimUser user(String id) {
+    ScimUser user = new ScimUser();
+    user.setId(id);
+    return user;
+  }
+
+  private static Email email(String value, boolean primary) {
+    Email email = new Email();
+    email.setValue(value);
+    email.setPrimary(primary);
+    return email;
+  }
+}
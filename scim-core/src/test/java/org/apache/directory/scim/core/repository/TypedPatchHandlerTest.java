@@ -0,0 +1,135 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.core.repository;
+
+import lombok.SneakyThrows;
+import org.apache.directory.scim.core.schema.SchemaRegistry;
+import org.apache.directory.scim.spec.exception.MutabilityException;
+import org.apache.directory.scim.spec.exception.UnsupportedFilterException;
+import org.apache.directory.scim.spec.extension.EnterpriseExtension;
+import org.apache.directory.scim.spec.patch.PatchOperation;
+import org.apache.directory.scim.spec.patch.PatchOperationPath;
+import org.apache.directory.scim.spec.resources.Email;
+import org.apache.directory.scim.spec.resources.GroupMembership;
+import org.apache.directory.scim.spec.resources.Name;
+import org.apache.directory.scim.spec.resources.ScimGroup;
+import org.apache.directory.scim.spec.resources.ScimUser;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.apache.directory.scim.spec.patch.PatchOperation.Type.ADD;
+import static org.apache.directory.scim.spec.patch.PatchOperation.Type.REMOVE;
+import static org.apache.directory.scim.spec.patch.PatchOperation.Type.REPLACE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Runs the {@link PatchHandlerTest} cases against the {@link TypedPatchHandler}, and checks that patches do not change
+ * the original resource.
+ */
+public class TypedPatchHandlerTest extends PatchHandlerTest {
+
+  @Override
+  protected PatchHandler createPatchHandler(SchemaRegistry schemaRegistry) {
+    return new TypedPatchHandler(schemaRegistry);
+  }
+
+  @Test
+  public void originalIsNotModified() {
+    ScimUser original = new ScimUser()
+      .setUserName("jdoe")
+      .setName(new Name().setGivenName("John"))
+      .setEmails(List.of(
+        new Email().setType("work").setValue("work@example.com").setPrimary(true),
+        new Email().setType("home").setValue("home@example.com").setPrimary(false)));
+
+    ScimUser updated = patchHandler.apply(original, List.of(
+      patchOperation(REPLACE, "name.givenName", "Jon"),
+      patchOperation(REPLACE, "emails[type eq \"home\"].primary", true),
+      patchOperation(ADD, EnterpriseExtension.URN + ":employeeNumber", "42")));
+
+    assertThat(updated.getName().getGivenName()).isEqualTo("Jon");
+    assertThat(updated.getEmails()).extracting(Email::getPrimary).containsExactly(false, true);
+    assertThat(updated.getSchemas()).contains(EnterpriseExtension.URN);
+
+    assertThat(original.getName().getGivenName()).isEqualTo("John");
+    assertThat(original.getEmails()).extracting(Email::getPrimary).containsExactly(true, false);
+    assertThat(original.getSchemas()).doesNotContain(EnterpriseExtension.URN);
+    assertThat(original.getExtensions()).isEmpty();
+  }
+
+  @Test
+  public void untouchedItemsAreShared() {
+    List<GroupMembership> members = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      members.add(new GroupMembership().setValue("user-" + i).setType(GroupMembership.Type.USER));
+    }
+    ScimGroup group = new ScimGroup().setDisplayName("Large Group").setMembers(members);
+
+    ScimGroup updated = patchHandler.apply(group, List.of(
+      patchOperation(REMOVE, "members[value eq \"user-10\"]", null),
+      patchOperation(ADD, "members", List.of(Map.of("value", "user-1000", "type", "User")))));
+
+    assertThat(updated.getMembers()).hasSize(1000);
+    assertThat(updated.getMembers().get(0)).isSameAs(members.get(0));
+    assertThat(updated.getMembers()).extracting(GroupMembership::getValue).doesNotContain("user-10").contains("user-1000");
+    assertThat(updated.getMembers().get(999).getType()).isEqualTo(GroupMembership.Type.USER);
+    assertThat(group.getMembers()).hasSize(1000);
+  }
+
+  @Test
+  public void readOnlyAttributesCannotBeChanged() {
+    ScimUser user = new ScimUser().setUserName("jdoe");
+    user.setId("1234");
+
+    assertThatThrownBy(() -> patchHandler.apply(user, List.of(patchOperation(REPLACE, "id", "5678"))))
+      .isInstanceOf(MutabilityException.class);
+    assertThatThrownBy(() -> patchHandler.apply(user, List.of(patchOperation(REPLACE, EnterpriseExtension.URN + ":manager.displayName", "Boss"))))
+      .isInstanceOf(MutabilityException.class);
+  }
+
+  @Test
+  public void unknownAttributesAreRejected() {
+    assertThatThrownBy(() -> patchHandler.apply(new ScimUser(), List.of(patchOperation(REPLACE, "name.unknown", "value"))))
+      .isInstanceOf(UnsupportedFilterException.class);
+  }
+
+  @Test
+  public void removeFromMissingExtensionIsIgnored() {
+    ScimUser user = new ScimUser().setUserName("jdoe");
+
+    ScimUser updated = patchHandler.apply(user, List.of(patchOperation(REMOVE, EnterpriseExtension.URN + ":employeeNumber", null)));
+
+    assertThat(updated.getExtensions()).isEmpty();
+    assertThat(updated.getUserName()).isEqualTo("jdoe");
+  }
+
+  @SneakyThrows
+  private static PatchOperation patchOperation(PatchOperation.Type operationType, String path, Object value) {
+    PatchOperation op = new PatchOperation();
+    op.setOperation(operationType);
+    op.setPath(PatchOperationPath.fromString(path));
+    op.setValue(value);
+    return op;
+  }
+}
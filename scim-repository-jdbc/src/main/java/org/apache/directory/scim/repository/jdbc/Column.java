@@ -0,0 +1,230 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.repository.jdbc;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.directory.scim.spec.filter.FilterExpressions;
+import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
+import org.apache.directory.scim.spec.schema.Schema;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+
+/**
+ * A single-valued attribute of a resource, copied into a column of the resource table.
+ * <p>
+ * Values are stored as they are read from the resource, so the database compares them the same way the in-memory
+ * filter predicate does: strings of case-insensitive attributes are compared case-insensitively for equality only, on
+ * a second column holding their {@linkplain FilterExpressions#foldCase(String) folded} values, which also carries the
+ * unique constraint of the attribute. Numbers are widened to {@code BIGINT} and {@code DOUBLE PRECISION}, and dates are stored as {@code TIMESTAMP}s.
+ */
+@Slf4j
+final class Column {
+
+  private final String attributePath;
+
+  private final String name;
+
+  private final Schema.Attribute parentAttribute;
+
+  private final Schema.Attribute attribute;
+
+  private Column(String attributePath, String name, Schema.Attribute parentAttribute, Schema.Attribute attribute) {
+    this.attributePath = attributePath;
+    this.name = name;
+    this.parentAttribute = parentAttribute;
+    this.attribute = attribute;
+  }
+
+  /**
+   * Resolves {@code attributePath} in {@code schema}.
+   *
+   * @param name the name of the column, null if the attribute is only read from resources.
+   * @throws IllegalArgumentException if the attribute does not exist or can't be stored in a column.
+   */
+  static Column of(Schema schema, String attributePath, String name) {
+    AttributeReference attributeReference = new AttributeReference(attributePath);
+    Schema.Attribute parentAttribute = null;
+    Schema.Attribute attribute = schema.getAttribute(attributeReference.getAttributeName());
+    if (attribute != null && attributeReference.hasSubAttribute()) {
+      parentAttribute = attribute;
+      attribute = attribute.getAttribute(attributeReference.getSubAttributeName());
+    }
+    if (attribute == null || attribute.isMultiValued() || (parentAttribute != null && parentAttribute.isMultiValued())
+      || attribute.getType() == Schema.Attribute.Type.COMPLEX || attribute.getType() == Schema.Attribute.Type.BINARY) {
+      throw new IllegalArgumentException("Attribute '" + attributePath + "' can not be mapped to a column in schema " + schema.getId());
+    }
+    return new Column(attributeReference.getFullAttributeName(), name, parentAttribute, attribute);
+  }
+
+  String getAttributePath() {
+    return attributePath;
+  }
+
+  String getName() {
+    return name;
+  }
+
+  /**
+   * The name of the column holding the folded values of a case-insensitive column, {@code <name>_folded}, or null if
+   * the column is case-exact.
+   */
+  String getFoldedName() {
+    return isIgnoreCase() ? name + "_folded" : null;
+  }
+
+  Schema.Attribute getAttribute() {
+    return attribute;
+  }
+
+  boolean isUnique() {
+    Schema.Attribute.Uniqueness uniqueness = attribute.getUniqueness();
+    return uniqueness != null && uniqueness != Schema.Attribute.Uniqueness.NONE;
+  }
+
+  /**
+   * Whether the filter compares the values of this column as strings, {@code co}, {@code sw} and {@code ew} only
+   * apply to them.
+   */
+  boolean isString() {
+    return attribute.getType() == Schema.Attribute.Type.STRING;
+  }
+
+  /**
+   * Whether {@code eq} and {@code ne} ignore the case of this column's values.
+   */
+  boolean isIgnoreCase() {
+    return isString() && !attribute.isCaseExact();
+  }
+
+  String sqlType() {
+    switch (attribute.getType()) {
+      case BOOLEAN:
+        return "BOOLEAN";
+      case INTEGER:
+        return "BIGINT";
+      case DECIMAL:
+        return "DOUBLE PRECISION";
+      case DATE_TIME:
+        return "TIMESTAMP";
+      case REFERENCE:
+        return "VARCHAR(2048)";
+      default:
+        return "VARCHAR(1024)";
+    }
+  }
+
+  /**
+   * The {@link Types JDBC type} of this column, used to bind nulls.
+   */
+  int jdbcType() {
+    switch (attribute.getType()) {
+      case BOOLEAN:
+        return Types.BOOLEAN;
+      case INTEGER:
+        return Types.BIGINT;
+      case DECIMAL:
+        return Types.DOUBLE;
+      case DATE_TIME:
+        return Types.TIMESTAMP;
+      default:
+        return Types.VARCHAR;
+    }
+  }
+
+  /**
+   * Reads the value of this column from a resource, or returns null if the resource has no value.
+   */
+  Object read(Object resource) {
+    Object parent = parentAttribute != null ? read(parentAttribute, resource) : resource;
+    Object value = read(attribute, parent);
+    return value != null ? parameter(value) : null;
+  }
+
+  /**
+   * Folds a value of a case-insensitive column, as stored in the {@linkplain #getFoldedName() folded column}.
+   */
+  static Object fold(Object value) {
+    return value != null ? FilterExpressions.foldCase(value.toString()) : null;
+  }
+
+  /**
+   * Converts a filter compare value (or an attribute value) to the type of this column, or returns null if it can't
+   * be converted. Comparing a column to null never matches.
+   */
+  Object parameter(Object value) {
+    switch (attribute.getType()) {
+      case BOOLEAN:
+        return value instanceof Boolean ? value : null;
+      case INTEGER:
+        return value instanceof Number ? (Object) ((Number) value).longValue() : null;
+      case DECIMAL:
+        return value instanceof Number ? (Object) ((Number) value).doubleValue() : null;
+      case DATE_TIME:
+        return timestamp(value);
+      default:
+        return value instanceof String ? value : null;
+    }
+  }
+
+  private Timestamp timestamp(Object value) {
+    if (value instanceof String) {
+      Schema.AttributeAccessor accessor = attribute.getAccessor();
+      Class<?> javaType = accessor != null ? accessor.getType() : null;
+      String text = (String) value;
+      try {
+        if (javaType == LocalDateTime.class) {
+          value = LocalDateTime.parse(text);
+        } else if (javaType == LocalDate.class) {
+          value = LocalDate.parse(text);
+        } else {
+          value = Instant.parse(text);
+        }
+      } catch (DateTimeParseException e) {
+        log.debug("Unable to convert '{}' to {}", text, javaType, e);
+        return null;
+      }
+    }
+
+    if (value instanceof LocalDateTime) {
+      return Timestamp.valueOf((LocalDateTime) value);
+    } else if (value instanceof LocalDate) {
+      return Timestamp.valueOf(((LocalDate) value).atStartOfDay());
+    } else if (value instanceof Instant) {
+      return Timestamp.from((Instant) value);
+    } else if (value instanceof Date) {
+      return new Timestamp(((Date) value).getTime());
+    }
+    return null;
+  }
+
+  private static Object read(Schema.Attribute attribute, Object object) {
+    Schema.AttributeAccessor accessor = attribute.getAccessor();
+    if (object == null || accessor == null || !accessor.isAccessible(object)) {
+      return null;
+    }
+    return accessor.get(object);
+  }
+}
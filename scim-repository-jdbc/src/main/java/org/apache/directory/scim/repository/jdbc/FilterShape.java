@@ -0,0 +1,138 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.repository.jdbc;
+
+import org.apache.directory.scim.spec.filter.AttributeComparisonExpression;
+import org.apache.directory.scim.spec.filter.AttributeInExpression;
+import org.apache.directory.scim.spec.filter.AttributePresentExpression;
+import org.apache.directory.scim.spec.filter.FilterExpression;
+import org.apache.directory.scim.spec.filter.GroupExpression;
+import org.apache.directory.scim.spec.filter.LogicalExpression;
+import org.apache.directory.scim.spec.filter.NaryLogicalExpression;
+import org.apache.directory.scim.spec.filter.ValuePathExpression;
+import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The shape of a filter expression, its structure with every non-null compare value replaced by a placeholder, and
+ * the compare values in the order {@link SqlFilterCompiler} visits them.
+ * <p>
+ * Filters of the same shape compile to the same SQL, only their parameters differ.
+ */
+final class FilterShape {
+
+  private final String key;
+
+  private final List<Object> values;
+
+  private FilterShape(String key, List<Object> values) {
+    this.key = key;
+    this.values = values;
+  }
+
+  static FilterShape of(FilterExpression expression) {
+    StringBuilder key = new StringBuilder();
+    List<Object> values = new ArrayList<>();
+    append(expression, key, values);
+    return new FilterShape(key.toString(), Collections.unmodifiableList(values));
+  }
+
+  /**
+   * Returns the number of compare values in {@code expression}.
+   */
+  static int valueCount(FilterExpression expression) {
+    return of(expression).values.size();
+  }
+
+  String getKey() {
+    return key;
+  }
+
+  List<Object> getValues() {
+    return values;
+  }
+
+  private static void append(FilterExpression expression, StringBuilder key, List<Object> values) {
+    if (expression instanceof AttributeComparisonExpression) {
+      AttributeComparisonExpression comparison = (AttributeComparisonExpression) expression;
+      appendPath(comparison.getAttributePath(), key);
+      key.append(' ').append(comparison.getOperation()).append(' ');
+      if (comparison.getCompareValue() != null) {
+        key.append('?');
+        values.add(comparison.getCompareValue());
+      } else {
+        key.append("null");
+      }
+    } else if (expression instanceof LogicalExpression) {
+      LogicalExpression logical = (LogicalExpression) expression;
+      key.append('(');
+      append(logical.getLeft(), key, values);
+      key.append(' ').append(logical.getOperator()).append(' ');
+      append(logical.getRight(), key, values);
+      key.append(')');
+    } else if (expression instanceof NaryLogicalExpression) {
+      NaryLogicalExpression logical = (NaryLogicalExpression) expression;
+      key.append('(');
+      for (int index = 0; index < logical.getOperands().size(); index++) {
+        if (index > 0) {
+          key.append(' ').append(logical.getOperator()).append(' ');
+        }
+        append(logical.getOperands().get(index), key, values);
+      }
+      key.append(')');
+    } else if (expression instanceof GroupExpression) {
+      GroupExpression group = (GroupExpression) expression;
+      key.append(group.isNot() ? "not(" : "(");
+      append(group.getFilterExpression(), key, values);
+      key.append(')');
+    } else if (expression instanceof AttributePresentExpression) {
+      appendPath(((AttributePresentExpression) expression).getAttributePath(), key);
+      key.append(" PR");
+    } else if (expression instanceof ValuePathExpression) {
+      ValuePathExpression valuePath = (ValuePathExpression) expression;
+      appendPath(valuePath.getAttributePath(), key);
+      key.append('[');
+      append(valuePath.getAttributeExpression(), key, values);
+      key.append(']');
+    } else if (expression instanceof AttributeInExpression) {
+      AttributeInExpression in = (AttributeInExpression) expression;
+      appendPath(in.getAttributePath(), key);
+      int count = 0;
+      for (Object compareValue : in.getCompareValues()) {
+        if (compareValue != null) {
+          values.add(compareValue);
+          count++;
+        }
+      }
+      key.append(" IN ").append(count);
+    } else {
+      // not compiled to SQL, the values don't matter
+      key.append(expression != null ? expression.getClass().getName() : "null");
+    }
+  }
+
+  private static void appendPath(AttributeReference attributeReference, StringBuilder key) {
+    key.append(attributeReference.getFullyQualifiedAttributeName().toLowerCase(Locale.ROOT));
+  }
+}
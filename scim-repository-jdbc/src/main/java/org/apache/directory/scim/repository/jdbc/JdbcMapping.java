@@ -0,0 +1,121 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.repository.jdbc;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Describes the table a {@link JdbcRepository} stores its resources in.
+ * <p>
+ * Each resource is a row: its id, its JSON document, and one column for each attribute mapped with
+ * {@link #column(String, String)}. The JSON document holds the complete resource, mapped columns copy single
+ * attribute values out of it so filters and sorts on them can be answered by the database. Attributes that are not
+ * mapped are only kept in the JSON document. Case-insensitive attributes get a second column,
+ * {@code <column>_folded}, holding their case-folded values, see {@link JdbcRepository#createTableStatement()}.
+ * <pre>
+ * new JdbcMapping("scim_user")
+ *   .column("userName", "user_name")
+ *   .column("name.familyName", "family_name");
+ * </pre>
+ */
+public final class JdbcMapping {
+
+  public static final String DEFAULT_ID_COLUMN = "id";
+
+  public static final String DEFAULT_RESOURCE_COLUMN = "resource";
+
+  private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+  private final String table;
+
+  private String idColumn = DEFAULT_ID_COLUMN;
+
+  private String resourceColumn = DEFAULT_RESOURCE_COLUMN;
+
+  private final Map<String, String> columns = new LinkedHashMap<>();
+
+  /**
+   * @param table the name of the table.
+   * @throws IllegalArgumentException if the name is not a plain SQL identifier.
+   */
+  public JdbcMapping(String table) {
+    this.table = identifier(table);
+  }
+
+  /**
+   * Sets the column holding the resource id, {@value #DEFAULT_ID_COLUMN} by default.
+   */
+  public JdbcMapping idColumn(String column) {
+    this.idColumn = identifier(column);
+    return this;
+  }
+
+  /**
+   * Sets the column holding the JSON document of the resource, {@value #DEFAULT_RESOURCE_COLUMN} by default.
+   */
+  public JdbcMapping resourceColumn(String column) {
+    this.resourceColumn = identifier(column);
+    return this;
+  }
+
+  /**
+   * Maps a single-valued attribute (e.g. {@code userName}), or a sub-attribute of a single-valued complex attribute
+   * (e.g. {@code name.familyName}), to a column.
+   *
+   * @param attributePath the attribute.
+   * @param column the name of the column.
+   * @return this mapping.
+   * @throws IllegalArgumentException if the column name is not a plain SQL identifier.
+   */
+  public JdbcMapping column(String attributePath, String column) {
+    columns.put(attributePath, identifier(column));
+    return this;
+  }
+
+  public String getTable() {
+    return table;
+  }
+
+  public String getIdColumn() {
+    return idColumn;
+  }
+
+  public String getResourceColumn() {
+    return resourceColumn;
+  }
+
+  /**
+   * Returns the mapped columns, keyed by attribute path.
+   */
+  public Map<String, String> getColumns() {
+    return Collections.unmodifiableMap(columns);
+  }
+
+  // names are written into SQL statements as is, only allow plain identifiers
+  private static String identifier(String name) {
+    if (name == null || !IDENTIFIER.matcher(name).matches()) {
+      throw new IllegalArgumentException("Invalid SQL identifier: '" + name + "'");
+    }
+    return name;
+  }
+}
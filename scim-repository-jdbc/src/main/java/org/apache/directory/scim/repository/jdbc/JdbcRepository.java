@@ -0,0 +1,781 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.repository.jdbc;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.directory.scim.core.json.ObjectMapperFactory;
+import org.apache.directory.scim.core.repository.CursorCodec;
+import org.apache.directory.scim.core.repository.FilterResultStream;
+import org.apache.directory.scim.core.repository.KeysetPosition;
+import org.apache.directory.scim.core.repository.PatchHandler;
+import org.apache.directory.scim.core.repository.Repository;
+import org.apache.directory.scim.core.repository.SortEngine;
+import org.apache.directory.scim.core.schema.SchemaRegistry;
+import org.apache.directory.scim.spec.exception.ConflictResourceException;
+import org.apache.directory.scim.spec.exception.InvalidCursorException;
+import org.apache.directory.scim.spec.exception.ResourceException;
+import org.apache.directory.scim.spec.filter.Filter;
+import org.apache.directory.scim.spec.filter.FilterExpression;
+import org.apache.directory.scim.spec.filter.FilterExpressions;
+import org.apache.directory.scim.spec.filter.FilterResponse;
+import org.apache.directory.scim.spec.filter.PageRequest;
+import org.apache.directory.scim.spec.filter.SortOrder;
+import org.apache.directory.scim.spec.filter.SortRequest;
+import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
+import org.apache.directory.scim.spec.patch.PatchOperation;
+import org.apache.directory.scim.spec.resources.ScimResource;
+import org.apache.directory.scim.spec.schema.Schema;
+import org.apache.directory.scim.spec.schema.Schemas;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.StringJoiner;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A {@link Repository} that stores resources in a relational database table, see {@link JdbcMapping}.
+ * <p>
+ * Filters are compiled into parameterized SQL conditions on the mapped columns, and compiled conditions are cached by
+ * the shape of the filter (the filter without its compare values). When a filter and the sort attribute only use
+ * mapped columns, filtering, sorting and paging happen in the database. Otherwise the condition narrows down the rows
+ * read, and the remaining work happens in memory.
+ * <p>
+ * Pages requested with {@code startIndex} are read with {@code OFFSET}. Pages requested with a cursor (see
+ * {@link PageRequest#getCursor()}) are read with a keyset condition ({@code WHERE (sort, id) > (last sort, last id)}),
+ * so walking through deep pages doesn't make the database skip over every row before them. The cursor holds the
+ * {@link KeysetPosition} of the last row of the previous page, so it stays valid across writes and across servers
+ * sharing the database: rows created or deleted before the position don't shift the next page. Cursors are encoded
+ * with {@link CursorCodec#base64()} unless another codec is set with {@link #setCursorCodec(CursorCodec)}.
+ * <p>
+ * Pages that are filtered, sorted and paged in the database are {@linkplain #stream streamed} from an open result
+ * set, the connection is held until the stream is closed.
+ * <p>
+ * Statements only use standard SQL ({@code OFFSET ... ROWS FETCH NEXT ... ROWS ONLY}, {@code NULLS LAST}), and are
+ * tested with H2 and Derby.
+ *
+ * @param <T> the type of resource stored
+ */
+@Slf4j
+public class JdbcRepository<T extends ScimResource> implements Repository<T> {
+
+  private static final int MAXIMUM_CACHE_SIZE = 1000;
+
+  private final Class<T> resourceClass;
+
+  private final Schema schema;
+
+  private final DataSource dataSource;
+
+  private final JdbcMapping mapping;
+
+  private final PatchHandler patchHandler;
+
+  private final ObjectMapper objectMapper;
+
+  private final Map<String, Column> columns = new LinkedHashMap<>();
+
+  private final Map<String, SqlCondition> conditions = lruMap();
+
+  private volatile CursorCodec cursorCodec = CursorCodec.base64();
+
+  public JdbcRepository(Class<T> resourceClass, DataSource dataSource, JdbcMapping mapping, SchemaRegistry schemaRegistry, PatchHandler patchHandler) {
+    this.resourceClass = resourceClass;
+    this.schema = Schemas.schemaFor(resourceClass);
+    this.dataSource = dataSource;
+    this.mapping = mapping;
+    this.patchHandler = patchHandler;
+    this.objectMapper = ObjectMapperFactory.createObjectMapper(schemaRegistry);
+
+    mapping.getColumns().forEach((attributePath, columnName) -> {
+      Column column = Column.of(schema, attributePath, columnName);
+      if ("id".equals(column.getAttributePath())) {
+        throw new IllegalArgumentException("The id attribute is always stored in the id column");
+      }
+      columns.put(key(column.getAttributePath()), column);
+    });
+  }
+
+  /**
+   * Sets the codec of the cursors returned by, and passed to, {@link #find(Filter, PageRequest, SortRequest)}.
+   *
+   * @return this repository.
+   */
+  public JdbcRepository<T> setCursorCodec(CursorCodec cursorCodec) {
+    this.cursorCodec = cursorCodec;
+    return this;
+  }
+
+  /**
+   * Returns a {@code CREATE TABLE} statement for this repository's table. Columns of case-insensitive attributes are
+   * followed by a {@code <column>_folded} column holding their case-folded values. Columns of attributes with a
+   * {@code server} or {@code global} uniqueness are {@code UNIQUE}, on the folded column for case-insensitive
+   * attributes, so the database rejects values that only differ by case, e.g. "bjensen" and "BJensen".
+   */
+  public String createTableStatement() {
+    StringJoiner definitions = new StringJoiner(", ", "CREATE TABLE " + mapping.getTable() + " (", ")");
+    definitions.add(mapping.getIdColumn() + " VARCHAR(255) NOT NULL PRIMARY KEY");
+    definitions.add(mapping.getResourceColumn() + " CLOB NOT NULL");
+    for (Column column : columns.values()) {
+      String unique = column.isUnique() ? " UNIQUE" : "";
+      if (column.isIgnoreCase()) {
+        definitions.add(column.getName() + " " + column.sqlType());
+        definitions.add(column.getFoldedName() + " " + column.sqlType() + unique);
+      } else {
+        definitions.add(column.getName() + " " + column.sqlType() + unique);
+      }
+    }
+    return definitions.toString();
+  }
+
+  @Override
+  public Class<T> getResourceClass() {
+    return resourceClass;
+  }
+
+  @Override
+  public T create(T resource) throws ResourceException {
+    try (Connection connection = dataSource.getConnection()) {
+      String id = resource.getId() != null && read(connection, resource.getId()) == null
+        ? resource.getId()
+        : UUID.randomUUID().toString();
+      resource.setId(id);
+
+      StringJoiner names = new StringJoiner(", ", "(", ")");
+      StringJoiner placeholders = new StringJoiner(", ", "(", ")");
+      Statement insert = new Statement();
+      names.add(mapping.getIdColumn()).add(mapping.getResourceColumn());
+      placeholders.add("?").add("?");
+      insert.parameter(id, Types.VARCHAR).parameter(write(resource), Types.CLOB);
+      for (Column column : columns.values()) {
+        Object value = column.read(resource);
+        names.add(column.getName());
+        placeholders.add("?");
+        insert.parameter(value, column.jdbcType());
+        if (column.isIgnoreCase()) {
+          names.add(column.getFoldedName());
+          placeholders.add("?");
+          insert.parameter(Column.fold(value), Types.VARCHAR);
+        }
+      }
+      insert.sql("INSERT INTO ").sql(mapping.getTable()).sql(" ").sql(names.toString())
+        .sql(" VALUES ").sql(placeholders.toString())
+        .executeUpdate(connection);
+      return resource;
+    } catch (SQLException e) {
+      throw resourceException("Failed to create resource", e);
+    }
+  }
+
+  @Override
+  public T update(String id, String version, T resource, Set<AttributeReference> includedAttributes, Set<AttributeReference> excludedAttributes) throws ResourceException {
+    try (Connection connection = dataSource.getConnection()) {
+      resource.setId(id);
+
+      Statement update = new Statement()
+        .sql("UPDATE ").sql(mapping.getTable()).sql(" SET ").sql(mapping.getResourceColumn()).sql(" = ?")
+        .parameter(write(resource), Types.CLOB);
+      for (Column column : columns.values()) {
+        Object value = column.read(resource);
+        update.sql(", ").sql(column.getName()).sql(" = ?").parameter(value, column.jdbcType());
+        if (column.isIgnoreCase()) {
+          update.sql(", ").sql(column.getFoldedName()).sql(" = ?").parameter(Column.fold(value), Types.VARCHAR);
+        }
+      }
+      int updated = update.sql(" WHERE ").sql(mapping.getIdColumn()).sql(" = ?")
+        .parameter(id, Types.VARCHAR)
+        .executeUpdate(connection);
+      if (updated == 0) {
+        throw new ResourceException(404, "Resource " + id + " not found");
+      }
+      return resource;
+    } catch (SQLException e) {
+      throw resourceException("Failed to update resource " + id, e);
+    }
+  }
+
+  @Override
+  public T patch(String id, String version, List<PatchOperation> patchOperations, Set<AttributeReference> includedAttributes, Set<AttributeReference> excludedAttributes) throws ResourceException {
+    T resource = get(id);
+    if (resource == null) {
+      throw new ResourceException(404, "Resource " + id + " not found");
+    }
+    return update(id, version, patchHandler.apply(resource, patchOperations), includedAttributes, excludedAttributes);
+  }
+
+  @Override
+  public T get(String id) throws ResourceException {
+    try (Connection connection = dataSource.getConnection()) {
+      String json = read(connection, id);
+      return json != null ? read(json) : null;
+    } catch (SQLException e) {
+      throw resourceException("Failed to read resource " + id, e);
+    }
+  }
+
+  @Override
+  public void delete(String id) throws ResourceException {
+    try (Connection connection = dataSource.getConnection()) {
+      new Statement()
+        .sql("DELETE FROM ").sql(mapping.getTable()).sql(" WHERE ").sql(mapping.getIdColumn()).sql(" = ?")
+        .parameter(id, Types.VARCHAR)
+        .executeUpdate(connection);
+    } catch (SQLException e) {
+      throw resourceException("Failed to delete resource " + id, e);
+    }
+  }
+
+  @Override
+  public FilterResponse<T> find(Filter filter, PageRequest pageRequest, SortRequest sortRequest) throws ResourceException {
+    FilterExpression expression = filter != null ? filter.getExpression() : null;
+    Where where = where(expression);
+
+    AttributeReference sortBy = sortRequest != null ? sortRequest.getSortBy() : null;
+    boolean descending = sortRequest != null && sortRequest.getSortOrder() == SortOrder.DESCENDING;
+    Column sortColumn = sortBy != null ? column(sortBy) : null;
+    boolean sortInDatabase = sortBy == null || sortColumn != null;
+
+    int offset = offset(pageRequest);
+    Integer count = pageSize(pageRequest);
+    boolean cursorPaged = pageRequest != null && pageRequest.isCursorPaged();
+
+    try (Connection connection = dataSource.getConnection()) {
+      if (where.condition.isExact() && sortInDatabase) {
+        int totalResults = count(connection, where);
+        if (cursorPaged) {
+          return cursorPage(connection, where, sortColumn, descending, pageRequest, KeysetPosition.sort(sortRequest), totalResults);
+        }
+        List<T> resources = count != null && count == 0
+          ? Collections.emptyList()
+          : page(connection, where, sortColumn, descending, offset, count);
+        return new FilterResponse<>(resources, pageRequest, totalResults);
+      }
+
+      // the condition is a superset of the filter, or the sort attribute is not mapped
+      Statement select = select(where, sortInDatabase ? sortColumn : null, descending, null);
+      Predicate<ScimResource> predicate = FilterExpressions.inMemory(filter, schema);
+      List<T> matches = new ArrayList<>();
+      for (Row row : select.executeQuery(connection)) {
+        T resource = read(row.json);
+        if (predicate.test(resource)) {
+          matches.add(resource);
+        }
+      }
+      if (cursorPaged) {
+        return SortEngine.<T>of(sortRequest, schema).cursorPage(matches, pageRequest, cursorCodec);
+      }
+      if (!sortInDatabase) {
+        matches.sort(comparator(sortBy, descending));
+      }
+      List<T> resources = offset >= matches.size()
+        ? Collections.emptyList()
+        : new ArrayList<>(matches.subList(offset, count != null ? (int) Math.min((long) offset + count, matches.size()) : matches.size()));
+      return new FilterResponse<>(resources, pageRequest, matches.size());
+    } catch (SQLException e) {
+      throw resourceException("Failed to find resources", e);
+    }
+  }
+
+  @Override
+  public boolean supportsCursorPagination() {
+    return true;
+  }
+
+  /**
+   * Streams the resources of the page from an open result set when the filter compiles to an exact condition and the
+   * sort attribute is mapped, so rows are read as the response is written. The stream holds a connection until it is
+   * closed. Other queries, and pages requested with a cursor, whose next cursor is only known once the page has been
+   * read, are answered by {@link #find(Filter, PageRequest, SortRequest)}.
+   */
+  @Override
+  public FilterResultStream<T> stream(Filter filter, PageRequest pageRequest, SortRequest sortRequest, Set<AttributeReference> includedAttributes, Set<AttributeReference> excludedAttributes) throws ResourceException {
+    Where where = where(filter != null ? filter.getExpression() : null);
+
+    AttributeReference sortBy = sortRequest != null ? sortRequest.getSortBy() : null;
+    boolean descending = sortRequest != null && sortRequest.getSortOrder() == SortOrder.DESCENDING;
+    Column sortColumn = sortBy != null ? column(sortBy) : null;
+    if (!where.condition.isExact() || (sortBy != null && sortColumn == null) || (pageRequest != null && pageRequest.isCursorPaged())) {
+      return Repository.super.stream(filter, pageRequest, sortRequest, includedAttributes, excludedAttributes);
+    }
+
+    int offset = offset(pageRequest);
+    Integer count = pageSize(pageRequest);
+    Cursor cursor = null;
+    try {
+      cursor = new Cursor(dataSource.getConnection(), sortColumn != null);
+      int totalResults = count(cursor.connection, where);
+      if (count != null && count == 0) {
+        cursor.close();
+        return new FilterResultStream<>(Stream.empty(), pageRequest, totalResults);
+      }
+      cursor.open(pageSelect(where, sortColumn, descending, offset, count));
+      Stream<T> resources = StreamSupport.stream(cursor, false).onClose(cursor::close);
+      return new FilterResultStream<>(resources, pageRequest, totalResults);
+    } catch (SQLException e) {
+      if (cursor != null) {
+        cursor.close();
+      }
+      throw resourceException("Failed to find resources", e);
+    }
+  }
+
+  /**
+   * Counts the resources that match {@code filter} with a {@code SELECT COUNT(*)} when the filter compiles to an exact
+   * condition, otherwise the resources selected by the condition are tested without being kept.
+   */
+  @Override
+  public int count(Filter filter) throws ResourceException {
+    Where where = where(filter != null ? filter.getExpression() : null);
+    try (Connection connection = dataSource.getConnection()) {
+      if (where.condition.isExact()) {
+        return count(connection, where);
+      }
+
+      Predicate<ScimResource> predicate = FilterExpressions.inMemory(filter, schema);
+      int count = 0;
+      for (Row row : select(where, null, false, null).executeQuery(connection)) {
+        if (predicate.test(read(row.json))) {
+          count++;
+        }
+      }
+      return count;
+    } catch (SQLException e) {
+      throw resourceException("Failed to count resources", e);
+    }
+  }
+
+  /**
+   * Compiles a filter expression, or returns the cached condition of its shape.
+   */
+  SqlCondition condition(FilterExpression expression) {
+    return where(expression).condition;
+  }
+
+  private Where where(FilterExpression expression) {
+    if (expression == null) {
+      return new Where(new SqlCondition(null, List.of(), true), List.of());
+    }
+
+    FilterExpression optimized = FilterExpressions.optimize(expression, schema);
+    FilterShape shape = FilterShape.of(optimized);
+    SqlCondition condition;
+    synchronized (conditions) {
+      condition = conditions.get(shape.getKey());
+    }
+    if (condition == null) {
+      condition = new SqlFilterCompiler(this::column).apply(optimized, schema);
+      synchronized (conditions) {
+        conditions.put(shape.getKey(), condition);
+      }
+    }
+    return new Where(condition, condition.bind(shape.getValues()));
+  }
+
+  private int count(Connection connection, Where where) throws SQLException {
+    Statement count = new Statement().sql("SELECT COUNT(*) FROM ").sql(mapping.getTable());
+    where(count, where, null);
+    try (PreparedStatement statement = count.prepare(connection); ResultSet resultSet = statement.executeQuery()) {
+      resultSet.next();
+      return resultSet.getInt(1);
+    }
+  }
+
+  private List<T> page(Connection connection, Where where, Column sortColumn, boolean descending, int offset, Integer count) throws SQLException, ResourceException {
+    List<Row> rows = pageSelect(where, sortColumn, descending, offset, count).executeQuery(connection);
+    List<T> resources = new ArrayList<>(rows.size());
+    for (Row row : rows) {
+      resources.add(read(row.json));
+    }
+    return resources;
+  }
+
+  /**
+   * Builds the {@code SELECT} of a page that starts at {@code offset}.
+   */
+  private Statement pageSelect(Where where, Column sortColumn, boolean descending, int offset, Integer count) {
+    Statement select = select(where, sortColumn, descending, null);
+    if (offset > 0) {
+      select.sql(" OFFSET ? ROWS").parameter(offset, Types.INTEGER);
+    }
+    if (count != null) {
+      select.sql(" FETCH NEXT ? ROWS ONLY").parameter(count, Types.INTEGER);
+    }
+    return select;
+  }
+
+  /**
+   * Reads the page after the position of the cursor of {@code pageRequest}, the first page if the cursor is empty,
+   * with one more row than the page to tell if there is a next page.
+   */
+  private FilterResponse<T> cursorPage(Connection connection, Where where, Column sortColumn, boolean descending, PageRequest pageRequest, String sort, int totalResults) throws SQLException, ResourceException {
+    String cursor = pageRequest.getCursor();
+    KeysetPosition after = null;
+    if (cursor != null && !cursor.isEmpty()) {
+      after = KeysetPosition.decode(cursorCodec, cursor, sort);
+      if (sortColumn != null && after.getKey() != null && sortColumn.parameter(after.getKey()) == null) {
+        throw new InvalidCursorException("Invalid cursor: " + cursor);
+      }
+    }
+    Integer count = pageSize(pageRequest);
+    if (count != null && count == 0) {
+      return new FilterResponse<>(Collections.emptyList(), pageRequest, totalResults);
+    }
+
+    Statement select = select(where, sortColumn, descending, after);
+    if (count != null) {
+      select.sql(" FETCH NEXT ? ROWS ONLY").parameter(count + 1, Types.INTEGER);
+    }
+    List<Row> rows = select.executeQuery(connection);
+    int size = count != null ? Math.min(count, rows.size()) : rows.size();
+    List<T> resources = new ArrayList<>(size);
+    for (int index = 0; index < size; index++) {
+      resources.add(read(rows.get(index).json));
+    }
+    String nextCursor = null;
+    if (size > 0 && rows.size() > size) {
+      Row last = rows.get(size - 1);
+      nextCursor = new KeysetPosition(sort, sortKey(last.sortValue), last.id).encode(cursorCodec);
+    }
+    return new FilterResponse<>(resources, pageRequest, totalResults, nextCursor);
+  }
+
+  /**
+   * Converts the value of a sort column to a key of a {@link KeysetPosition}, timestamps are kept as {@link Instant}s
+   * so cursors keep their nanoseconds.
+   */
+  private static Object sortKey(Object sortValue) {
+    return sortValue instanceof Timestamp ? ((Timestamp) sortValue).toInstant() : sortValue;
+  }
+
+  /**
+   * Builds a {@code SELECT} of the id, the JSON document and the sort column of the rows matching {@code where}, after
+   * {@code keyset} if it is not null.
+   */
+  private Statement select(Where where, Column sortColumn, boolean descending, KeysetPosition keyset) {
+    Statement select = new Statement()
+      .sql("SELECT ").sql(mapping.getIdColumn()).sql(", ").sql(mapping.getResourceColumn())
+      .sql(sortColumn != null ? ", " + sortColumn.getName() : "")
+      .sql(" FROM ").sql(mapping.getTable());
+
+    String id = mapping.getIdColumn();
+    Statement after = null;
+    if (keyset != null) {
+      // rows after the keyset, in the order of the ORDER BY below
+      after = new Statement();
+      Object sortValue = sortColumn != null && keyset.getKey() != null ? sortColumn.parameter(keyset.getKey()) : null;
+      if (sortColumn == null) {
+        after.sql(id).sql(" > ?").parameter(keyset.getId(), Types.VARCHAR);
+      } else {
+        String sort = sortColumn.getName();
+        if (sortValue == null) {
+          after.sql("(").sql(sort).sql(" IS NULL AND ").sql(id).sql(" > ?)").parameter(keyset.getId(), Types.VARCHAR);
+        } else {
+          after.sql("(").sql(sort).sql(descending ? " < ?" : " > ?").parameter(sortValue, sortColumn.jdbcType())
+            .sql(" OR (").sql(sort).sql(" = ? AND ").sql(id).sql(" > ?)")
+            .parameter(sortValue, sortColumn.jdbcType()).parameter(keyset.getId(), Types.VARCHAR)
+            .sql(" OR ").sql(sort).sql(" IS NULL)");
+        }
+      }
+    }
+    where(select, where, after);
+
+    select.sql(" ORDER BY ");
+    if (sortColumn != null) {
+      select.sql(sortColumn.getName()).sql(descending ? " DESC" : " ASC").sql(" NULLS LAST, ");
+    }
+    // ids break ties, so pages are stable between requests
+    return select.sql(id);
+  }
+
+  private static void where(Statement statement, Where where, Statement and) {
+    SqlCondition condition = where.condition;
+    if (condition.isUnknown() && and == null) {
+      return;
+    }
+    statement.sql(" WHERE ");
+    if (!condition.isUnknown()) {
+      statement.sql(condition.getSql());
+      List<SqlCondition.Parameter> parameters = condition.getParameters();
+      for (int index = 0; index < parameters.size(); index++) {
+        statement.parameter(where.parameters.get(index), parameters.get(index).jdbcType());
+      }
+      if (and != null) {
+        statement.sql(" AND ");
+      }
+    }
+    if (and != null) {
+      statement.append(and);
+    }
+  }
+
+  private String read(Connection connection, String id) throws SQLException {
+    Statement select = new Statement()
+      .sql("SELECT ").sql(mapping.getResourceColumn()).sql(" FROM ").sql(mapping.getTable())
+      .sql(" WHERE ").sql(mapping.getIdColumn()).sql(" = ?")
+      .parameter(id, Types.VARCHAR);
+    try (PreparedStatement statement = select.prepare(connection); ResultSet resultSet = statement.executeQuery()) {
+      return resultSet.next() ? resultSet.getString(1) : null;
+    }
+  }
+
+  private T read(String json) throws ResourceException {
+    try {
+      return objectMapper.readValue(json, resourceClass);
+    } catch (JsonProcessingException e) {
+      throw new ResourceException(500, "Failed to read resource", e);
+    }
+  }
+
+  private String write(T resource) throws ResourceException {
+    try {
+      return objectMapper.writeValueAsString(resource);
+    } catch (JsonProcessingException e) {
+      throw new ResourceException(500, "Failed to write resource " + resource.getId(), e);
+    }
+  }
+
+  private Column column(AttributeReference attributeReference) {
+    String urn = attributeReference.getUrn();
+    if (urn != null && !urn.equalsIgnoreCase(schema.getId())) {
+      return null;
+    }
+    return columns.get(key(attributeReference.getFullAttributeName()));
+  }
+
+  private Comparator<T> comparator(AttributeReference sortBy, boolean descending) {
+    Column sortKey;
+    try {
+      sortKey = Column.of(schema, sortBy.getFullAttributeName(), null);
+    } catch (IllegalArgumentException e) {
+      log.debug("Unable to sort by attribute '{}'", sortBy.getFullyQualifiedAttributeName());
+      return Comparator.comparing(ScimResource::getId);
+    }
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    Comparator<Object> valueOrder = (left, right) -> ((Comparable) left).compareTo(right);
+    return Comparator.comparing((T resource) -> sortKey.read(resource), Comparator.nullsLast(descending ? valueOrder.reversed() : valueOrder))
+      .thenComparing(ScimResource::getId);
+  }
+
+  private static ResourceException resourceException(String message, SQLException e) {
+    // integrity constraint violations, e.g. a duplicate id or a unique column, the only check of uniqueness so
+    // concurrent writes can't both pass it
+    if (e.getSQLState() != null && e.getSQLState().startsWith("23")) {
+      return new ConflictResourceException("The resource conflicts with an existing resource.", e);
+    }
+    return new ResourceException(500, message, e);
+  }
+
+  private static int offset(PageRequest pageRequest) {
+    // SCIM is 1-based indexed, values less than 1 are interpreted as 1
+    return pageRequest != null && pageRequest.getStartIndex() != null ? Math.max(pageRequest.getStartIndex() - 1, 0) : 0;
+  }
+
+  private static Integer pageSize(PageRequest pageRequest) {
+    return pageRequest != null && pageRequest.getCount() != null ? Math.max(pageRequest.getCount(), 0) : null;
+  }
+
+  private static String key(String attributePath) {
+    return attributePath.toLowerCase(Locale.ROOT);
+  }
+
+  private static <K, V> Map<K, V> lruMap() {
+    return new LinkedHashMap<>(16, 0.75f, true) {
+      private static final long serialVersionUID = -2371568294117380154L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        return size() > MAXIMUM_CACHE_SIZE;
+      }
+    };
+  }
+
+  /**
+   * A filter's condition, with its parameters bound to the filter's compare values.
+   */
+  private static final class Where {
+
+    private final SqlCondition condition;
+
+    private final List<Object> parameters;
+
+    private Where(SqlCondition condition, List<Object> parameters) {
+      this.condition = condition;
+      this.parameters = parameters;
+    }
+  }
+
+  private static final class Row {
+
+    private final String id;
+
+    private final String json;
+
+    private final Object sortValue;
+
+    private Row(String id, String json, Object sortValue) {
+      this.id = id;
+      this.json = json;
+      this.sortValue = sortValue;
+    }
+
+    private static Row read(ResultSet resultSet, boolean sorted) throws SQLException {
+      return new Row(resultSet.getString(1), resultSet.getString(2), sorted ? resultSet.getObject(3) : null);
+    }
+  }
+
+  /**
+   * Reads the resources of a page from an open result set, one row at a time. Closing the cursor closes the result
+   * set and the connection.
+   */
+  private final class Cursor extends Spliterators.AbstractSpliterator<T> implements AutoCloseable {
+
+    private final Connection connection;
+
+    private final boolean sorted;
+
+    private PreparedStatement statement;
+
+    private ResultSet resultSet;
+
+    private Cursor(Connection connection, boolean sorted) {
+      super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+      this.connection = connection;
+      this.sorted = sorted;
+    }
+
+    private void open(Statement select) throws SQLException {
+      log.debug("Executing: {}", select.sql);
+      statement = select.prepare(connection);
+      resultSet = statement.executeQuery();
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+      try {
+        if (resultSet == null || !resultSet.next()) {
+          return false;
+        }
+        action.accept(read(Row.read(resultSet, sorted).json));
+        return true;
+      } catch (SQLException | ResourceException e) {
+        throw new IllegalStateException("Failed to read resources", e);
+      }
+    }
+
+    @Override
+    public void close() {
+      try (Connection connection = this.connection; PreparedStatement statement = this.statement; ResultSet resultSet = this.resultSet) {
+        this.resultSet = null;
+      } catch (SQLException e) {
+        log.warn("Failed to close result set", e);
+      }
+    }
+  }
+
+  /**
+   * A SQL statement under construction, and its parameters.
+   */
+  private static final class Statement {
+
+    private final StringBuilder sql = new StringBuilder();
+
+    private final List<Object> parameters = new ArrayList<>();
+
+    private final List<Integer> types = new ArrayList<>();
+
+    Statement sql(String text) {
+      sql.append(text);
+      return this;
+    }
+
+    Statement parameter(Object value, int type) {
+      parameters.add(value);
+      types.add(type);
+      return this;
+    }
+
+    Statement append(Statement statement) {
+      sql.append(statement.sql);
+      parameters.addAll(statement.parameters);
+      types.addAll(statement.types);
+      return this;
+    }
+
+    PreparedStatement prepare(Connection connection) throws SQLException {
+      PreparedStatement statement = connection.prepareStatement(sql.toString());
+      try {
+        for (int index = 0; index < parameters.size(); index++) {
+          Object value = parameters.get(index);
+          if (value == null) {
+            statement.setNull(index + 1, types.get(index));
+          } else if (types.get(index) == Types.CLOB) {
+            statement.setString(index + 1, (String) value);
+          } else {
+            statement.setObject(index + 1, value);
+          }
+        }
+        return statement;
+      } catch (SQLException e) {
+        statement.close();
+        throw e;
+      }
+    }
+
+    int executeUpdate(Connection connection) throws SQLException {
+      log.debug("Executing: {}", sql);
+      try (PreparedStatement statement = prepare(connection)) {
+        return statement.executeUpdate();
+      }
+    }
+
+    List<Row> executeQuery(Connection connection) throws SQLException {
+      log.debug("Executing: {}", sql);
+      List<Row> rows = new ArrayList<>();
+      try (PreparedStatement statement = prepare(connection); ResultSet resultSet = statement.executeQuery()) {
+        boolean sorted = resultSet.getMetaData().getColumnCount() > 2;
+        while (resultSet.next()) {
+          rows.add(Row.read(resultSet, sorted));
+        }
+      }
+      return rows;
+    }
+  }
+}
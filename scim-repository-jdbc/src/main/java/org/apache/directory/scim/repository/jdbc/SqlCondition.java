@@ -0,0 +1,114 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.repository.jdbc;
+
+import lombok.Value;
+import org.apache.directory.scim.spec.filter.CompareOperator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A SQL condition compiled from a filter expression, with the parameters its placeholders are bound to.
+ * <p>
+ * A condition is {@link #isExact() exact} when it matches the same resources as the filter, otherwise (when parts of
+ * the filter compare attributes that are not mapped to columns) it matches a superset of them and each row still has
+ * to be tested against the filter. A condition without {@link #getSql() sql} can't narrow down the rows at all.
+ */
+@Value
+class SqlCondition {
+
+  static final SqlCondition UNKNOWN = new SqlCondition(null, List.of(), false);
+
+  static final SqlCondition NONE = new SqlCondition("1 = 0", List.of(), true);
+
+  String sql;
+
+  List<Parameter> parameters;
+
+  boolean exact;
+
+  boolean isUnknown() {
+    return sql == null;
+  }
+
+  /**
+   * Converts the compare values of a filter of this condition's shape into statement parameters.
+   */
+  List<Object> bind(List<Object> values) {
+    List<Object> bound = new ArrayList<>(parameters.size());
+    for (Parameter parameter : parameters) {
+      bound.add(parameter.bind(values));
+    }
+    return bound;
+  }
+
+  /**
+   * A statement parameter, bound to the compare value at {@code valueIndex} of the filter.
+   */
+  @Value
+  static class Parameter {
+
+    int valueIndex;
+
+    Column column;
+
+    CompareOperator operator;
+
+    Object bind(List<Object> values) {
+      Object value = column.parameter(values.get(valueIndex));
+      if (value == null) {
+        return null;
+      }
+      switch (operator) {
+        case EQ:
+        case NE:
+          return column.isIgnoreCase() ? Column.fold(value) : value;
+        case SW:
+          return escapeLike(value.toString()) + "%";
+        case EW:
+          return "%" + escapeLike(value.toString());
+        case CO:
+          return "%" + escapeLike(value.toString()) + "%";
+        default:
+          return value;
+      }
+    }
+
+    int jdbcType() {
+      return column.jdbcType();
+    }
+  }
+
+  /**
+   * Escapes the wildcards of a {@code LIKE} pattern, with {@link SqlFilterCompiler#LIKE_ESCAPE} as escape character.
+   */
+  static String escapeLike(String text) {
+    StringBuilder escaped = new StringBuilder(text.length() + 8);
+    for (int index = 0; index < text.length(); index++) {
+      char c = text.charAt(index);
+      if (c == '%' || c == '_' || c == SqlFilterCompiler.LIKE_ESCAPE) {
+        escaped.append(SqlFilterCompiler.LIKE_ESCAPE);
+      }
+      escaped.append(c);
+    }
+    return escaped.toString();
+  }
+}
@@ -0,0 +1,246 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.repository.jdbc;
+
+import org.apache.directory.scim.spec.filter.AttributeComparisonExpression;
+import org.apache.directory.scim.spec.filter.AttributeInExpression;
+import org.apache.directory.scim.spec.filter.AttributePresentExpression;
+import org.apache.directory.scim.spec.filter.BaseFilterExpressionMapper;
+import org.apache.directory.scim.spec.filter.CompareOperator;
+import org.apache.directory.scim.spec.filter.FilterExpression;
+import org.apache.directory.scim.spec.filter.GroupExpression;
+import org.apache.directory.scim.spec.filter.LogicalOperator;
+import org.apache.directory.scim.spec.filter.NaryLogicalExpression;
+import org.apache.directory.scim.spec.filter.ValuePathExpression;
+import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
+import org.apache.directory.scim.spec.schema.AttributeContainer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.function.Function;
+
+/**
+ * Compiles a {@link FilterExpression} into a parameterized SQL {@link SqlCondition}.
+ * <p>
+ * Comparisons of attributes mapped to columns become SQL comparisons with the same semantics as the in-memory filter
+ * predicate: a missing value never matches, {@code eq} and {@code ne} compare the folded values of case-insensitive
+ * strings (see {@link Column#getFoldedName()}), and
+ * {@code co}, {@code sw} and {@code ew} are case sensitive {@code LIKE} patterns. Other comparisons (including value
+ * paths, which always target multi-valued attributes) can't be compiled: they are dropped from {@code and}s, which
+ * makes the condition a superset of the filter, and they make {@code or}s and {@code not}s unknown.
+ * <p>
+ * Parameters refer to compare values by their position in the filter's {@link FilterShape}, so a condition can be
+ * reused for every filter of the same shape. A compiler keeps track of that position, use a new one for each filter.
+ */
+final class SqlFilterCompiler extends BaseFilterExpressionMapper<SqlCondition> {
+
+  static final char LIKE_ESCAPE = '!';
+
+  private final Function<AttributeReference, Column> columns;
+
+  private int nextValue;
+
+  private int negations;
+
+  /**
+   * @param columns returns the column an attribute is mapped to, or null.
+   */
+  SqlFilterCompiler(Function<AttributeReference, Column> columns) {
+    this.columns = columns;
+  }
+
+  @Override
+  protected SqlCondition apply(AttributeComparisonExpression expression, AttributeContainer attributeContainer) {
+    Object compareValue = expression.getCompareValue();
+    int valueIndex = compareValue != null ? nextValue++ : -1;
+
+    Column column = columns.apply(expression.getAttributePath());
+    if (column == null) {
+      return SqlCondition.UNKNOWN;
+    }
+    if (compareValue == null) {
+      return SqlCondition.NONE;
+    }
+
+    CompareOperator op = expression.getOperation();
+    String columnName = column.isIgnoreCase() && (op == CompareOperator.EQ || op == CompareOperator.NE)
+      ? column.getFoldedName()
+      : column.getName();
+    String sql;
+    switch (op) {
+      case EQ:
+        sql = columnName + " = ?";
+        break;
+      case NE:
+        sql = columnName + " <> ?";
+        break;
+      case SW:
+      case EW:
+      case CO:
+        if (!column.isString()) {
+          return SqlCondition.NONE;
+        }
+        sql = columnName + " LIKE ? ESCAPE '" + LIKE_ESCAPE + "'";
+        break;
+      case GT:
+        sql = columnName + " > ?";
+        break;
+      case GE:
+        sql = columnName + " >= ?";
+        break;
+      case LT:
+        sql = columnName + " < ?";
+        break;
+      case LE:
+        sql = columnName + " <= ?";
+        break;
+      default:
+        return SqlCondition.NONE;
+    }
+    return comparison(column, sql, List.of(new SqlCondition.Parameter(valueIndex, column, op)));
+  }
+
+  @Override
+  protected SqlCondition apply(AttributeInExpression expression, AttributeContainer attributeContainer) {
+    List<Integer> valueIndexes = new ArrayList<>();
+    for (Object compareValue : expression.getCompareValues()) {
+      if (compareValue != null) {
+        valueIndexes.add(nextValue++);
+      }
+    }
+
+    Column column = columns.apply(expression.getAttributePath());
+    if (column == null) {
+      return SqlCondition.UNKNOWN;
+    }
+    if (valueIndexes.isEmpty()) {
+      return SqlCondition.NONE;
+    }
+
+    StringJoiner placeholders = new StringJoiner(", ", " IN (", ")");
+    List<SqlCondition.Parameter> parameters = new ArrayList<>(valueIndexes.size());
+    for (int valueIndex : valueIndexes) {
+      placeholders.add("?");
+      parameters.add(new SqlCondition.Parameter(valueIndex, column, CompareOperator.EQ));
+    }
+    String columnName = column.isIgnoreCase() ? column.getFoldedName() : column.getName();
+    return comparison(column, columnName + placeholders, parameters);
+  }
+
+  @Override
+  protected SqlCondition apply(AttributePresentExpression expression, AttributeContainer attributeContainer) {
+    Column column = columns.apply(expression.getAttributePath());
+    return column != null
+      ? new SqlCondition(column.getName() + " IS NOT NULL", List.of(), true)
+      : SqlCondition.UNKNOWN;
+  }
+
+  @Override
+  protected SqlCondition apply(ValuePathExpression expression, AttributeContainer attributeContainer) {
+    // value paths filter multi-valued attributes, which are never mapped to columns
+    nextValue += FilterShape.valueCount(expression.getAttributeExpression());
+    return SqlCondition.UNKNOWN;
+  }
+
+  @Override
+  protected SqlCondition apply(GroupExpression expression, AttributeContainer attributeContainer) {
+    if (!expression.isNot()) {
+      return apply(expression.getFilterExpression(), attributeContainer);
+    }
+    negations++;
+    try {
+      return negate(apply(expression.getFilterExpression(), attributeContainer));
+    } finally {
+      negations--;
+    }
+  }
+
+  @Override
+  protected SqlCondition negate(SqlCondition condition) {
+    // the negation of a superset is not a subset of anything
+    if (condition.isUnknown() || !condition.isExact()) {
+      return SqlCondition.UNKNOWN;
+    }
+    return new SqlCondition("NOT (" + condition.getSql() + ")", condition.getParameters(), true);
+  }
+
+  @Override
+  protected SqlCondition apply(LogicalOperator op, SqlCondition left, SqlCondition right) {
+    return combine(op, List.of(left, right));
+  }
+
+  @Override
+  protected SqlCondition apply(NaryLogicalExpression expression, AttributeContainer attributeContainer) {
+    List<SqlCondition> operands = new ArrayList<>(expression.getOperands().size());
+    for (FilterExpression operand : expression.getOperands()) {
+      operands.add(apply(operand, attributeContainer));
+    }
+    return combine(expression.getOperator(), operands);
+  }
+
+  @Override
+  protected SqlCondition unhandledExpression(FilterExpression expression, AttributeContainer attributeContainer) {
+    return SqlCondition.UNKNOWN;
+  }
+
+  private static SqlCondition combine(LogicalOperator op, List<SqlCondition> operands) {
+    boolean exact = true;
+    List<SqlCondition> known = new ArrayList<>(operands.size());
+    for (SqlCondition operand : operands) {
+      if (operand.isUnknown()) {
+        if (op == LogicalOperator.OR) {
+          return SqlCondition.UNKNOWN;
+        }
+        exact = false;
+      } else {
+        exact &= operand.isExact();
+        known.add(operand);
+      }
+    }
+    if (known.isEmpty()) {
+      return SqlCondition.UNKNOWN;
+    }
+    if (known.size() == 1) {
+      SqlCondition operand = known.get(0);
+      return exact ? operand : new SqlCondition(operand.getSql(), operand.getParameters(), false);
+    }
+
+    StringJoiner sql = new StringJoiner(" " + op + " ", "(", ")");
+    List<SqlCondition.Parameter> parameters = new ArrayList<>();
+    for (SqlCondition operand : known) {
+      sql.add(operand.getSql());
+      parameters.addAll(operand.getParameters());
+    }
+    return new SqlCondition(sql.toString(), parameters, exact);
+  }
+
+  /**
+   * Creates the condition for a comparison. A missing value never matches, but SQL compares {@code NULL} to
+   * {@code UNKNOWN}, and {@code NOT UNKNOWN} is still {@code UNKNOWN}: comparisons inside a {@code not} exclude
+   * missing values explicitly, so that the {@code not} includes them.
+   */
+  private SqlCondition comparison(Column column, String sql, List<SqlCondition.Parameter> parameters) {
+    if (negations > 0) {
+      sql = "(" + column.getName() + " IS NOT NULL AND " + sql + ")";
+    }
+    return new SqlCondition(sql, parameters, true);
+  }
+}
@@ -0,0 +1,490 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.repository.jdbc;
+
+import org.apache.directory.scim.core.repository.DefaultPatchHandler;
+import org.apache.directory.scim.core.repository.FilterResultStream;
+import org.apache.directory.scim.core.schema.SchemaRegistry;
+import org.apache.directory.scim.spec.exception.ConflictResourceException;
+import org.apache.directory.scim.spec.exception.InvalidCursorException;
+import org.apache.directory.scim.spec.filter.Filter;
+import org.apache.directory.scim.spec.filter.FilterBuilder;
+import org.apache.directory.scim.spec.filter.FilterExpressions;
+import org.apache.directory.scim.spec.filter.FilterResponse;
+import org.apache.directory.scim.spec.filter.PageRequest;
+import org.apache.directory.scim.spec.filter.SortOrder;
+import org.apache.directory.scim.spec.filter.SortRequest;
+import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
+import org.apache.directory.scim.spec.patch.PatchOperation;
+import org.apache.directory.scim.spec.patch.PatchOperationPath;
+import org.apache.directory.scim.spec.resources.Email;
+import org.apache.directory.scim.spec.resources.Name;
+import org.apache.directory.scim.spec.resources.ScimUser;
+import org.apache.directory.scim.spec.schema.Schemas;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Runs against the database of the {@code scim.jdbc.url} system property, an in-memory H2 database by default, or
+ * Derby with the {@code derby} profile of this module.
+ */
+public class JdbcRepositoryTest {
+
+  private Connection keepAlive;
+
+  private DriverManagerDataSource dataSource;
+
+  private JdbcRepository<ScimUser> repository;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    String url = String.format(System.getProperty("scim.jdbc.url", "jdbc:h2:mem:%s;DB_CLOSE_DELAY=-1"), "scim" + UUID.randomUUID().toString().replace("-", ""));
+
+    keepAlive = DriverManager.getConnection(url);
+    SchemaRegistry schemaRegistry = new SchemaRegistry();
+    schemaRegistry.addSchema(ScimUser.class, List.of());
+    dataSource = new DriverManagerDataSource(url);
+    repository = new JdbcRepository<>(ScimUser.class, dataSource, SqlFilterCompilerTest.mapping(),
+      schemaRegistry, new DefaultPatchHandler(schemaRegistry));
+    try (Statement statement = keepAlive.createStatement()) {
+      statement.execute(repository.createTableStatement());
+    }
+
+    for (int i = 0; i < 50; i++) {
+      repository.create(user(i));
+    }
+  }
+
+  @AfterEach
+  public void tearDown() throws Exception {
+    if (keepAlive != null) {
+      keepAlive.close();
+    }
+  }
+
+  @Test
+  public void createAssignsId() throws Exception {
+    ScimUser user = repository.create(new ScimUser().setUserName("new-user"));
+
+    assertThat(user.getId()).isNotNull();
+    assertThat(repository.get(user.getId()).getUserName()).isEqualTo("new-user");
+  }
+
+  @Test
+  public void duplicateUserNameIsRejected() {
+    assertThatThrownBy(() -> repository.create(new ScimUser().setUserName("USER-1")))
+      .isInstanceOf(ConflictResourceException.class);
+  }
+
+  @Test
+  public void updatesToADuplicateUserNameAreRejected() throws Exception {
+    ScimUser user = repository.create(new ScimUser().setUserName("Bob"));
+
+    assertThatThrownBy(() -> repository.update(user.getId(), null, user.setUserName("USER-1"), null, null))
+      .isInstanceOf(ConflictResourceException.class);
+  }
+
+  @Test
+  public void concurrentDuplicateUserNamesAreRejected() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<ScimUser>> creates = new ArrayList<>();
+      for (String userName : List.of("bob", "Bob", "BOB", "bOb", "boB", "BOb", "bOB", "BoB")) {
+        creates.add(executor.submit(() -> repository.create(new ScimUser().setUserName(userName))));
+      }
+      int created = 0;
+      for (Future<ScimUser> create : creates) {
+        try {
+          create.get();
+          created++;
+        } catch (ExecutionException e) {
+          assertThat(e.getCause()).isInstanceOf(ConflictResourceException.class);
+        }
+      }
+      assertThat(created).isEqualTo(1);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void caseInsensitiveValuesAreComparedLikeInMemory() throws Exception {
+    // 'ı' (dotless i) is equal to 'I' ignoring case, but LOWER('ı') isn't LOWER('I')
+    repository.create(new ScimUser().setUserName("\u0131nes"));
+
+    assertThat(repository.find(FilterBuilder.create().equalTo("userName", "Ines").build(), new PageRequest(), new SortRequest()).getResources())
+      .extracting(ScimUser::getUserName).containsExactly("\u0131nes");
+    assertThatThrownBy(() -> repository.create(new ScimUser().setUserName("INES")))
+      .isInstanceOf(ConflictResourceException.class);
+  }
+
+  @Test
+  public void updateReplacesColumns() throws Exception {
+    ScimUser user = find("userName eq \"user-1\"").get(0);
+    repository.update(user.getId(), null, user(1).setTitle("changed"), null, null);
+
+    assertThat(find("title eq \"changed\"")).extracting(ScimUser::getUserName).containsExactly("user-1");
+    assertThatThrownBy(() -> repository.update(user.getId(), null, user(2), null, null))
+      .isInstanceOf(ConflictResourceException.class);
+  }
+
+  @Test
+  public void patchReplacesColumns() throws Exception {
+    ScimUser user = find("userName eq \"user-1\"").get(0);
+    PatchOperation operation = new PatchOperation();
+    operation.setOperation(PatchOperation.Type.REPLACE);
+    operation.setPath(PatchOperationPath.fromString("title"));
+    operation.setValue("patched");
+    repository.patch(user.getId(), null, List.of(operation), null, null);
+
+    assertThat(find("title eq \"patched\"")).extracting(ScimUser::getUserName).containsExactly("user-1");
+  }
+
+  @Test
+  public void deleteRemovesRow() throws Exception {
+    ScimUser user = find("userName eq \"user-1\"").get(0);
+    repository.delete(user.getId());
+
+    assertThat(repository.get(user.getId())).isNull();
+    assertThat(find("userName eq \"user-1\"")).isEmpty();
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {
+    "userName eq \"USER-7\"",
+    "userName eq \"user-7\" or userName eq \"user-8\" or userName eq \"nobody\"",
+    "emails[value eq \"user-3@example.com\" and type eq \"work\"]",
+    "name.familyName gt \"Family-3\" and name.familyName le \"Family-7\"",
+    "name.familyName sw \"Family-1\"",
+    "title lt \"Title-2\" and active eq true",
+    "title ge \"Title-3\" or userName eq \"user-1\"",
+    "not (title ge \"Title-3\")",
+    "displayName co \"4\"",
+    "displayName co \"4\" and nickName pr",
+    "userName pr and title eq \"Title-0\"",
+    "not (nickName eq \"Nick-1\")"
+  })
+  public void findMatchesScan(String filterText) throws Exception {
+    Filter filter = new Filter(filterText);
+    List<String> expected = new ArrayList<>();
+    for (ScimUser user : find(null)) {
+      if (FilterExpressions.inMemory(filter, Schemas.schemaFor(ScimUser.class)).test(user)) {
+        expected.add(user.getUserName());
+      }
+    }
+
+    assertThat(find(filterText)).extracting(ScimUser::getUserName).containsExactlyInAnyOrderElementsOf(expected);
+    assertThat(repository.count(filter)).isEqualTo(expected.size());
+  }
+
+  @Test
+  public void pagesAreTakenAfterFiltering() throws Exception {
+    FilterResponse<ScimUser> response = repository.find(new Filter("title eq \"Title-1\""), page(3, 4), sort("userName", SortOrder.ASCENDING));
+
+    assertThat(response.getTotalResults()).isEqualTo(5);
+    assertThat(response.getResources()).extracting(ScimUser::getUserName)
+      .containsExactly("user-21", "user-31", "user-41");
+  }
+
+  @Test
+  public void pagesOfSupersetsAreTakenInMemory() throws Exception {
+    FilterResponse<ScimUser> response = repository.find(new Filter("title eq \"Title-1\" and nickName pr"), page(2, 2), sort("userName", SortOrder.ASCENDING));
+
+    assertThat(response.getTotalResults()).isEqualTo(5);
+    assertThat(response.getResources()).extracting(ScimUser::getUserName).containsExactly("user-11", "user-21");
+  }
+
+  @Test
+  public void cursorPagesMatchOffsetPages() throws Exception {
+    repository.create(new ScimUser().setUserName("untitled"));
+    for (SortRequest sortRequest : List.of(new SortRequest(), sort("name.familyName", SortOrder.ASCENDING), sort("title", SortOrder.DESCENDING),
+        sort("active", SortOrder.ASCENDING), sort("nickName", SortOrder.ASCENDING))) {
+      List<String> all = repository.find(null, new PageRequest(), sortRequest).getResources().stream()
+        .map(ScimUser::getUserName)
+        .collect(Collectors.toList());
+
+      // each page is read after the position of the previous page's last row
+      assertThat(walk(null, sortRequest, 7)).isEqualTo(all);
+    }
+  }
+
+  @Test
+  public void cursorPagesDontShiftWithWrites() throws Exception {
+    SortRequest sortRequest = sort("userName", SortOrder.ASCENDING);
+    FilterResponse<ScimUser> firstPage = repository.find(null, cursor("", 10), sortRequest);
+    String last = new ArrayList<>(firstPage.getResources()).get(9).getUserName();
+    repository.create(new ScimUser().setUserName("aaa"));
+
+    // the new user sorts before the position of the cursor, so it doesn't repeat the last user of the first page
+    FilterResponse<ScimUser> secondPage = repository.find(null, cursor(firstPage.getNextCursor(), 10), sortRequest);
+    assertThat(secondPage.getResources()).extracting(ScimUser::getUserName).doesNotContain(last, "aaa");
+    assertThat(secondPage.getTotalResults()).isEqualTo(51);
+  }
+
+  @Test
+  public void cursorsOfAnotherSortAreRejected() throws Exception {
+    String nextCursor = repository.find(null, cursor("", 10), sort("userName", SortOrder.ASCENDING)).getNextCursor();
+
+    assertThatThrownBy(() -> repository.find(null, cursor(nextCursor, 10), sort("title", SortOrder.ASCENDING)))
+      .isInstanceOf(InvalidCursorException.class);
+    assertThatThrownBy(() -> repository.find(null, cursor("not a cursor", 10), new SortRequest()))
+      .isInstanceOf(InvalidCursorException.class);
+  }
+
+  @Test
+  public void cursorPagesOfSupersetsAreTakenInMemory() throws Exception {
+    String filter = "emails[type eq \"home\"] and title eq \"Title-2\"";
+    List<String> all = find(filter).stream().map(ScimUser::getUserName).collect(Collectors.toList());
+
+    assertThat(walk(new Filter(filter), new SortRequest(), 2)).hasSize(5).containsExactlyInAnyOrderElementsOf(all);
+  }
+
+  @Test
+  public void cursorPagesOfFiltersWithSimilarValuesAreNotShared() throws Exception {
+    for (String userName : List.of("a-1", "a-2")) {
+      repository.create(new ScimUser().setUserName(userName).setTitle("x, y").setDisplayName("z"));
+    }
+    for (String userName : List.of("b-1", "b-2")) {
+      repository.create(new ScimUser().setUserName(userName).setTitle("x").setDisplayName("y, z"));
+    }
+    SortRequest sortRequest = sort("userName", SortOrder.ASCENDING);
+
+    // both filters have the same shape, and their compare values print as [x, y, z]
+    assertThat(walk(new Filter("title eq \"x, y\" and displayName eq \"z\""), sortRequest, 1)).containsExactly("a-1", "a-2");
+    assertThat(walk(new Filter("title eq \"x\" and displayName eq \"y, z\""), sortRequest, 1)).containsExactly("b-1", "b-2");
+  }
+
+  @Test
+  public void resultsAreSorted() throws Exception {
+    FilterResponse<ScimUser> response = repository.find(null, page(1, 3), sort("name.familyName", SortOrder.DESCENDING));
+
+    assertThat(response.getTotalResults()).isEqualTo(50);
+    assertThat(response.getResources()).extracting(user -> user.getName().getFamilyName())
+      .containsExactly("Family-9", "Family-9", "Family-9");
+  }
+
+  @Test
+  public void unmappedSortAttributesAreSortedInMemory() throws Exception {
+    FilterResponse<ScimUser> response = repository.find(new Filter("title eq \"Title-2\""), page(1, 2), sort("nickName", SortOrder.DESCENDING));
+
+    assertThat(response.getTotalResults()).isEqualTo(5);
+    assertThat(response.getResources()).extracting(ScimUser::getNickName).containsExactly("Nick-42", "Nick-22");
+  }
+
+  @Test
+  public void streamReadsRowsLazily() throws Exception {
+    dataSource.rowsRead.set(0);
+    FilterResultStream<ScimUser> results = repository.stream(new Filter("title eq \"Title-1\""), page(1, 4), sort("userName", SortOrder.ASCENDING), null, null);
+
+    // only the row of the count has been read
+    assertThat(results.getTotalResults()).isEqualTo(5);
+    assertThat(dataSource.rowsRead).hasValue(1);
+    assertThat(dataSource.openConnections).hasValue(1);
+
+    Iterator<ScimUser> resources = results.getResources().iterator();
+    assertThat(resources.next().getUserName()).isEqualTo("user-1");
+    assertThat(dataSource.rowsRead).hasValue(2);
+    assertThat(resources.next().getUserName()).isEqualTo("user-11");
+    assertThat(dataSource.rowsRead).hasValue(3);
+
+    results.close();
+    assertThat(dataSource.openConnections).hasValue(0);
+  }
+
+  @Test
+  public void streamedPagesMatchFoundPages() throws Exception {
+    SortRequest sortRequest = sort("name.familyName", SortOrder.DESCENDING);
+    List<String> found = repository.find(null, page(1, 20), sortRequest).getResources().stream()
+      .map(ScimUser::getUserName)
+      .collect(Collectors.toList());
+
+    List<String> streamed = new ArrayList<>();
+    for (int startIndex = 1; startIndex <= 20; startIndex += 10) {
+      try (FilterResultStream<ScimUser> results = repository.stream(null, page(startIndex, 10), sortRequest, null, null)) {
+        results.getResources().map(ScimUser::getUserName).forEach(streamed::add);
+      }
+    }
+    assertThat(streamed).isEqualTo(found);
+    assertThat(dataSource.openConnections).hasValue(0);
+  }
+
+  private List<ScimUser> find(String filter) throws Exception {
+    return new ArrayList<>(repository.find(filter != null ? new Filter(filter) : null, new PageRequest(), new SortRequest()).getResources());
+  }
+
+  private List<String> walk(Filter filter, SortRequest sortRequest, int count) throws Exception {
+    List<String> walked = new ArrayList<>();
+    String nextCursor = "";
+    while (nextCursor != null) {
+      FilterResponse<ScimUser> response = repository.find(filter, cursor(nextCursor, count), sortRequest);
+      assertThat(response.getResources()).hasSizeLessThanOrEqualTo(count);
+      response.getResources().stream().map(ScimUser::getUserName).forEach(walked::add);
+      nextCursor = response.getNextCursor();
+    }
+    return walked;
+  }
+
+  private static PageRequest cursor(String cursor, int count) {
+    PageRequest pageRequest = new PageRequest();
+    pageRequest.setCursor(cursor);
+    pageRequest.setCount(count);
+    return pageRequest;
+  }
+
+  private static PageRequest page(int startIndex, int count) {
+    PageRequest pageRequest = new PageRequest();
+    pageRequest.setStartIndex(startIndex);
+    pageRequest.setCount(count);
+    return pageRequest;
+  }
+
+  private static SortRequest sort(String attribute, SortOrder sortOrder) {
+    SortRequest sortRequest = new SortRequest();
+    sortRequest.setSortBy(new AttributeReference(attribute));
+    sortRequest.setSortOrder(sortOrder);
+    return sortRequest;
+  }
+
+  private static ScimUser user(int i) {
+    Email email = new Email();
+    email.setType(i % 2 == 0 ? "home" : "work");
+    email.setValue("user-" + i + "@example.com");
+    return new ScimUser()
+      .setUserName("user-" + i)
+      .setDisplayName("User " + i)
+      .setNickName(i % 4 != 0 ? "Nick-" + i : null)
+      .setTitle("Title-" + (i % 10))
+      .setActive(i % 3 != 0)
+      .setName(new Name().setGivenName("Given-" + i).setFamilyName("Family-" + (i / 5)))
+      .setEmails(List.of(email));
+  }
+
+  /**
+   * Opens connections with the {@link DriverManager}, and counts the connections that are open and the rows read.
+   */
+  private static final class DriverManagerDataSource implements DataSource {
+
+    private final String url;
+
+    private final AtomicInteger openConnections = new AtomicInteger();
+
+    private final AtomicInteger rowsRead = new AtomicInteger();
+
+    private DriverManagerDataSource(String url) {
+      this.url = url;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+      return track(Connection.class, DriverManager.getConnection(url));
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+      return track(Connection.class, DriverManager.getConnection(url, username, password));
+    }
+
+    private <T> T track(Class<T> type, T target) {
+      if (type == Connection.class) {
+        openConnections.incrementAndGet();
+      }
+      AtomicInteger closed = new AtomicInteger();
+      return type.cast(Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {type}, (proxy, method, args) -> {
+        Object result;
+        try {
+          result = method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+          throw e.getCause();
+        }
+        if (type == Connection.class && "close".equals(method.getName()) && closed.getAndIncrement() == 0) {
+          openConnections.decrementAndGet();
+        } else if (type == ResultSet.class && "next".equals(method.getName()) && Boolean.TRUE.equals(result)) {
+          rowsRead.incrementAndGet();
+        } else if (result instanceof PreparedStatement) {
+          return track(PreparedStatement.class, (PreparedStatement) result);
+        } else if (result instanceof ResultSet) {
+          return track(ResultSet.class, (ResultSet) result);
+        }
+        return result;
+      }));
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+      return null;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+    }
+
+    @Override
+    public int getLoginTimeout() {
+      return 0;
+    }
+
+    @Override
+    public Logger getParentLogger() {
+      return Logger.getGlobal();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+      throw new SQLException("Not a wrapper");
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+      return false;
+    }
+  }
+}
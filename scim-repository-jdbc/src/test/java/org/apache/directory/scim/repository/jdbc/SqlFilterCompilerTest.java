@@ -0,0 +1,165 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.repository.jdbc;
+
+import org.apache.directory.scim.core.repository.DefaultPatchHandler;
+import org.apache.directory.scim.core.schema.SchemaRegistry;
+import org.apache.directory.scim.spec.filter.Filter;
+import org.apache.directory.scim.spec.filter.FilterExpressionOptimizer;
+import org.apache.directory.scim.spec.filter.FilterParseException;
+import org.apache.directory.scim.spec.resources.ScimUser;
+import org.apache.directory.scim.spec.schema.Schemas;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SqlFilterCompilerTest {
+
+  private JdbcRepository<ScimUser> repository;
+
+  @BeforeEach
+  public void setUp() {
+    SchemaRegistry schemaRegistry = new SchemaRegistry();
+    schemaRegistry.addSchema(ScimUser.class, List.of());
+    repository = new JdbcRepository<>(ScimUser.class, null, mapping(), schemaRegistry, new DefaultPatchHandler(schemaRegistry));
+  }
+
+  static JdbcMapping mapping() {
+    return new JdbcMapping("scim_user")
+      .column("userName", "user_name")
+      .column("externalId", "external_id")
+      .column("displayName", "display_name")
+      .column("title", "title")
+      .column("active", "active")
+      .column("name.familyName", "family_name");
+  }
+
+  @Test
+  public void comparisonsUseColumns() throws Exception {
+    assertSql("externalId eq \"Babs\"", "external_id = ?", "Babs");
+    assertSql("externalId ne \"CEO\"", "external_id <> ?", "CEO");
+    assertSql("title gt \"A\"", "title > ?", "A");
+    assertSql("active eq true", "active = ?", true);
+    assertSql("name.familyName le \"J\"", "family_name <= ?", "J");
+    assertSql("title pr", "title IS NOT NULL");
+  }
+
+  @Test
+  public void caseInsensitiveEqualityIgnoresCase() throws Exception {
+    assertSql("userName eq \"BJensen\"", "user_name_folded = ?", "bjensen");
+    assertSql("title ne \"CEO\"", "title_folded <> ?", "ceo");
+    // co, sw and ew are case sensitive, like the in-memory filter
+    assertSql("userName sw \"BJ\"", "user_name LIKE ? ESCAPE '!'", "BJ%");
+  }
+
+  @Test
+  public void likePatternsAreEscaped() throws Exception {
+    assertSql("displayName co \"50%_off!\"", "display_name LIKE ? ESCAPE '!'", "%50!%!_off!!%");
+    assertSql("displayName ew \"x\"", "display_name LIKE ? ESCAPE '!'", "%x");
+  }
+
+  @Test
+  public void logicalExpressionsAreCombined() throws Exception {
+    assertSql("externalId eq \"a\" and (displayName eq \"B\" or active eq false)",
+      "(external_id = ? AND (display_name_folded = ? OR active = ?))", "a", "b", false);
+    assertSql("userName eq \"a\" or userName eq \"B\"", "user_name_folded IN (?, ?)", "a", "b");
+  }
+
+  @Test
+  public void negatedComparisonsIncludeMissingValues() throws Exception {
+    assertSql("not (title gt \"a\" and displayName lt \"b\")",
+      "(NOT ((title IS NOT NULL AND title > ?)) OR NOT ((display_name IS NOT NULL AND display_name < ?)))", "a", "b");
+  }
+
+  @Test
+  public void nullNeverMatches() throws Exception {
+    assertSql("title eq null", "1 = 0");
+    assertSql("active co \"x\"", "1 = 0");
+  }
+
+  @Test
+  public void unmappedAttributesMakeSuperset() throws Exception {
+    SqlCondition condition = condition("externalId eq \"a\" and nickName eq \"b\"");
+    assertThat(condition.getSql()).isEqualTo("external_id = ?");
+    assertThat(condition.isExact()).isFalse();
+    assertThat(condition.bind(List.of("a", "b"))).containsExactly("a");
+
+    assertThat(condition("title eq \"a\" or nickName eq \"b\"").isUnknown()).isTrue();
+    assertThat(condition("not (title eq \"a\" and nickName eq \"b\")").isUnknown()).isTrue();
+    assertThat(condition("emails[type eq \"work\"]").isUnknown()).isTrue();
+  }
+
+  @Test
+  public void valuesAfterValuePathsAreBound() throws Exception {
+    Filter filter = new Filter("emails[type eq \"work\" and value co \"@\"] and externalId eq \"a\"");
+    FilterShape shape = FilterShape.of(FilterExpressionOptimizer.DEFAULT.optimize(filter.getExpression(), Schemas.schemaFor(ScimUser.class)));
+    SqlCondition condition = repository.condition(filter.getExpression());
+
+    assertThat(condition.getSql()).isEqualTo("external_id = ?");
+    assertThat(condition.bind(shape.getValues())).containsExactly("a");
+  }
+
+  @Test
+  public void conditionsAreCachedByShape() throws Exception {
+    SqlCondition first = condition("title eq \"a\" and displayName sw \"b\"");
+    SqlCondition second = condition("title eq \"c\" and displayName sw \"d\"");
+
+    assertThat(second).isSameAs(first);
+    assertThat(condition("title eq \"c\" and displayName ew \"d\"")).isNotSameAs(first);
+    assertThat(condition("title eq null and displayName sw \"d\"")).isNotSameAs(first);
+  }
+
+  @Test
+  public void columnsMustBeSingleValued() {
+    SchemaRegistry schemaRegistry = new SchemaRegistry();
+    assertThatThrownBy(() -> new JdbcRepository<>(ScimUser.class, null, mapping().column("emails.value", "email"), schemaRegistry, null))
+      .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> new JdbcRepository<>(ScimUser.class, null, mapping().column("name", "name"), schemaRegistry, null))
+      .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> new JdbcMapping("scim_user; DROP TABLE x"))
+      .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void createTableStatement() {
+    assertThat(repository.createTableStatement()).isEqualTo("CREATE TABLE scim_user (id VARCHAR(255) NOT NULL PRIMARY KEY, "
+      + "resource CLOB NOT NULL, user_name VARCHAR(1024), user_name_folded VARCHAR(1024) UNIQUE, external_id VARCHAR(1024), "
+      + "display_name VARCHAR(1024), display_name_folded VARCHAR(1024), title VARCHAR(1024), title_folded VARCHAR(1024), "
+      + "active BOOLEAN, family_name VARCHAR(1024), family_name_folded VARCHAR(1024))");
+  }
+
+  private SqlCondition condition(String filter) throws FilterParseException {
+    return repository.condition(new Filter(filter).getExpression());
+  }
+
+  private void assertSql(String filter, String sql, Object... parameters) throws FilterParseException {
+    Filter parsed = new Filter(filter);
+    FilterShape shape = FilterShape.of(FilterExpressionOptimizer.DEFAULT.optimize(parsed.getExpression(), Schemas.schemaFor(ScimUser.class)));
+    SqlCondition condition = repository.condition(parsed.getExpression());
+
+    assertThat(condition.getSql()).isEqualTo(sql);
+    assertThat(condition.isExact()).isTrue();
+    assertThat(condition.bind(shape.getValues())).containsExactly(parameters);
+  }
+}
@@ -0,0 +1,442 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.repository.memory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.directory.scim.spec.filter.CompareOperator;
+import org.apache.directory.scim.spec.filter.FilterExpressions;
+import org.apache.directory.scim.spec.schema.Schema;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * A secondary index from the values of one attribute to the ids of the resources holding them.
+ * <p>
+ * Keys are normalized so that a lookup finds every resource the in-memory filter predicate could match: integral and
+ * floating point numbers are widened to {@code Long} and {@code Double}, and for equality the strings of
+ * case-insensitive attributes are case folded. Sorted indexes also keep the unfolded keys, because the filter orders
+ * and prefix matches strings case sensitively, and trigram indexes keep the trigrams of string values. Lookups return candidates, callers still test each candidate against
+ * the filter. A lookup returns null when the index can't answer it, the caller must then scan all resources.
+ */
+@Slf4j
+final class AttributeIndex {
+
+  private static final Comparator<Object> KEY_ORDER = AttributeIndex::compareKeys;
+
+  /**
+   * Estimated heap used by a map entry holding a key and its id set.
+   */
+  private static final long KEY_BYTES = 160;
+
+  /**
+   * Estimated heap used by an id in an id set (the set's node, the id itself is shared with the resource map).
+   */
+  private static final long ENTRY_BYTES = 48;
+
+  private final String name;
+
+  private final Schema.Attribute parentAttribute;
+
+  private final Schema.Attribute attribute;
+
+  private final Set<IndexType> types;
+
+  private final boolean unique;
+
+  /**
+   * Normalized keys, used for equality and uniqueness.
+   */
+  private final Map<Object, Set<String>> entries = new ConcurrentHashMap<>();
+
+  /**
+   * Keys in the order the filter compares them (strings are not case folded), only kept by sorted indexes.
+   */
+  private final NavigableMap<Object, Set<String>> orderedEntries;
+
+  /**
+   * Trigrams of the string values, only kept by trigram indexes.
+   */
+  private final TrigramIndex trigrams;
+
+  private final Map<String, List<Object>> valuesById = new ConcurrentHashMap<>();
+
+  /**
+   * The class of every ordered key, or null if the index is empty or holds keys of different classes. Range lookups
+   * are only answered when all keys can be compared to the lookup key.
+   */
+  private volatile Class<?> keyClass;
+
+  private volatile boolean mixedKeys;
+
+  AttributeIndex(String name, Schema.Attribute parentAttribute, Schema.Attribute attribute, Set<IndexType> types, boolean unique) {
+    this.name = name;
+    this.parentAttribute = parentAttribute;
+    this.attribute = attribute;
+    this.types = Collections.unmodifiableSet(EnumSet.copyOf(types));
+    this.unique = unique;
+    this.orderedEntries = types.contains(IndexType.SORTED) ? new ConcurrentSkipListMap<>(KEY_ORDER) : null;
+    this.trigrams = types.contains(IndexType.TRIGRAM) ? new TrigramIndex(attribute.isCaseExact()) : null;
+  }
+
+  String getName() {
+    return name;
+  }
+
+  Set<IndexType> getTypes() {
+    return types;
+  }
+
+  boolean isUnique() {
+    return unique;
+  }
+
+  /**
+   * Reads the indexed values of {@code resource}.
+   */
+  List<Object> values(Object resource) {
+    return values(resource, parentAttribute, attribute);
+  }
+
+  /**
+   * Reads and normalizes the indexed values of {@code resource}.
+   */
+  List<Object> keys(Object resource) {
+    List<Object> values = values(resource);
+    List<Object> keys = new ArrayList<>(values.size());
+    for (Object value : values) {
+      keys.add(key(value));
+    }
+    return keys;
+  }
+
+  /**
+   * Returns the id of another resource that already holds one of {@code values}, or null.
+   */
+  String conflict(String id, List<Object> values) {
+    for (Object value : values) {
+      Set<String> ids = entries.get(key(value));
+      if (ids != null) {
+        for (String existingId : ids) {
+          if (!existingId.equals(id)) {
+            return existingId;
+          }
+        }
+      }
+    }
+    return null;
+  }
+
+  void add(String id, List<Object> values) {
+    if (values.isEmpty()) {
+      return;
+    }
+    valuesById.put(id, values);
+    for (Object value : values) {
+      entries.computeIfAbsent(key(value), k -> ConcurrentHashMap.newKeySet()).add(id);
+      if (orderedEntries != null) {
+        Object orderKey = widen(value);
+        orderedEntries.computeIfAbsent(orderKey, k -> ConcurrentHashMap.newKeySet()).add(id);
+        if (keyClass == null && !mixedKeys) {
+          keyClass = orderKey.getClass();
+        } else if (keyClass != orderKey.getClass()) {
+          mixedKeys = true;
+          keyClass = null;
+        }
+      }
+      if (trigrams != null) {
+        trigrams.add(id, value);
+      }
+    }
+  }
+
+  void remove(String id) {
+    List<Object> values = valuesById.remove(id);
+    if (values == null) {
+      return;
+    }
+    for (Object value : values) {
+      removeId(entries, key(value), id);
+      if (orderedEntries != null) {
+        removeId(orderedEntries, widen(value), id);
+      }
+      if (trigrams != null) {
+        trigrams.remove(id, value);
+      }
+    }
+  }
+
+  /**
+   * Returns the size of this index.
+   */
+  IndexStatistics statistics() {
+    long keyCount = entries.size();
+    long entryCount = 0;
+    for (Set<String> ids : entries.values()) {
+      entryCount += ids.size();
+    }
+    long bytes = keyCount * KEY_BYTES + entryCount * ENTRY_BYTES + valuesById.size() * KEY_BYTES;
+    if (orderedEntries != null) {
+      bytes += keyCount * KEY_BYTES + entryCount * ENTRY_BYTES;
+    }
+    if (trigrams != null) {
+      long gramCount = trigrams.gramCount();
+      long postingCount = trigrams.postingCount();
+      keyCount += gramCount;
+      entryCount += postingCount;
+      bytes += gramCount * KEY_BYTES + postingCount * ENTRY_BYTES;
+    }
+    return new IndexStatistics(name, types, keyCount, entryCount, bytes);
+  }
+
+  private static void removeId(Map<Object, Set<String>> entries, Object key, String id) {
+    entries.computeIfPresent(key, (k, ids) -> {
+      ids.remove(id);
+      return ids.isEmpty() ? null : ids;
+    });
+  }
+
+  /**
+   * Returns true if {@link #lookup(CompareOperator, Object)} returns exactly the resources that match
+   * {@code <attribute> eq <compareValue>}: the attribute is a single-valued string, compared the same way as the
+   * filter compares it, can be filtered on, and is not held by a multi-valued attribute.
+   */
+  boolean isExactEquality(Object compareValue) {
+    return compareValue instanceof String
+      && attribute.getType() == Schema.Attribute.Type.STRING
+      && attribute.getReturned() != Schema.Attribute.Returned.NEVER
+      && !attribute.isMultiValued()
+      && (parentAttribute == null || !parentAttribute.isMultiValued());
+  }
+
+  /**
+   * Returns the ids of the resources that may match {@code <attribute> <op> <compareValue>}, or null if this index
+   * can't answer the comparison.
+   */
+  Set<String> lookup(CompareOperator op, Object compareValue) {
+    if (op == CompareOperator.EQ) {
+      Object key = compareKey(compareValue);
+      if (key == null) {
+        return null;
+      }
+      Set<String> ids = entries.get(key);
+      return ids != null ? ids : Collections.emptySet();
+    }
+    if (trigrams != null && (op == CompareOperator.CO || op == CompareOperator.EW
+        || (op == CompareOperator.SW && orderedEntries == null))) {
+      return trigrams.lookup(op, compareValue);
+    }
+
+    Object orderKey = orderCompareKey(compareValue);
+    if (orderedEntries == null || orderKey == null || mixedKeys || (keyClass != null && keyClass != orderKey.getClass())) {
+      return null;
+    }
+    switch (op) {
+      case SW:
+        if (!(orderKey instanceof String)) {
+          return null;
+        }
+        String prefix = (String) orderKey;
+        Set<String> ids = new HashSet<>();
+        for (Map.Entry<Object, Set<String>> entry : orderedEntries.tailMap(prefix, true).entrySet()) {
+          if (!((String) entry.getKey()).startsWith(prefix)) {
+            break;
+          }
+          ids.addAll(entry.getValue());
+        }
+        return ids;
+      case GT:
+      case GE:
+      case LT:
+      case LE:
+        return union(range(orderedEntries, op, orderKey).values());
+      default:
+        return null;
+    }
+  }
+
+  private static NavigableMap<Object, Set<String>> range(NavigableMap<Object, Set<String>> entries, CompareOperator op, Object key) {
+    switch (op) {
+      case GT:
+        return entries.tailMap(key, false);
+      case GE:
+        return entries.tailMap(key, true);
+      case LT:
+        return entries.headMap(key, false);
+      default:
+        return entries.headMap(key, true);
+    }
+  }
+
+  private static Set<String> union(Collection<Set<String>> idSets) {
+    Set<String> ids = new HashSet<>();
+    for (Set<String> idSet : idSets) {
+      ids.addAll(idSet);
+    }
+    return ids;
+  }
+
+  /**
+   * Normalizes an attribute value into an index key.
+   */
+  Object key(Object value) {
+    if (value instanceof String && !attribute.isCaseExact()) {
+      return FilterExpressions.foldCase((String) value);
+    }
+    return widen(value);
+  }
+
+  private static Object widen(Object value) {
+    if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+      return ((Number) value).longValue();
+    }
+    if (value instanceof Float || value instanceof Double) {
+      return ((Number) value).doubleValue();
+    }
+    return value;
+  }
+
+  /**
+   * Converts a filter compare value into an index key, or returns null if it can't be converted.
+   */
+  private Object compareKey(Object compareValue) {
+    if (compareValue == null) {
+      return null;
+    }
+    Schema.Attribute.Type attributeType = attribute.getType();
+    if (attributeType == Schema.Attribute.Type.STRING || attributeType == Schema.Attribute.Type.REFERENCE) {
+      // case-insensitive attributes are compared to the compare value's text
+      if (!attribute.isCaseExact()) {
+        return FilterExpressions.foldCase(compareValue.toString());
+      }
+      return compareValue instanceof String ? compareValue : null;
+    }
+    if (compareValue instanceof String && attributeType == Schema.Attribute.Type.DATE_TIME) {
+      return parseDateTime((String) compareValue);
+    }
+    if (compareValue instanceof String) {
+      return null;
+    }
+    return key(compareValue);
+  }
+
+  /**
+   * Converts a filter compare value into an ordered key, or returns null if it can't be converted. The filter compares
+   * strings case sensitively for ordering and prefixes.
+   */
+  private Object orderCompareKey(Object compareValue) {
+    if (compareValue instanceof String) {
+      Schema.Attribute.Type attributeType = attribute.getType();
+      if (attributeType == Schema.Attribute.Type.DATE_TIME) {
+        return parseDateTime((String) compareValue);
+      }
+      return attributeType == Schema.Attribute.Type.STRING || attributeType == Schema.Attribute.Type.REFERENCE ? compareValue : null;
+    }
+    return compareValue != null ? widen(compareValue) : null;
+  }
+
+  private Object parseDateTime(String text) {
+    Schema.AttributeAccessor accessor = attribute.getAccessor();
+    Class<?> javaType = accessor != null ? accessor.getType() : null;
+    try {
+      if (javaType == LocalDateTime.class) {
+        return LocalDateTime.parse(text);
+      } else if (javaType == LocalDate.class) {
+        return LocalDate.parse(text);
+      } else if (javaType == LocalTime.class) {
+        return LocalTime.parse(text);
+      } else if (javaType == Instant.class) {
+        return Instant.parse(text);
+      } else if (javaType == Date.class) {
+        return Date.from(Instant.parse(text));
+      }
+    } catch (DateTimeParseException e) {
+      log.debug("Unable to convert '{}' to {}", text, javaType, e);
+    }
+    return null;
+  }
+
+  /**
+   * Reads the values of {@code attribute} (a sub-attribute of {@code parentAttribute} if it is not null) from a
+   * resource, flattening multi-valued attributes, null values are skipped.
+   */
+  static List<Object> values(Object resource, Schema.Attribute parentAttribute, Schema.Attribute attribute) {
+    List<Object> values = new ArrayList<>();
+    if (parentAttribute == null) {
+      addValues(values, read(attribute, resource));
+      return values;
+    }
+    Object parent = read(parentAttribute, resource);
+    if (parent instanceof Collection) {
+      for (Object element : (Collection<?>) parent) {
+        addValues(values, read(attribute, element));
+      }
+    } else {
+      addValues(values, read(attribute, parent));
+    }
+    return values;
+  }
+
+  private static Object read(Schema.Attribute attribute, Object object) {
+    Schema.AttributeAccessor accessor = attribute.getAccessor();
+    if (object == null || accessor == null || !accessor.isAccessible(object)) {
+      return null;
+    }
+    return accessor.get(object);
+  }
+
+  private static void addValues(List<Object> values, Object value) {
+    if (value instanceof Collection) {
+      for (Object element : (Collection<?>) value) {
+        if (element != null) {
+          values.add(element);
+        }
+      }
+    } else if (value != null) {
+      values.add(value);
+    }
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  static int compareKeys(Object left, Object right) {
+    if (left.getClass() == right.getClass() && left instanceof Comparable) {
+      return ((Comparable) left).compareTo(right);
+    }
+    // keys of different classes are never equal, order them by class so the map stays consistent
+    int byClass = left.getClass().getName().compareTo(right.getClass().getName());
+    return byClass != 0 ? byClass : Integer.compare(System.identityHashCode(left), System.identityHashCode(right));
+  }
+}
@@ -0,0 +1,385 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.repository.memory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.directory.scim.core.repository.CursorCodec;
+import org.apache.directory.scim.core.repository.PatchHandler;
+import org.apache.directory.scim.core.repository.Repository;
+import org.apache.directory.scim.core.repository.SortEngine;
+import org.apache.directory.scim.spec.exception.ConflictResourceException;
+import org.apache.directory.scim.spec.exception.InvalidCursorException;
+import org.apache.directory.scim.spec.exception.ResourceException;
+import org.apache.directory.scim.spec.filter.Filter;
+import org.apache.directory.scim.spec.filter.FilterExpression;
+import org.apache.directory.scim.spec.filter.FilterExpressions;
+import org.apache.directory.scim.spec.filter.FilterResponse;
+import org.apache.directory.scim.spec.filter.PageRequest;
+import org.apache.directory.scim.spec.filter.SortRequest;
+import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
+import org.apache.directory.scim.spec.patch.PatchOperation;
+import org.apache.directory.scim.spec.resources.ScimResource;
+import org.apache.directory.scim.spec.schema.Schema;
+import org.apache.directory.scim.spec.schema.Schemas;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * A thread-safe {@link Repository} that keeps resources in memory, with secondary indexes to answer filters without
+ * testing every resource.
+ * <p>
+ * Attributes with a {@code server} or {@code global} uniqueness are indexed automatically and their uniqueness is
+ * enforced, other attributes (or sub-attributes, e.g. {@code emails.value}) can be indexed with
+ * {@link #addIndex(String, IndexType)}. When a filter is found, the indexes of the attributes it compares are used
+ * to narrow down the candidate resources, each candidate is then tested against the filter. Filters that can't use an
+ * index are answered by testing every resource.
+ * <p>
+ * Matches are sorted and paged by a {@link SortEngine}, resources with equal sort values are ordered by id.
+ * Pages can be requested with a {@code startIndex}, or with a cursor (see {@link PageRequest#getCursor()}), which
+ * holds the sort key and the id of the last resource of the previous page, so the pages of a cursor stay consistent
+ * when resources are added or removed between requests. Cursors are encoded with {@link CursorCodec#base64()} unless
+ * another codec is set with {@link #setCursorCodec(CursorCodec)}.
+ * <p>
+ * Resources are stored as given: callers must not modify a resource after passing it to, or receiving it from, this
+ * repository.
+ *
+ * @param <T> the type of resource stored
+ */
+@Slf4j
+public class InMemoryRepository<T extends ScimResource> implements Repository<T> {
+
+  private final Class<T> resourceClass;
+
+  private final Schema schema;
+
+  private final PatchHandler patchHandler;
+
+  private final Map<String, T> resources = new ConcurrentHashMap<>();
+
+  private final Map<String, AttributeIndex> indexes = new ConcurrentHashMap<>();
+
+  private final IndexPlanner indexPlanner = new IndexPlanner(this::index);
+
+  // index updates are not atomic, writers hold the write lock, and queries that read indexes hold the read lock
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private volatile CursorCodec cursorCodec = CursorCodec.base64();
+
+  public InMemoryRepository(Class<T> resourceClass, PatchHandler patchHandler) {
+    this(resourceClass, Schemas.schemaFor(resourceClass), patchHandler);
+  }
+
+  public InMemoryRepository(Class<T> resourceClass, Schema schema, PatchHandler patchHandler) {
+    this.resourceClass = resourceClass;
+    this.schema = schema;
+    this.patchHandler = patchHandler;
+
+    for (Schema.Attribute attribute : schema.getAttributes()) {
+      Schema.Attribute.Uniqueness uniqueness = attribute.getUniqueness();
+      if (!"id".equals(attribute.getName()) && isIndexable(attribute)
+        && uniqueness != null && uniqueness != Schema.Attribute.Uniqueness.NONE) {
+        indexes.put(key(attribute.getName()), new AttributeIndex(attribute.getName(), null, attribute, EnumSet.of(IndexType.HASH), true));
+      }
+    }
+  }
+
+  /**
+   * Adds a secondary index on {@code attributePath}, a top level attribute (e.g. {@code userName}) or a
+   * sub-attribute (e.g. {@code emails.value}) of this repository's schema. Existing resources are indexed immediately.
+   * An attribute can have several types of index, e.g. both a {@link IndexType#SORTED} and a
+   * {@link IndexType#TRIGRAM} index.
+   *
+   * @param attributePath the attribute to index.
+   * @param type the type of index.
+   * @return this repository.
+   * @throws IllegalArgumentException if the attribute does not exist, or is a complex attribute, or if a trigram index
+   *         is added to an attribute that is not a string or a reference.
+   */
+  public InMemoryRepository<T> addIndex(String attributePath, IndexType type) {
+    AttributeReference attributeReference = new AttributeReference(attributePath);
+    Schema.Attribute parentAttribute = null;
+    Schema.Attribute attribute = schema.getAttribute(attributeReference.getAttributeName());
+    if (attribute != null && attributeReference.hasSubAttribute()) {
+      parentAttribute = attribute;
+      attribute = attribute.getAttribute(attributeReference.getSubAttributeName());
+    }
+    if (attribute == null || !isIndexable(attribute)) {
+      throw new IllegalArgumentException("Attribute '" + attributePath + "' can not be indexed in schema " + schema.getId());
+    }
+    if (type == IndexType.TRIGRAM && attribute.getType() != Schema.Attribute.Type.STRING
+        && attribute.getType() != Schema.Attribute.Type.REFERENCE) {
+      throw new IllegalArgumentException("Attribute '" + attributePath + "' is not a string, it can not have a trigram index");
+    }
+
+    lock.writeLock().lock();
+    try {
+      AttributeIndex existing = indexes.get(key(attributePath));
+      boolean unique = existing != null && existing.isUnique();
+      Set<IndexType> types = EnumSet.of(type);
+      if (existing != null) {
+        types.addAll(existing.getTypes());
+      }
+      AttributeIndex index = new AttributeIndex(attributePath, parentAttribute, attribute, types, unique);
+      resources.forEach((id, resource) -> index.add(id, index.values(resource)));
+      indexes.put(key(attributePath), index);
+    } finally {
+      lock.writeLock().unlock();
+    }
+    return this;
+  }
+
+  /**
+   * Sets the codec of the cursors returned by, and passed to, {@link #find(Filter, PageRequest, SortRequest)}.
+   *
+   * @return this repository.
+   */
+  public InMemoryRepository<T> setCursorCodec(CursorCodec cursorCodec) {
+    this.cursorCodec = cursorCodec;
+    return this;
+  }
+
+  @Override
+  public Class<T> getResourceClass() {
+    return resourceClass;
+  }
+
+  @Override
+  public T create(T resource) throws ResourceException {
+    lock.writeLock().lock();
+    try {
+      String id = resource.getId() != null && !resources.containsKey(resource.getId())
+        ? resource.getId()
+        : UUID.randomUUID().toString();
+      resource.setId(id);
+      store(id, resource);
+      return resource;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public T update(String id, String version, T resource, Set<AttributeReference> includedAttributes, Set<AttributeReference> excludedAttributes) throws ResourceException {
+    lock.writeLock().lock();
+    try {
+      if (!resources.containsKey(id)) {
+        throw new ResourceException(404, "Resource " + id + " not found");
+      }
+      store(id, resource);
+      return resource;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public T patch(String id, String version, List<PatchOperation> patchOperations, Set<AttributeReference> includedAttributes, Set<AttributeReference> excludedAttributes) throws ResourceException {
+    lock.writeLock().lock();
+    try {
+      T existing = resources.get(id);
+      if (existing == null) {
+        throw new ResourceException(404, "Resource " + id + " not found");
+      }
+      T resource = patchHandler.apply(existing, patchOperations);
+      store(id, resource);
+      return resource;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public T get(String id) {
+    return resources.get(id);
+  }
+
+  @Override
+  public void delete(String id) {
+    lock.writeLock().lock();
+    try {
+      if (resources.remove(id) != null) {
+        indexes.values().forEach(index -> index.remove(id));
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public FilterResponse<T> find(Filter filter, PageRequest pageRequest, SortRequest sortRequest) throws InvalidCursorException {
+    Predicate<T> predicate = FilterExpressions.inMemory(filter, schema)::test;
+
+    List<T> matches = new ArrayList<>();
+    lock.readLock().lock();
+    try {
+      Collection<String> candidateIds = candidates(filter);
+      if (candidateIds == null) {
+        for (T resource : resources.values()) {
+          if (predicate.test(resource)) {
+            matches.add(resource);
+          }
+        }
+      } else {
+        for (String id : candidateIds) {
+          T resource = resources.get(id);
+          if (resource != null && predicate.test(resource)) {
+            matches.add(resource);
+          }
+        }
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+
+    // resources are kept in a hash map, ids break ties so pages are stable between requests
+    SortEngine<T> sortEngine = SortEngine.<T>of(sortRequest, schema).thenById();
+    if (pageRequest != null && pageRequest.isCursorPaged()) {
+      return sortEngine.cursorPage(matches, pageRequest, cursorCodec);
+    }
+    return new FilterResponse<>(sortEngine.page(matches, pageRequest), pageRequest, matches.size());
+  }
+
+  @Override
+  public boolean supportsCursorPagination() {
+    return true;
+  }
+
+  /**
+   * Counts the resources that match {@code filter} without sorting or copying them. Equality filters on indexed
+   * single-valued strings (e.g. {@code userName eq "bjensen"}), and their {@code and} and {@code or}, are answered from
+   * the indexes alone, other filters test the candidate resources of the indexes.
+   */
+  @Override
+  public int count(Filter filter) {
+    FilterExpression expression = filter != null ? filter.getExpression() : null;
+    if (expression == null) {
+      return resources.size();
+    }
+    FilterExpression optimized = FilterExpressions.optimize(expression, schema);
+    Predicate<T> predicate = FilterExpressions.inMemory(filter, schema)::test;
+
+    lock.readLock().lock();
+    try {
+      Set<String> matches = indexPlanner.matches(optimized);
+      if (matches != null) {
+        return matches.size();
+      }
+
+      int count = 0;
+      Collection<String> candidateIds = indexPlanner.apply(optimized, schema);
+      if (candidateIds == null) {
+        for (T resource : resources.values()) {
+          if (predicate.test(resource)) {
+            count++;
+          }
+        }
+      } else {
+        for (String id : candidateIds) {
+          T resource = resources.get(id);
+          if (resource != null && predicate.test(resource)) {
+            count++;
+          }
+        }
+      }
+      return count;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Returns the number of resources in this repository.
+   */
+  public int size() {
+    return resources.size();
+  }
+
+  /**
+   * Returns the size of each secondary index, including its estimated memory footprint.
+   */
+  public List<IndexStatistics> getIndexStatistics() {
+    lock.readLock().lock();
+    try {
+      List<IndexStatistics> statistics = new ArrayList<>(indexes.size());
+      for (AttributeIndex index : indexes.values()) {
+        statistics.add(index.statistics());
+      }
+      return statistics;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Returns the ids of the resources that may match {@code filter}, or null if every resource needs to be tested.
+   */
+  Collection<String> candidates(Filter filter) {
+    FilterExpression expression = filter != null ? filter.getExpression() : null;
+    if (expression == null) {
+      return null;
+    }
+    return indexPlanner.apply(FilterExpressions.optimize(expression, schema), schema);
+  }
+
+  private void store(String id, T resource) throws ConflictResourceException {
+    Map<AttributeIndex, List<Object>> values = new HashMap<>();
+    for (AttributeIndex index : indexes.values()) {
+      List<Object> indexValues = index.values(resource);
+      if (index.isUnique() && index.conflict(id, indexValues) != null) {
+        throw new ConflictResourceException("A resource with the same " + index.getName() + " already exists.");
+      }
+      values.put(index, indexValues);
+    }
+
+    resources.put(id, resource);
+    values.forEach((index, indexValues) -> {
+      index.remove(id);
+      index.add(id, indexValues);
+    });
+  }
+
+  private AttributeIndex index(AttributeReference attributeReference) {
+    String urn = attributeReference.getUrn();
+    if (urn != null && !urn.equalsIgnoreCase(schema.getId())) {
+      return null;
+    }
+    return indexes.get(key(attributeReference.getFullAttributeName()));
+  }
+
+  private static boolean isIndexable(Schema.Attribute attribute) {
+    return attribute.getType() != Schema.Attribute.Type.COMPLEX;
+  }
+
+  private static String key(String attributePath) {
+    return attributePath.toLowerCase(Locale.ROOT);
+  }
+}
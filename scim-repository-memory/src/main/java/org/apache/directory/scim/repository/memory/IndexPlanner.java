@@ -0,0 +1,203 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.repository.memory;
+
+import org.apache.directory.scim.spec.filter.AttributeComparisonExpression;
+import org.apache.directory.scim.spec.filter.AttributeInExpression;
+import org.apache.directory.scim.spec.filter.AttributePresentExpression;
+import org.apache.directory.scim.spec.filter.BaseFilterExpressionMapper;
+import org.apache.directory.scim.spec.filter.CompareOperator;
+import org.apache.directory.scim.spec.filter.FilterExpression;
+import org.apache.directory.scim.spec.filter.GroupExpression;
+import org.apache.directory.scim.spec.filter.LogicalExpression;
+import org.apache.directory.scim.spec.filter.LogicalOperator;
+import org.apache.directory.scim.spec.filter.NaryLogicalExpression;
+import org.apache.directory.scim.spec.filter.ValuePathExpression;
+import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
+import org.apache.directory.scim.spec.schema.AttributeContainer;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Maps a FilterExpression to the ids of the candidate resources that may match it, using the repository's indexes.
+ * A null result means no index applies and every resource has to be tested.
+ * <p>
+ * Candidates are a superset of the matches: an {@code and} is answered by any operand that has an index, an {@code or}
+ * only if all of its operands have one, and {@code not} is never answered.
+ */
+class IndexPlanner extends BaseFilterExpressionMapper<Set<String>> {
+
+  private final Function<AttributeReference, AttributeIndex> indexes;
+
+  IndexPlanner(Function<AttributeReference, AttributeIndex> indexes) {
+    this.indexes = indexes;
+  }
+
+  /**
+   * Returns the ids of the resources that match {@code expression}, or null if the indexes can't answer it exactly.
+   * Only the {@code eq} comparisons of {@link AttributeIndex#isExactEquality(Object)}, and their {@code and} and
+   * {@code or}, are answered.
+   */
+  Set<String> matches(FilterExpression expression) {
+    if (expression instanceof AttributeComparisonExpression) {
+      AttributeComparisonExpression comparison = (AttributeComparisonExpression) expression;
+      AttributeIndex index = indexes.apply(comparison.getAttributePath());
+      return index != null && comparison.getOperation() == CompareOperator.EQ && index.isExactEquality(comparison.getCompareValue())
+        ? index.lookup(CompareOperator.EQ, comparison.getCompareValue())
+        : null;
+    }
+    if (expression instanceof GroupExpression && !((GroupExpression) expression).isNot()) {
+      return matches(((GroupExpression) expression).getFilterExpression());
+    }
+    List<FilterExpression> operands;
+    LogicalOperator operator;
+    if (expression instanceof LogicalExpression) {
+      LogicalExpression logicalExpression = (LogicalExpression) expression;
+      operands = List.of(logicalExpression.getLeft(), logicalExpression.getRight());
+      operator = logicalExpression.getOperator();
+    } else if (expression instanceof NaryLogicalExpression) {
+      operands = ((NaryLogicalExpression) expression).getOperands();
+      operator = ((NaryLogicalExpression) expression).getOperator();
+    } else {
+      return null;
+    }
+
+    List<Set<String>> operandIds = new ArrayList<>(operands.size());
+    for (FilterExpression operand : operands) {
+      Set<String> ids = matches(operand);
+      if (ids == null) {
+        return null;
+      }
+      operandIds.add(ids);
+    }
+    if (operandIds.size() == 1) {
+      return operandIds.get(0);
+    }
+    Set<String> ids;
+    if (operator == LogicalOperator.OR) {
+      ids = new HashSet<>();
+      operandIds.forEach(ids::addAll);
+    } else {
+      operandIds.sort(Comparator.comparingInt(Set::size));
+      ids = new HashSet<>(operandIds.get(0));
+      for (int i = 1; i < operandIds.size() && !ids.isEmpty(); i++) {
+        ids.retainAll(operandIds.get(i));
+      }
+    }
+    return ids;
+  }
+
+  @Override
+  protected Set<String> apply(AttributeComparisonExpression expression, AttributeContainer attributeContainer) {
+    AttributeIndex index = indexes.apply(expression.getAttributePath());
+    return index != null ? index.lookup(expression.getOperation(), expression.getCompareValue()) : null;
+  }
+
+  @Override
+  protected Set<String> apply(AttributeInExpression expression, AttributeContainer attributeContainer) {
+    AttributeIndex index = indexes.apply(expression.getAttributePath());
+    if (index == null) {
+      return null;
+    }
+    Set<String> ids = new HashSet<>();
+    for (Object compareValue : expression.getCompareValues()) {
+      Set<String> valueIds = index.lookup(CompareOperator.EQ, compareValue);
+      if (valueIds == null) {
+        return null;
+      }
+      ids.addAll(valueIds);
+    }
+    return ids;
+  }
+
+  @Override
+  protected Set<String> apply(NaryLogicalExpression expression, AttributeContainer attributeContainer) {
+    List<Set<String>> operands = new ArrayList<>(expression.getOperands().size());
+    for (FilterExpression operand : expression.getOperands()) {
+      Set<String> ids = apply(operand, attributeContainer);
+      if (ids == null && expression.getOperator() == LogicalOperator.OR) {
+        return null;
+      }
+      if (ids != null) {
+        operands.add(ids);
+      }
+    }
+    if (operands.isEmpty()) {
+      return null;
+    }
+    if (expression.getOperator() == LogicalOperator.OR) {
+      Set<String> ids = new HashSet<>();
+      operands.forEach(ids::addAll);
+      return ids;
+    }
+    // intersect starting from the smallest set
+    operands.sort(Comparator.comparingInt(Set::size));
+    Set<String> ids = new HashSet<>(operands.get(0));
+    for (int i = 1; i < operands.size() && !ids.isEmpty(); i++) {
+      ids.retainAll(operands.get(i));
+    }
+    return ids;
+  }
+
+  @Override
+  protected Set<String> apply(LogicalOperator op, Set<String> left, Set<String> right) {
+    if (op == LogicalOperator.AND) {
+      if (left == null || right == null) {
+        return left != null ? left : right;
+      }
+      Set<String> ids = new HashSet<>(left.size() <= right.size() ? left : right);
+      ids.retainAll(left.size() <= right.size() ? right : left);
+      return ids;
+    }
+    if (left == null || right == null) {
+      return null;
+    }
+    Set<String> ids = new HashSet<>(left);
+    ids.addAll(right);
+    return ids;
+  }
+
+  @Override
+  protected Set<String> negate(Set<String> expression) {
+    return null;
+  }
+
+  @Override
+  protected Set<String> apply(AttributePresentExpression expression, AttributeContainer attributeContainer) {
+    return null;
+  }
+
+  @Override
+  protected Set<String> apply(ValuePathExpression expression, AttributeContainer attributeContainer) {
+    // attributes in a value path are qualified with the parent, e.g. `emails[type eq "work"]` holds `emails.type`
+    FilterExpression attributeExpression = expression.getAttributeExpression();
+    return attributeExpression != null ? apply(attributeExpression, attributeContainer) : null;
+  }
+
+  @Override
+  protected Set<String> unhandledExpression(FilterExpression expression, AttributeContainer attributeContainer) {
+    return null;
+  }
+}
@@ -0,0 +1,54 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.repository.memory;
+
+import lombok.Value;
+
+import java.util.Set;
+
+/**
+ * The size of one attribute index of an {@link InMemoryRepository}.
+ */
+@Value
+public class IndexStatistics {
+
+  /**
+   * The indexed attribute path, e.g. {@code emails.value}.
+   */
+  String attributePath;
+
+  Set<IndexType> types;
+
+  /**
+   * The number of distinct keys (values, and trigrams for a trigram index).
+   */
+  long keyCount;
+
+  /**
+   * The number of key to resource id entries.
+   */
+  long entryCount;
+
+  /**
+   * A rough estimate of the heap used by the index, based on typical object sizes of a 64-bit JVM with compressed
+   * references.
+   */
+  long estimatedBytes;
+}
@@ -0,0 +1,42 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.repository.memory;
+
+/**
+ * The kind of secondary index an {@link InMemoryRepository} keeps for an attribute.
+ */
+public enum IndexType {
+
+  /**
+   * Answers {@code eq} comparisons with a hash lookup.
+   */
+  HASH,
+
+  /**
+   * Answers {@code eq}, {@code gt}, {@code ge}, {@code lt}, {@code le} and {@code sw} comparisons with a sorted map.
+   */
+  SORTED,
+
+  /**
+   * Answers {@code co}, {@code sw} and {@code ew} comparisons of string attributes with an index of the trigrams of
+   * each value.
+   */
+  TRIGRAM
+}
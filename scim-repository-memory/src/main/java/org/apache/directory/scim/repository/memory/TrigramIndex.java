@@ -0,0 +1,156 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.repository.memory;
+
+import org.apache.directory.scim.spec.filter.CompareOperator;
+import org.apache.directory.scim.spec.filter.FilterExpressions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An index from the three character substrings (trigrams) of string values to the ids of the resources holding them,
+ * used to answer {@code co}, {@code sw} and {@code ew} comparisons.
+ * <p>
+ * Values are padded with a start and an end marker before they are split, so prefixes and suffixes have trigrams of
+ * their own and values shorter than three characters are still indexed. Values of case-insensitive attributes are
+ * case folded first. A lookup intersects the ids of each trigram of the compare value, which yields every resource
+ * holding a value that contains them; these are candidates that still need to be tested against the filter.
+ */
+final class TrigramIndex {
+
+  private static final int GRAM_LENGTH = 3;
+
+  private static final char START = (char) 2;
+
+  private static final char END = (char) 3;
+
+  private final boolean caseExact;
+
+  private final Map<String, Set<String>> postings = new ConcurrentHashMap<>();
+
+  TrigramIndex(boolean caseExact) {
+    this.caseExact = caseExact;
+  }
+
+  void add(String id, Object value) {
+    for (String gram : grams(START + normalize(value.toString()) + END)) {
+      postings.computeIfAbsent(gram, k -> ConcurrentHashMap.newKeySet()).add(id);
+    }
+  }
+
+  void remove(String id, Object value) {
+    for (String gram : grams(START + normalize(value.toString()) + END)) {
+      postings.computeIfPresent(gram, (k, ids) -> {
+        ids.remove(id);
+        return ids.isEmpty() ? null : ids;
+      });
+    }
+  }
+
+  /**
+   * Returns the ids of the resources that may match {@code <attribute> <op> <compareValue>}, or null if the comparison
+   * can't be answered with trigrams.
+   */
+  Set<String> lookup(CompareOperator op, Object compareValue) {
+    if (compareValue == null) {
+      return null;
+    }
+    String text = normalize(compareValue.toString());
+    switch (op) {
+      case CO:
+        break;
+      case SW:
+        text = START + text;
+        break;
+      case EW:
+        text = text + END;
+        break;
+      default:
+        return null;
+    }
+    if (text.isEmpty()) {
+      // everything contains the empty string
+      return null;
+    }
+    return text.length() < GRAM_LENGTH ? containing(text) : intersect(grams(text));
+  }
+
+  int gramCount() {
+    return postings.size();
+  }
+
+  long postingCount() {
+    long count = 0;
+    for (Set<String> ids : postings.values()) {
+      count += ids.size();
+    }
+    return count;
+  }
+
+  private Set<String> intersect(Set<String> grams) {
+    List<Set<String>> idSets = new ArrayList<>(grams.size());
+    for (String gram : grams) {
+      Set<String> ids = postings.get(gram);
+      if (ids == null) {
+        return Collections.emptySet();
+      }
+      idSets.add(ids);
+    }
+    idSets.sort(Comparator.comparingInt(Set::size));
+    Set<String> result = new HashSet<>(idSets.get(0));
+    for (int i = 1; i < idSets.size() && !result.isEmpty(); i++) {
+      result.retainAll(idSets.get(i));
+    }
+    return result;
+  }
+
+  /**
+   * Answers a compare value that is shorter than a trigram, with the union of every trigram that contains it.
+   */
+  private Set<String> containing(String text) {
+    Set<String> result = new HashSet<>();
+    for (Map.Entry<String, Set<String>> entry : postings.entrySet()) {
+      if (entry.getKey().contains(text)) {
+        result.addAll(entry.getValue());
+      }
+    }
+    return result;
+  }
+
+  private String normalize(String value) {
+    return caseExact ? value : FilterExpressions.foldCase(value);
+  }
+
+  private static Set<String> grams(String text) {
+    Set<String> grams = new LinkedHashSet<>();
+    for (int index = 0; index + GRAM_LENGTH <= text.length(); index++) {
+      grams.add(text.substring(index, index + GRAM_LENGTH));
+    }
+    return grams;
+  }
+}
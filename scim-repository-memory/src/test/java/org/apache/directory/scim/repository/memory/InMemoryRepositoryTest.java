@@ -0,0 +1,395 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.repository.memory;
+
+import org.apache.directory.scim.core.repository.DefaultPatchHandler;
+import org.apache.directory.scim.core.schema.SchemaRegistry;
+import org.apache.directory.scim.spec.exception.ConflictResourceException;
+import org.apache.directory.scim.spec.exception.InvalidCursorException;
+import org.apache.directory.scim.spec.exception.ResourceException;
+import org.apache.directory.scim.spec.filter.Filter;
+import org.apache.directory.scim.spec.filter.FilterExpressions;
+import org.apache.directory.scim.spec.filter.FilterResponse;
+import org.apache.directory.scim.spec.filter.PageRequest;
+import org.apache.directory.scim.spec.filter.SortOrder;
+import org.apache.directory.scim.spec.filter.SortRequest;
+import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
+import org.apache.directory.scim.spec.patch.PatchOperation;
+import org.apache.directory.scim.spec.patch.PatchOperationPath;
+import org.apache.directory.scim.spec.resources.Email;
+import org.apache.directory.scim.spec.resources.Name;
+import org.apache.directory.scim.spec.resources.ScimUser;
+import org.apache.directory.scim.spec.schema.Schemas;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class InMemoryRepositoryTest {
+
+  private InMemoryRepository<ScimUser> repository;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    SchemaRegistry schemaRegistry = new SchemaRegistry();
+    schemaRegistry.addSchema(ScimUser.class, List.of());
+    repository = new InMemoryRepository<>(ScimUser.class, new DefaultPatchHandler(schemaRegistry))
+      .addIndex("emails.value", IndexType.HASH)
+      .addIndex("name.familyName", IndexType.SORTED)
+      .addIndex("title", IndexType.SORTED);
+
+    for (int i = 0; i < 50; i++) {
+      repository.create(user(i));
+    }
+  }
+
+  @Test
+  public void createAssignsId() throws Exception {
+    ScimUser user = repository.create(new ScimUser().setUserName("new-user"));
+
+    assertThat(user.getId()).isNotNull();
+    assertThat(repository.get(user.getId())).isSameAs(user);
+  }
+
+  @Test
+  public void duplicateUserNameIsRejected() throws Exception {
+    assertThatThrownBy(() -> repository.create(new ScimUser().setUserName("USER-1")))
+      .isInstanceOf(ConflictResourceException.class);
+    assertThat(repository.size()).isEqualTo(50);
+  }
+
+  @Test
+  public void updateKeepsOwnUserName() throws Exception {
+    ScimUser user = find("userName eq \"user-1\"").get(0);
+    repository.update(user.getId(), null, user(1).setId(user.getId()).setTitle("changed"), null, null);
+
+    assertThat(find("title eq \"changed\"")).extracting(ScimUser::getUserName).containsExactly("user-1");
+    assertThatThrownBy(() -> repository.update(user.getId(), null, user(2).setId(user.getId()), null, null))
+      .isInstanceOf(ConflictResourceException.class);
+  }
+
+  @Test
+  public void updateAndPatchOfMissingResourceAreNotFound() throws Exception {
+    PatchOperation operation = new PatchOperation();
+    operation.setOperation(PatchOperation.Type.REPLACE);
+    operation.setPath(PatchOperationPath.fromString("title"));
+    operation.setValue("patched");
+
+    assertThatThrownBy(() -> repository.update("missing", null, new ScimUser().setUserName("missing"), null, null))
+      .isInstanceOfSatisfying(ResourceException.class, e -> assertThat(e.getStatus()).isEqualTo(404));
+    assertThatThrownBy(() -> repository.patch("missing", null, List.of(operation), null, null))
+      .isInstanceOfSatisfying(ResourceException.class, e -> assertThat(e.getStatus()).isEqualTo(404));
+    assertThat(repository.get("missing")).isNull();
+    assertThat(repository.size()).isEqualTo(50);
+  }
+
+  @Test
+  public void deleteRemovesFromIndexes() throws Exception {
+    ScimUser user = find("userName eq \"user-1\"").get(0);
+    repository.delete(user.getId());
+
+    assertThat(find("userName eq \"user-1\"")).isEmpty();
+    assertThat(find("emails.value eq \"user-1@example.com\"")).isEmpty();
+    repository.create(new ScimUser().setUserName("user-1"));
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {
+    "userName eq \"USER-7\"",
+    "userName eq \"user-7\" or userName eq \"user-8\" or userName eq \"nobody\"",
+    "emails.value eq \"user-3@example.com\"",
+    "emails[value eq \"user-3@example.com\" and type eq \"work\"]",
+    "name.familyName gt \"Family-3\" and name.familyName le \"Family-7\"",
+    "name.familyName sw \"FAMILY-1\"",
+    "name.familyName sw \"family-1\"",
+    "title lt \"Title-2\" and active eq true",
+    "title ge \"Title-3\" or userName eq \"user-1\"",
+    "not (title ge \"Title-3\")",
+    "displayName co \"4\"",
+    "userName pr and title eq \"Title-0\""
+  })
+  public void findMatchesScan(String filterText) throws Exception {
+    Filter filter = new Filter(filterText);
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      ScimUser user = find("userName eq \"user-" + i + "\"").get(0);
+      if (FilterExpressions.inMemory(filter, Schemas.schemaFor(ScimUser.class)).test(user)) {
+        expected.add(user.getUserName());
+      }
+    }
+
+    assertThat(find(filterText)).extracting(ScimUser::getUserName).containsExactlyInAnyOrderElementsOf(expected);
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {
+    "userName eq \"USER-7\"",
+    "userName eq \"user-7\" or userName eq \"user-8\" or userName eq \"nobody\"",
+    "title eq \"title-1\"",
+    "title eq \"Title-1\" and name.familyName eq \"Family-2\"",
+    "title eq \"Title-1\" or name.familyName eq \"Family-2\"",
+    "title eq \"Title-1\" and not (name.familyName eq \"Family-2\")",
+    "emails.value eq \"user-3@example.com\"",
+    "emails[value eq \"user-3@example.com\" and type eq \"home\"]",
+    "name.familyName gt \"Family-3\" and name.familyName le \"Family-7\"",
+    "title lt \"Title-2\" and active eq true",
+    "displayName co \"4\"",
+    "nickName eq \"nobody\""
+  })
+  public void countMatchesFind(String filterText) throws Exception {
+    assertThat(repository.count(new Filter(filterText))).isEqualTo(find(filterText).size());
+  }
+
+  @Test
+  public void countWithoutFilterIsTheSize() {
+    assertThat(repository.count(null)).isEqualTo(50);
+  }
+
+  @Test
+  public void indexNarrowsCandidates() throws Exception {
+    assertThat(repository.candidates(new Filter("userName eq \"user-7\""))).hasSize(1);
+    assertThat(repository.candidates(new Filter("emails.value eq \"user-7@example.com\" and displayName co \"7\""))).hasSize(1);
+    assertThat(repository.candidates(new Filter("name.familyName lt \"Family-2\""))).hasSize(10);
+    assertThat(repository.candidates(new Filter("displayName co \"7\""))).isNull();
+    assertThat(repository.candidates(new Filter("userName eq \"user-7\" or displayName co \"7\""))).isNull();
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {
+    "displayName co \"er 4\"",
+    "displayName co \"4\"",
+    "displayName co \"USER\"",
+    "displayName sw \"User 1\"",
+    "displayName sw \"U\"",
+    "displayName ew \" 7\"",
+    "displayName ew \"7\"",
+    "displayName co \"\"",
+    "emails.value ew \"3@example.com\"",
+    "emails.value co \"ER-4\"",
+    "title sw \"Title-1\" and displayName ew \"1\""
+  })
+  public void trigramFindMatchesScan(String filterText) throws Exception {
+    repository.addIndex("displayName", IndexType.TRIGRAM)
+      .addIndex("emails.value", IndexType.TRIGRAM);
+
+    findMatchesScan(filterText);
+  }
+
+  @Test
+  public void trigramIndexNarrowsCandidates() throws Exception {
+    repository.addIndex("displayName", IndexType.TRIGRAM)
+      .addIndex("emails.value", IndexType.TRIGRAM);
+
+    assertThat(repository.candidates(new Filter("displayName co \"er 4\""))).hasSize(11);
+    assertThat(repository.candidates(new Filter("displayName ew \"r 7\""))).hasSize(1);
+    assertThat(repository.candidates(new Filter("displayName sw \"User 4\""))).hasSize(11);
+    assertThat(repository.candidates(new Filter("displayName co \"nobody\""))).isEmpty();
+    // emails.value is case-insensitive, its trigrams are case folded
+    assertThat(repository.candidates(new Filter("emails.value co \"USER-42@\""))).hasSize(1);
+    // the equality index of emails.value is kept
+    assertThat(repository.candidates(new Filter("emails.value eq \"user-7@example.com\""))).hasSize(1);
+  }
+
+  @Test
+  public void trigramIndexIsMaintained() throws Exception {
+    repository.addIndex("displayName", IndexType.TRIGRAM);
+    ScimUser user = find("userName eq \"user-1\"").get(0);
+
+    repository.update(user.getId(), null, user(1).setId(user.getId()).setDisplayName("Renamed"), null, null);
+    assertThat(find("displayName co \"name\"")).extracting(ScimUser::getUserName).containsExactly("user-1");
+    assertThat(find("displayName ew \"User 1\"")).isEmpty();
+
+    repository.delete(user.getId());
+    assertThat(repository.candidates(new Filter("displayName co \"name\""))).isEmpty();
+  }
+
+  @Test
+  public void trigramIndexRequiresStringAttribute() {
+    assertThatThrownBy(() -> repository.addIndex("active", IndexType.TRIGRAM))
+      .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void indexStatisticsReportSize() throws Exception {
+    repository.addIndex("displayName", IndexType.TRIGRAM);
+
+    IndexStatistics displayName = repository.getIndexStatistics().stream()
+      .filter(statistics -> statistics.getAttributePath().equals("displayName"))
+      .findFirst().orElseThrow();
+    assertThat(displayName.getTypes()).containsExactly(IndexType.TRIGRAM);
+    assertThat(displayName.getKeyCount()).isGreaterThan(50);
+    assertThat(displayName.getEstimatedBytes()).isPositive();
+
+    IndexStatistics title = repository.getIndexStatistics().stream()
+      .filter(statistics -> statistics.getAttributePath().equals("title"))
+      .findFirst().orElseThrow();
+    assertThat(title.getTypes()).containsExactly(IndexType.SORTED);
+    assertThat(title.getKeyCount()).isEqualTo(10);
+    assertThat(title.getEntryCount()).isEqualTo(50);
+  }
+
+  @Test
+  public void pagesAreTakenAfterFiltering() throws Exception {
+    PageRequest pageRequest = new PageRequest();
+    pageRequest.setStartIndex(3);
+    pageRequest.setCount(4);
+    SortRequest sortRequest = new SortRequest();
+    sortRequest.setSortBy(new AttributeReference("userName"));
+
+    FilterResponse<ScimUser> response = repository.find(new Filter("title eq \"Title-1\""), pageRequest, sortRequest);
+
+    assertThat(response.getTotalResults()).isEqualTo(5);
+    assertThat(response.getResources()).extracting(ScimUser::getUserName)
+      .containsExactly("user-21", "user-31", "user-41");
+  }
+
+  @Test
+  public void resultsAreSorted() throws Exception {
+    SortRequest sortRequest = new SortRequest();
+    sortRequest.setSortBy(new AttributeReference("name.familyName"));
+    sortRequest.setSortOrder(SortOrder.DESCENDING);
+    PageRequest pageRequest = new PageRequest();
+    pageRequest.setCount(3);
+
+    FilterResponse<ScimUser> response = repository.find(null, pageRequest, sortRequest);
+
+    assertThat(response.getTotalResults()).isEqualTo(50);
+    assertThat(response.getResources()).extracting(user -> user.getName().getFamilyName())
+      .containsExactly("Family-9", "Family-9", "Family-9");
+  }
+
+  @Test
+  public void cursorPagesWalkAllResults() throws Exception {
+    SortRequest sortRequest = new SortRequest();
+    sortRequest.setSortBy(new AttributeReference("name.familyName"));
+    sortRequest.setSortOrder(SortOrder.DESCENDING);
+
+    List<String> walked = new ArrayList<>();
+    String cursor = "";
+    int pages = 0;
+    while (cursor != null) {
+      PageRequest pageRequest = new PageRequest();
+      pageRequest.setCount(7);
+      pageRequest.setCursor(cursor);
+      FilterResponse<ScimUser> response = repository.find(null, pageRequest, sortRequest);
+
+      assertThat(response.getTotalResults()).isEqualTo(50);
+      response.getResources().forEach(user -> walked.add(user.getId()));
+      cursor = response.getNextCursor();
+      pages++;
+    }
+
+    FilterResponse<ScimUser> all = repository.find(null, new PageRequest(), sortRequest);
+    assertThat(pages).isEqualTo(8);
+    assertThat(walked).containsExactlyElementsOf(all.getResources().stream().map(ScimUser::getId).collect(Collectors.toList()));
+  }
+
+  @Test
+  public void cursorSurvivesChangesToPreviousPages() throws Exception {
+    SortRequest sortRequest = new SortRequest();
+    sortRequest.setSortBy(new AttributeReference("userName"));
+    PageRequest firstPage = new PageRequest();
+    firstPage.setCount(5);
+    firstPage.setCursor("");
+
+    FilterResponse<ScimUser> first = repository.find(new Filter("title eq \"Title-2\""), firstPage, sortRequest);
+    assertThat(first.getResources()).extracting(ScimUser::getUserName)
+      .containsExactly("user-12", "user-2", "user-22", "user-32", "user-42");
+    assertThat(first.getNextCursor()).isNull();
+
+    firstPage.setCount(2);
+    first = repository.find(new Filter("title eq \"Title-2\""), firstPage, sortRequest);
+    // the last resource of the page is deleted before the next page is requested
+    repository.delete(first.getResources().stream().skip(1).findFirst().orElseThrow().getId());
+
+    PageRequest nextPage = new PageRequest();
+    nextPage.setCount(2);
+    nextPage.setCursor(first.getNextCursor());
+    FilterResponse<ScimUser> next = repository.find(new Filter("title eq \"Title-2\""), nextPage, sortRequest);
+
+    assertThat(next.getResources()).extracting(ScimUser::getUserName)
+      .containsExactly("user-22", "user-32");
+    assertThat(next.getNextCursor()).isNotNull();
+  }
+
+  @Test
+  public void invalidCursorIsRejected() {
+    PageRequest pageRequest = new PageRequest();
+    pageRequest.setCursor("not a cursor");
+
+    assertThatThrownBy(() -> repository.find(null, pageRequest, new SortRequest()))
+      .isInstanceOf(InvalidCursorException.class);
+  }
+
+  @Test
+  public void concurrentCreatesKeepUserNamesUnique() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < 200; i++) {
+        String userName = "concurrent-" + (i % 100);
+        futures.add(executor.submit(() -> {
+          try {
+            repository.create(new ScimUser().setUserName(userName));
+          } catch (ConflictResourceException e) {
+            // expected for every second create
+          }
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get(10, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    assertThat(repository.size()).isEqualTo(150);
+  }
+
+  private List<ScimUser> find(String filter) throws Exception {
+    return repository.find(new Filter(filter), new PageRequest(), new SortRequest()).getResources().stream()
+      .collect(Collectors.toList());
+  }
+
+  private static ScimUser user(int i) {
+    Email email = new Email();
+    email.setType(i % 2 == 0 ? "home" : "work");
+    email.setValue("user-" + i + "@example.com");
+    return new ScimUser()
+      .setUserName("user-" + i)
+      .setDisplayName("User " + i)
+      .setTitle("Title-" + (i % 10))
+      .setActive(i % 3 != 0)
+      .setName(new Name().setGivenName("Given-" + i).setFamilyName("Family-" + (i / 5)))
+      .setEmails(List.of(email));
+  }
+}
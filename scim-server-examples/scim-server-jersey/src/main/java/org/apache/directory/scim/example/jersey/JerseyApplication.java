@@ -55,6 +55,8 @@ public class JerseyApplication extends Application {
     return new ServerConfiguration()
       // Set any unique configuration bits
       .setId("scimple-jersey-example")
+      .setSupportsSort(true)
+      .setSupportsCursorPagination(true)
       .setDocumentationUri("https://github.com/apache/directory-scimple")
     // set the auth scheme too
      .addAuthenticationSchema(oauthBearer());
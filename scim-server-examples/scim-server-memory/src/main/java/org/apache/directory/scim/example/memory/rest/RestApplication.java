@@ -34,6 +34,8 @@ public class RestApplication extends Application {
   ServerConfiguration serverConfiguration() {
     return new ServerConfiguration()
       .setId("scimple-in-memory-example")
+      .setSupportsSort(true)
+      .setSupportsCursorPagination(true)
       .addAuthenticationSchema(httpBasic());
   }
 }
@@ -26,8 +26,9 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.directory.scim.core.repository.PatchHandler;
 import org.apache.directory.scim.server.exception.UnableToCreateResourceException;
 import org.apache.directory.scim.core.repository.Repository;
+import org.apache.directory.scim.core.repository.SortEngine;
+import org.apache.directory.scim.spec.exception.InvalidCursorException;
 import org.apache.directory.scim.spec.exception.ResourceException;
-import org.apache.directory.scim.spec.filter.FilterExpressions;
 import org.apache.directory.scim.spec.filter.FilterResponse;
 import org.apache.directory.scim.spec.filter.Filter;
 import org.apache.directory.scim.spec.filter.PageRequest;
@@ -43,7 +44,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
-import java.util.stream.Collectors;
 
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Named;
@@ -127,19 +127,13 @@ public class InMemoryGroupService implements Repository<ScimGroup> {
   }
 
   @Override
-  public FilterResponse<ScimGroup> find(Filter filter, PageRequest pageRequest, SortRequest sortRequest) {
-    long count = pageRequest.getCount() != null ? pageRequest.getCount() : groups.size();
-    long startIndex = pageRequest.getStartIndex() != null
-      ? pageRequest.getStartIndex() - 1 // SCIM is 1-based indexed
-      : 0;
-
-    List<ScimGroup> result = groups.values().stream()
-      .skip(startIndex)
-      .limit(count)
-      .filter(FilterExpressions.inMemory(filter, schemaRegistry.getSchema(ScimGroup.SCHEMA_URI)))
-      .collect(Collectors.toList());
-
-    return new FilterResponse<>(result, pageRequest, result.size());
+  public FilterResponse<ScimGroup> find(Filter filter, PageRequest pageRequest, SortRequest sortRequest) throws InvalidCursorException {
+    return SortEngine.find(groups.values(), filter, pageRequest, sortRequest, schemaRegistry.getSchema(ScimGroup.SCHEMA_URI));
+  }
+
+  @Override
+  public boolean supportsCursorPagination() {
+    return true;
   }
 
   @Override
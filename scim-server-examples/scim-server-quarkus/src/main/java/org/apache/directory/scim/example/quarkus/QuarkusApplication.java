@@ -45,6 +45,8 @@ public class QuarkusApplication extends Application {
     return new ServerConfiguration()
       // Set any unique configuration bits
       .setId("scimple-quarkus-example")
+      .setSupportsSort(true)
+      .setSupportsCursorPagination(true)
       .setDocumentationUri("https://github.com/apache/directory-scimple")
       // set the auth scheme too
      .addAuthenticationSchema(oauthBearer());
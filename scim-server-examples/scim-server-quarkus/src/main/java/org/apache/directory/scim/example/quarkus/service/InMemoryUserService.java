@@ -20,7 +20,6 @@
 package org.apache.directory.scim.example.quarkus.service;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 import jakarta.annotation.PostConstruct;
 import jakarta.enterprise.context.ApplicationScoped;
@@ -32,9 +31,10 @@ import org.apache.directory.scim.core.repository.PatchHandler;
 import org.apache.directory.scim.example.quarkus.extensions.LuckyNumberExtension;
 import org.apache.directory.scim.server.exception.UnableToCreateResourceException;
 import org.apache.directory.scim.core.repository.Repository;
+import org.apache.directory.scim.core.repository.SortEngine;
+import org.apache.directory.scim.spec.exception.InvalidCursorException;
 import org.apache.directory.scim.spec.exception.ResourceException;
 import org.apache.directory.scim.spec.extension.EnterpriseExtension;
-import org.apache.directory.scim.spec.filter.FilterExpressions;
 import org.apache.directory.scim.spec.filter.FilterResponse;
 import org.apache.directory.scim.spec.filter.Filter;
 import org.apache.directory.scim.spec.filter.PageRequest;
@@ -165,20 +165,16 @@ public class InMemoryUserService implements Repository<ScimUser> {
    * @see Repository#find(Filter, PageRequest, SortRequest)
    */
   @Override
-  public FilterResponse<ScimUser> find(Filter filter, PageRequest pageRequest, SortRequest sortRequest) {
-
-    long count = pageRequest.getCount() != null ? pageRequest.getCount() : users.size();
-    long startIndex = pageRequest.getStartIndex() != null
-      ? pageRequest.getStartIndex() - 1 // SCIM is 1-based indexed
-      : 0;
-
-    List<ScimUser> result = users.values().stream()
-      .skip(startIndex)
-      .limit(count)
-      .filter(FilterExpressions.inMemory(filter, schemaRegistry.getSchema(ScimUser.SCHEMA_URI)))
-      .collect(Collectors.toList());
+  public FilterResponse<ScimUser> find(Filter filter, PageRequest pageRequest, SortRequest sortRequest) throws InvalidCursorException {
+    return SortEngine.find(users.values(), filter, pageRequest, sortRequest, schemaRegistry.getSchema(ScimUser.SCHEMA_URI));
+  }
 
-    return new FilterResponse<>(result, pageRequest, result.size());
+  /**
+   * @see Repository#supportsCursorPagination()
+   */
+  @Override
+  public boolean supportsCursorPagination() {
+    return true;
   }
 
   /**
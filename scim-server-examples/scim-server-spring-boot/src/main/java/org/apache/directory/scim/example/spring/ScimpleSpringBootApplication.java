@@ -38,6 +38,8 @@ public class ScimpleSpringBootApplication {
     // Set any unique configuration bits
     return new ServerConfiguration()
       .setId("scimple-spring-boot-example")
+      .setSupportsSort(true)
+      .setSupportsCursorPagination(true)
       .setDocumentationUri("https://github.com/apache/directory-scimple")
 
      // set the auth scheme
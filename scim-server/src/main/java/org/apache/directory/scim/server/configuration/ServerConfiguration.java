@@ -22,13 +22,18 @@ package org.apache.directory.scim.server.configuration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.Setter;
+import lombok.ToString;
+import org.apache.directory.scim.spec.filter.FilterLimits;
 import org.apache.directory.scim.spec.schema.ServiceProviderConfiguration.AuthenticationSchema;
 import org.apache.directory.scim.spec.schema.ServiceProviderConfiguration.BulkConfiguration;
 import org.apache.directory.scim.spec.schema.ServiceProviderConfiguration.FilterConfiguration;
+import org.apache.directory.scim.spec.schema.ServiceProviderConfiguration.PaginationConfiguration;
 import org.apache.directory.scim.spec.schema.ServiceProviderConfiguration.SupportedConfiguration;
 
 /**
@@ -42,9 +47,18 @@ public class ServerConfiguration {
   
   static final int BULK_MAXIMUM_OPERATIONS = 100;
   static final int BULK_MAXIMUM_PAYLOAD_SIZE = 1024;
+  static final int BULK_MAXIMUM_THREADS = 1;
   
   static final int FILTER_MAXIMUM_RESULTS = 100;
 
+  static final int FILTER_MAXIMUM_LENGTH = 8192;
+  static final int FILTER_MAXIMUM_DEPTH = 32;
+  static final int FILTER_MAXIMUM_NODES = 1000;
+  static final int FILTER_MAXIMUM_VALUE_PATH_DEPTH = 1;
+
+  static final int SEARCH_MAXIMUM_THREADS = 4;
+  static final long SEARCH_REPOSITORY_TIMEOUT_MILLIS = 10_000;
+
   String id = "spc";
   
   boolean supportsChangePassword = false;
@@ -53,29 +67,117 @@ public class ServerConfiguration {
   boolean supportsBulk = true;
   int bulkMaxOperations = BULK_MAXIMUM_OPERATIONS;
   int bulkMaxPayloadSize = BULK_MAXIMUM_PAYLOAD_SIZE;  //TODO what should this be?
+
+  // bulk operations that don't depend on each other through bulkIds run on up to this many threads, the repositories
+  // must then be thread-safe, 1 runs the operations one at a time in the order of the request
+  int bulkMaxThreads = BULK_MAXIMUM_THREADS;
   
   @Setter(AccessLevel.NONE)
   boolean supportsETag = true;
   
   boolean supportsFilter = false;
   int filterMaxResults = FILTER_MAXIMUM_RESULTS;
+
+  // filters exceeding these limits are rejected before they are parsed, 0 disables a limit
+  int filterMaxLength = FILTER_MAXIMUM_LENGTH;
+  int filterMaxDepth = FILTER_MAXIMUM_DEPTH;
+  int filterMaxNodes = FILTER_MAXIMUM_NODES;
+  int filterMaxValuePathDepth = FILTER_MAXIMUM_VALUE_PATH_DEPTH;
   
   @Setter(AccessLevel.NONE)
   boolean supportsPatch = true;
   
   boolean supportsSort = false;
+
+  // root searches (POST /.search) query the repositories on at most this many threads, a repository that does not
+  // answer within the timeout is left out of the results, 0 disables the timeout
+  int searchMaxThreads = SEARCH_MAXIMUM_THREADS;
+  long searchRepositoryTimeoutMillis = SEARCH_REPOSITORY_TIMEOUT_MILLIS;
+
+  // only enable when the repositories honor PageRequest.getCursor(), index-based pagination is always supported
+  boolean supportsCursorPagination = false;
   
   String documentationUri;
   
   @Setter(AccessLevel.NONE)
   List<AuthenticationSchema> authenticationSchemas = new ArrayList<>();
-  
+
+  @Setter(AccessLevel.NONE)
+  @EqualsAndHashCode.Exclude
+  @ToString.Exclude
+  final AtomicLong modificationCount = new AtomicLong();
+
+  /**
+   * Returns the number of times a value of the ServiceProviderConfig document was changed, the rendered document is
+   * rebuilt when it changes.
+   */
+  public long getModificationCount() {
+    return modificationCount.get();
+  }
+
   public List<AuthenticationSchema> getAuthenticationSchemas() {
     return Collections.unmodifiableList(authenticationSchemas);
   }
 
   public ServerConfiguration addAuthenticationSchema(AuthenticationSchema authenticationSchema) {
     authenticationSchemas.add(authenticationSchema);
+    modificationCount.incrementAndGet();
+    return this;
+  }
+
+  // the setters of the values of the ServiceProviderConfig document count the modifications
+
+  public ServerConfiguration setId(String id) {
+    this.id = id;
+    modificationCount.incrementAndGet();
+    return this;
+  }
+
+  public ServerConfiguration setSupportsChangePassword(boolean supportsChangePassword) {
+    this.supportsChangePassword = supportsChangePassword;
+    modificationCount.incrementAndGet();
+    return this;
+  }
+
+  public ServerConfiguration setBulkMaxOperations(int bulkMaxOperations) {
+    this.bulkMaxOperations = bulkMaxOperations;
+    modificationCount.incrementAndGet();
+    return this;
+  }
+
+  public ServerConfiguration setBulkMaxPayloadSize(int bulkMaxPayloadSize) {
+    this.bulkMaxPayloadSize = bulkMaxPayloadSize;
+    modificationCount.incrementAndGet();
+    return this;
+  }
+
+  public ServerConfiguration setSupportsFilter(boolean supportsFilter) {
+    this.supportsFilter = supportsFilter;
+    modificationCount.incrementAndGet();
+    return this;
+  }
+
+  public ServerConfiguration setFilterMaxResults(int filterMaxResults) {
+    this.filterMaxResults = filterMaxResults;
+    modificationCount.incrementAndGet();
+    return this;
+  }
+
+  public ServerConfiguration setSupportsSort(boolean supportsSort) {
+    this.supportsSort = supportsSort;
+    modificationCount.incrementAndGet();
+    return this;
+  }
+
+  public ServerConfiguration setSupportsCursorPagination(boolean supportsCursorPagination) {
+    this.supportsCursorPagination = supportsCursorPagination;
+    modificationCount.incrementAndGet();
+    return this;
+  }
+
+  public ServerConfiguration setDocumentationUri(String documentationUri) {
+    this.documentationUri = documentationUri;
+    modificationCount.incrementAndGet();
     return this;
   }
 
@@ -105,6 +207,10 @@ public class ServerConfiguration {
     return filterConfiguration;
   }
 
+  public FilterLimits getFilterLimits() {
+    return new FilterLimits(getFilterMaxLength(), getFilterMaxDepth(), getFilterMaxNodes(), getFilterMaxValuePathDepth());
+  }
+
   public SupportedConfiguration getPatchConfiguration() {
     return createSupportedConfiguration(isSupportsPatch());
   }
@@ -112,6 +218,14 @@ public class ServerConfiguration {
   public SupportedConfiguration getSortConfiguration() {
     return createSupportedConfiguration(isSupportsSort());
   }
+
+  public PaginationConfiguration getPaginationConfiguration() {
+    PaginationConfiguration paginationConfiguration = new PaginationConfiguration();
+    paginationConfiguration.setCursor(isSupportsCursorPagination());
+    paginationConfiguration.setIndex(true);
+    paginationConfiguration.setDefaultPaginationMethod(PaginationConfiguration.INDEX);
+    return paginationConfiguration;
+  }
   
   private SupportedConfiguration createSupportedConfiguration(boolean supported) {
     SupportedConfiguration supportedConfiguration = new SupportedConfiguration();
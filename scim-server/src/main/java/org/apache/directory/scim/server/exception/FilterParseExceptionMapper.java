@@ -25,7 +25,7 @@ import jakarta.ws.rs.core.Response.Status;
 
 import jakarta.ws.rs.ext.Provider;
 import org.apache.directory.scim.protocol.Constants;
-import org.apache.directory.scim.protocol.ErrorMessageType;
+import org.apache.directory.scim.protocol.adapter.FilterWrapper;
 import org.apache.directory.scim.protocol.data.ErrorResponse;
 import org.apache.directory.scim.spec.filter.FilterParseException;
 
@@ -36,6 +36,6 @@ public class FilterParseExceptionMapper extends BaseScimExceptionMapper<FilterPa
   @Override
   protected ErrorResponse errorResponse(FilterParseException exception) {
     return new ErrorResponse(Status.BAD_REQUEST, exception.getMessage())
-      .setScimType(ErrorMessageType.INVALID_FILTER);
+      .setScimType(FilterWrapper.errorMessageType(exception));
   }
 }
@@ -26,6 +26,7 @@ import jakarta.ws.rs.ext.Provider;
 import org.apache.directory.scim.protocol.Constants;
 import org.apache.directory.scim.protocol.ErrorMessageType;
 import org.apache.directory.scim.protocol.data.ErrorResponse;
+import org.apache.directory.scim.spec.exception.InvalidCursorException;
 import org.apache.directory.scim.spec.exception.ResourceException;
 
 @Provider
@@ -46,6 +47,9 @@ public class ResourceExceptionMapper extends BaseScimExceptionMapper<ResourceExc
       } else {
         errorResponse.setDetail(e.getMessage());
       }
+    } else if (e instanceof InvalidCursorException) {
+      errorResponse.setScimType(ErrorMessageType.INVALID_CURSOR);
+      errorResponse.setDetail(e.getMessage());
     } else {
       errorResponse.setDetail(e.getMessage());
     }
@@ -19,228 +19,148 @@
 
 package org.apache.directory.scim.server.rest;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.directory.scim.core.json.ObjectMapperFactory;
+import org.apache.directory.scim.core.json.AttributeProjection;
 import org.apache.directory.scim.server.exception.AttributeDoesNotExistException;
 import org.apache.directory.scim.server.exception.AttributeException;
 import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
-import org.apache.directory.scim.spec.resources.ScimExtension;
 import org.apache.directory.scim.spec.resources.ScimGroup;
-import org.apache.directory.scim.spec.resources.ScimResource;
 import org.apache.directory.scim.spec.resources.ScimUser;
-import org.apache.directory.scim.spec.schema.AttributeContainer;
 import org.apache.directory.scim.spec.schema.Schema;
 import org.apache.directory.scim.spec.schema.Schema.Attribute;
-import org.apache.directory.scim.spec.schema.Schema.Attribute.Returned;
 import org.apache.directory.scim.spec.schema.Schema.Attribute.Type;
 import org.apache.directory.scim.core.schema.SchemaRegistry;
 
-import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.Map.Entry;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
-import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Slf4j
 class AttributeUtil {
 
+  /**
+   * System property used to configure the maximum number of projections cached by each resource endpoint, a value of
+   * {@code 0} disables caching.
+   */
+  static final String PROJECTION_CACHE_SIZE_PROPERTY = "scim.projection.cache.size";
+
+  static final int DEFAULT_PROJECTION_CACHE_SIZE = 256;
+
   SchemaRegistry schemaRegistry;
 
-  private final ObjectMapper objectMapper;
+  private final int projectionCacheSize;
+
+  /**
+   * Resolved projections, keyed by the normalized {@code attributes} and {@code excludedAttributes} of a request. Clients
+   * tend to send the same few values, so resolving them once saves looking up every attribute in the schemas again.
+   */
+  private final Map<ProjectionKey, AttributeProjection> projections;
 
   AttributeUtil(SchemaRegistry schemaRegistry) {
-    this.schemaRegistry = schemaRegistry;
-    this.objectMapper = ObjectMapperFactory.createObjectMapper(schemaRegistry);
+    this(schemaRegistry, Integer.getInteger(PROJECTION_CACHE_SIZE_PROPERTY, DEFAULT_PROJECTION_CACHE_SIZE));
   }
 
-  public <T extends ScimResource> T keepAlwaysAttributesForDisplay(T resource) throws AttributeException {
-    return setAttributesForDisplayInternal(resource, Returned.DEFAULT, Returned.REQUEST, Returned.NEVER);
-  }
-  
-  public <T extends ScimResource> T setAttributesForDisplay(T resource) throws AttributeException {
-    return setAttributesForDisplayInternal(resource, Returned.REQUEST, Returned.NEVER);
-  }
-  
-  private <T extends ScimResource> T setAttributesForDisplayInternal(T resource, Returned ... removeAttributesOfTypes) throws AttributeException {
-    T copy = cloneScimResource(resource);
-    String resourceType = copy.getResourceType();
-    Schema schema = schemaRegistry.getBaseSchemaOfResourceType(resourceType);
-
-    // return always and default, exclude never and requested
-    for (Returned removeAttributesOfType : removeAttributesOfTypes) {
-      removeAttributesOfType(copy, schema, removeAttributesOfType);
-    }
+  AttributeUtil(SchemaRegistry schemaRegistry, int projectionCacheSize) {
+    this.schemaRegistry = schemaRegistry;
+    this.projectionCacheSize = projectionCacheSize;
+    this.projections = new LinkedHashMap<>(16, 0.75f, true) {
+      private static final long serialVersionUID = 5328420530163212347L;
 
-    for (Entry<String, ScimExtension> extensionEntry : copy.getExtensions().entrySet()) {
-      String extensionUrn = extensionEntry.getKey();
-      ScimExtension scimExtension = extensionEntry.getValue();
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<ProjectionKey, AttributeProjection> eldest) {
+        return size() > AttributeUtil.this.projectionCacheSize;
+      }
+    };
+  }
 
-      Schema extensionSchema = schemaRegistry.getSchema(extensionUrn);
+  /**
+   * Returns the projection that writes the attributes of a resource to return for the {@code attributes} or
+   * {@code excludedAttributes} of a request: attributes returned {@code always}, and the requested attributes, or else
+   * the attributes returned by {@code default} that are not excluded. Attributes returned {@code never} are not written.
+   * Projections are immutable and cached, the same instance is returned for equivalent attribute references.
+   */
+  public AttributeProjection projection(Set<AttributeReference> includedAttributes, Set<AttributeReference> excludedAttributes) throws AttributeException {
+    if (includedAttributes.isEmpty() && excludedAttributes.isEmpty()) {
+      return AttributeProjection.defaults();
+    }
+    if (projectionCacheSize == 0) {
+      return resolveProjection(includedAttributes, excludedAttributes);
+    }
 
-      for (Returned removeAttributesOfType : removeAttributesOfTypes) {
-        removeAttributesOfType(scimExtension, extensionSchema, removeAttributesOfType);
+    ProjectionKey key = new ProjectionKey(includedAttributes, excludedAttributes);
+    AttributeProjection projection;
+    synchronized (projections) {
+      projection = projections.get(key);
+    }
+    if (projection == null) {
+      projection = resolveProjection(includedAttributes, excludedAttributes);
+      synchronized (projections) {
+        projections.put(key, projection);
       }
     }
-    return copy;
+    return projection;
   }
 
-  public <T extends ScimResource> T setAttributesForDisplay(T resource, Set<AttributeReference> attributes) throws AttributeException {
-    if (attributes.isEmpty()) {
-      return setAttributesForDisplay(resource);
-    } else {
-      T copy = cloneScimResource(resource);
-      
-      String resourceType = copy.getResourceType();
-      Schema schema = schemaRegistry.getBaseSchemaOfResourceType(resourceType);
-
-      // return always and specified attributes, exclude never
-      Set<Attribute> attributesToKeep = resolveAttributeReferences(attributes, true);
-      Set<String> extensionsToRemove = new HashSet<>();
-      removeAttributesOfType(copy, schema, Returned.DEFAULT, attributesToKeep);
-      removeAttributesOfType(copy, schema, Returned.REQUEST, attributesToKeep);
-      removeAttributesOfType(copy, schema, Returned.NEVER);
-
-      for (Entry<String, ScimExtension> extensionEntry : copy.getExtensions().entrySet()) {
-        String extensionUrn = extensionEntry.getKey();
-        ScimExtension scimExtension = extensionEntry.getValue();
-        boolean removeExtension = true;
-
-        for (Attribute attributeToKeep : attributesToKeep) {
-          if (extensionUrn.equalsIgnoreCase(attributeToKeep.getSchemaUrn())) {
-            removeExtension = false;
-
-            break;
-          }
-        }
-        if (removeExtension) {
-          extensionsToRemove.add(extensionUrn);
-
-          continue;
-        }
-        Schema extensionSchema = schemaRegistry.getSchema(extensionUrn);
-
-        removeAttributesOfType(scimExtension, extensionSchema, Returned.DEFAULT, attributesToKeep);
-        removeAttributesOfType(scimExtension, extensionSchema, Returned.REQUEST, attributesToKeep);
-        removeAttributesOfType(scimExtension, extensionSchema, Returned.NEVER);
-      }
-      for (String extensionUrn : extensionsToRemove) {
-        copy.removeExtension(extensionUrn);
-      }
-      return copy;
+  int projectionCacheSize() {
+    synchronized (projections) {
+      return projections.size();
     }
   }
 
-  public <T extends ScimResource> T setExcludedAttributesForDisplay(T resource, Set<AttributeReference> excludedAttributes) throws AttributeException {
-
-    if (excludedAttributes.isEmpty()) {
-      return setAttributesForDisplay(resource);
-    } else {
-      T copy = cloneScimResource(resource);
+  private AttributeProjection resolveProjection(Set<AttributeReference> includedAttributes, Set<AttributeReference> excludedAttributes) throws AttributeException {
+    if (!excludedAttributes.isEmpty()) {
+      return AttributeProjection.excluding(resolveAttributeReferences(excludedAttributes, false));
+    }
+    if (!includedAttributes.isEmpty()) {
+      return AttributeProjection.including(resolveAttributeReferences(includedAttributes, true));
+    }
+    return AttributeProjection.defaults();
+  }
 
-      String resourceType = copy.getResourceType();
-      Schema schema = schemaRegistry.getBaseSchemaOfResourceType(resourceType);
+  /**
+   * The attribute references of a request, compared by their lower case, fully qualified names.
+   */
+  private static final class ProjectionKey {
 
-      // return always and default, exclude never and specified attributes
-      Set<Attribute> attributesToRemove = resolveAttributeReferences(excludedAttributes, false);
-      removeAttributesOfType(copy, schema, Returned.REQUEST);
-      removeAttributesOfType(copy, schema, Returned.NEVER);
-      removeAttributes(copy, schema, attributesToRemove);
+    private final Set<String> includedAttributes;
 
-      for (Entry<String, ScimExtension> extensionEntry : copy.getExtensions().entrySet()) {
-        String extensionUrn = extensionEntry.getKey();
-        ScimExtension scimExtension = extensionEntry.getValue();
+    private final Set<String> excludedAttributes;
 
-        Schema extensionSchema = schemaRegistry.getSchema(extensionUrn);
+    private final int hashCode;
 
-        removeAttributesOfType(scimExtension, extensionSchema, Returned.REQUEST);
-        removeAttributesOfType(scimExtension, extensionSchema, Returned.NEVER);
-        removeAttributes(scimExtension, extensionSchema, attributesToRemove);
-      }
-      return copy;
+    private ProjectionKey(Set<AttributeReference> includedAttributes, Set<AttributeReference> excludedAttributes) {
+      this.includedAttributes = normalize(includedAttributes);
+      this.excludedAttributes = normalize(excludedAttributes);
+      this.hashCode = Objects.hash(this.includedAttributes, this.excludedAttributes);
     }
-  }
-
-  @SuppressWarnings("unchecked")
-  private <T extends ScimResource> T cloneScimResource(T original) {
-      return (T) this.objectMapper.convertValue(original, original.getClass());
-  }
-
-  private void removeAttributesOfType(Object object, AttributeContainer attributeContainer, Returned returned) throws AttributeException {
-    Function<Attribute, Boolean> function = (attribute) -> returned == attribute.getReturned();
-    processAttributes(object, attributeContainer, function);
-  }
-
-  private void removeAttributesOfType(Object object, AttributeContainer attributeContainer, Returned returned, Set<Attribute> attributesToKeep) throws AttributeException {
-    Function<Attribute, Boolean> function = (attribute) -> !attributesToKeep.contains(attribute) && returned == attribute.getReturned();
-    processAttributes(object, attributeContainer, function);
-  }
 
-  private void removeAttributes(Object object, AttributeContainer attributeContainer, Set<Attribute> attributesToRemove) throws AttributeException {
-    Function<Attribute, Boolean> function = (attribute) -> attributesToRemove.contains(attribute);
-    processAttributes(object, attributeContainer, function);
-  }
+    private static Set<String> normalize(Set<AttributeReference> attributeReferences) {
+      return attributeReferences.stream()
+        .map(attributeReference -> attributeReference.getFullyQualifiedAttributeName().toLowerCase(Locale.ROOT))
+        .collect(Collectors.toUnmodifiableSet());
+    }
 
-  private void processAttributes(Object object, AttributeContainer attributeContainer, Function<Attribute, Boolean> function) throws AttributeException {
-    try {
-      if (attributeContainer != null && object != null) {
-        for (Attribute attribute : attributeContainer.getAttributes()) {
-
-          Schema.AttributeAccessor accessor = attribute.getAccessor();
-
-          if (function.apply(attribute)) {
-            if (!accessor.getType().isPrimitive()) {
-              Object obj = accessor.get(object);
-              if (obj == null) {
-                continue;
-              }
-
-              log.info("field to be set to null = " + accessor.getType().getName());
-              accessor.set(object, null);
-            }
-          } else if (!attribute.isMultiValued() && attribute.getType() == Type.COMPLEX) {
-            log.debug("### Processing single value complex field " + attribute.getName());
-            Object subObject = accessor.get(object);
-
-            if (subObject == null) {
-              continue;
-            }
-
-            Attribute subAttribute = attributeContainer.getAttribute(attribute.getName());
-            log.debug("### container type = " + attributeContainer.getClass().getName());
-            if (subAttribute == null) {
-              log.debug("#### subattribute == null");
-            }
-            processAttributes(subObject, subAttribute, function);
-          } else if (attribute.isMultiValued() && attribute.getType() == Type.COMPLEX) {
-            log.debug("### Processing multi-valued complex field " + attribute.getName());
-            Object subObject = accessor.get(object);
-
-            if (subObject == null) {
-              continue;
-            }
-
-            if (Collection.class.isAssignableFrom(subObject.getClass())) {
-              Collection<?> collection = (Collection<?>) subObject;
-              for (Object o : collection) {
-                Attribute subAttribute = attributeContainer.getAttribute(attribute.getName());
-                processAttributes(o, subAttribute, function);
-              }
-            } else if (accessor.getType().isArray()) {
-              Object[] array = (Object[]) subObject;
-
-              for (Object o : array) {
-                Attribute subAttribute = attributeContainer.getAttribute(attribute.getName());
-                processAttributes(o, subAttribute, function);
-              }
-            }
-          }
-        }
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof ProjectionKey)) {
+        return false;
       }
-    } catch (IllegalArgumentException e) {
-      throw new AttributeException(e);
+      ProjectionKey that = (ProjectionKey) o;
+      return includedAttributes.equals(that.includedAttributes) && excludedAttributes.equals(that.excludedAttributes);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
     }
   }
 
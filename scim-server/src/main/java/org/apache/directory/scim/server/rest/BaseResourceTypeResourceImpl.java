@@ -20,9 +20,7 @@
 package org.apache.directory.scim.server.rest;
 
 import java.net.URI;
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.List;
 import java.util.Optional;
 import java.util.Objects;
 import java.util.Set;
@@ -35,9 +33,15 @@ import jakarta.ws.rs.core.Response.Status.Family;
 
 import org.apache.directory.scim.protocol.exception.ScimException;
 import org.apache.directory.scim.server.exception.*;
+import org.apache.directory.scim.core.json.AttributeProjection;
+import org.apache.directory.scim.core.json.ObjectMapperFactory;
+import org.apache.directory.scim.core.repository.FilterResultStream;
+import org.apache.directory.scim.core.repository.PatchPlanner;
 import org.apache.directory.scim.core.repository.RepositoryRegistry;
 import org.apache.directory.scim.core.repository.Repository;
 import org.apache.directory.scim.core.schema.SchemaRegistry;
+import org.apache.directory.scim.server.configuration.ServerConfiguration;
+import org.apache.directory.scim.spec.exception.InvalidCursorException;
 import org.apache.directory.scim.spec.exception.ResourceException;
 import org.apache.directory.scim.spec.schema.Meta;
 import org.slf4j.Logger;
@@ -52,10 +56,9 @@ import org.apache.directory.scim.protocol.adapter.FilterWrapper;
 import org.apache.directory.scim.protocol.BaseResourceTypeResource;
 import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
 import org.apache.directory.scim.spec.filter.attribute.AttributeReferenceListWrapper;
-import org.apache.directory.scim.protocol.data.ListResponse;
 import org.apache.directory.scim.protocol.data.PatchRequest;
 import org.apache.directory.scim.protocol.data.SearchRequest;
-import org.apache.directory.scim.spec.filter.FilterResponse;
+import org.apache.directory.scim.protocol.data.ListResponse;
 import org.apache.directory.scim.spec.filter.Filter;
 import org.apache.directory.scim.spec.filter.PageRequest;
 import org.apache.directory.scim.spec.filter.SortOrder;
@@ -72,8 +75,14 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
 
   private final  AttributeUtil attributeUtil;
 
+  private final PatchPlanner patchPlanner;
+
+  private final ListResponseWriter listResponseWriter;
+
   private final Class<T> resourceClass;
 
+  private final ServerConfiguration serverConfiguration;
+
   // TODO: Field injection of UriInfo, Request should work with all implementations
   // CDI can be used directly in Jakarta WS 4
   @Context
@@ -86,9 +95,16 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
   HttpHeaders headers;
 
   public BaseResourceTypeResourceImpl(SchemaRegistry schemaRegistry, RepositoryRegistry repositoryRegistry, Class<T> resourceClass) {
+    this(schemaRegistry, repositoryRegistry, new ServerConfiguration(), resourceClass);
+  }
+
+  public BaseResourceTypeResourceImpl(SchemaRegistry schemaRegistry, RepositoryRegistry repositoryRegistry, ServerConfiguration serverConfiguration, Class<T> resourceClass) {
     this.repositoryRegistry = repositoryRegistry;
     this.resourceClass = resourceClass;
+    this.serverConfiguration = serverConfiguration;
     this.attributeUtil = new AttributeUtil(schemaRegistry);
+    this.patchPlanner = new PatchPlanner(schemaRegistry);
+    this.listResponseWriter = new ListResponseWriter(ObjectMapperFactory.createObjectMapper(schemaRegistry));
   }
 
   public Repository<T> getRepository() {
@@ -111,9 +127,12 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
 
     Repository<T> repository = getRepositoryInternal();
 
+    Set<AttributeReference> attributeReferences = AttributeReferenceListWrapper.getAttributeReferences(attributes);
+    Set<AttributeReference> excludedAttributeReferences = AttributeReferenceListWrapper.getAttributeReferences(excludedAttributes);
+
     T resource = null;
     try {
-      resource = repository.get(id);
+      resource = repository.get(id, attributeReferences, excludedAttributeReferences);
     } catch (UnableToRetrieveResourceException e2) {
       Status status = Status.fromStatusCode(e2.getStatus());
       if (status.getFamily().equals(Family.SERVER_ERROR)) {
@@ -133,15 +152,13 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
       }
     }
 
-    Set<AttributeReference> attributeReferences = AttributeReferenceListWrapper.getAttributeReferences(attributes);
-    Set<AttributeReference> excludedAttributeReferences = AttributeReferenceListWrapper.getAttributeReferences(excludedAttributes);
     validateAttributes(attributeReferences, excludedAttributeReferences);
 
     // Process Attributes
     resource = processFilterAttributeExtensions(repository, resource, attributeReferences, excludedAttributeReferences);
-    resource = attributesForDisplayThrowOnError(resource, attributeReferences, excludedAttributeReferences);
+    AttributeProjection projection = projectionThrowOnError(attributeReferences, excludedAttributeReferences);
     return Response.ok()
-                   .entity(resource)
+                   .entity(listResponseWriter.writeResource(resource, projection))
                    .location(uriInfo.getAbsolutePath())
                    .tag(etag)
                    .build();
@@ -149,6 +166,23 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
 
   @Override
   public Response query(AttributeReferenceListWrapper attributes, AttributeReferenceListWrapper excludedAttributes, FilterWrapper filter, AttributeReference sortBy, SortOrder sortOrder, Integer startIndex, Integer count) throws ScimException, ResourceException {
+    return find(searchRequest(attributes, excludedAttributes, filter, sortBy, sortOrder, startIndex, count, null));
+  }
+
+  /**
+   * Queries resources, requests without a cursor are answered by the index-based
+   * {@link #query(AttributeReferenceListWrapper, AttributeReferenceListWrapper, FilterWrapper, AttributeReference, SortOrder, Integer, Integer)},
+   * so subclasses that override it keep handling them.
+   */
+  @Override
+  public Response query(AttributeReferenceListWrapper attributes, AttributeReferenceListWrapper excludedAttributes, FilterWrapper filter, AttributeReference sortBy, SortOrder sortOrder, Integer startIndex, Integer count, String cursor) throws ScimException, ResourceException {
+    if (cursor == null) {
+      return query(attributes, excludedAttributes, filter, sortBy, sortOrder, startIndex, count);
+    }
+    return find(searchRequest(attributes, excludedAttributes, filter, sortBy, sortOrder, startIndex, count, cursor));
+  }
+
+  private static SearchRequest searchRequest(AttributeReferenceListWrapper attributes, AttributeReferenceListWrapper excludedAttributes, FilterWrapper filter, AttributeReference sortBy, SortOrder sortOrder, Integer startIndex, Integer count, String cursor) {
     SearchRequest searchRequest = new SearchRequest();
     searchRequest.setAttributes(AttributeReferenceListWrapper.getAttributeReferences(attributes));
     searchRequest.setExcludedAttributes(AttributeReferenceListWrapper.getAttributeReferences(excludedAttributes));
@@ -164,8 +198,9 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
     searchRequest.setSortOrder(sortOrder);
     searchRequest.setStartIndex(startIndex);
     searchRequest.setCount(count);
+    searchRequest.setCursor(cursor);
 
-    return find(searchRequest);
+    return searchRequest;
   }
 
   @Override
@@ -183,8 +218,9 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
     // Process Attributes
     created = processFilterAttributeExtensions(repository, created, attributeReferences, excludedAttributeReferences);
 
+    AttributeProjection projection = AttributeProjection.defaults();
     try {
-      created = attributesForDisplay(created, attributeReferences, excludedAttributeReferences);
+      projection = attributeUtil.projection(attributeReferences, excludedAttributeReferences);
     } catch (AttributeException e) {
         log.debug("Exception thrown while processing attributes", e);
     }
@@ -197,7 +233,7 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
     return Response.status(Status.CREATED)
       .location(location)
       .tag(etag)
-      .entity(created)
+      .entity(listResponseWriter.writeResource(created, projection))
       .build();
   }
 
@@ -215,40 +251,30 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
     PageRequest pageRequest = request.getPageRequest();
     SortRequest sortRequest = request.getSortRequest();
 
-    ListResponse<T> listResponse = new ListResponse<>();
-
-    FilterResponse<T> filterResp = repository.find(filter, pageRequest, sortRequest);
-
-    // If no resources are found, we should still return a ListResponse with
-    // the totalResults set to 0;
-    // (https://tools.ietf.org/html/rfc7644#section-3.4.2)
-    if (filterResp == null || filterResp.getResources() == null || filterResp.getResources()
-                                                                             .isEmpty()) {
-      listResponse.setTotalResults(0);
-    } else {
-      log.debug("Find returned " + filterResp.getResources()
-                                            .size());
-      listResponse.setItemsPerPage(filterResp.getResources()
-                                             .size());
-      int startIndex = Optional.ofNullable(filterResp.getPageRequest().getStartIndex()).orElse(1);
-      listResponse.setStartIndex(startIndex);
-      listResponse.setTotalResults(filterResp.getTotalResults());
-
-      List<T> results = new ArrayList<>();
-
-      for (T resource : filterResp.getResources()) {
-
-        // Process Attributes
-        resource = processFilterAttributeExtensions(repository, resource, attributeReferences, excludedAttributeReferences);
-        resource = attributesForDisplayThrowOnError(resource, attributeReferences, excludedAttributeReferences);
-        results.add(resource);
-      }
+    // a repository that doesn't support cursors would ignore the cursor and return the first page
+    if (pageRequest.isCursorPaged() && !(repository.supportsCursorPagination()
+        && serverConfiguration != null && serverConfiguration.isSupportsCursorPagination())) {
+      throw new InvalidCursorException("Cursor pagination is not supported for " + resourceClass.getSimpleName() + " resources");
+    }
 
-      listResponse.setResources(results);
+    // a count of 0 only asks for totalResults, https://tools.ietf.org/html/rfc7644#section-3.4.2.4
+    if (pageRequest.getCount() != null && pageRequest.getCount() <= 0) {
+      ListResponse<T> listResponse = new ListResponse<>();
+      listResponse.setTotalResults(repository.count(filter));
+      return Response.ok()
+                     .entity(listResponse)
+                     .build();
     }
 
+    AttributeProjection projection = projectionThrowOnError(attributeReferences, excludedAttributeReferences);
+
+    // Resources are pulled from the repository, processed and written one at a time, if no resources are found,
+    // a ListResponse with totalResults set to 0 is returned
+    FilterResultStream<T> results = repository.stream(filter, pageRequest, sortRequest, attributeReferences, excludedAttributeReferences);
+
     return Response.ok()
-                   .entity(listResponse)
+                   .entity(listResponseWriter.write(results, projection,
+                     resource -> processFilterAttributeExtensions(repository, resource, attributeReferences, excludedAttributeReferences)))
                    .build();
   }
 
@@ -261,7 +287,7 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
   @Override
   public Response patch(PatchRequest patchRequest, String id, AttributeReferenceListWrapper attributes, AttributeReferenceListWrapper excludedAttributes) throws ScimException, ResourceException {
     return update(attributes, excludedAttributes, (etag, includeAttributes, excludeAttributes, repository)
-      -> repository.patch(id, etag, patchRequest.getPatchOperationList(), includeAttributes, excludeAttributes));
+      -> repository.patch(id, etag, patchPlanner.plan(resourceClass, patchRequest.getPatchOperationList()), includeAttributes, excludeAttributes));
   }
 
   @Override
@@ -284,17 +310,18 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
 
     // Process Attributes
     updated = processFilterAttributeExtensions(repository, updated, attributeReferences, excludedAttributeReferences);
-    updated = attributesForDisplayIgnoreErrors(updated, attributeReferences, excludedAttributeReferences);
+    AttributeProjection projection = projectionIgnoreErrors(attributeReferences, excludedAttributeReferences);
 
     EntityTag etag = fromVersion(updated);
-    return Response.ok(updated)
+    return Response.ok()
+      .entity(listResponseWriter.writeResource(updated, projection))
       .location(uriInfo.getAbsolutePath())
       .tag(etag)
       .build();
   }
 
   @SuppressWarnings("unchecked")
-  private T processFilterAttributeExtensions(Repository<T> repository, T resource, Set<AttributeReference> attributeReferences, Set<AttributeReference> excludedAttributeReferences) throws ScimException {
+  static <R extends ScimResource> R processFilterAttributeExtensions(Repository<R> repository, R resource, Set<AttributeReference> attributeReferences, Set<AttributeReference> excludedAttributeReferences) throws ScimException {
     ScimProcessingExtension annotation = repository.getClass()
                                                  .getAnnotation(ScimProcessingExtension.class);
     if (annotation != null) {
@@ -306,7 +333,7 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
           ScimRequestContext scimRequestContext = new ScimRequestContext(attributeReferences, excludedAttributeReferences);
 
           try {
-            resource = (T) attributeFilterExtension.filterAttributes(resource, scimRequestContext);
+            resource = (R) attributeFilterExtension.filterAttributes(resource, scimRequestContext);
             log.debug("Resource now - " + resource.toString());
           } catch (ClientFilterException e) {
             throw new ScimException(Status.fromStatusCode(e.getStatus()), e.getMessage(), e);
@@ -318,18 +345,9 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
     return resource;
   }
 
-  private <T extends ScimResource> T attributesForDisplay(T resource, Set<AttributeReference> includedAttributes, Set<AttributeReference> excludedAttributes) throws AttributeException {
-    if (!excludedAttributes.isEmpty()) {
-      resource = attributeUtil.setExcludedAttributesForDisplay(resource, excludedAttributes);
-    } else {
-      resource = attributeUtil.setAttributesForDisplay(resource, includedAttributes);
-    }
-    return resource;
-  }
-
-  private T attributesForDisplayIgnoreErrors(T resource, Set<AttributeReference> includedAttributes, Set<AttributeReference> excludedAttributes) {
+  private AttributeProjection projectionIgnoreErrors(Set<AttributeReference> includedAttributes, Set<AttributeReference> excludedAttributes) {
     try {
-      return attributesForDisplay(resource, includedAttributes, excludedAttributes);
+      return attributeUtil.projection(includedAttributes, excludedAttributes);
     } catch (AttributeException e) {
       if (log.isDebugEnabled()) {
         log.debug("Failed to handle attribute processing in update " + e.getMessage(), e);
@@ -337,12 +355,12 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
         log.warn("Failed to handle attribute processing in update " + e.getMessage());
       }
     }
-    return resource;
+    return AttributeProjection.defaults();
   }
 
-  private T attributesForDisplayThrowOnError(T resource, Set<AttributeReference> includedAttributes, Set<AttributeReference> excludedAttributes) throws ScimException {
+  private AttributeProjection projectionThrowOnError(Set<AttributeReference> includedAttributes, Set<AttributeReference> excludedAttributes) throws ScimException {
     try {
-      return attributesForDisplay(resource, includedAttributes, excludedAttributes);
+      return attributeUtil.projection(includedAttributes, excludedAttributes);
     } catch (AttributeException e) {
       throw new ScimException(Status.INTERNAL_SERVER_ERROR, "Failed to parse the attribute query value " + e.getMessage(), e);
     }
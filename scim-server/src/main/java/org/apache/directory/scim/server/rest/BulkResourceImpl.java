@@ -19,13 +19,22 @@
 
 package org.apache.directory.scim.server.rest;
 
+import java.net.URI;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
+import jakarta.ws.rs.core.UriBuilder;
 import jakarta.ws.rs.core.UriInfo;
 
 import org.apache.commons.lang3.StringUtils;
@@ -35,6 +44,7 @@ import org.apache.directory.scim.server.exception.UnableToDeleteResourceExceptio
 import org.apache.directory.scim.server.exception.UnableToRetrieveResourceException;
 import org.apache.directory.scim.server.exception.UnableToUpdateResourceException;
 import org.apache.directory.scim.core.repository.Repository;
+import org.apache.directory.scim.server.configuration.ServerConfiguration;
 import org.apache.directory.scim.core.repository.RepositoryRegistry;
 import org.apache.directory.scim.protocol.BulkResource;
 import org.apache.directory.scim.protocol.data.BulkOperation;
@@ -92,10 +102,24 @@ public class BulkResourceImpl implements BulkResource {
 
   private final RepositoryRegistry repositoryRegistry;
 
+  // runs the operations that don't depend on each other concurrently, null runs all operations in order
+  private final ExecutorService executor;
+
   @Inject
+  public BulkResourceImpl(SchemaRegistry schemaRegistry, RepositoryRegistry repositoryRegistry, ServerConfiguration serverConfiguration) {
+    this(schemaRegistry, repositoryRegistry, serverConfiguration != null && serverConfiguration.getBulkMaxThreads() > 1
+      ? BoundedExecutor.create("scim-bulk", serverConfiguration.getBulkMaxThreads())
+      : null);
+  }
+
   public BulkResourceImpl(SchemaRegistry schemaRegistry, RepositoryRegistry repositoryRegistry) {
+    this(schemaRegistry, repositoryRegistry, (ExecutorService) null);
+  }
+
+  BulkResourceImpl(SchemaRegistry schemaRegistry, RepositoryRegistry repositoryRegistry, ExecutorService executor) {
     this.schemaRegistry = schemaRegistry;
     this.repositoryRegistry = repositoryRegistry;
+    this.executor = executor;
   }
 
   public BulkResourceImpl() {
@@ -103,6 +127,13 @@ public class BulkResourceImpl implements BulkResource {
     this(null, null);
   }
 
+  @PreDestroy
+  void shutdown() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
   @Override
   public Response doBulk(BulkRequest request, UriInfo uriInfo) {
     BulkResponse response;
@@ -224,50 +255,55 @@ public class BulkResourceImpl implements BulkResource {
     boolean errorCountExceeded = false;
 
     // do the operations
-    for (BulkOperation operationResult : bulkOperations) {
+    if (executor == null) {
+      for (BulkOperation operationResult : bulkOperations) {
 
-      if (!errorCountExceeded && !(operationResult.getResponse() instanceof ErrorResponse)) {
-        try {
-          this.handleBulkOperationMethod(allUnresolveds, operationResult, bulkIdKeyToOperationResult, uriInfo);
-        } catch (ResourceException resourceException) {
-          log.error("Failed to do bulk operation", resourceException);
-
-          errorCount += errorCountIncrement;
-          errorCountExceeded = errorCount >= maxErrorCount;
-
-          String detail = resourceException.getLocalizedMessage();
-          createAndSetErrorResponse(operationResult, resourceException.getStatus(), detail);
-
-          if (operationResult.getBulkId() != null) {
-            String bulkIdKey = "bulkId:" + operationResult.getBulkId();
+        if (!errorCountExceeded && !(operationResult.getResponse() instanceof ErrorResponse)) {
+          Exception failure = this.execute(allUnresolveds, operationResult, bulkIdKeyToOperationResult, uriInfo::getBaseUriBuilder);
 
-            this.cleanup(bulkIdKey, transitiveReverseDependencies, bulkIdKeyToOperationResult);
-            operationResult.setData(null);
+          if (failure != null) {
+            errorCount += errorCountIncrement;
+            if (failure instanceof ResourceException) {
+              errorCountExceeded = errorCount >= maxErrorCount;
+            }
+            this.fail(operationResult, failure, transitiveReverseDependencies, bulkIdKeyToOperationResult);
           }
-        } catch (UnresolvableOperationException unresolvableOperationException) {
-          log.error("Could not resolve bulkId during Bulk Operation method handling", unresolvableOperationException);
-
-          errorCount += errorCountIncrement;
-          String detail = unresolvableOperationException.getLocalizedMessage();
-
-          createAndSetErrorResponse(operationResult, Status.CONFLICT, detail);
-
-          if (operationResult.getBulkId() != null) {
-            String bulkIdKey = "bulkId:" + operationResult.getBulkId();
+        } else if (errorCountExceeded) {
 
-            this.cleanup(bulkIdKey, transitiveReverseDependencies, bulkIdKeyToOperationResult);
-            operationResult.setData(null);
-          }
+          // continue processing bulk operations to cleanup any dependencies
+          this.skip(operationResult, transitiveReverseDependencies, bulkIdKeyToOperationResult);
         }
-      } else if (errorCountExceeded) {
-
-        // continue processing bulk operations to cleanup any dependencies
-
-        createAndSetErrorResponse(operationResult, Status.CONFLICT, "failOnErrors count reached");
-        if (operationResult.getBulkId() != null) {
-          String bulkIdKey = "bulkId:" + operationResult.getBulkId();
+      }
+    } else {
+      // UriInfo is bound to the request thread, the locations are built from its base URI instead
+      URI baseUri = uriInfo.getBaseUri();
+      Supplier<UriBuilder> baseUriBuilder = () -> UriBuilder.fromUri(baseUri);
+
+      for (List<BulkOperation> layer : this.layers(bulkOperations, bulkIdKeyToOperationResult)) {
+        List<LayerResult> layerResults = errorCountExceeded
+          ? Collections.nCopies(layer.size(), null)
+          : this.executeLayer(layer, bulkIdKeyToOperationResult, baseUriBuilder, errorCount, maxErrorCount, errorCountIncrement);
+
+        // errors are counted in the order of the request, as if the operations had run in order
+        for (int index = 0; index < layer.size(); index++) {
+          BulkOperation operationResult = layer.get(index);
+          LayerResult layerResult = layerResults.get(index);
+
+          if (layerResult != null && !layerResult.skipped) {
+            allUnresolveds.addAll(layerResult.unresolveds);
+
+            if (layerResult.failure != null) {
+              errorCount += errorCountIncrement;
+              if (layerResult.failure instanceof ResourceException) {
+                errorCountExceeded = errorCount >= maxErrorCount;
+              }
+              this.fail(operationResult, layerResult.failure, transitiveReverseDependencies, bulkIdKeyToOperationResult);
+            }
+          } else if (errorCountExceeded || layerResult != null) {
 
-          this.cleanup(bulkIdKey, transitiveReverseDependencies, bulkIdKeyToOperationResult);
+            // the operation was not started because the failOnErrors count was reached
+            this.skip(operationResult, transitiveReverseDependencies, bulkIdKeyToOperationResult);
+          }
         }
       }
     }
@@ -329,6 +365,234 @@ public class BulkResourceImpl implements BulkResource {
       .build();
   }
 
+  /**
+   * Runs {@code operationResult}, and returns the exception it failed with, or null if it succeeded.
+   */
+  private Exception execute(List<IWishJavaHadTuples> unresolveds, BulkOperation operationResult, Map<String, BulkOperation> bulkIdKeyToOperationResult, Supplier<UriBuilder> baseUriBuilder) {
+    try {
+      this.handleBulkOperationMethod(unresolveds, operationResult, bulkIdKeyToOperationResult, baseUriBuilder);
+      return null;
+    } catch (ResourceException | UnresolvableOperationException e) {
+      return e;
+    }
+  }
+
+  /**
+   * Sets the error response of an operation that failed with {@code failure}, and cleans up the operations that
+   * depend on it.
+   */
+  private void fail(BulkOperation operationResult, Exception failure, Map<String, Set<String>> transitiveReverseDependencies, Map<String, BulkOperation> bulkIdKeyToOperationResult) {
+    if (failure instanceof ResourceException) {
+      log.error("Failed to do bulk operation", failure);
+
+      createAndSetErrorResponse(operationResult, ((ResourceException) failure).getStatus(), failure.getLocalizedMessage());
+    } else {
+      log.error("Could not resolve bulkId during Bulk Operation method handling", failure);
+
+      createAndSetErrorResponse(operationResult, Status.CONFLICT, failure.getLocalizedMessage());
+    }
+
+    if (operationResult.getBulkId() != null) {
+      String bulkIdKey = "bulkId:" + operationResult.getBulkId();
+
+      this.cleanup(bulkIdKey, transitiveReverseDependencies, bulkIdKeyToOperationResult);
+      operationResult.setData(null);
+    }
+  }
+
+  /**
+   * Sets the error response of an operation that is not run because the failOnErrors count was reached, and cleans up
+   * the operations that depend on it.
+   */
+  private void skip(BulkOperation operationResult, Map<String, Set<String>> transitiveReverseDependencies, Map<String, BulkOperation> bulkIdKeyToOperationResult) {
+    createAndSetErrorResponse(operationResult, Status.CONFLICT, "failOnErrors count reached");
+    if (operationResult.getBulkId() != null) {
+      String bulkIdKey = "bulkId:" + operationResult.getBulkId();
+
+      this.cleanup(bulkIdKey, transitiveReverseDependencies, bulkIdKeyToOperationResult);
+    }
+  }
+
+  /**
+   * Runs the operations of {@code layer} that have no error response at the same time. Operations that have not
+   * started when the failOnErrors count is reached are skipped, the operations that did start are waited for.
+   *
+   * @return the result of each operation of the layer, null for an operation that was not run.
+   */
+  private List<LayerResult> executeLayer(List<BulkOperation> layer, Map<String, BulkOperation> bulkIdKeyToOperationResult, Supplier<UriBuilder> baseUriBuilder, int errorCount, int maxErrorCount, int errorCountIncrement) {
+    AtomicInteger layerErrorCount = new AtomicInteger(errorCount);
+    AtomicBoolean errorCountExceeded = new AtomicBoolean();
+    List<LayerResult> layerResults = new ArrayList<>(layer.size());
+    List<Runnable> tasks = new ArrayList<>(layer.size());
+
+    for (BulkOperation operationResult : layer) {
+      if (operationResult.getResponse() instanceof ErrorResponse) {
+        layerResults.add(null);
+        continue;
+      }
+      LayerResult layerResult = new LayerResult();
+      layerResults.add(layerResult);
+      tasks.add(() -> {
+        if (errorCountExceeded.get()) {
+          layerResult.skipped = true;
+          return;
+        }
+        layerResult.failure = this.execute(layerResult.unresolveds, operationResult, bulkIdKeyToOperationResult, baseUriBuilder);
+        if (layerResult.failure != null) {
+          int count = layerErrorCount.addAndGet(errorCountIncrement);
+          if (layerResult.failure instanceof ResourceException && count >= maxErrorCount) {
+            errorCountExceeded.set(true);
+          }
+        }
+      });
+    }
+
+    if (tasks.size() == 1) {
+      tasks.get(0).run();
+      return layerResults;
+    }
+
+    List<Future<?>> futures = new ArrayList<>(tasks.size());
+    for (Runnable task : tasks) {
+      futures.add(executor.submit(task));
+    }
+    // the operations that started are waited for, so the response describes all of them
+    boolean interrupted = false;
+    Throwable unexpected = null;
+    for (Future<?> future : futures) {
+      while (true) {
+        try {
+          future.get();
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        } catch (ExecutionException e) {
+          unexpected = unexpected != null ? unexpected : e.getCause();
+          break;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    if (unexpected instanceof RuntimeException) {
+      throw (RuntimeException) unexpected;
+    }
+    if (unexpected instanceof Error) {
+      throw (Error) unexpected;
+    }
+    return layerResults;
+  }
+
+  /**
+   * Orders the operations in layers, each operation depends through bulkIds only on operations of earlier layers, so
+   * the operations of a layer can run at the same time. Operations in a layer are in the order of the request.
+   * <p>
+   * Operations that may change the same resource, see {@link #conflictKeys(BulkOperation)}, also depend on the
+   * previous one, so e.g. a {@code PUT /Users/123} runs before a later {@code DELETE /Users/123}.
+   * <p>
+   * Operations that depend on themselves, e.g. two groups that are members of each other, and the operations that
+   * depend on them can't be layered. They each get a layer of their own after all others, in the order of the request,
+   * and their bulkIds are resolved by the final resolution pass as when all operations run in order.
+   */
+  private List<List<BulkOperation>> layers(List<BulkOperation> bulkOperations, Map<String, BulkOperation> bulkIdKeyToOperationResult) {
+    int size = bulkOperations.size();
+    Map<String, Integer> bulkIdKeyToIndex = new HashMap<>();
+    for (int index = 0; index < size; index++) {
+      BulkOperation bulkOperation = bulkOperations.get(index);
+      String bulkIdKey = bulkOperation.getBulkId() != null ? "bulkId:" + bulkOperation.getBulkId() : null;
+
+      if (bulkIdKey != null && bulkIdKeyToOperationResult.get(bulkIdKey) == bulkOperation) {
+        bulkIdKeyToIndex.put(bulkIdKey, index);
+      }
+    }
+
+    List<Set<Integer>> dependents = new ArrayList<>(size);
+    int[] dependencyCounts = new int[size];
+    for (int index = 0; index < size; index++) {
+      dependents.add(new HashSet<>());
+    }
+    for (int index = 0; index < size; index++) {
+      for (String bulkIdKey : this.bulkIdReferences(bulkOperations.get(index))) {
+        Integer dependency = bulkIdKeyToIndex.get(bulkIdKey);
+
+        // references to unknown bulkIds fail when the operation is run
+        if (dependency != null && dependents.get(dependency).add(index)) {
+          dependencyCounts[index]++;
+        }
+      }
+    }
+    Map<String, Integer> conflictKeyToIndex = new HashMap<>();
+    for (int index = 0; index < size; index++) {
+      for (String conflictKey : this.conflictKeys(bulkOperations.get(index))) {
+        Integer previous = conflictKeyToIndex.put(conflictKey, index);
+
+        if (previous != null && dependents.get(previous).add(index)) {
+          dependencyCounts[index]++;
+        }
+      }
+    }
+
+    List<List<BulkOperation>> layers = new ArrayList<>();
+    List<Integer> layer = new ArrayList<>();
+    for (int index = 0; index < size; index++) {
+      if (dependencyCounts[index] == 0) {
+        layer.add(index);
+      }
+    }
+    while (!layer.isEmpty()) {
+      List<BulkOperation> layerOperations = new ArrayList<>(layer.size());
+      List<Integer> nextLayer = new ArrayList<>();
+      for (int index : layer) {
+        layerOperations.add(bulkOperations.get(index));
+        for (int dependent : dependents.get(index)) {
+          if (--dependencyCounts[dependent] == 0) {
+            nextLayer.add(dependent);
+          }
+        }
+      }
+      layers.add(layerOperations);
+      Collections.sort(nextLayer);
+      layer = nextLayer;
+    }
+    for (int index = 0; index < size; index++) {
+      if (dependencyCounts[index] > 0) {
+        layers.add(List.of(bulkOperations.get(index)));
+      }
+    }
+    return layers;
+  }
+
+  /**
+   * Returns keys of the resources an operation may change: the path of an operation on an existing resource, e.g.
+   * {@code /Users/123}, and the values of the attributes of its data that must be unique, e.g. a userName. Operations
+   * that share a key must not run at the same time.
+   */
+  private Set<String> conflictKeys(BulkOperation bulkOperation) {
+    Set<String> conflictKeys = new HashSet<>();
+    String path = bulkOperation.getPath();
+    if (path != null && PATH_PATTERN.matcher(path).matches()) {
+      conflictKeys.add("path:" + path);
+    }
+
+    ScimResource scimResource = bulkOperation.getData();
+    Schema schema = scimResource != null ? this.schemaRegistry.getSchema(scimResource.getBaseUrn()) : null;
+    if (schema != null) {
+      for (Schema.Attribute attribute : schema.getAttributes()) {
+        if (attribute.getUniqueness() == null || attribute.getUniqueness() == Schema.Attribute.Uniqueness.NONE
+          || attribute.isMultiValued() || attribute.getType() == Schema.Attribute.Type.COMPLEX) {
+          continue;
+        }
+        Object value = attribute.getAccessor().get(scimResource);
+        if (value != null) {
+          String text = attribute.isCaseExact() ? value.toString() : value.toString().toLowerCase(Locale.ROOT);
+          conflictKeys.add("unique:" + schema.getId() + ":" + attribute.getName() + ":" + text);
+        }
+      }
+    }
+    return conflictKeys;
+  }
+
   /**
    * Delete resources that depend on {@code bulkIdKeyToCleanup}, remove
    * {@link BulkOperation}s data, and set their code and response
@@ -342,16 +606,18 @@ public class BulkResourceImpl implements BulkResource {
     BulkOperation operationResult = bulkIdKeyToOperationResult.get(bulkIdKeyToCleanup);
     String bulkId = operationResult.getBulkId();
     ScimResource scimResource = operationResult.getData();
-    @SuppressWarnings("unchecked")
-    Class<ScimResource> scimResourceClass = (Class<ScimResource>) scimResource.getClass();
-    Repository<ScimResource> repository = this.repositoryRegistry.getRepository(scimResourceClass);
 
-    try {
-      if (StringUtils.isNotBlank(scimResource.getId())) {
+    // the data of an operation is removed when it fails, or when an operation it depends on failed
+    if (scimResource != null && StringUtils.isNotBlank(scimResource.getId())) {
+      @SuppressWarnings("unchecked")
+      Class<ScimResource> scimResourceClass = (Class<ScimResource>) scimResource.getClass();
+      Repository<ScimResource> repository = this.repositoryRegistry.getRepository(scimResourceClass);
+
+      try {
         repository.delete(scimResource.getId());
+      } catch (ResourceException unableToDeleteResourceException) {
+        log.error("Could not delete ScimResource after failure: {}", scimResource);
       }
-    } catch (ResourceException unableToDeleteResourceException) {
-      log.error("Could not delete ScimResource after failure: {}", scimResource);
     }
     for (String dependentBulkIdKey : reverseDependencies) {
       BulkOperation dependentOperationResult = bulkIdKeyToOperationResult.get(dependentBulkIdKey);
@@ -382,13 +648,13 @@ public class BulkResourceImpl implements BulkResource {
    * @param unresolveds
    * @param operationResult
    * @param bulkIdKeyToOperationResult
-   * @param uriInfo
+   * @param baseUriBuilder
    * @throws UnableToCreateResourceException
    * @throws UnableToDeleteResourceException
    * @throws UnableToUpdateResourceException
    * @throws UnresolvableOperationException
    */
-  private void handleBulkOperationMethod(List<IWishJavaHadTuples> unresolveds, BulkOperation operationResult, Map<String, BulkOperation> bulkIdKeyToOperationResult, UriInfo uriInfo) throws ResourceException, UnresolvableOperationException {
+  private void handleBulkOperationMethod(List<IWishJavaHadTuples> unresolveds, BulkOperation operationResult, Map<String, BulkOperation> bulkIdKeyToOperationResult, Supplier<UriBuilder> baseUriBuilder) throws ResourceException, UnresolvableOperationException {
     ScimResource scimResource = operationResult.getData();
     Method bulkOperationMethod = operationResult.getMethod();
     String bulkId = operationResult.getBulkId();
@@ -417,7 +683,7 @@ public class BulkResourceImpl implements BulkResource {
       ScimResource newScimResource = repository.create(scimResource);
       String bulkOperationPath = operationResult.getPath();
       String newResourceId = newScimResource.getId();
-      String newResourceUri = uriInfo.getBaseUriBuilder()
+      String newResourceUri = baseUriBuilder.get()
                                      .path(bulkOperationPath)
                                      .path(newResourceId)
                                      .build()
@@ -497,6 +763,15 @@ public class BulkResourceImpl implements BulkResource {
     public final BulkOperation bulkOperationResult;
   }
 
+  /**
+   * The result of an operation run with the other operations of its layer.
+   */
+  private static class LayerResult {
+    private final List<IWishJavaHadTuples> unresolveds = new ArrayList<>();
+    private Exception failure;
+    private boolean skipped;
+  }
+
   private static class UnresolvableOperationException extends Exception {
     private static final long serialVersionUID = -6081994707016671935L;
 
@@ -763,15 +1038,13 @@ public class BulkResourceImpl implements BulkResource {
     return transitiveDependenciesGraph;
   }
 
-  private static void generateReverseDependenciesGraph(Map<String, Set<String>> reverseDependenciesGraph, String dependentBulkId, Object scimObject, Set<Schema.Attribute> scimObjectAttributes) {
+  private static void collectBulkIdReferences(Set<String> references, Object scimObject, Set<Schema.Attribute> scimObjectAttributes) {
     for (Schema.Attribute scimObjectAttribute : scimObjectAttributes)
       if (scimObjectAttribute.isScimResourceIdReference()) {
         String reference = scimObjectAttribute.getAccessor().get(scimObject);
 
         if (reference != null && reference.startsWith("bulkId:")) {
-          Set<String> dependents = reverseDependenciesGraph.computeIfAbsent(reference, (unused) -> new HashSet<>());
-
-          dependents.add("bulkId:" + dependentBulkId);
+          references.add(reference);
         }
       } else if (scimObjectAttribute.isMultiValued()) { // all multiValueds
                                                         // are COMPLEX, not
@@ -785,14 +1058,14 @@ public class BulkResourceImpl implements BulkResource {
           Set<Schema.Attribute> subAttributes = scimObjectAttribute.getAttributes();
 
           for (Object attributeValue : attributeValues) {
-            generateReverseDependenciesGraph(reverseDependenciesGraph, dependentBulkId, attributeValue, subAttributes);
+            collectBulkIdReferences(references, attributeValue, subAttributes);
           }
         }
       } else if (scimObjectAttribute.getType() == Schema.Attribute.Type.COMPLEX) {
         Object attributeValue = scimObjectAttribute.getAccessor().get(scimObject);
         Set<Schema.Attribute> subAttributes = scimObjectAttribute.getAttributes();
 
-        generateReverseDependenciesGraph(reverseDependenciesGraph, dependentBulkId, attributeValue, subAttributes);
+        collectBulkIdReferences(references, attributeValue, subAttributes);
       }
   }
 
@@ -809,14 +1082,34 @@ public class BulkResourceImpl implements BulkResource {
       String bulkId = bulkOperation.getBulkId();
 
       if (bulkId != null) {
-        ScimResource scimResource = bulkOperation.getData();
-        String scimResourceBaseUrn = scimResource.getBaseUrn();
-        Schema schema = this.schemaRegistry.getSchema(scimResourceBaseUrn);
-        Set<Schema.Attribute> attributes = schema.getAttributes();
+        for (String reference : this.bulkIdReferences(bulkOperation)) {
+          Set<String> dependents = reverseDependenciesGraph.computeIfAbsent(reference, (unused) -> new HashSet<>());
 
-        generateReverseDependenciesGraph(reverseDependenciesGraph, bulkId, scimResource, attributes);
+          dependents.add("bulkId:" + bulkId);
+        }
       }
     }
     return reverseDependenciesGraph;
   }
+
+  /**
+   * Finds the bulkIds referenced by the data of a {@link BulkOperation}.
+   *
+   * @param bulkOperation
+   * @return
+   */
+  private Set<String> bulkIdReferences(BulkOperation bulkOperation) {
+    ScimResource scimResource = bulkOperation.getData();
+    if (scimResource == null) {
+      return Collections.emptySet();
+    }
+    Schema schema = this.schemaRegistry.getSchema(scimResource.getBaseUrn());
+    if (schema == null) {
+      return Collections.emptySet();
+    }
+    Set<String> references = new HashSet<>();
+
+    collectBulkIdReferences(references, scimResource, schema.getAttributes());
+    return references;
+  }
 }
@@ -19,52 +19,96 @@
 
 package org.apache.directory.scim.server.rest;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.filter.FilteringGeneratorDelegate;
+import com.fasterxml.jackson.core.filter.TokenFilter;
+import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import jakarta.enterprise.context.ApplicationScoped;
 import org.apache.directory.scim.core.json.ObjectMapperFactory;
 import org.apache.directory.scim.server.exception.EtagGenerationException;
 import org.apache.directory.scim.spec.resources.ScimResource;
-import org.apache.directory.scim.spec.schema.Meta;
 
 import jakarta.ws.rs.core.EntityTag;
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Base64;
 
+/**
+ * Generates the ETag of a resource from a SHA-256 digest of its JSON, without its {@code meta}.
+ * <p>
+ * The JSON is written straight into the digest, with properties and map entries sorted by name, so the ETag does not
+ * depend on the order of fields or extensions. The resource is not changed.
+ */
 @ApplicationScoped
 public class EtagGenerator {
 
-  private final ObjectMapper objectMapper = ObjectMapperFactory.getObjectMapper();
-
-  public EntityTag generateEtag(ScimResource resource) throws EtagGenerationException {
+  private static final String META_PROPERTY = "meta";
 
+  private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
     try {
-      Meta meta = resource.getMeta();
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not supported", e);
+    }
+  });
 
-      if (meta == null) {
-        meta = new Meta();
-      }
+  private final ObjectMapper objectMapper = ObjectMapperFactory.getObjectMapper().copy()
+    .configure(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, true)
+    .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
 
-      resource.setMeta(null);
-      String writeValueAsString = objectMapper.writeValueAsString(resource);
+  public EntityTag generateEtag(ScimResource resource) throws EtagGenerationException {
+    MessageDigest digest = DIGEST.get();
+    digest.reset();
 
-      EntityTag etag = hash(writeValueAsString);
-      meta.setVersion(etag.getValue());
+    try (JsonGenerator generator = new FilteringGeneratorDelegate(
+      objectMapper.getFactory().createGenerator(new DigestOutputStream(digest), JsonEncoding.UTF8),
+      WithoutMeta.INSTANCE, TokenFilter.Inclusion.INCLUDE_ALL_AND_PATH, true)) {
+      objectMapper.writeValue(generator, resource);
+    } catch (IOException | RuntimeException e) {
+      digest.reset();
+      throw new EtagGenerationException("Failed to generate etag for SCIM resource: " + resource.getId(), e);
+    }
+
+    return new EntityTag(Base64.getEncoder().encodeToString(digest.digest()));
+  }
 
-      resource.setMeta(meta);
+  /**
+   * Leaves out the {@code meta} of the resource, which holds the version computed from the rest of it.
+   */
+  private static final class WithoutMeta extends TokenFilter {
 
-      return etag;
-    } catch (JsonProcessingException | NoSuchAlgorithmException e) {
-      throw new EtagGenerationException("Failed to generate etag for SCIM resource: " + resource.getId(), e);
+    private static final WithoutMeta INSTANCE = new WithoutMeta();
+
+    @Override
+    public TokenFilter includeProperty(String name) {
+      return META_PROPERTY.equals(name) ? null : TokenFilter.INCLUDE_ALL;
     }
   }
-  
-  private static EntityTag hash(String input) throws NoSuchAlgorithmException {
-    MessageDigest digest = MessageDigest.getInstance("SHA-256");
-    digest.update(input.getBytes(StandardCharsets.UTF_8));
-    byte[] hash = digest.digest();
-    return new EntityTag(Base64.getEncoder().encodeToString(hash));
+
+  /**
+   * Feeds the bytes written to it to a digest.
+   */
+  private static final class DigestOutputStream extends OutputStream {
+
+    private final MessageDigest digest;
+
+    private DigestOutputStream(MessageDigest digest) {
+      this.digest = digest;
+    }
+
+    @Override
+    public void write(int b) {
+      digest.update((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      digest.update(b, off, len);
+    }
   }
 }
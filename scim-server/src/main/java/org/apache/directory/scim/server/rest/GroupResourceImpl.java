@@ -29,18 +29,23 @@ import org.apache.directory.scim.core.repository.RepositoryRegistry;
 import org.apache.directory.scim.protocol.GroupResource;
 import org.apache.directory.scim.spec.resources.ScimGroup;
 import org.apache.directory.scim.core.schema.SchemaRegistry;
+import org.apache.directory.scim.server.configuration.ServerConfiguration;
 
 @Slf4j
 @ApplicationScoped
 public class GroupResourceImpl extends BaseResourceTypeResourceImpl<ScimGroup> implements GroupResource {
 
   @Inject
+  public GroupResourceImpl(SchemaRegistry schemaRegistry, RepositoryRegistry repositoryRegistry, ServerConfiguration serverConfiguration) {
+    super(schemaRegistry, repositoryRegistry, serverConfiguration, ScimGroup.class);
+  }
+
   public GroupResourceImpl(SchemaRegistry schemaRegistry, RepositoryRegistry repositoryRegistry) {
     super(schemaRegistry, repositoryRegistry, ScimGroup.class);
   }
 
   public GroupResourceImpl() {
     // CDI
-    this(null, null);
+    this(null, null, null);
   }
 }
@@ -0,0 +1,135 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.apache.directory.scim.server.rest;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import jakarta.ws.rs.core.StreamingOutput;
+import org.apache.directory.scim.core.json.AttributeProjection;
+import org.apache.directory.scim.core.repository.FilterResultStream;
+import org.apache.directory.scim.protocol.data.ListResponse;
+import org.apache.directory.scim.protocol.exception.ScimException;
+import org.apache.directory.scim.spec.filter.PageRequest;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Writes a {@link ListResponse} of the resources of a {@link FilterResultStream}, pulling and writing the resources
+ * one at a time, so the memory used by a response does not depend on the size of the page.
+ * <p>
+ * The envelope is written first, except for {@code itemsPerPage} and {@code nextCursor}, which are written after the
+ * resources once they have been counted. Pages requested with a cursor have no {@code startIndex}, see
+ * <a href="https://datatracker.ietf.org/doc/html/rfc9865#section-2.2">RFC 9865, section 2.2</a>.
+ * <p>
+ * The first resource is pulled and processed before the response is committed, so a search that fails right away
+ * (the common case, e.g. a repository that rejects the query) is answered with an error response. Once the first
+ * resource has been written the status is sent, a later failure aborts the connection and the client receives a
+ * truncated body.
+ * <p>
+ * Single resources are written with {@link #writeResource(Object, AttributeProjection)}, which applies the projection
+ * in the same way, so attributes that are never returned are left out whichever JSON provider the runtime selects.
+ */
+final class ListResponseWriter {
+
+  /**
+   * Changes a resource before it is written, e.g. with the {@code AttributeFilterExtension} of its repository.
+   */
+  @FunctionalInterface
+  interface ResourceProcessor<T> {
+    T process(T resource) throws ScimException;
+  }
+
+  private final ObjectMapper objectMapper;
+
+  ListResponseWriter(ObjectMapper objectMapper) {
+    this.objectMapper = objectMapper;
+  }
+
+  <T> StreamingOutput write(FilterResultStream<T> results, AttributeProjection projection, ResourceProcessor<T> processor) throws ScimException {
+    ObjectWriter writer = projection.applyTo(objectMapper.writer());
+    Iterator<T> resources;
+    T first;
+    try {
+      resources = results.getResources().iterator();
+      first = resources.hasNext() ? processor.process(resources.next()) : null;
+    } catch (ScimException | RuntimeException e) {
+      results.close();
+      throw e;
+    }
+
+    return output -> {
+      try (results;
+           JsonGenerator generator = objectMapper.getFactory().createGenerator(output)
+             .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("schemas");
+        generator.writeString(ListResponse.SCHEMA_URI);
+        generator.writeEndArray();
+
+        if (first == null) {
+          // https://tools.ietf.org/html/rfc7644#section-3.4.2
+          generator.writeNumberField("totalResults", 0);
+        } else {
+          generator.writeNumberField("totalResults", results.getTotalResults());
+          PageRequest pageRequest = results.getPageRequest();
+          if (pageRequest == null || !pageRequest.isCursorPaged()) {
+            generator.writeNumberField("startIndex", startIndex(pageRequest));
+          }
+          generator.writeArrayFieldStart("Resources");
+          writer.writeValue(generator, first);
+          int itemsPerPage = 1;
+          while (resources.hasNext()) {
+            writer.writeValue(generator, process(processor, resources.next()));
+            itemsPerPage++;
+          }
+          generator.writeEndArray();
+          generator.writeNumberField("itemsPerPage", itemsPerPage);
+          if (results.getNextCursor() != null) {
+            generator.writeStringField("nextCursor", results.getNextCursor());
+          }
+        }
+        generator.writeEndObject();
+      }
+    };
+  }
+
+  /**
+   * Writes {@code resource} with the attributes selected by {@code projection}.
+   */
+  <T> StreamingOutput writeResource(T resource, AttributeProjection projection) {
+    ObjectWriter writer = projection.applyTo(objectMapper.writer());
+    return output -> writer.without(JsonGenerator.Feature.AUTO_CLOSE_TARGET).writeValue(output, resource);
+  }
+
+  private static int startIndex(PageRequest pageRequest) {
+    return pageRequest != null && pageRequest.getStartIndex() != null ? pageRequest.getStartIndex() : 1;
+  }
+
+  private static <T> T process(ResourceProcessor<T> processor, T resource) throws IOException {
+    try {
+      return processor.process(resource);
+    } catch (ScimException e) {
+      throw new IOException("Failed to process resource: " + e.getMessage(), e);
+    }
+  }
+}
@@ -0,0 +1,76 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.apache.directory.scim.server.rest;
+
+import jakarta.enterprise.util.AnnotationLiteral;
+import org.apache.directory.scim.core.json.AttributeProjection;
+
+import java.lang.annotation.Annotation;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Carries the {@link AttributeProjection} of a response from a resource method to
+ * {@link ScimJacksonXmlBindJsonProvider}, as one of the annotations of the response entity. Only that provider applies
+ * it, the resource endpoints write resources with {@link ListResponseWriter#writeResource(Object, AttributeProjection)}
+ * so the projection does not depend on the provider the runtime selects.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({})
+@interface Projection {
+
+  final class Literal extends AnnotationLiteral<Projection> implements Projection {
+
+    private static final long serialVersionUID = 2295826187420542101L;
+
+    private final transient AttributeProjection projection;
+
+    Literal(AttributeProjection projection) {
+      this.projection = projection;
+    }
+
+    AttributeProjection getProjection() {
+      return projection;
+    }
+
+    /**
+     * Returns the projection in {@code annotations}, or null if there is none.
+     */
+    static AttributeProjection of(Annotation[] annotations) {
+      if (annotations != null) {
+        for (Annotation annotation : annotations) {
+          if (annotation instanceof Literal) {
+            return ((Literal) annotation).getProjection();
+          }
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Returns the entity annotations of a response with {@code projection}.
+     */
+    static Annotation[] annotations(AttributeProjection projection) {
+      return new Annotation[] {new Literal(projection)};
+    }
+  }
+}
@@ -0,0 +1,152 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.apache.directory.scim.server.rest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.Request;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.Response.ResponseBuilder;
+import jakarta.ws.rs.core.Response.Status;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.directory.scim.protocol.data.ErrorResponse;
+import org.apache.directory.scim.spec.resources.ScimResource;
+import org.apache.directory.scim.spec.schema.Meta;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * A bounded cache of the JSON responses of the discovery endpoints, {@code /Schemas}, {@code /ResourceTypes} and
+ * {@code /ServiceProviderConfig}, which only change when the server is configured.
+ * <p>
+ * Documents are rendered once to UTF-8 bytes, with a strong ETag, and served as is until the version they were
+ * rendered from changes. The ETag of a resource is its {@code meta.version}, other documents are tagged with a digest
+ * of their bytes. Requests with a matching {@code If-None-Match} get a
+ * {@code 304 Not Modified}. Documents are keyed by their location, as the {@code meta.location} they contain depends
+ * on the base URI of the request.
+ */
+@Slf4j
+final class RenderedDocuments {
+
+  static final int MAXIMUM_SIZE = 64;
+
+  private final ObjectMapper objectMapper;
+
+  private final Map<String, Document> documents = new LinkedHashMap<>(16, 0.75f, true) {
+    private static final long serialVersionUID = -4620286316962474393L;
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Document> eldest) {
+      return size() > MAXIMUM_SIZE;
+    }
+  };
+
+  RenderedDocuments(ObjectMapper objectMapper) {
+    this.objectMapper = objectMapper;
+  }
+
+  /**
+   * Returns the response for the document at {@code location}, rendering the {@code entity} if the document has not
+   * been rendered for {@code version} yet.
+   *
+   * @param request the request, used to evaluate {@code If-None-Match}, may be null.
+   */
+  Response respond(String location, long version, Request request, Callable<Object> entity) {
+    Document document;
+    synchronized (documents) {
+      document = documents.get(location);
+    }
+
+    if (document == null || document.version != version) {
+      try {
+        Object value = entity.call();
+        document = new Document(version, objectMapper.writeValueAsBytes(value), versionOf(value));
+      } catch (Exception e) {
+        log.error("Failed to render " + location, e);
+        return new ErrorResponse(Status.INTERNAL_SERVER_ERROR, "Failed to render " + location).toResponse();
+      }
+      synchronized (documents) {
+        documents.put(location, document);
+      }
+    }
+
+    if (request != null) {
+      ResponseBuilder notModified = request.evaluatePreconditions(document.etag);
+      if (notModified != null) {
+        return notModified.tag(document.etag).build();
+      }
+    }
+    return Response.ok(document.body).tag(document.etag).build();
+  }
+
+  /**
+   * Returns the JSON of {@code value} with {@code meta}, leaving {@code value}, which may be shared, unchanged.
+   */
+  JsonNode withMeta(Object value, Meta meta) {
+    ObjectNode node = objectMapper.valueToTree(value);
+    node.set("meta", objectMapper.valueToTree(meta));
+    return node;
+  }
+
+  private static String versionOf(Object value) {
+    if (value instanceof ScimResource) {
+      Meta meta = ((ScimResource) value).getMeta();
+      return meta != null ? meta.getVersion() : null;
+    }
+    return null;
+  }
+
+  int size() {
+    synchronized (documents) {
+      return documents.size();
+    }
+  }
+
+  private static final class Document {
+
+    private final long version;
+
+    private final byte[] body;
+
+    private final EntityTag etag;
+
+    private Document(long version, byte[] body, String tag) {
+      this.version = version;
+      this.body = body;
+      this.etag = new EntityTag(tag != null ? tag : sha256(body));
+    }
+
+    private static String sha256(byte[] body) {
+      try {
+        return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(body));
+      } catch (NoSuchAlgorithmException e) {
+        throw new IllegalStateException("SHA-256 is not supported", e);
+      }
+    }
+  }
+}
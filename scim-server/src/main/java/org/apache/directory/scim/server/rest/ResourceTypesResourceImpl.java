@@ -23,11 +23,13 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.core.*;
 import jakarta.ws.rs.core.Response.Status;
 
+import org.apache.directory.scim.core.json.ObjectMapperFactory;
 import org.apache.directory.scim.protocol.ResourceTypesResource;
 import org.apache.directory.scim.protocol.data.ListResponse;
 import org.apache.directory.scim.spec.schema.Meta;
@@ -39,14 +41,20 @@ public class ResourceTypesResourceImpl implements ResourceTypesResource {
 
   private final SchemaRegistry schemaRegistry;
 
+  private final RenderedDocuments documents;
+
   // TODO: Field injection of UriInfo should work with all implementations
   // CDI can be used directly in Jakarta WS 4
   @Context
   UriInfo uriInfo;
 
+  @Context
+  Request request;
+
   @Inject
   public ResourceTypesResourceImpl(SchemaRegistry schemaRegistry) {
     this.schemaRegistry = schemaRegistry;
+    this.documents = schemaRegistry != null ? new RenderedDocuments(ObjectMapperFactory.createObjectMapper(schemaRegistry)) : null;
   }
 
   public ResourceTypesResourceImpl() {
@@ -61,25 +69,25 @@ public class ResourceTypesResourceImpl implements ResourceTypesResource {
       return Response.status(Status.FORBIDDEN).build();
     }
 
-    Collection<ResourceType> resourceTypes = schemaRegistry.getAllResourceTypes();
-    
-    for (ResourceType resourceType : resourceTypes) {
-      Meta meta = new Meta();
-      meta.setLocation(uriInfo.getAbsolutePathBuilder().path(resourceType.getName()).build().toString());
-      meta.setResourceType(resourceType.getResourceType());
-      
-      resourceType.setMeta(meta);
-    }
-    
-    ListResponse<ResourceType> listResponse = new ListResponse<>();
-    listResponse.setItemsPerPage(resourceTypes.size());
-    listResponse.setStartIndex(1);
-    listResponse.setTotalResults(resourceTypes.size());
-    
-    List<ResourceType> objectList = new ArrayList<>(resourceTypes);
-    listResponse.setResources(objectList);
-    
-    return Response.ok(listResponse).build();
+    return documents.respond(uriInfo.getAbsolutePath().toString(), schemaRegistry.getModificationCount(), request, () -> {
+      Collection<ResourceType> resourceTypes = schemaRegistry.getAllResourceTypes();
+      List<JsonNode> objectList = new ArrayList<>(resourceTypes.size());
+
+      for (ResourceType resourceType : resourceTypes) {
+        Meta meta = new Meta();
+        meta.setLocation(uriInfo.getAbsolutePathBuilder().path(resourceType.getName()).build().toString());
+        meta.setResourceType(resourceType.getResourceType());
+
+        objectList.add(documents.withMeta(resourceType, meta));
+      }
+
+      ListResponse<JsonNode> listResponse = new ListResponse<>();
+      listResponse.setItemsPerPage(resourceTypes.size());
+      listResponse.setStartIndex(1);
+      listResponse.setTotalResults(resourceTypes.size());
+      listResponse.setResources(objectList);
+      return listResponse;
+    });
   }
 
   @Override
@@ -88,14 +96,15 @@ public class ResourceTypesResourceImpl implements ResourceTypesResource {
     if (resourceType == null){
       return Response.status(Status.NOT_FOUND).build();  
     }
-    
-    Meta meta = new Meta();
-    meta.setLocation(uriInfo.getAbsolutePath().toString());
-    meta.setResourceType(resourceType.getResourceType());
-    
-    resourceType.setMeta(meta);
-    
-    return Response.ok(resourceType).build();
+
+    String location = uriInfo.getAbsolutePath().toString();
+    return documents.respond(location, schemaRegistry.getModificationCount(), request, () -> {
+      Meta meta = new Meta();
+      meta.setLocation(location);
+      meta.setResourceType(resourceType.getResourceType());
+
+      return documents.withMeta(resourceType, meta);
+    });
   }
 
 }
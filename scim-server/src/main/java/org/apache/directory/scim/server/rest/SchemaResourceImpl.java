@@ -23,12 +23,16 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.Request;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
 import jakarta.ws.rs.core.UriInfo;
 
+import org.apache.directory.scim.core.json.ObjectMapperFactory;
 import org.apache.directory.scim.protocol.SchemaResource;
 import org.apache.directory.scim.protocol.data.ListResponse;
 import org.apache.directory.scim.spec.schema.Meta;
@@ -40,9 +44,15 @@ public class SchemaResourceImpl implements SchemaResource {
 
   private final SchemaRegistry schemaRegistry;
 
+  private final RenderedDocuments documents;
+
+  @Context
+  Request request;
+
   @Inject
   public SchemaResourceImpl(SchemaRegistry schemaRegistry) {
     this.schemaRegistry = schemaRegistry;
+    this.documents = schemaRegistry != null ? new RenderedDocuments(ObjectMapperFactory.createObjectMapper(schemaRegistry)) : null;
   }
 
   public SchemaResourceImpl() {
@@ -56,26 +66,26 @@ public class SchemaResourceImpl implements SchemaResource {
     if (filter != null) {
       return Response.status(Status.FORBIDDEN).build();
     }
-    
-    ListResponse<Schema> listResponse = new ListResponse<>();
-    Collection<Schema> schemas = schemaRegistry.getAllSchemas();
-    
-    for (Schema schema : schemas) {
-      Meta meta = new Meta();
-      meta.setLocation(uriInfo.getAbsolutePathBuilder().path(schema.getId()).build().toString());
-      meta.setResourceType(Schema.RESOURCE_NAME);
-      
-      schema.setMeta(meta);
-    }
-    
-    listResponse.setItemsPerPage(schemas.size());
-    listResponse.setStartIndex(1);
-    listResponse.setTotalResults(schemas.size());
-    
-    List<Schema> objectList = new ArrayList<>(schemas);
-    listResponse.setResources(objectList);
-    
-    return Response.ok(listResponse).build();
+
+    return documents.respond(uriInfo.getAbsolutePath().toString(), schemaRegistry.getModificationCount(), request, () -> {
+      Collection<Schema> schemas = schemaRegistry.getAllSchemas();
+      List<JsonNode> objectList = new ArrayList<>(schemas.size());
+
+      for (Schema schema : schemas) {
+        Meta meta = new Meta();
+        meta.setLocation(uriInfo.getAbsolutePathBuilder().path(schema.getId()).build().toString());
+        meta.setResourceType(Schema.RESOURCE_NAME);
+
+        objectList.add(documents.withMeta(schema, meta));
+      }
+
+      ListResponse<JsonNode> listResponse = new ListResponse<>();
+      listResponse.setItemsPerPage(schemas.size());
+      listResponse.setStartIndex(1);
+      listResponse.setTotalResults(schemas.size());
+      listResponse.setResources(objectList);
+      return listResponse;
+    });
   }
 
   @Override
@@ -85,14 +95,14 @@ public class SchemaResourceImpl implements SchemaResource {
     if (schema == null){
       return Response.status(Status.NOT_FOUND).build();  
     }
-    
-    Meta meta = new Meta();
-    meta.setLocation(uriInfo.getAbsolutePath().toString());
-    meta.setResourceType(Schema.RESOURCE_NAME);
-    
-    schema.setMeta(meta);
-    
-    return Response.ok(schema).build();
-    
+
+    String location = uriInfo.getAbsolutePath().toString();
+    return documents.respond(location, schemaRegistry.getModificationCount(), request, () -> {
+      Meta meta = new Meta();
+      meta.setLocation(location);
+      meta.setResourceType(Schema.RESOURCE_NAME);
+
+      return documents.withMeta(schema, meta);
+    });
   }
 }
@@ -19,9 +19,16 @@
 
 package org.apache.directory.scim.server.rest;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.jakarta.rs.cfg.EndpointConfigBase;
+import com.fasterxml.jackson.jakarta.rs.cfg.ObjectWriterInjector;
+import com.fasterxml.jackson.jakarta.rs.cfg.ObjectWriterModifier;
 import com.fasterxml.jackson.jakarta.rs.json.JacksonXmlBindJsonProvider;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
+import org.apache.directory.scim.core.json.AttributeProjection;
 import org.apache.directory.scim.core.json.ObjectMapperFactory;
 import org.apache.directory.scim.core.schema.SchemaRegistry;
 import org.apache.directory.scim.protocol.Constants;
@@ -34,9 +41,12 @@ import org.apache.directory.scim.protocol.data.ListResponse;
 import org.apache.directory.scim.spec.resources.ScimResource;
 import org.apache.directory.scim.spec.schema.ServiceProviderConfiguration;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Adds JacksonJaxbJsonProvider for custom MediaType {@code application/scim+json} and application/json.
@@ -71,4 +81,39 @@ public class ScimJacksonXmlBindJsonProvider extends JacksonXmlBindJsonProvider {
     return super.isWriteable(type, genericType, annotations, mediaType)
       && SUPPORTED_PACKAGES.contains(type.getPackage());
   }
+
+  /**
+   * Writes {@code value} with the {@link AttributeProjection} of the response, if it has one, see
+   * {@link Projection.Literal#annotations(AttributeProjection)}.
+   */
+  @Override
+  public void writeTo(Object value, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException {
+    AttributeProjection projection = Projection.Literal.of(annotations);
+    if (projection == null) {
+      super.writeTo(value, type, genericType, annotations, mediaType, httpHeaders, entityStream);
+      return;
+    }
+
+    // the base provider takes the modifier of the thread once, the previous modifier is put back unless it was applied
+    ObjectWriterModifier previous = ObjectWriterInjector.getAndClear();
+    AtomicBoolean applied = new AtomicBoolean();
+    ObjectWriterInjector.set(new ObjectWriterModifier() {
+      @Override
+      public ObjectWriter modify(EndpointConfigBase<?> endpoint, MultivaluedMap<String, Object> responseHeaders, Object valueToWrite, ObjectWriter writer, JsonGenerator generator) throws IOException {
+        applied.set(true);
+        if (previous != null) {
+          writer = previous.modify(endpoint, responseHeaders, valueToWrite, writer, generator);
+        }
+        return projection.applyTo(writer);
+      }
+    });
+    try {
+      super.writeTo(value, type, genericType, annotations, mediaType, httpHeaders, entityStream);
+    } finally {
+      ObjectWriterInjector.getAndClear();
+      if (previous != null && !applied.get()) {
+        ObjectWriterInjector.set(previous);
+      }
+    }
+  }
 }
@@ -19,8 +19,249 @@
 
 package org.apache.directory.scim.server.rest;
 
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.Response.Status;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.directory.scim.core.json.AttributeProjection;
+import org.apache.directory.scim.core.json.ObjectMapperFactory;
+import org.apache.directory.scim.core.repository.FilterResultStream;
+import org.apache.directory.scim.core.repository.Repository;
+import org.apache.directory.scim.core.repository.RepositoryRegistry;
+import org.apache.directory.scim.core.repository.SortEngine;
+import org.apache.directory.scim.core.schema.SchemaRegistry;
 import org.apache.directory.scim.protocol.SearchResource;
+import org.apache.directory.scim.protocol.data.ListResponse;
+import org.apache.directory.scim.protocol.data.SearchRequest;
+import org.apache.directory.scim.protocol.exception.ScimException;
+import org.apache.directory.scim.server.configuration.ServerConfiguration;
+import org.apache.directory.scim.server.exception.AttributeException;
+import org.apache.directory.scim.spec.annotation.ScimResourceType;
+import org.apache.directory.scim.spec.exception.ResourceException;
+import org.apache.directory.scim.spec.filter.Filter;
+import org.apache.directory.scim.spec.filter.FilterResponse;
+import org.apache.directory.scim.spec.filter.PageRequest;
+import org.apache.directory.scim.spec.filter.SortRequest;
+import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
+import org.apache.directory.scim.spec.resources.ScimResource;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Searches the resources of all types from the root of the server, see
+ * <a href="https://datatracker.ietf.org/doc/html/rfc7644#section-3.4.3">RFC 7644, section 3.4.3</a>.
+ * <p>
+ * The search is sent to every registered {@link Repository} at once, on at most
+ * {@link ServerConfiguration#getSearchMaxThreads()} threads. Each repository applies the filter to its own resources,
+ * attributes that are not in its schema don't match, and returns its resources up to the end of the requested page,
+ * sorted by {@code sortBy}. The resources of all repositories are merged with
+ * {@link SortEngine#merge(List, List, PageRequest)}, which applies {@code startIndex} and {@code count} to all of them.
+ * <p>
+ * A repository that does not answer within {@link ServerConfiguration#getSearchRepositoryTimeoutMillis()} is left out
+ * of the results, so a slow repository does not hold up the search. Its resources are not counted either, so
+ * {@code totalResults} is then only the number of matching resources of the repositories that answered, and a warning
+ * with the number of repositories left out is logged. Repositories are called on the threads of the
+ * search, not on the thread of the request. Cursor pagination is not supported.
+ */
+@Slf4j
+@ApplicationScoped
 public class SearchResourceImpl implements SearchResource {
 
+  private final RepositoryRegistry repositoryRegistry;
+
+  private final SchemaRegistry schemaRegistry;
+
+  private final ServerConfiguration serverConfiguration;
+
+  private final AttributeUtil attributeUtil;
+
+  private final ListResponseWriter listResponseWriter;
+
+  private final ExecutorService executor;
+
+  @Inject
+  public SearchResourceImpl(SchemaRegistry schemaRegistry, RepositoryRegistry repositoryRegistry, ServerConfiguration serverConfiguration) {
+    this(schemaRegistry, repositoryRegistry, serverConfiguration,
+      serverConfiguration != null ? BoundedExecutor.create("scim-search", serverConfiguration.getSearchMaxThreads()) : null);
+  }
+
+  SearchResourceImpl(SchemaRegistry schemaRegistry, RepositoryRegistry repositoryRegistry, ServerConfiguration serverConfiguration, ExecutorService executor) {
+    this.schemaRegistry = schemaRegistry;
+    this.repositoryRegistry = repositoryRegistry;
+    this.serverConfiguration = serverConfiguration;
+    this.executor = executor;
+    this.attributeUtil = new AttributeUtil(schemaRegistry);
+    this.listResponseWriter = new ListResponseWriter(ObjectMapperFactory.createObjectMapper(schemaRegistry));
+  }
+
+  public SearchResourceImpl() {
+    // CDI
+    this(null, null, null);
+  }
+
+  @Override
+  public Response find(SearchRequest request) throws ScimException, ResourceException {
+    Set<AttributeReference> attributeReferences = Optional.ofNullable(request.getAttributes())
+                                                          .orElse(Collections.emptySet());
+    Set<AttributeReference> excludedAttributeReferences = Optional.ofNullable(request.getExcludedAttributes())
+                                                                  .orElse(Collections.emptySet());
+    if (!attributeReferences.isEmpty() && !excludedAttributeReferences.isEmpty()) {
+      throw new ScimException(Status.BAD_REQUEST, "Cannot include both attributes and excluded attributes in a single request");
+    }
+
+    Filter filter = request.getFilter();
+    PageRequest pageRequest = request.getPageRequest();
+    SortRequest sortRequest = request.getSortRequest();
+    if (pageRequest.isCursorPaged()) {
+      throw new ScimException(Status.BAD_REQUEST, "Cursor pagination is not supported when searching all resource types");
+    }
+
+    // a count of 0 only asks for totalResults, https://tools.ietf.org/html/rfc7644#section-3.4.2.4
+    boolean countOnly = pageRequest.getCount() != null && pageRequest.getCount() <= 0;
+    PageRequest repositoryPage = repositoryPage(pageRequest);
+
+    List<Repository<ScimResource>> repositories = repositories();
+    List<Future<FilterResponse<ScimResource>>> searches = new ArrayList<>(repositories.size());
+    for (Repository<ScimResource> repository : repositories) {
+      searches.add(executor.submit(() -> countOnly
+        ? new FilterResponse<>(Collections.emptyList(), pageRequest, repository.count(filter))
+        : repository.find(filter, repositoryPage, sortRequest)));
+    }
+
+    long timeout = serverConfiguration.getSearchRepositoryTimeoutMillis();
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+    List<SortEngine<ScimResource>> sortEngines = new ArrayList<>(repositories.size());
+    List<List<ScimResource>> pages = new ArrayList<>(repositories.size());
+    int totalResults = 0;
+    int timedOut = 0;
+    try {
+      for (int index = 0; index < repositories.size(); index++) {
+        Repository<ScimResource> repository = repositories.get(index);
+        FilterResponse<ScimResource> response = await(searches.get(index), repository, timeout, deadline);
+        if (response == null) {
+          timedOut++;
+          continue;
+        }
+        if (response.getResources() == null) {
+          continue;
+        }
+        totalResults += response.getTotalResults();
+        sortEngines.add(SortEngine.of(sortRequest, schemaRegistry.getSchema(schemaUrn(repository)), schemaRegistry));
+        pages.add(new ArrayList<>(response.getResources()));
+      }
+    } finally {
+      // searches still running after a failure are not needed anymore
+      searches.forEach(search -> search.cancel(true));
+    }
+    if (timedOut > 0) {
+      log.warn("{} of {} repositories did not answer a search within {} ms, totalResults {} only counts the resources of the others",
+        timedOut, repositories.size(), timeout, totalResults);
+    }
+
+    if (countOnly) {
+      ListResponse<ScimResource> listResponse = new ListResponse<>();
+      listResponse.setTotalResults(totalResults);
+      return Response.ok()
+                     .entity(listResponse)
+                     .build();
+    }
+
+    AttributeProjection projection;
+    try {
+      projection = attributeUtil.projection(attributeReferences, excludedAttributeReferences);
+    } catch (AttributeException e) {
+      throw new ScimException(Status.INTERNAL_SERVER_ERROR, "Failed to parse the attribute query value " + e.getMessage(), e);
+    }
+
+    List<ScimResource> page = SortEngine.merge(sortEngines, pages, pageRequest);
+    FilterResultStream<ScimResource> results = new FilterResultStream<>(page.stream(), pageRequest, totalResults);
+    return Response.ok()
+                   .entity(listResponseWriter.write(results, projection, resource -> process(resource, attributeReferences, excludedAttributeReferences)))
+                   .build();
+  }
+
+  @PreDestroy
+  void shutdown() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Returns the registered repositories, ordered by the name of their resource class so the pages of a search are
+   * stable.
+   */
+  @SuppressWarnings("unchecked")
+  private List<Repository<ScimResource>> repositories() {
+    List<Repository<ScimResource>> repositories = new ArrayList<>();
+    repositoryRegistry.getRepositoryMap().values()
+      .forEach(repository -> repositories.add((Repository<ScimResource>) repository));
+    repositories.sort(Comparator.comparing(repository -> repository.getResourceClass().getName()));
+    return repositories;
+  }
+
+  /**
+   * Returns the page each repository is asked for: its resources from the first one up to the end of the requested
+   * page, as any of them may be on the page once the resources of all repositories are merged.
+   */
+  private static PageRequest repositoryPage(PageRequest pageRequest) {
+    PageRequest repositoryPage = new PageRequest();
+    repositoryPage.setStartIndex(1);
+    if (pageRequest.getCount() != null) {
+      int offset = pageRequest.getStartIndex() != null ? Math.max(pageRequest.getStartIndex() - 1, 0) : 0;
+      repositoryPage.setCount((int) Math.min((long) offset + Math.max(pageRequest.getCount(), 0), Integer.MAX_VALUE));
+    }
+    return repositoryPage;
+  }
+
+  /**
+   * Waits until the search of {@code repository} is done, or returns null if it is not done before the deadline.
+   */
+  private static FilterResponse<ScimResource> await(Future<FilterResponse<ScimResource>> search, Repository<ScimResource> repository, long timeout, long deadline) throws ScimException, ResourceException {
+    try {
+      return timeout > 0
+        ? search.get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS)
+        : search.get();
+    } catch (TimeoutException e) {
+      log.warn("Repository {} did not answer a search within {} ms, its resources are left out of the results", repository.getClass().getName(), timeout);
+      return null;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ScimException(Status.INTERNAL_SERVER_ERROR, "Interrupted while searching", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof ResourceException) {
+        throw (ResourceException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new ScimException(Status.INTERNAL_SERVER_ERROR, "Failed to search repository " + repository.getClass().getName(), cause);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private ScimResource process(ScimResource resource, Set<AttributeReference> attributeReferences, Set<AttributeReference> excludedAttributeReferences) throws ScimException {
+    Repository<ScimResource> repository = repositoryRegistry.getRepository((Class<ScimResource>) resource.getClass());
+    return repository != null
+      ? BaseResourceTypeResourceImpl.processFilterAttributeExtensions(repository, resource, attributeReferences, excludedAttributeReferences)
+      : resource;
+  }
+
+  private static String schemaUrn(Repository<ScimResource> repository) {
+    ScimResourceType resourceType = repository.getResourceClass().getAnnotation(ScimResourceType.class);
+    return resourceType != null ? resourceType.schema() : null;
+  }
 }
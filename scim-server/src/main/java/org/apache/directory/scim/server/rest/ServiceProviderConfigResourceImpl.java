@@ -24,20 +24,23 @@ import java.util.List;
 
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
+import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.Request;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.UriInfo;
-import jakarta.ws.rs.core.Response.Status;
 
+import org.apache.directory.scim.core.json.ObjectMapperFactory;
+import org.apache.directory.scim.core.schema.SchemaRegistry;
 import org.apache.directory.scim.server.configuration.ServerConfiguration;
 import org.apache.directory.scim.protocol.ServiceProviderConfigResource;
-import org.apache.directory.scim.protocol.data.ErrorResponse;
 import org.apache.directory.scim.server.exception.EtagGenerationException;
 import org.apache.directory.scim.spec.schema.Meta;
 import org.apache.directory.scim.spec.schema.ServiceProviderConfiguration;
 import org.apache.directory.scim.spec.schema.ServiceProviderConfiguration.AuthenticationSchema;
 import org.apache.directory.scim.spec.schema.ServiceProviderConfiguration.BulkConfiguration;
 import org.apache.directory.scim.spec.schema.ServiceProviderConfiguration.FilterConfiguration;
+import org.apache.directory.scim.spec.schema.ServiceProviderConfiguration.PaginationConfiguration;
 import org.apache.directory.scim.spec.schema.ServiceProviderConfiguration.SupportedConfiguration;
 
 @ApplicationScoped
@@ -47,6 +50,12 @@ public class ServiceProviderConfigResourceImpl implements ServiceProviderConfigR
 
   private final EtagGenerator etagGenerator;
 
+  // the configuration has no extensions, a registry is only needed to create the mapper
+  private final RenderedDocuments documents = new RenderedDocuments(ObjectMapperFactory.createObjectMapper(new SchemaRegistry()));
+
+  @Context
+  Request request;
+
   @Inject
   public ServiceProviderConfigResourceImpl(ServerConfiguration serverConfiguration, EtagGenerator etagGenerator) {
     this.serverConfiguration = serverConfiguration;
@@ -60,6 +69,12 @@ public class ServiceProviderConfigResourceImpl implements ServiceProviderConfigR
 
   @Override
   public Response getServiceProviderConfiguration(UriInfo uriInfo) {
+    // the configuration is rendered again if it is changed
+    return documents.respond(uriInfo.getAbsolutePath().toString(), serverConfiguration.getModificationCount(), request,
+      () -> serviceProviderConfiguration(uriInfo));
+  }
+
+  private ServiceProviderConfiguration serviceProviderConfiguration(UriInfo uriInfo) throws EtagGenerationException {
     ServiceProviderConfiguration serviceProviderConfiguration = new ServiceProviderConfiguration();
     List<AuthenticationSchema> authenticationSchemas = serverConfiguration.getAuthenticationSchemas();
     BulkConfiguration bulk = serverConfiguration.getBulkConfiguration();
@@ -68,6 +83,7 @@ public class ServiceProviderConfigResourceImpl implements ServiceProviderConfigR
     FilterConfiguration filter = serverConfiguration.getFilterConfiguration();
     SupportedConfiguration patch = serverConfiguration.getPatchConfiguration();
     SupportedConfiguration sort = serverConfiguration.getSortConfiguration();
+    PaginationConfiguration pagination = serverConfiguration.getPaginationConfiguration();
     String documentationUrl = serverConfiguration.getDocumentationUri();
     String externalId = serverConfiguration.getId();
     String id = serverConfiguration.getId();
@@ -91,17 +107,10 @@ public class ServiceProviderConfigResourceImpl implements ServiceProviderConfigR
     serviceProviderConfiguration.setMeta(meta);
     serviceProviderConfiguration.setPatch(patch);
     serviceProviderConfiguration.setSort(sort);
+    serviceProviderConfiguration.setPagination(pagination);
     
-    try {
-      EntityTag etag = etagGenerator.generateEtag(serviceProviderConfiguration);
-      return Response.ok(serviceProviderConfiguration).tag(etag).build();
-    } catch (EtagGenerationException e) {
-      return createETagErrorResponse();
-    }
-  }
-  
-  private Response createETagErrorResponse() {
-    ErrorResponse er = new ErrorResponse(Status.INTERNAL_SERVER_ERROR, "Failed to generate the etag");
-    return er.toResponse();
+    EntityTag etag = etagGenerator.generateEtag(serviceProviderConfiguration);
+    meta.setVersion(etag.getValue());
+    return serviceProviderConfiguration;
   }
 }
@@ -29,6 +29,7 @@ import org.apache.directory.scim.core.repository.RepositoryRegistry;
 import org.apache.directory.scim.protocol.UserResource;
 import org.apache.directory.scim.spec.resources.ScimUser;
 import org.apache.directory.scim.core.schema.SchemaRegistry;
+import org.apache.directory.scim.server.configuration.ServerConfiguration;
 
 /**
  * @author shawn
@@ -39,12 +40,16 @@ import org.apache.directory.scim.core.schema.SchemaRegistry;
 public class UserResourceImpl extends BaseResourceTypeResourceImpl<ScimUser> implements UserResource {
 
   @Inject
+  public UserResourceImpl(SchemaRegistry schemaRegistry, RepositoryRegistry repositoryRegistry, ServerConfiguration serverConfiguration) {
+    super(schemaRegistry, repositoryRegistry, serverConfiguration, ScimUser.class);
+  }
+
   public UserResourceImpl(SchemaRegistry schemaRegistry, RepositoryRegistry repositoryRegistry) {
     super(schemaRegistry, repositoryRegistry, ScimUser.class);
   }
 
   public UserResourceImpl() {
     // CDI
-    this(null, null);
+    this(null, null, null);
   }
 }
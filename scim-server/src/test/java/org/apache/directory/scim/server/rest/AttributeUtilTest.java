@@ -21,7 +21,9 @@ package org.apache.directory.scim.server.rest;
 
 import com.fasterxml.jackson.core.JsonGenerationException;
 import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.directory.scim.core.json.AttributeProjection;
 import org.apache.directory.scim.core.json.ObjectMapperFactory;
 import org.apache.directory.scim.test.stub.ExampleObjectExtension;
 import org.apache.directory.scim.test.stub.ExampleObjectExtension.ComplexObject;
@@ -48,7 +50,6 @@ import java.io.IOException;
 import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -72,160 +73,157 @@ public class AttributeUtilTest {
 
   @Test
   public void testBaseResource() throws Exception {
-    ScimUser resource = getScimUser();
-    
-    debugJson(resource);
+    JsonNode json = project(Set.of(), Set.of());
 
-    resource = attributeUtil.setAttributesForDisplay(resource);
+    Assertions.assertThat(json.has("id")).isTrue();
+    Assertions.assertThat(json.has("password")).isFalse();
 
-    debugJson(resource);
+    Assertions.assertThat(json.path(EnterpriseExtension.URN).has("costCenter")).isTrue();
 
-    Assertions.assertThat(resource.getId()).isNotNull();
-    Assertions.assertThat(resource.getPassword()).isNull();
-    
-    EnterpriseExtension extension = resource.getExtension(EnterpriseExtension.class);
-    
-    Assertions.assertThat(extension.getCostCenter()).isNotNull();
-    
-    ExampleObjectExtension exampleObjectExtension = resource.getExtension(ExampleObjectExtension.class);
-    
-    Assertions.assertThat(exampleObjectExtension.getValueAlways()).isNotNull();
-    Assertions.assertThat(exampleObjectExtension.getValueDefault()).isNotNull();
-    Assertions.assertThat(exampleObjectExtension.getValueRequest()).isNull();
-    Assertions.assertThat(exampleObjectExtension.getValueNever()).isNull();
+    JsonNode exampleObjectExtension = json.path(ExampleObjectExtension.URN);
+
+    Assertions.assertThat(exampleObjectExtension.has("valueAlways")).isTrue();
+    Assertions.assertThat(exampleObjectExtension.has("valueDefault")).isTrue();
+    Assertions.assertThat(exampleObjectExtension.has("valueRequest")).isFalse();
+    Assertions.assertThat(exampleObjectExtension.has("valueNever")).isFalse();
   }
-  
+
   @Test
   public void testIncludeAttributes() throws Exception {
-    ScimUser resource = getScimUser();
-    
-    debugJson(resource);
-    
-    Set<AttributeReference> attributes = new HashSet<>();
-    attributes.add(new AttributeReference("userName"));
-    attributes.add(new AttributeReference("addresses.streetAddress"));
-    resource = attributeUtil.setAttributesForDisplay(resource, attributes);
-    
-    debugJson(resource);
+    JsonNode json = project(Set.of(new AttributeReference("userName"), new AttributeReference("addresses.streetAddress")), Set.of());
 
-    Assertions.assertThat(resource.getUserName()).isNotNull();
-    Assertions.assertThat(resource.getId()).isNotNull();
+    Assertions.assertThat(json.has("userName")).isTrue();
+    Assertions.assertThat(json.has("id")).isTrue();
 
-    Assertions.assertThat(resource.getPassword()).isNull();
-    Assertions.assertThat(resource.getActive()).isNull();
-    
-    Assertions.assertThat(resource.getAddresses().get(0).getCountry()).isNull();
-    Assertions.assertThat(resource.getAddresses().get(0).getStreetAddress()).isNotNull();
+    Assertions.assertThat(json.has("password")).isFalse();
+    Assertions.assertThat(json.has("active")).isFalse();
 
-    
-    EnterpriseExtension extension = resource.getExtension(EnterpriseExtension.class);
-    
-    Assertions.assertThat(extension).as("%s should have been removed from extensions", EnterpriseExtension.URN).isNull();
+    Assertions.assertThat(json.path("addresses").path(0).has("country")).isFalse();
+    Assertions.assertThat(json.path("addresses").path(0).has("streetAddress")).isTrue();
+
+    Assertions.assertThat(json.has(EnterpriseExtension.URN)).as("%s should have been removed from extensions", EnterpriseExtension.URN).isFalse();
   }
-  
+
   @Test
   public void testIncludeFullAttributes() throws Exception {
-    ScimUser resource = getScimUser();
-    
-    debugJson(resource);
-    
-    Set<AttributeReference> attributes = new HashSet<>();
-    attributes.add(new AttributeReference("userName"));
-    attributes.add(new AttributeReference("name"));
-    attributes.add(new AttributeReference("addresses"));
-    resource = attributeUtil.setAttributesForDisplay(resource, attributes);
-    
-    debugJson(resource);
+    JsonNode json = project(Set.of(new AttributeReference("userName"), new AttributeReference("name"), new AttributeReference("addresses")), Set.of());
 
-    Assertions.assertThat(resource.getUserName()).isNotNull();
-    Assertions.assertThat(resource.getId()).isNotNull();
+    Assertions.assertThat(json.has("userName")).isTrue();
+    Assertions.assertThat(json.has("id")).isTrue();
 
-    Assertions.assertThat(resource.getPassword()).isNull();
-    Assertions.assertThat(resource.getActive()).isNull();
-    
-    Assertions.assertThat(resource.getAddresses().get(0).getCountry()).isNotNull();
-    Assertions.assertThat(resource.getAddresses().get(0).getStreetAddress()).isNotNull();
-    Assertions.assertThat(resource.getAddresses().get(0).getCountry()).isNotNull();
+    Assertions.assertThat(json.has("password")).isFalse();
+    Assertions.assertThat(json.has("active")).isFalse();
 
-    
-    EnterpriseExtension extension = resource.getExtension(EnterpriseExtension.class);
+    Assertions.assertThat(json.path("addresses").path(0).has("country")).isTrue();
+    Assertions.assertThat(json.path("addresses").path(0).has("streetAddress")).isTrue();
+    Assertions.assertThat(json.path("name").has("givenName")).isTrue();
 
-    Assertions.assertThat(extension).as("%s should have been removed from extensions", EnterpriseExtension.URN).isNull();
+    Assertions.assertThat(json.has(EnterpriseExtension.URN)).as("%s should have been removed from extensions", EnterpriseExtension.URN).isFalse();
   }
-  
+
   @Test
   public void testIncludeAttributesWithExtension() throws Exception {
-    ScimUser resource = getScimUser();
-    
-    debugJson(resource);
-    
-    Set<AttributeReference> attributeSet = new HashSet<>();
-    attributeSet.add(new AttributeReference("userName"));
-    attributeSet.add(new AttributeReference(EnterpriseExtension.URN + ":costCenter"));
-    
-    resource = attributeUtil.setAttributesForDisplay(resource, attributeSet);
-    
-    debugJson(resource);
+    JsonNode json = project(Set.of(new AttributeReference("userName"), new AttributeReference(EnterpriseExtension.URN + ":costCenter")), Set.of());
 
-    Assertions.assertThat(resource.getUserName()).isNotNull();
-    Assertions.assertThat(resource.getId()).isNotNull();
+    Assertions.assertThat(json.has("userName")).isTrue();
+    Assertions.assertThat(json.has("id")).isTrue();
 
-    Assertions.assertThat(resource.getPassword()).isNull();
-    Assertions.assertThat(resource.getActive()).isNull();
-    
-    EnterpriseExtension extension = resource.getExtension(EnterpriseExtension.class);
-    
-    Assertions.assertThat(extension.getCostCenter()).isNotNull();
-    Assertions.assertThat(extension.getDepartment()).isNull();
+    Assertions.assertThat(json.has("password")).isFalse();
+    Assertions.assertThat(json.has("active")).isFalse();
 
+    Assertions.assertThat(json.path(EnterpriseExtension.URN).has("costCenter")).isTrue();
+    Assertions.assertThat(json.path(EnterpriseExtension.URN).has("department")).isFalse();
   }
-  
+
   @Test
   public void testExcludeAttributes() throws Exception {
-    ScimUser resource = getScimUser();
-    
-    debugJson(resource);
-
-    Set<AttributeReference> attributeSet = new HashSet<>();
-    attributeSet.add(new AttributeReference("userName"));
-    attributeSet.add(new AttributeReference("addresses"));
-    attributeSet.add(new AttributeReference("name"));
-    
-    resource = attributeUtil.setExcludedAttributesForDisplay(resource, attributeSet);
-    
-    debugJson(resource);
+    JsonNode json = project(Set.of(), Set.of(new AttributeReference("userName"), new AttributeReference("addresses"), new AttributeReference("name")));
 
-    Assertions.assertThat(resource.getId()).isNotNull();
-    Assertions.assertThat(resource.getPassword()).isNull();
-    Assertions.assertThat(resource.getUserName()).isNull();
-    Assertions.assertThat(resource.getActive()).isNotNull();
-    Assertions.assertThat(resource.getAddresses()).isNull();
-    Assertions.assertThat(resource.getName()).isNull();
+    Assertions.assertThat(json.has("id")).isTrue();
+    Assertions.assertThat(json.has("password")).isFalse();
+    Assertions.assertThat(json.has("userName")).isFalse();
+    Assertions.assertThat(json.has("active")).isTrue();
+    Assertions.assertThat(json.has("addresses")).isFalse();
+    Assertions.assertThat(json.has("name")).isFalse();
 
-    EnterpriseExtension extension = resource.getExtension(EnterpriseExtension.class);
-    
-    Assertions.assertThat(extension.getCostCenter()).isNotNull();
+    Assertions.assertThat(json.path(EnterpriseExtension.URN).has("costCenter")).isTrue();
   }
-  
+
   @Test
   public void testExcludeAttributesWithExtensions() throws Exception {
+    JsonNode json = project(Set.of(), Set.of(new AttributeReference("userName"), new AttributeReference(EnterpriseExtension.URN + ":costCenter")));
+
+    Assertions.assertThat(json.has("id")).isTrue();
+    Assertions.assertThat(json.has("password")).isFalse();
+    Assertions.assertThat(json.has("userName")).isFalse();
+    Assertions.assertThat(json.has("active")).isTrue();
+
+    Assertions.assertThat(json.path(EnterpriseExtension.URN).has("costCenter")).isFalse();
+    Assertions.assertThat(json.path(EnterpriseExtension.URN).has("department")).isTrue();
+  }
+
+  @Test
+  public void testIncludeRequestAttributes() throws Exception {
+    JsonNode json = project(Set.of(new AttributeReference(ExampleObjectExtension.URN + ":valueRequest")), Set.of());
+
+    JsonNode exampleObjectExtension = json.path(ExampleObjectExtension.URN);
+
+    Assertions.assertThat(exampleObjectExtension.has("valueAlways")).isTrue();
+    Assertions.assertThat(exampleObjectExtension.has("valueDefault")).isFalse();
+    Assertions.assertThat(exampleObjectExtension.has("valueRequest")).isTrue();
+    Assertions.assertThat(exampleObjectExtension.has("valueNever")).isFalse();
+  }
+
+  @Test
+  public void projectionDoesNotChangeTheResource() throws Exception {
     ScimUser resource = getScimUser();
-    
-    Set<AttributeReference> attributeSet = new HashSet<>();
-    attributeSet.add(new AttributeReference("userName"));
-    attributeSet.add(new AttributeReference(EnterpriseExtension.URN + ":costCenter"));
-    
-    resource = attributeUtil.setExcludedAttributesForDisplay(resource, attributeSet);
-    
-    Assertions.assertThat(resource.getId()).isNotNull();
-    Assertions.assertThat(resource.getPassword()).isNull();
-    Assertions.assertThat(resource.getUserName()).isNull();
-    Assertions.assertThat(resource.getActive()).isNotNull();
+    ObjectMapper projectionMapper = ObjectMapperFactory.createObjectMapper(schemaRegistry);
+    AttributeProjection projection = attributeUtil.projection(Set.of(new AttributeReference("userName")), Set.of());
+
+    JsonNode json = projectionMapper.readTree(projection.applyTo(projectionMapper.writer()).writeValueAsString(resource));
+
+    Assertions.assertThat(json.has("password")).isFalse();
+    Assertions.assertThat(json.has("nickName")).isFalse();
+    Assertions.assertThat(json.has(EnterpriseExtension.URN)).isFalse();
+    Assertions.assertThat(resource.getPassword()).isEqualTo("secret");
+    Assertions.assertThat(resource.getNickName()).isEqualTo("Jonny");
+    Assertions.assertThat(resource.getExtension(EnterpriseExtension.class)).isNotNull();
+    Assertions.assertThat(projectionMapper.readTree(projectionMapper.writeValueAsString(resource)).has(EnterpriseExtension.URN)).isTrue();
+  }
 
-    EnterpriseExtension extension = resource.getExtension(EnterpriseExtension.class);
-    
-    Assertions.assertThat(extension.getCostCenter()).isNull();
-    Assertions.assertThat(extension.getDepartment()).isNotNull();
+  @Test
+  public void projectionsAreCached() throws Exception {
+    AttributeProjection projection = attributeUtil.projection(Set.of(new AttributeReference("userName"), new AttributeReference("name.givenName")), Set.of());
+
+    Assertions.assertThat(attributeUtil.projection(Set.of(new AttributeReference("name.GivenName"), new AttributeReference("USERNAME")), Set.of()))
+      .isSameAs(projection);
+    Assertions.assertThat(attributeUtil.projection(Set.of(), Set.of(new AttributeReference("userName"), new AttributeReference("name.givenName"))))
+      .isNotSameAs(projection);
+    Assertions.assertThat(attributeUtil.projection(Set.of(), Set.of())).isSameAs(AttributeProjection.defaults());
+    Assertions.assertThat(attributeUtil.projectionCacheSize()).isEqualTo(2);
+  }
+
+  @Test
+  public void projectionCacheIsBounded() throws Exception {
+    AttributeUtil boundedAttributeUtil = new AttributeUtil(schemaRegistry, 2);
+    boundedAttributeUtil.projection(Set.of(new AttributeReference("userName")), Set.of());
+    boundedAttributeUtil.projection(Set.of(new AttributeReference("name")), Set.of());
+    boundedAttributeUtil.projection(Set.of(new AttributeReference("addresses")), Set.of());
+
+    Assertions.assertThat(boundedAttributeUtil.projectionCacheSize()).isEqualTo(2);
+    Assertions.assertThat(new AttributeUtil(schemaRegistry, 0).projection(Set.of(new AttributeReference("userName")), Set.of()))
+      .isNotNull();
+  }
+
+  private JsonNode project(Set<AttributeReference> included, Set<AttributeReference> excluded) throws Exception {
+    ObjectMapper projectionMapper = ObjectMapperFactory.createObjectMapper(schemaRegistry);
+    ScimUser resource = getScimUser();
+    debugJson(resource);
+
+    AttributeProjection projection = attributeUtil.projection(included, excluded);
+    JsonNode json = projectionMapper.readTree(projection.applyTo(projectionMapper.writer()).writeValueAsString(resource));
+    LOG.debug("attributes: {}, excludedAttributes: {}, projected: {}", included, excluded, json);
+    return json;
   }
 
   private void debugJson(Object resource) throws JsonGenerationException, JsonMappingException, IOException {
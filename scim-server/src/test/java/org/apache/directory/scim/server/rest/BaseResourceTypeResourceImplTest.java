@@ -27,6 +27,7 @@ import static org.mockito.Mockito.*;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.stream.Stream;
 
 import jakarta.ws.rs.core.MultivaluedMap;
 import jakarta.ws.rs.core.Response;
@@ -39,13 +40,23 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 
+import org.apache.directory.scim.core.repository.FilterResultStream;
 import org.apache.directory.scim.core.repository.Repository;
+import org.apache.directory.scim.core.repository.RepositoryRegistry;
+import org.apache.directory.scim.core.schema.SchemaRegistry;
+import org.apache.directory.scim.server.configuration.ServerConfiguration;
+import org.apache.directory.scim.spec.exception.InvalidCursorException;
 import org.apache.directory.scim.test.stub.ExampleObjectExtension;
 import org.apache.directory.scim.test.stub.ExampleObjectExtension.ComplexObject;
 import org.apache.directory.scim.spec.extension.EnterpriseExtension;
 import org.apache.directory.scim.spec.extension.EnterpriseExtension.Manager;
 import org.apache.directory.scim.spec.phonenumber.PhoneNumberParseException;
+import org.apache.directory.scim.spec.filter.Filter;
+import org.apache.directory.scim.protocol.adapter.FilterWrapper;
+import org.apache.directory.scim.spec.filter.SortOrder;
+import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
 import org.apache.directory.scim.spec.filter.attribute.AttributeReferenceListWrapper;
+import org.apache.directory.scim.protocol.data.ListResponse;
 import org.apache.directory.scim.protocol.data.PatchRequest;
 import org.apache.directory.scim.protocol.data.SearchRequest;
 import org.apache.directory.scim.spec.resources.Address;
@@ -122,6 +133,19 @@ public class BaseResourceTypeResourceImplTest {
     assertEquals(response.getStatus(), Status.OK.getStatusCode());
   }
   
+  @Test
+  public void testQuery_WithoutCursorUsesIndexQuery() throws Exception {
+    Response overridden = Response.ok().build();
+    UserResourceImpl userResource = new UserResourceImpl(new SchemaRegistry(), new RepositoryRegistry(new SchemaRegistry()), new ServerConfiguration()) {
+      @Override
+      public Response query(AttributeReferenceListWrapper attributes, AttributeReferenceListWrapper excludedAttributes, FilterWrapper filter, AttributeReference sortBy, SortOrder sortOrder, Integer startIndex, Integer count) {
+        return overridden;
+      }
+    };
+
+    assertSame(overridden, userResource.query(null, null, null, null, null, 1, 10, null));
+  }
+
   @Test
   public void testCreate_ErrorIfBothAttributesAndExcludedAttributesExist() throws ScimException, ResourceException, PhoneNumberParseException {
     // given
@@ -160,6 +184,61 @@ public class BaseResourceTypeResourceImplTest {
     assertThat(exception.getError().getDetail(), is("Cannot include both attributes and excluded attributes in a single request"));
   }
   
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testFind_CountOnlyDoesNotFetchResources() throws Exception {
+    // given
+    BaseResourceTypeResourceImpl<ScimUser> baseResourceImpl = mock(BaseResourceTypeResourceImpl.class);
+    Filter filter = new Filter("userName sw \"b\"");
+
+    SearchRequest searchRequest = new SearchRequest();
+    searchRequest.setFilter(filter);
+    searchRequest.setCount(0);
+
+    when(baseResourceImpl.getRepositoryInternal()).thenReturn(repository);
+    when(baseResourceImpl.find(searchRequest)).thenCallRealMethod();
+    when(repository.count(filter)).thenReturn(42);
+
+    // when
+    Response response = baseResourceImpl.find(searchRequest);
+
+    // then
+    assertEquals(response.getStatus(), Status.OK.getStatusCode());
+    ListResponse<ScimUser> listResponse = (ListResponse<ScimUser>) response.getEntity();
+    assertThat(listResponse.getTotalResults(), is(42));
+    assertThat(listResponse.getResources(), is(nullValue()));
+    verify(repository, never()).stream(any(), any(), any(), any(), any());
+    verify(repository, never()).find(any(), any(), any());
+  }
+
+  @Test
+  public void testFind_CursorRejectedUnlessRepositoryAndServerSupportIt() throws Exception {
+    SearchRequest searchRequest = new SearchRequest();
+    searchRequest.setCursor("");
+    searchRequest.setCount(10);
+
+    // the repository ignores cursors
+    UserResourceImpl userResource = userResource(new ServerConfiguration().setSupportsCursorPagination(true));
+    assertThrows(InvalidCursorException.class, () -> userResource.find(searchRequest));
+
+    // cursor pagination is not enabled in the ServiceProviderConfig
+    when(repository.supportsCursorPagination()).thenReturn(true);
+    assertThrows(InvalidCursorException.class, () -> userResource(new ServerConfiguration()).find(searchRequest));
+    verify(repository, never()).stream(any(), any(), any(), any(), any());
+
+    when(repository.stream(any(), any(), any(), any(), any())).thenReturn(new FilterResultStream<>(Stream.empty(), searchRequest.getPageRequest(), 0));
+    Response response = userResource.find(searchRequest);
+    assertEquals(Status.OK.getStatusCode(), response.getStatus());
+  }
+
+  private UserResourceImpl userResource(ServerConfiguration serverConfiguration) throws Exception {
+    SchemaRegistry schemaRegistry = new SchemaRegistry();
+    schemaRegistry.addSchema(ScimUser.class, null);
+    RepositoryRegistry repositoryRegistry = new RepositoryRegistry(schemaRegistry);
+    repositoryRegistry.registerRepository(ScimUser.class, repository);
+    return new UserResourceImpl(schemaRegistry, repositoryRegistry, serverConfiguration);
+  }
+
   @Test
   public void testUpdate_ErrorIfBothAttributesAndExcludedAttributesExist() throws ScimException, ResourceException, PhoneNumberParseException {
     // given
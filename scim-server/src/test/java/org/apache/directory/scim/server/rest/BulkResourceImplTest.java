@@ -39,15 +39,24 @@ import org.junit.jupiter.api.Test;
 import org.mockito.InOrder;
 
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class BulkResourceImplTest {
@@ -223,4 +232,212 @@ public class BulkResourceImplTest {
         .setResponse(new ErrorResponse(Response.Status.BAD_REQUEST, "Expected Test Exception when bob is created"))
         .setStatus(new BulkOperation.StatusWrapper(Response.Status.BAD_REQUEST)));
   }
+
+  @Test
+  public void parallelBulkKeepsDependencyOrderTest() throws Exception {
+    List<BulkOperation> operations = new ArrayList<>();
+    operations.add(new BulkOperation()
+      .setMethod(BulkOperation.Method.POST)
+      .setPath("/Groups")
+      .setBulkId("group")
+      .setData(new ScimGroup()
+        .setDisplayName("group")
+        .setMembers(List.of(
+          new GroupMembership().setType(GroupMembership.Type.USER).setValue("bulkId:user-3"),
+          new GroupMembership().setType(GroupMembership.Type.USER).setValue("bulkId:user-7")))));
+    for (int i = 0; i < 20; i++) {
+      operations.add(new BulkOperation()
+        .setMethod(BulkOperation.Method.POST)
+        .setPath("/Users")
+        .setBulkId("user-" + i)
+        .setData(new ScimUser().setUserName("user-" + i)));
+    }
+
+    SchemaRegistry schemaRegistry = new SchemaRegistry();
+    RepositoryRegistry repositoryRegistry = new RepositoryRegistry(schemaRegistry);
+    List<String> created = Collections.synchronizedList(new ArrayList<>());
+    CountDownLatch concurrentCreates = new CountDownLatch(2);
+
+    Repository<ScimUser> userRepository = mock(Repository.class);
+    repositoryRegistry.registerRepository(ScimUser.class, userRepository);
+    when(userRepository.create(any())).thenAnswer(invocation -> {
+      ScimUser user = invocation.getArgument(0);
+      if (user.getUserName().equals("user-0") || user.getUserName().equals("user-1")) {
+        // both users are created at the same time, or this times out
+        concurrentCreates.countDown();
+        assertThat(concurrentCreates.await(5, TimeUnit.SECONDS)).isTrue();
+      }
+      created.add(user.getUserName());
+      ScimUser createdUser = new ScimUser();
+      createdUser.setId(user.getUserName() + "-id");
+      return createdUser;
+    });
+
+    Repository<ScimGroup> groupRepository = mock(Repository.class);
+    repositoryRegistry.registerRepository(ScimGroup.class, groupRepository);
+    when(groupRepository.create(any())).thenAnswer(invocation -> {
+      ScimGroup group = invocation.getArgument(0);
+      created.add(group.getDisplayName());
+      ScimGroup createdGroup = new ScimGroup();
+      createdGroup.setId("group-id");
+      createdGroup.setMembers(group.getMembers());
+      return createdGroup;
+    });
+
+    UriInfo uriInfo = mock(UriInfo.class);
+    when(uriInfo.getBaseUri()).thenReturn(URI.create("https://scim.example.com/"));
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      BulkResourceImpl impl = new BulkResourceImpl(schemaRegistry, repositoryRegistry, executor);
+      Response response = impl.doBulk(new BulkRequest().setOperations(operations), uriInfo);
+      BulkResponse bulkResponse = (BulkResponse) response.getEntity();
+
+      assertThat(bulkResponse.getStatus()).isEqualTo(Response.Status.OK);
+      assertThat(bulkResponse.getOperations()).extracting(BulkOperation::getBulkId)
+        .containsExactlyElementsOf(operations.stream().map(BulkOperation::getBulkId).collect(Collectors.toList()));
+      assertThat(bulkResponse.getOperations()).extracting(BulkOperation::getStatus)
+        .containsOnly(new BulkOperation.StatusWrapper(Response.Status.CREATED));
+      assertThat(bulkResponse.getOperations().get(1).getLocation()).isEqualTo("https://scim.example.com/Users/user-0-id");
+
+      ScimGroup group = (ScimGroup) bulkResponse.getOperations().get(0).getData();
+      assertThat(group.getMembers()).extracting(GroupMembership::getValue).containsExactly("user-3-id", "user-7-id");
+      // the group is created after all users, it depends on two of them
+      assertThat(created).hasSize(21).endsWith("group");
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void parallelBulkKeepsOrderOfOperationsOnTheSameResourceTest() throws Exception {
+    List<BulkOperation> operations = List.of(
+      new BulkOperation()
+        .setMethod(BulkOperation.Method.PUT)
+        .setPath("/Users/123")
+        .setData(new ScimUser().setUserName("alice").setDisplayName("put")),
+      new BulkOperation()
+        .setMethod(BulkOperation.Method.POST)
+        .setPath("/Users")
+        .setBulkId("first-bob")
+        .setData(new ScimUser().setUserName("bob").setDisplayName("first-bob")),
+      new BulkOperation()
+        .setMethod(BulkOperation.Method.DELETE)
+        .setPath("/Users/123"),
+      new BulkOperation()
+        .setMethod(BulkOperation.Method.POST)
+        .setPath("/Users")
+        .setBulkId("second-bob")
+        .setData(new ScimUser().setUserName("BOB").setDisplayName("second-bob")),
+      new BulkOperation()
+        .setMethod(BulkOperation.Method.POST)
+        .setPath("/Users")
+        .setBulkId("carol")
+        .setData(new ScimUser().setUserName("carol").setDisplayName("carol")));
+
+    SchemaRegistry schemaRegistry = new SchemaRegistry();
+    RepositoryRegistry repositoryRegistry = new RepositoryRegistry(schemaRegistry);
+    List<String> executed = Collections.synchronizedList(new ArrayList<>());
+
+    Repository<ScimUser> userRepository = mock(Repository.class);
+    repositoryRegistry.registerRepository(ScimUser.class, userRepository);
+    when(userRepository.create(any())).thenAnswer(invocation -> {
+      ScimUser user = invocation.getArgument(0);
+      if (user.getDisplayName().equals("first-bob")) {
+        // the second bob is created at the same time, unless it waits for the first one
+        Thread.sleep(200);
+      }
+      executed.add(user.getDisplayName());
+      ScimUser createdUser = new ScimUser();
+      createdUser.setId(user.getDisplayName() + "-id");
+      return createdUser;
+    });
+    when(userRepository.update(any(), any(), any(), any(), any())).thenAnswer(invocation -> {
+      Thread.sleep(200);
+      executed.add("put");
+      return invocation.getArgument(2);
+    });
+    doAnswer(invocation -> executed.add("delete")).when(userRepository).delete(any());
+
+    UriInfo uriInfo = mock(UriInfo.class);
+    when(uriInfo.getBaseUri()).thenReturn(URI.create("https://scim.example.com/"));
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      BulkResourceImpl impl = new BulkResourceImpl(schemaRegistry, repositoryRegistry, executor);
+      Response response = impl.doBulk(new BulkRequest().setOperations(operations), uriInfo);
+      BulkResponse bulkResponse = (BulkResponse) response.getEntity();
+
+      assertThat(bulkResponse.getStatus()).isEqualTo(Response.Status.OK);
+      assertThat(executed).containsExactlyInAnyOrder("put", "first-bob", "delete", "second-bob", "carol");
+      assertThat(executed.indexOf("put")).isLessThan(executed.indexOf("delete"));
+      assertThat(executed.indexOf("first-bob")).isLessThan(executed.indexOf("second-bob"));
+      // operations on other resources don't wait
+      assertThat(executed.indexOf("carol")).isLessThan(executed.indexOf("put"));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void parallelBulkFailOnErrorsTest() throws Exception {
+    BulkRequest bulkRequest = new BulkRequest()
+      .setFailOnErrors(1)
+      .setOperations(List.of(
+        new BulkOperation()
+          .setMethod(BulkOperation.Method.POST)
+          .setPath("/Users")
+          .setBulkId("alice")
+          .setData(new ScimUser().setUserName("Alice")),
+        new BulkOperation()
+          .setMethod(BulkOperation.Method.POST)
+          .setPath("/Groups")
+          .setBulkId("empty")
+          .setData(new ScimGroup().setDisplayName("Empty")),
+        new BulkOperation()
+          .setMethod(BulkOperation.Method.POST)
+          .setPath("/Groups")
+          .setBulkId("with-alice")
+          .setData(new ScimGroup()
+            .setDisplayName("With Alice")
+            .setMembers(List.of(new GroupMembership().setType(GroupMembership.Type.USER).setValue("bulkId:alice")))),
+        new BulkOperation()
+          .setMethod(BulkOperation.Method.POST)
+          .setPath("/Groups")
+          .setBulkId("with-empty")
+          .setData(new ScimGroup()
+            .setDisplayName("With Empty")
+            .setMembers(List.of(new GroupMembership().setType(GroupMembership.Type.GROUP).setValue("bulkId:empty"))))));
+
+    SchemaRegistry schemaRegistry = new SchemaRegistry();
+    RepositoryRegistry repositoryRegistry = new RepositoryRegistry(schemaRegistry);
+
+    Repository<ScimUser> userRepository = mock(Repository.class);
+    repositoryRegistry.registerRepository(ScimUser.class, userRepository);
+    when(userRepository.create(any())).thenThrow(new UnableToCreateResourceException(Response.Status.BAD_REQUEST, "Expected Test Exception when alice is created"));
+
+    Repository<ScimGroup> groupRepository = mock(Repository.class);
+    repositoryRegistry.registerRepository(ScimGroup.class, groupRepository);
+
+    // a single thread runs the operations of a layer in the order of the request
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      BulkResourceImpl impl = new BulkResourceImpl(schemaRegistry, repositoryRegistry, executor);
+      Response response = impl.doBulk(bulkRequest, mock(UriInfo.class));
+      BulkResponse bulkResponse = (BulkResponse) response.getEntity();
+
+      assertThat(bulkResponse.getStatus()).isEqualTo(Response.Status.BAD_REQUEST);
+      assertThat(bulkResponse.getOperations()).extracting(BulkOperation::getBulkId)
+        .containsExactly("alice", "empty", "with-alice", "with-empty");
+      assertThat(bulkResponse.getOperations()).extracting(BulkOperation::getResponse)
+        .containsExactly(
+          new ErrorResponse(Response.Status.BAD_REQUEST, "Expected Test Exception when alice is created"),
+          new ErrorResponse(Response.Status.CONFLICT, "failOnErrors count reached"),
+          new ErrorResponse(Response.Status.CONFLICT, "failOnErrors count reached"),
+          new ErrorResponse(Response.Status.CONFLICT, "failOnErrors count reached"));
+      verify(groupRepository, never()).create(any());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
 }
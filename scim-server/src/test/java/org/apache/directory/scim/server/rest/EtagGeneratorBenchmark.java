@@ -0,0 +1,96 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.apache.directory.scim.server.rest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.ws.rs.core.EntityTag;
+import org.apache.directory.scim.core.json.ObjectMapperFactory;
+import org.apache.directory.scim.spec.resources.GroupMembership;
+import org.apache.directory.scim.spec.resources.ScimGroup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the streaming {@link EtagGenerator} with hashing the JSON of a resource written to a String, for a group
+ * with 10,000 members. Use {@code -prof gc} to compare the allocation rates.
+ * <p>
+ * Run from the module directory after {@code mvn test-compile} with:
+ * <pre>
+ * java -cp target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout) \
+ *   org.openjdk.jmh.Main EtagGeneratorBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EtagGeneratorBenchmark {
+
+  private static final int MEMBERS = 10_000;
+
+  private final ObjectMapper objectMapper = ObjectMapperFactory.getObjectMapper();
+
+  private EtagGenerator etagGenerator;
+
+  private ScimGroup group;
+
+  @Setup
+  public void setup() {
+    etagGenerator = new EtagGenerator();
+    group = new ScimGroup().setDisplayName("Large Group");
+    group.setId("large-group");
+    for (int i = 0; i < MEMBERS; i++) {
+      group.addMember(new GroupMembership()
+        .setValue("user-" + i)
+        .setDisplay("User " + i)
+        .setRef("https://example.com/scim/v2/Users/user-" + i)
+        .setType(GroupMembership.Type.USER));
+    }
+  }
+
+  @Benchmark
+  public EntityTag streaming() throws Exception {
+    return etagGenerator.generateEtag(group);
+  }
+
+  @Benchmark
+  public EntityTag writeValueAsString() throws Exception {
+    String json = objectMapper.writeValueAsString(group);
+    MessageDigest digest = MessageDigest.getInstance("SHA-256");
+    digest.update(json.getBytes(StandardCharsets.UTF_8));
+    return new EntityTag(Base64.getEncoder().encodeToString(digest.digest()));
+  }
+}
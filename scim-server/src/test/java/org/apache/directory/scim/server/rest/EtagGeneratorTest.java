@@ -0,0 +1,90 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.apache.directory.scim.server.rest;
+
+import jakarta.ws.rs.core.EntityTag;
+import org.apache.directory.scim.spec.extension.EnterpriseExtension;
+import org.apache.directory.scim.spec.resources.ScimUser;
+import org.apache.directory.scim.spec.schema.Meta;
+import org.apache.directory.scim.test.stub.ExampleObjectExtension;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EtagGeneratorTest {
+
+  private final EtagGenerator etagGenerator = new EtagGenerator();
+
+  @Test
+  public void etagDoesNotDependOnMeta() throws Exception {
+    ScimUser user = user();
+    EntityTag etag = etagGenerator.generateEtag(user);
+
+    user.setMeta(new Meta().setVersion("1").setResourceType("User"));
+
+    assertThat(etagGenerator.generateEtag(user)).isEqualTo(etag);
+    assertThat(etag.isWeak()).isFalse();
+  }
+
+  @Test
+  public void etagDoesNotDependOnTheOrderOfExtensions() throws Exception {
+    ScimUser user = user()
+      .addExtension(new EnterpriseExtension().setCostCenter("CC-123"))
+      .addExtension(exampleExtension());
+    ScimUser reordered = user()
+      .addExtension(exampleExtension())
+      .addExtension(new EnterpriseExtension().setCostCenter("CC-123"));
+
+    assertThat(etagGenerator.generateEtag(reordered)).isEqualTo(etagGenerator.generateEtag(user));
+  }
+
+  @Test
+  public void etagChangesWithTheResource() throws Exception {
+    ScimUser user = user();
+    EntityTag etag = etagGenerator.generateEtag(user);
+
+    assertThat(etagGenerator.generateEtag(user.setUserName("jed2"))).isNotEqualTo(etag);
+  }
+
+  @Test
+  public void resourceIsNotChanged() throws Exception {
+    ScimUser user = user();
+    Meta meta = new Meta().setResourceType("User");
+    user.setMeta(meta);
+
+    etagGenerator.generateEtag(user);
+
+    assertThat(user.getMeta()).isSameAs(meta);
+    assertThat(meta.getVersion()).isNull();
+  }
+
+  private static ScimUser user() {
+    ScimUser user = new ScimUser().setUserName("jed1");
+    user.setId("1");
+    return user;
+  }
+
+  private static ExampleObjectExtension exampleExtension() {
+    ExampleObjectExtension extension = new ExampleObjectExtension();
+    extension.setValueDefault("default");
+    return extension;
+  }
+}
@@ -0,0 +1,193 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.apache.directory.scim.server.rest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.ws.rs.core.Response.Status;
+import jakarta.ws.rs.core.StreamingOutput;
+import org.apache.directory.scim.core.json.AttributeProjection;
+import org.apache.directory.scim.core.json.ObjectMapperFactory;
+import org.apache.directory.scim.core.repository.FilterResultStream;
+import org.apache.directory.scim.core.schema.SchemaRegistry;
+import org.apache.directory.scim.protocol.data.ListResponse;
+import org.apache.directory.scim.protocol.exception.ScimException;
+import org.apache.directory.scim.spec.filter.PageRequest;
+import org.apache.directory.scim.spec.resources.ScimUser;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ListResponseWriterTest {
+
+  private final SchemaRegistry schemaRegistry = schemaRegistry();
+
+  private final ObjectMapper objectMapper = ObjectMapperFactory.createObjectMapper(schemaRegistry);
+
+  private final ListResponseWriter listResponseWriter = new ListResponseWriter(objectMapper);
+
+  @Test
+  public void writesTheSameJsonAsAListResponse() throws IOException {
+    List<ScimUser> users = List.of(user(1), user(2), user(3));
+    PageRequest pageRequest = new PageRequest();
+    pageRequest.setStartIndex(4);
+    pageRequest.setCount(3);
+
+    ListResponse<ScimUser> listResponse = new ListResponse<>();
+    listResponse.setTotalResults(10);
+    listResponse.setStartIndex(4);
+    listResponse.setItemsPerPage(3);
+    listResponse.setResources(users);
+
+    String json = write(new FilterResultStream<>(users.stream(), pageRequest, 10), AttributeProjection.defaults());
+
+    assertThat(objectMapper.readTree(json))
+      .isEqualTo(objectMapper.readTree(AttributeProjection.defaults().applyTo(objectMapper.writer()).writeValueAsString(listResponse)));
+    assertThat(json).doesNotContain("secret");
+  }
+
+  @Test
+  public void writesTheNextCursorOfACursorPage() throws IOException {
+    List<ScimUser> users = List.of(user(1), user(2));
+    PageRequest pageRequest = new PageRequest();
+    pageRequest.setCount(2);
+    pageRequest.setCursor("");
+
+    ListResponse<ScimUser> listResponse = new ListResponse<>();
+    listResponse.setTotalResults(10);
+    listResponse.setItemsPerPage(2);
+    listResponse.setNextCursor("next");
+    listResponse.setResources(users);
+
+    String json = write(new FilterResultStream<>(users.stream(), pageRequest, 10, "next"), AttributeProjection.defaults());
+
+    assertThat(objectMapper.readTree(json))
+      .isEqualTo(objectMapper.readTree(AttributeProjection.defaults().applyTo(objectMapper.writer()).writeValueAsString(listResponse)));
+    assertThat(objectMapper.readTree(json).has("startIndex")).isFalse();
+  }
+
+  @Test
+  public void writesAnEmptyListResponse() throws IOException {
+    ListResponse<ScimUser> listResponse = new ListResponse<>();
+    listResponse.setTotalResults(0);
+
+    String json = write(new FilterResultStream<>(Stream.empty(), null, 5), AttributeProjection.defaults());
+
+    assertThat(objectMapper.readTree(json)).isEqualTo(objectMapper.readTree(objectMapper.writeValueAsString(listResponse)));
+  }
+
+  @Test
+  public void resourcesArePulledWhileWriting() throws IOException, ScimException {
+    AtomicInteger pulled = new AtomicInteger();
+    AtomicBoolean closed = new AtomicBoolean();
+    Stream<ScimUser> users = IntStream.rangeClosed(1, 100)
+      .peek(i -> pulled.incrementAndGet())
+      .mapToObj(ListResponseWriterTest::user)
+      .onClose(() -> closed.set(true));
+
+    StreamingOutput output = listResponseWriter.write(new FilterResultStream<>(users, null, 100), AttributeProjection.defaults(),
+      user -> user.setDisplayName("processed"));
+
+    // only the first resource is pulled before the response is committed
+    assertThat(pulled).hasValue(1);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    output.write(out);
+
+    assertThat(pulled).hasValue(100);
+    assertThat(closed).isTrue();
+    assertThat(objectMapper.readTree(out.toByteArray()).get("itemsPerPage").asInt()).isEqualTo(100);
+    assertThat(objectMapper.readTree(out.toByteArray()).get("Resources").get(99).get("displayName").asText()).isEqualTo("processed");
+  }
+
+  @Test
+  public void failuresOfTheFirstResourceAreThrownBeforeWriting() {
+    AtomicBoolean closed = new AtomicBoolean();
+    Stream<ScimUser> users = Stream.of(user(1), user(2)).onClose(() -> closed.set(true));
+
+    assertThatThrownBy(() -> listResponseWriter.write(new FilterResultStream<>(users, null, 2), AttributeProjection.defaults(),
+      user -> {
+        throw new ScimException(Status.BAD_REQUEST, "rejected");
+      }))
+      .isInstanceOfSatisfying(ScimException.class, e -> assertThat(e.getStatus()).isEqualTo(Status.BAD_REQUEST));
+    assertThat(closed).isTrue();
+  }
+
+  @Test
+  public void failuresOfLaterResourcesAbortTheResponse() throws ScimException {
+    AtomicBoolean closed = new AtomicBoolean();
+    Stream<ScimUser> users = Stream.of(user(1), user(2)).onClose(() -> closed.set(true));
+
+    StreamingOutput output = listResponseWriter.write(new FilterResultStream<>(users, null, 2), AttributeProjection.defaults(),
+      user -> {
+        if ("2".equals(user.getId())) {
+          throw new ScimException(Status.INTERNAL_SERVER_ERROR, "failed");
+        }
+        return user;
+      });
+
+    assertThatThrownBy(() -> output.write(new ByteArrayOutputStream()))
+      .isInstanceOf(IOException.class)
+      .hasCauseInstanceOf(ScimException.class);
+    assertThat(closed).isTrue();
+  }
+
+  @Test
+  public void writesTheProjectionOfASingleResource() throws IOException {
+    ScimUser user = user(1);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    listResponseWriter.writeResource(user, AttributeProjection.defaults()).write(out);
+
+    assertThat(objectMapper.readTree(out.toString()).get("userName").asText()).isEqualTo("user-1");
+    assertThat(out.toString()).doesNotContain("secret");
+    assertThat(user.getPassword()).isEqualTo("secret");
+  }
+
+  private String write(FilterResultStream<ScimUser> results, AttributeProjection projection) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try {
+      listResponseWriter.write(results, projection, user -> user).write(out);
+    } catch (ScimException e) {
+      throw new IllegalStateException(e);
+    }
+    return out.toString();
+  }
+
+  private static ScimUser user(int i) {
+    ScimUser user = new ScimUser().setUserName("user-" + i).setPassword("secret");
+    user.setId(String.valueOf(i));
+    return user;
+  }
+
+  private static SchemaRegistry schemaRegistry() {
+    SchemaRegistry schemaRegistry = new SchemaRegistry();
+    schemaRegistry.addSchema(ScimUser.class, null);
+    return schemaRegistry;
+  }
+}
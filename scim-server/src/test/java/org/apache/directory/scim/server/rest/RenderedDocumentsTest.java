@@ -0,0 +1,126 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.apache.directory.scim.server.rest;
+
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.Request;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.Response.Status;
+import org.apache.directory.scim.core.json.ObjectMapperFactory;
+import org.apache.directory.scim.core.schema.SchemaRegistry;
+import org.apache.directory.scim.spec.resources.ScimUser;
+import org.apache.directory.scim.spec.schema.Meta;
+import org.apache.directory.scim.spec.schema.Schema;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RenderedDocumentsTest {
+
+  private final SchemaRegistry schemaRegistry = schemaRegistry();
+
+  private final RenderedDocuments documents = new RenderedDocuments(ObjectMapperFactory.createObjectMapper(schemaRegistry));
+
+  private final AtomicInteger renders = new AtomicInteger();
+
+  @Test
+  public void documentIsRenderedOnce() {
+    Response first = documents.respond("/Schemas", 1, null, this::render);
+    Response second = documents.respond("/Schemas", 1, null, this::render);
+
+    assertThat(renders).hasValue(1);
+    assertThat(first.getStatus()).isEqualTo(Status.OK.getStatusCode());
+    assertThat(second.getEntity()).isSameAs(first.getEntity());
+    assertThat(new String((byte[]) first.getEntity(), StandardCharsets.UTF_8)).contains("\"name\":\"User\"");
+    assertThat(first.getEntityTag()).isNotNull();
+    assertThat(first.getEntityTag().isWeak()).isFalse();
+    assertThat(second.getEntityTag()).isEqualTo(first.getEntityTag());
+  }
+
+  @Test
+  public void documentIsRenderedAgainWhenTheVersionChanges() {
+    documents.respond("/Schemas", 1, null, this::render);
+    documents.respond("/Schemas", 2, null, this::render);
+
+    assertThat(renders).hasValue(2);
+    assertThat(documents.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void notModifiedIfTheEtagMatches() {
+    EntityTag etag = documents.respond("/Schemas", 1, null, this::render).getEntityTag();
+    Request request = mock(Request.class);
+    when(request.evaluatePreconditions(any(EntityTag.class)))
+      .thenAnswer(invocation -> etag.equals(invocation.getArgument(0)) ? Response.notModified() : null);
+
+    Response response = documents.respond("/Schemas", 1, request, this::render);
+
+    assertThat(response.getStatus()).isEqualTo(Status.NOT_MODIFIED.getStatusCode());
+    assertThat(response.getEntityTag()).isEqualTo(etag);
+    assertThat(response.hasEntity()).isFalse();
+  }
+
+  @Test
+  public void resourcesAreTaggedWithTheirVersion() {
+    ScimUser user = new ScimUser().setUserName("jed1");
+    user.setMeta(new Meta().setVersion("v1"));
+
+    assertThat(documents.respond("/ServiceProviderConfig", 1, null, () -> user).getEntityTag())
+      .isEqualTo(new EntityTag("v1"));
+  }
+
+  @Test
+  public void sharedValuesAreNotChanged() {
+    Schema schema = schemaRegistry.getSchema(ScimUser.SCHEMA_URI);
+
+    String json = documents.withMeta(schema, new Meta().setLocation("/Schemas/" + schema.getId())).toString();
+
+    assertThat(json).contains("/Schemas/" + ScimUser.SCHEMA_URI);
+    assertThat(schema.getMeta()).isNull();
+  }
+
+  @Test
+  public void renderingErrorsAreServerErrors() {
+    Response response = documents.respond("/Schemas", 1, null, () -> {
+      throw new IllegalStateException("expected");
+    });
+
+    assertThat(response.getStatus()).isEqualTo(Status.INTERNAL_SERVER_ERROR.getStatusCode());
+    assertThat(documents.size()).isZero();
+  }
+
+  private Object render() {
+    renders.incrementAndGet();
+    return documents.withMeta(schemaRegistry.getSchema(ScimUser.SCHEMA_URI), new Meta().setResourceType("Schema"));
+  }
+
+  private static SchemaRegistry schemaRegistry() {
+    SchemaRegistry schemaRegistry = new SchemaRegistry();
+    schemaRegistry.addSchema(ScimUser.class, null);
+    return schemaRegistry;
+  }
+}
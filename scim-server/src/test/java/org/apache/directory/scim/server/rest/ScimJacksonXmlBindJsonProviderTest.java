@@ -0,0 +1,105 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.apache.directory.scim.server.rest;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.jakarta.rs.cfg.EndpointConfigBase;
+import com.fasterxml.jackson.jakarta.rs.cfg.ObjectWriterInjector;
+import com.fasterxml.jackson.jakarta.rs.cfg.ObjectWriterModifier;
+import jakarta.ws.rs.core.MultivaluedHashMap;
+import jakarta.ws.rs.core.MultivaluedMap;
+import org.apache.directory.scim.core.json.AttributeProjection;
+import org.apache.directory.scim.core.schema.SchemaRegistry;
+import org.apache.directory.scim.protocol.Constants;
+import org.apache.directory.scim.spec.resources.ScimUser;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static jakarta.ws.rs.core.MediaType.valueOf;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ScimJacksonXmlBindJsonProviderTest {
+
+  private final ScimJacksonXmlBindJsonProvider provider = new ScimJacksonXmlBindJsonProvider(schemaRegistry());
+
+  @Test
+  public void writesTheProjectionOfTheResponse() throws IOException {
+    ScimUser user = user();
+
+    assertThat(write(user, Projection.Literal.annotations(AttributeProjection.defaults())))
+      .contains("\"userName\":\"jed1\"")
+      .doesNotContain("secret");
+    assertThat(user.getPassword()).isEqualTo("secret");
+  }
+
+  @Test
+  public void writesEveryAttributeWithoutProjection() throws IOException {
+    assertThat(write(user(), new Annotation[0]))
+      .contains("\"userName\":\"jed1\"", "secret");
+  }
+
+  @Test
+  public void appliesThePreviousObjectWriterModifierOnce() throws IOException {
+    AtomicInteger applied = new AtomicInteger();
+    ObjectWriterInjector.set(new ObjectWriterModifier() {
+      @Override
+      public ObjectWriter modify(EndpointConfigBase<?> endpoint, MultivaluedMap<String, Object> responseHeaders, Object valueToWrite, ObjectWriter writer, JsonGenerator generator) {
+        applied.incrementAndGet();
+        return writer;
+      }
+    });
+    try {
+      write(user(), Projection.Literal.annotations(AttributeProjection.defaults()));
+      write(user(), Projection.Literal.annotations(AttributeProjection.defaults()));
+
+      assertThat(applied).hasValue(1);
+      assertThat(ObjectWriterInjector.get()).isNull();
+    } finally {
+      ObjectWriterInjector.getAndClear();
+    }
+  }
+
+  private String write(Object entity, Annotation[] annotations) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    provider.writeTo(entity, entity.getClass(), entity.getClass(), annotations, valueOf(Constants.SCIM_CONTENT_TYPE), new MultivaluedHashMap<>(), out);
+    return out.toString(StandardCharsets.UTF_8);
+  }
+
+  private static ScimUser user() {
+    ScimUser user = new ScimUser();
+    user.setId("1");
+    user.setUserName("jed1");
+    user.setPassword("secret");
+    return user;
+  }
+
+  private static SchemaRegistry schemaRegistry() {
+    SchemaRegistry schemaRegistry = new SchemaRegistry();
+    schemaRegistry.addSchema(ScimUser.class, null);
+    return schemaRegistry;
+  }
+}
@@ -0,0 +1,182 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.server.rest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import org.apache.directory.scim.core.json.ObjectMapperFactory;
+import org.apache.directory.scim.core.repository.Repository;
+import org.apache.directory.scim.core.repository.RepositoryRegistry;
+import org.apache.directory.scim.core.repository.SortEngine;
+import org.apache.directory.scim.core.schema.SchemaRegistry;
+import org.apache.directory.scim.protocol.data.ListResponse;
+import org.apache.directory.scim.protocol.data.SearchRequest;
+import org.apache.directory.scim.server.configuration.ServerConfiguration;
+import org.apache.directory.scim.spec.filter.Filter;
+import org.apache.directory.scim.spec.filter.PageRequest;
+import org.apache.directory.scim.spec.filter.SortOrder;
+import org.apache.directory.scim.spec.filter.SortRequest;
+import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
+import org.apache.directory.scim.spec.resources.ScimGroup;
+import org.apache.directory.scim.spec.resources.ScimResource;
+import org.apache.directory.scim.spec.resources.ScimUser;
+import org.apache.directory.scim.spec.schema.Schemas;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SearchResourceImplTest {
+
+  private final SchemaRegistry schemaRegistry = new SchemaRegistry();
+
+  private final RepositoryRegistry repositoryRegistry = new RepositoryRegistry(schemaRegistry);
+
+  private final ObjectMapper objectMapper = ObjectMapperFactory.createObjectMapper(schemaRegistry);
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  @AfterEach
+  public void shutdown() {
+    release.countDown();
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void searchesAllRepositoriesInOrder() throws Exception {
+    List<ScimUser> users = new ArrayList<>();
+    List<ScimGroup> groups = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      users.add(user("user-" + i, "external-" + (2 * i)));
+      groups.add(group("group-" + i, "external-" + (2 * i + 1)));
+    }
+    register(ScimUser.class, users);
+    register(ScimGroup.class, groups);
+
+    SearchRequest searchRequest = new SearchRequest();
+    searchRequest.setFilter(new Filter("externalId ge \"external-1\""));
+    searchRequest.setSortBy(new AttributeReference("externalId"));
+    searchRequest.setSortOrder(SortOrder.ASCENDING);
+    searchRequest.setStartIndex(3);
+    searchRequest.setCount(4);
+
+    JsonNode listResponse = find(searchResource(new ServerConfiguration()), searchRequest);
+
+    // external-10 .. external-19 and external-2 .. external-9 sort as strings
+    assertThat(listResponse.get("totalResults").asInt()).isEqualTo(19);
+    assertThat(listResponse.get("startIndex").asInt()).isEqualTo(3);
+    assertThat(externalIds(listResponse)).containsExactly("external-11", "external-12", "external-13", "external-14");
+  }
+
+  @Test
+  public void slowRepositoriesAreLeftOut() throws Exception {
+    register(ScimUser.class, List.of(user("user", "external")));
+
+    @SuppressWarnings("unchecked")
+    Repository<ScimGroup> groupRepository = mock(Repository.class);
+    when(groupRepository.getResourceClass()).thenReturn(ScimGroup.class);
+    when(groupRepository.getExtensionList()).thenReturn(Collections.emptyList());
+    when(groupRepository.find(any(), any(), any())).thenAnswer(invocation -> {
+      release.await();
+      return null;
+    });
+    repositoryRegistry.registerRepository(ScimGroup.class, groupRepository);
+
+    SearchRequest searchRequest = new SearchRequest();
+    searchRequest.setFilter(new Filter("externalId eq \"external\""));
+
+    JsonNode listResponse = find(searchResource(new ServerConfiguration().setSearchRepositoryTimeoutMillis(100)), searchRequest);
+
+    assertThat(listResponse.get("totalResults").asInt()).isEqualTo(1);
+    assertThat(externalIds(listResponse)).containsExactly("external");
+  }
+
+  @Test
+  public void countOnlyCountsAllRepositories() throws Exception {
+    register(ScimUser.class, List.of(user("user-1", "a"), user("user-2", "b")));
+    register(ScimGroup.class, List.of(group("group-1", "a")));
+
+    SearchRequest searchRequest = new SearchRequest();
+    searchRequest.setFilter(new Filter("externalId eq \"a\""));
+    searchRequest.setCount(0);
+
+    Response response = searchResource(new ServerConfiguration()).find(searchRequest);
+
+    assertThat(((ListResponse<?>) response.getEntity()).getTotalResults()).isEqualTo(2);
+  }
+
+  private SearchResourceImpl searchResource(ServerConfiguration serverConfiguration) {
+    return new SearchResourceImpl(schemaRegistry, repositoryRegistry, serverConfiguration, executor);
+  }
+
+  private JsonNode find(SearchResourceImpl searchResource, SearchRequest searchRequest) throws Exception {
+    Response response = searchResource.find(searchRequest);
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    ((StreamingOutput) response.getEntity()).write(output);
+    return objectMapper.readTree(output.toByteArray());
+  }
+
+  private static List<String> externalIds(JsonNode listResponse) {
+    List<String> externalIds = new ArrayList<>();
+    listResponse.get("Resources").forEach(resource -> externalIds.add(resource.get("externalId").asText()));
+    return externalIds;
+  }
+
+  private <T extends ScimResource> void register(Class<T> resourceClass, List<T> resources) throws Exception {
+    @SuppressWarnings("unchecked")
+    Repository<T> repository = mock(Repository.class);
+    when(repository.getResourceClass()).thenReturn(resourceClass);
+    when(repository.getExtensionList()).thenReturn(Collections.emptyList());
+    when(repository.find(any(), any(), any())).thenAnswer(invocation -> SortEngine.find(resources,
+      invocation.getArgument(0), invocation.<PageRequest>getArgument(1), invocation.<SortRequest>getArgument(2), Schemas.schemaFor(resourceClass)));
+    when(repository.count(any())).thenAnswer(invocation -> SortEngine.find(resources,
+      invocation.getArgument(0), null, null, Schemas.schemaFor(resourceClass)).getTotalResults());
+    repositoryRegistry.registerRepository(resourceClass, repository);
+  }
+
+  private static ScimUser user(String id, String externalId) {
+    ScimUser user = new ScimUser().setUserName(id);
+    user.setId(id);
+    user.setExternalId(externalId);
+    return user;
+  }
+
+  private static ScimGroup group(String id, String externalId) {
+    ScimGroup group = new ScimGroup().setDisplayName(id);
+    group.setId(id);
+    group.setExternalId(externalId);
+    return group;
+  }
+}
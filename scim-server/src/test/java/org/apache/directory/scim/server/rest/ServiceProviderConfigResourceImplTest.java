@@ -0,0 +1,77 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.directory.scim.server.rest;
+
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.UriInfo;
+import org.apache.directory.scim.server.configuration.ServerConfiguration;
+import org.apache.directory.scim.spec.schema.ServiceProviderConfiguration.AuthenticationSchema;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ServiceProviderConfigResourceImplTest {
+
+  private final ServerConfiguration serverConfiguration = new ServerConfiguration();
+
+  private final ServiceProviderConfigResourceImpl resource = new ServiceProviderConfigResourceImpl(serverConfiguration, new EtagGenerator());
+
+  private final UriInfo uriInfo = uriInfo();
+
+  @Test
+  public void configurationIsRenderedOnce() {
+    Response first = resource.getServiceProviderConfiguration(uriInfo);
+    Response second = resource.getServiceProviderConfiguration(uriInfo);
+
+    assertThat(second.getEntity()).isSameAs(first.getEntity());
+  }
+
+  @Test
+  public void configurationIsRenderedAgainWhenItChanges() {
+    Response first = resource.getServiceProviderConfiguration(uriInfo);
+    serverConfiguration.setSupportsFilter(true);
+    Response second = resource.getServiceProviderConfiguration(uriInfo);
+
+    assertThat(second.getEntity()).isNotSameAs(first.getEntity());
+    assertThat(new String((byte[]) second.getEntity(), StandardCharsets.UTF_8)).contains("\"filter\":{\"supported\":true");
+    assertThat(second.getEntityTag()).isNotEqualTo(first.getEntityTag());
+  }
+
+  @Test
+  public void settersOfTheDocumentCountModifications() {
+    long modificationCount = serverConfiguration.getModificationCount();
+    serverConfiguration.setSearchMaxThreads(8);
+    assertThat(serverConfiguration.getModificationCount()).isEqualTo(modificationCount);
+
+    serverConfiguration.setDocumentationUri("https://example.com/scim");
+    serverConfiguration.addAuthenticationSchema(new AuthenticationSchema());
+    assertThat(serverConfiguration.getModificationCount()).isEqualTo(modificationCount + 2);
+  }
+
+  private static UriInfo uriInfo() {
+    UriInfo uriInfo = mock(UriInfo.class);
+    when(uriInfo.getAbsolutePath()).thenReturn(URI.create("https://example.com/v2/ServiceProviderConfig"));
+    return uriInfo;
+  }
+}
@@ -84,6 +84,8 @@ public interface BaseResourceTypeResource<T> {
   /**
    * @see <a href="https://tools.ietf.org/html/rfc7644#section-3.4.2">Scim spec,
    *      query resources</a>
+   * @see <a href="https://datatracker.ietf.org/doc/html/rfc9865">Cursor-based
+   *      pagination of SCIM resources</a>
    * @return
    */
   @GET
@@ -103,10 +105,26 @@ public interface BaseResourceTypeResource<T> {
                          @Parameter(name="sortBy") @QueryParam("sortBy") AttributeReference sortBy,
                          @Parameter(name="sortOrder") @QueryParam("sortOrder") SortOrder sortOrder,
                          @Parameter(name="startIndex") @QueryParam("startIndex") Integer startIndex,
-                         @Parameter(name="count") @QueryParam("count") Integer count) throws ScimException, ResourceException {
+                         @Parameter(name="count") @QueryParam("count") Integer count,
+                         @Parameter(name="cursor") @QueryParam("cursor") String cursor) throws ScimException, ResourceException {
     return Response.status(Status.NOT_IMPLEMENTED).build();
   }
 
+  /**
+   * Queries resources with index-based pagination.
+   *
+   * @see #query(AttributeReferenceListWrapper, AttributeReferenceListWrapper, FilterWrapper, AttributeReference, SortOrder, Integer, Integer, String)
+   */
+  default Response query(AttributeReferenceListWrapper attributes,
+                         AttributeReferenceListWrapper excludedAttributes,
+                         FilterWrapper filterWrapper,
+                         AttributeReference sortBy,
+                         SortOrder sortOrder,
+                         Integer startIndex,
+                         Integer count) throws ScimException, ResourceException {
+    return query(attributes, excludedAttributes, filterWrapper, sortBy, sortOrder, startIndex, count, null);
+  }
+
   /**
    * @see <a href="https://tools.ietf.org/html/rfc7644#section-3.3">Scim spec,
    *      query resources</a>
@@ -69,7 +69,11 @@ public enum ErrorMessageType {
 
   //GET (Section 3.4.2)
   @XmlEnumValue("sensitive")
-  SENSITIVE("sensitive", "The specified request cannot be completed, due to the passing of sensitive (e.g., personal) information in a request URI.  For example, personal information SHALL NOT be transmitted over request URIs.  See Section 7.5.2.");
+  SENSITIVE("sensitive", "The specified request cannot be completed, due to the passing of sensitive (e.g., personal) information in a request URI.  For example, personal information SHALL NOT be transmitted over request URIs.  See Section 7.5.2."),
+
+  //GET, POST (Search) with a cursor (RFC 9865, Section 2.3)
+  @XmlEnumValue("invalidCursor")
+  INVALID_CURSOR("invalidCursor", "The cursor value is invalid, it is malformed or it identifies a result set that is no longer available.");
 
   private String scimType;
   private String detail;
@@ -34,6 +34,8 @@ import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
 
 import org.apache.directory.scim.protocol.data.SearchRequest;
+import org.apache.directory.scim.protocol.exception.ScimException;
+import org.apache.directory.scim.spec.exception.ResourceException;
 import org.apache.directory.scim.spec.resources.ScimResource;
 
 import static jakarta.ws.rs.core.MediaType.*;
@@ -79,7 +81,7 @@ public interface SearchResource {
   })
   default Response find(@RequestBody(content = @Content(mediaType = SCIM_CONTENT_TYPE,
                                      schema = @Schema(implementation = SearchRequest.class)),
-                                     required = true) SearchRequest request){
+                                     required = true) SearchRequest request) throws ScimException, ResourceException {
     return Response.status(Status.NOT_IMPLEMENTED).build();
   }
   
@@ -25,6 +25,8 @@ import jakarta.ws.rs.core.Response.Status;
 
 import org.apache.directory.scim.protocol.ErrorMessageType;
 import org.apache.directory.scim.protocol.data.ErrorResponse;
+import org.apache.directory.scim.spec.filter.FilterLimitExceededException;
+import org.apache.directory.scim.spec.filter.FilterLimits;
 import org.apache.directory.scim.spec.filter.FilterParseException;
 import org.apache.directory.scim.spec.filter.Filter;
 
@@ -43,8 +45,9 @@ final public class FilterWrapper {
       filter = new Filter(string);
     } catch (FilterParseException e) {
       log.error("Invalid Filter: {}", string);
-      ErrorResponse er = new ErrorResponse(Status.BAD_REQUEST, ErrorMessageType.INVALID_FILTER.getDetail());
-      er.setScimType(ErrorMessageType.INVALID_FILTER);
+      ErrorMessageType errorMessageType = errorMessageType(e);
+      ErrorResponse er = new ErrorResponse(Status.BAD_REQUEST, e instanceof FilterLimitExceededException ? e.getMessage() : errorMessageType.getDetail());
+      er.setScimType(errorMessageType);
       Response response = er.toResponse();
       throw new WebApplicationException(e, response);
     }
@@ -53,4 +56,17 @@ final public class FilterWrapper {
   public FilterWrapper(Filter filter) {
     this.filter = filter;
   }
+
+  /**
+   * Returns {@code tooMany} for filters rejected for their size, and {@code invalidFilter} for anything else.
+   */
+  public static ErrorMessageType errorMessageType(FilterParseException e) {
+    if (e instanceof FilterLimitExceededException) {
+      FilterLimits.Limit limit = ((FilterLimitExceededException) e).getLimit();
+      if (limit == FilterLimits.Limit.LENGTH || limit == FilterLimits.Limit.NODES) {
+        return ErrorMessageType.TOO_MANY;
+      }
+    }
+    return ErrorMessageType.INVALID_FILTER;
+  }
 }
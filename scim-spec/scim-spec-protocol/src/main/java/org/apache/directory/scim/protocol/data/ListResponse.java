@@ -49,6 +49,10 @@ public class ListResponse<T> extends BaseResource<ListResponse<T>> {
   @XmlElement
   Integer itemsPerPage;
 
+  // https://datatracker.ietf.org/doc/html/rfc9865#section-2.2
+  @XmlElement
+  String nextCursor;
+
   @XmlElement(name = "Resources")
   List<T> resources;
 
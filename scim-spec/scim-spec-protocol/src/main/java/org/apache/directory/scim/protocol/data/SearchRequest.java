@@ -79,6 +79,10 @@ public class SearchRequest extends BaseResource<SearchRequest> {
 
   @XmlElement
   Integer count;
+
+  // https://datatracker.ietf.org/doc/html/rfc9865#section-2.1
+  @XmlElement
+  String cursor;
   
   public SearchRequest() {
     super(SCHEMA_URI);
@@ -88,6 +92,7 @@ public class SearchRequest extends BaseResource<SearchRequest> {
     PageRequest pageRequest = new PageRequest();
     pageRequest.setStartIndex(startIndex);
     pageRequest.setCount(count);
+    pageRequest.setCursor(cursor);
     return pageRequest;
   }
   
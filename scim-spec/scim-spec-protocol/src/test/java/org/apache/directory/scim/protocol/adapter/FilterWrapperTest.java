@@ -0,0 +1,47 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.protocol.adapter;
+
+import org.apache.directory.scim.protocol.ErrorMessageType;
+import org.apache.directory.scim.spec.filter.FilterLimitExceededException;
+import org.apache.directory.scim.spec.filter.FilterLimits;
+import org.apache.directory.scim.spec.filter.FilterParseException;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FilterWrapperTest {
+
+  @Test
+  public void oversizedFilterIsTooMany() {
+    assertThat(FilterWrapper.errorMessageType(new FilterLimitExceededException(FilterLimits.Limit.NODES, "too many nodes")))
+      .isEqualTo(ErrorMessageType.TOO_MANY);
+    assertThat(FilterWrapper.errorMessageType(new FilterLimitExceededException(FilterLimits.Limit.LENGTH, "too long")))
+      .isEqualTo(ErrorMessageType.TOO_MANY);
+  }
+
+  @Test
+  public void nestedFilterIsInvalid() {
+    assertThat(FilterWrapper.errorMessageType(new FilterLimitExceededException(FilterLimits.Limit.DEPTH, "too deep")))
+      .isEqualTo(ErrorMessageType.INVALID_FILTER);
+    assertThat(FilterWrapper.errorMessageType(new FilterParseException("bad filter")))
+      .isEqualTo(ErrorMessageType.INVALID_FILTER);
+  }
+}
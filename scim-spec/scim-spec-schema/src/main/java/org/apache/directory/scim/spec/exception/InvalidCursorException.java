@@ -0,0 +1,35 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.spec.exception;
+
+/**
+ * Thrown when the cursor of a page request is malformed, or no longer identifies a position in the results, see
+ * <a href="https://datatracker.ietf.org/doc/html/rfc9865#section-2.3">RFC 9865, section 2.3</a>.
+ */
+public class InvalidCursorException extends ResourceException {
+
+  public InvalidCursorException(String message) {
+    super(400, message);
+  }
+
+  public InvalidCursorException(String message, Throwable cause) {
+    super(400, message, cause);
+  }
+}
@@ -0,0 +1,59 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.spec.filter;
+
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+
+/**
+ * Parses filters with the ANTLR generated {@link FilterParser} and builds the expression tree with an
+ * {@link ExpressionBuildingListener}.
+ */
+public class AntlrFilterExpressionParser implements FilterExpressionParser {
+
+  @Override
+  public FilterExpression parse(String filter) throws FilterParseException {
+    FilterLexer l = new FilterLexer(CharStreams.fromString(filter));
+    FilterParser p = new FilterParser(new CommonTokenStream(l));
+    p.setBuildParseTree(true);
+
+    p.addErrorListener(new BaseErrorListener() {
+      @Override
+      public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine, String msg, RecognitionException e) {
+        throw new IllegalStateException("failed to parse at line " + line + ":" + charPositionInLine + " due to " + msg, e);
+      }
+    });
+
+    try {
+      ParseTree tree = p.filter();
+      ExpressionBuildingListener expListener = new ExpressionBuildingListener();
+      ParseTreeWalker.DEFAULT.walk(expListener, tree);
+
+      return expListener.getFilterExpression();
+    } catch (IllegalStateException e) {
+      throw new FilterParseException("Failed to parse filter: " + filter, e);
+    }
+  }
+}
@@ -0,0 +1,61 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.spec.filter;
+
+import lombok.Value;
+import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Matches if an attribute is equal to any one of a set of values, the same as a chain of {@code eq} comparisons
+ * joined with {@code or}, for example {@code userName eq "a" or userName eq "b"}. Produced by
+ * {@link FilterExpressionOptimizer}.
+ */
+@Value
+public class AttributeInExpression implements FilterExpression, ValueFilterExpression {
+  private static final long serialVersionUID = -6140378834497233190L;
+
+  AttributeReference attributePath;
+  Set<Object> compareValues;
+
+  @Override
+  public String toFilter() {
+    return compareValues.stream()
+      .map(value -> new AttributeComparisonExpression(attributePath, CompareOperator.EQ, value).toFilter())
+      .collect(Collectors.joining(" " + LogicalOperator.OR + " "));
+  }
+
+  @Override
+  public void setAttributePath(String urn, String parentAttributeName) {
+    this.attributePath.setUrn(urn);
+    String subAttributeName = this.attributePath.getAttributeName();
+    this.attributePath.setAttributeName(parentAttributeName);
+    this.attributePath.setSubAttributeName(subAttributeName);
+  }
+
+  @Override
+  public String toUnqualifiedFilter() {
+    return compareValues.stream()
+      .map(value -> new AttributeComparisonExpression(attributePath, CompareOperator.EQ, value).toUnqualifiedFilter())
+      .collect(Collectors.joining(" " + LogicalOperator.OR + " "));
+  }
+}
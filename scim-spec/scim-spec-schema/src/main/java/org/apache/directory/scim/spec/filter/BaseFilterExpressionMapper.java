@@ -60,6 +60,14 @@ public abstract class BaseFilterExpressionMapper<R> implements BiFunction<Filter
     else if (expression instanceof ValuePathExpression) {
       return apply((ValuePathExpression) expression, attributeContainer);
     }
+    // attribute EQ "a" OR attribute EQ "b" OR ..., see FilterExpressionOptimizer
+    else if (expression instanceof AttributeInExpression) {
+      return apply((AttributeInExpression) expression, attributeContainer);
+    }
+    // attribute EQ "a" AND otherAttribute EQ "b" AND ..., see FilterExpressionOptimizer
+    else if (expression instanceof NaryLogicalExpression) {
+      return apply((NaryLogicalExpression) expression, attributeContainer);
+    }
     return unhandledExpression(expression, attributeContainer);
   }
 
@@ -75,6 +83,31 @@ public abstract class BaseFilterExpressionMapper<R> implements BiFunction<Filter
 
   protected abstract R apply(LogicalOperator op, R left, R right);
 
+  /**
+   * Combines the operands pairwise with {@link #apply(LogicalOperator, Object, Object)}, override to map all operands at once.
+   */
+  protected R apply(NaryLogicalExpression expression, AttributeContainer attributeContainer) {
+    R result = null;
+    for (FilterExpression operand : expression.getOperands()) {
+      R mapped = apply(operand, attributeContainer);
+      result = result == null ? mapped : apply(expression.getOperator(), result, mapped);
+    }
+    return result;
+  }
+
+  /**
+   * Maps each value as an {@code eq} comparison and combines them with {@code or}, override to map a set membership
+   * test directly (e.g. SQL's {@code IN}).
+   */
+  protected R apply(AttributeInExpression expression, AttributeContainer attributeContainer) {
+    R result = null;
+    for (Object compareValue : expression.getCompareValues()) {
+      R mapped = apply(new AttributeComparisonExpression(expression.getAttributePath(), CompareOperator.EQ, compareValue), attributeContainer);
+      result = result == null ? mapped : apply(LogicalOperator.OR, result, mapped);
+    }
+    return result;
+  }
+
   protected R apply(GroupExpression expression, AttributeContainer attributeContainer) {
     R result = apply(expression.getFilterExpression(), attributeContainer);
     return expression.isNot()
@@ -23,13 +23,11 @@ import lombok.AccessLevel;
 import lombok.Data;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
-import org.antlr.v4.runtime.*;
-import org.antlr.v4.runtime.tree.ParseTree;
-import org.antlr.v4.runtime.tree.ParseTreeWalker;
 
 import java.io.Serializable;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
+import java.util.Objects;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
@@ -43,6 +41,26 @@ public class Filter implements Serializable {
 
   private static final long serialVersionUID = -363511683199922297L;
 
+  /**
+   * System property used to configure the maximum size of the shared {@link FilterExpressionCache}, a value of
+   * {@code 0} disables caching.
+   */
+  public static final String EXPRESSION_CACHE_SIZE_PROPERTY = "scim.filter.cache.size";
+
+  private static volatile FilterExpressionCache expressionCache = new FilterExpressionCache(
+    Integer.getInteger(EXPRESSION_CACHE_SIZE_PROPERTY, FilterExpressionCache.DEFAULT_MAXIMUM_SIZE));
+
+  /**
+   * System property used to select the {@link FilterExpressionParser}: {@code antlr} (the default),
+   * {@code recursive-descent}, or the fully qualified name of a FilterExpressionParser implementation.
+   */
+  public static final String EXPRESSION_PARSER_PROPERTY = "scim.filter.parser";
+
+  private static volatile FilterExpressionParser expressionParser = createExpressionParser(
+    System.getProperty(EXPRESSION_PARSER_PROPERTY));
+
+  private static volatile FilterLimits limits = FilterLimits.UNLIMITED;
+
   @Setter(AccessLevel.NONE)
   private FilterExpression expression;
   private String filter;
@@ -71,28 +89,70 @@ public class Filter implements Serializable {
   }
 
   protected FilterExpression parseFilter(String filter) throws FilterParseException {
-    FilterLexer l = new FilterLexer(CharStreams.fromString(filter));
-    FilterParser p = new FilterParser(new CommonTokenStream(l));
-    p.setBuildParseTree(true);
+    limits.check(filter);
+    return expressionCache.get(filter, expressionParser);
+  }
 
-    p.addErrorListener(new BaseErrorListener() {
-      @Override
-      public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine, String msg, RecognitionException e) {
-        throw new IllegalStateException("failed to parse at line " + line + ":" + charPositionInLine + " due to " + msg, e);
-      }
-    });
+  /**
+   * Returns the parser shared by all Filter instances.
+   */
+  public static FilterExpressionParser getExpressionParser() {
+    return expressionParser;
+  }
 
+  /**
+   * Replaces the parser shared by all Filter instances.
+   */
+  public static void setExpressionParser(FilterExpressionParser expressionParser) {
+    Filter.expressionParser = Objects.requireNonNull(expressionParser, "expressionParser must not be null");
+  }
+
+  static FilterExpressionParser createExpressionParser(String name) {
+    if (name == null || name.isEmpty() || "antlr".equalsIgnoreCase(name)) {
+      return new AntlrFilterExpressionParser();
+    }
+    if ("recursive-descent".equalsIgnoreCase(name)) {
+      return new RecursiveDescentFilterExpressionParser();
+    }
     try {
-      ParseTree tree = p.filter();
-      ExpressionBuildingListener expListener = new ExpressionBuildingListener();
-      ParseTreeWalker.DEFAULT.walk(expListener, tree);
-      
-      return expListener.getFilterExpression();
-    } catch (IllegalStateException e) {
-      throw new FilterParseException("Failed to parse filter: " + filter, e);
+      return Class.forName(name, true, Filter.class.getClassLoader())
+        .asSubclass(FilterExpressionParser.class)
+        .getDeclaredConstructor()
+        .newInstance();
+    } catch (ReflectiveOperationException | ClassCastException e) {
+      log.warn("Unable to create filter expression parser '{}', falling back to the ANTLR parser", name, e);
+      return new AntlrFilterExpressionParser();
     }
   }
-  
+
+  /**
+   * Returns the cache shared by all Filter instances.
+   */
+  public static FilterExpressionCache getExpressionCache() {
+    return expressionCache;
+  }
+
+  /**
+   * Replaces the cache shared by all Filter instances, for example to change its size at runtime.
+   */
+  public static void setExpressionCache(FilterExpressionCache expressionCache) {
+    Filter.expressionCache = Objects.requireNonNull(expressionCache, "expressionCache must not be null");
+  }
+
+  /**
+   * Returns the limits enforced by all Filter instances when parsing a filter.
+   */
+  public static FilterLimits getLimits() {
+    return limits;
+  }
+
+  /**
+   * Replaces the limits enforced by all Filter instances when parsing a filter, by default filters are not limited.
+   */
+  public static void setLimits(FilterLimits limits) {
+    Filter.limits = Objects.requireNonNull(limits, "limits must not be null");
+  }
+
   @Override
   public String toString() {
     return expression.toFilter();
@@ -0,0 +1,270 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.spec.filter;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * A bounded, thread-safe, least recently used cache of parsed {@link FilterExpression} trees.
+ * <p>
+ * Entries are keyed by the <em>shape</em> of a filter: the raw filter text with every compare value (strings,
+ * numbers, {@code true}, {@code false} and {@code null}) replaced by a placeholder. Filters that only differ in their
+ * compare values, for example {@code userName eq "bjensen"} and {@code userName eq "jsmith"}, share one parsed
+ * template, a cache hit copies the template and swaps in the new compare values.
+ * <p>
+ * FilterExpressions are mutable, so templates are never returned directly; every call returns a new tree.
+ */
+@Slf4j
+public final class FilterExpressionCache {
+
+  public static final int DEFAULT_MAXIMUM_SIZE = 1000;
+
+  private static final char PLACEHOLDER = '?';
+
+  private static final String TOKEN_DELIMITERS = " ()[]\"";
+
+  private static final Pattern NUMBER = Pattern.compile("-?(0|[1-9][0-9]*)(\\.[0-9]+)?([eE][+-]?[0-9]+)?");
+
+  private final int maximumSize;
+
+  private final Map<String, FilterExpression> templates;
+
+  private final AtomicLong hitCount = new AtomicLong();
+
+  private final AtomicLong missCount = new AtomicLong();
+
+  private final AtomicLong evictionCount = new AtomicLong();
+
+  /**
+   * @param maximumSize the maximum number of filter shapes to keep, {@code 0} disables caching.
+   */
+  public FilterExpressionCache(int maximumSize) {
+    if (maximumSize < 0) {
+      throw new IllegalArgumentException("maximumSize must not be negative: " + maximumSize);
+    }
+    this.maximumSize = maximumSize;
+    this.templates = new LinkedHashMap<>(16, 0.75f, true) {
+      private static final long serialVersionUID = 4406256425138393347L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, FilterExpression> eldest) {
+        if (size() > FilterExpressionCache.this.maximumSize) {
+          evictionCount.incrementAndGet();
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  public int getMaximumSize() {
+    return maximumSize;
+  }
+
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  public long getEvictionCount() {
+    return evictionCount.get();
+  }
+
+  public int size() {
+    synchronized (templates) {
+      return templates.size();
+    }
+  }
+
+  public void clear() {
+    synchronized (templates) {
+      templates.clear();
+    }
+  }
+
+  /**
+   * Returns a new expression tree for {@code filter}, copied from a cached template with the same shape, or parsed with
+   * {@code parser} on a miss. Besides filters, this also caches other expressions written in the filter grammar, such
+   * as PATCH paths.
+   */
+  public FilterExpression get(String filter, FilterExpressionParser parser) throws FilterParseException {
+    if (maximumSize == 0 || filter == null) {
+      return parser.parse(filter);
+    }
+
+    List<String> literals = new ArrayList<>();
+    String shape = shapeOf(filter, literals);
+    if (shape == null) {
+      // not a shape we can safely template, let the parser deal with it
+      return parser.parse(filter);
+    }
+
+    FilterExpression template;
+    synchronized (templates) {
+      template = templates.get(shape);
+    }
+
+    if (template != null) {
+      hitCount.incrementAndGet();
+      try {
+        return copy(template, literals.iterator());
+      } catch (IllegalStateException e) {
+        throw new FilterParseException("Failed to parse filter: " + filter, e);
+      }
+    }
+
+    missCount.incrementAndGet();
+    FilterExpression expression = parser.parse(filter);
+
+    // only cache trees where each compare value maps to exactly one literal in the filter text
+    if (countComparisons(expression) == literals.size()) {
+      FilterExpression newTemplate = copy(expression, null);
+      if (newTemplate != null) {
+        synchronized (templates) {
+          templates.put(shape, newTemplate);
+        }
+      }
+    }
+    return expression;
+  }
+
+  /**
+   * Replaces each compare value in {@code filter} with a placeholder, and collects the raw literals in the order
+   * they appear.
+   *
+   * @return the shape of the filter, or null if the filter contains a malformed literal.
+   */
+  static String shapeOf(String filter, List<String> literals) {
+    StringBuilder shape = new StringBuilder(filter.length());
+    int length = filter.length();
+    int index = 0;
+
+    while (index < length) {
+      char c = filter.charAt(index);
+      if (c == '"') {
+        int end = RecursiveDescentFilterExpressionParser.endOfString(filter, index);
+        if (end < 0) {
+          return null;
+        }
+        literals.add(filter.substring(index, end));
+        shape.append(PLACEHOLDER);
+        index = end;
+      } else if (index > 0 && filter.charAt(index - 1) == ' ' && TOKEN_DELIMITERS.indexOf(c) < 0) {
+        // compare values are always preceded by a space
+        int end = endOfToken(filter, index);
+        String token = filter.substring(index, end);
+        if ("true".equals(token) || "false".equals(token) || "null".equals(token) || NUMBER.matcher(token).matches()) {
+          literals.add(token);
+          shape.append(PLACEHOLDER);
+        } else if (c == '-' || Character.isDigit(c)) {
+          // looks like a number, but isn't one
+          return null;
+        } else {
+          shape.append(token);
+        }
+        index = end;
+      } else {
+        shape.append(c);
+        index++;
+      }
+    }
+    return shape.toString();
+  }
+
+  private static int endOfToken(String filter, int start) {
+    int length = filter.length();
+    int index = start;
+    while (index < length && TOKEN_DELIMITERS.indexOf(filter.charAt(index)) < 0) {
+      index++;
+    }
+    return index;
+  }
+
+  private static int countComparisons(FilterExpression expression) {
+    if (expression instanceof AttributeComparisonExpression) {
+      return 1;
+    } else if (expression instanceof AttributePresentExpression) {
+      return 0;
+    } else if (expression instanceof LogicalExpression) {
+      LogicalExpression logicalExpression = (LogicalExpression) expression;
+      int left = countComparisons(logicalExpression.getLeft());
+      int right = countComparisons(logicalExpression.getRight());
+      return left < 0 || right < 0 ? -1 : left + right;
+    } else if (expression instanceof GroupExpression) {
+      return countComparisons(((GroupExpression) expression).getFilterExpression());
+    } else if (expression instanceof ValuePathExpression) {
+      FilterExpression attributeExpression = ((ValuePathExpression) expression).getAttributeExpression();
+      return attributeExpression != null ? countComparisons(attributeExpression) : 0;
+    }
+    // unknown expression type, can't be copied
+    return -1;
+  }
+
+  /**
+   * Deep copies an expression tree, if {@code literals} is not null, the compare values are replaced with the parsed
+   * literals in the order they are visited.
+   */
+  private static FilterExpression copy(FilterExpression expression, Iterator<String> literals) {
+    if (expression instanceof AttributeComparisonExpression) {
+      AttributeComparisonExpression comparisonExpression = (AttributeComparisonExpression) expression;
+      Object compareValue = literals != null
+        ? ExpressionBuildingListener.parseJsonType(literals.next())
+        : comparisonExpression.getCompareValue();
+      return new AttributeComparisonExpression(copy(comparisonExpression.getAttributePath()), comparisonExpression.getOperation(), compareValue);
+    } else if (expression instanceof AttributePresentExpression) {
+      return new AttributePresentExpression(copy(((AttributePresentExpression) expression).getAttributePath()));
+    } else if (expression instanceof LogicalExpression) {
+      LogicalExpression logicalExpression = (LogicalExpression) expression;
+      FilterExpression left = copy(logicalExpression.getLeft(), literals);
+      FilterExpression right = copy(logicalExpression.getRight(), literals);
+      return left != null && right != null ? new LogicalExpression(left, logicalExpression.getOperator(), right) : null;
+    } else if (expression instanceof GroupExpression) {
+      GroupExpression groupExpression = (GroupExpression) expression;
+      FilterExpression filterExpression = copy(groupExpression.getFilterExpression(), literals);
+      return filterExpression != null ? new GroupExpression(groupExpression.isNot(), filterExpression) : null;
+    } else if (expression instanceof ValuePathExpression) {
+      ValuePathExpression valuePathExpression = (ValuePathExpression) expression;
+      AttributeReference attributePath = copy(valuePathExpression.getAttributePath());
+      if (valuePathExpression.getAttributeExpression() == null) {
+        return new ValuePathExpression(attributePath);
+      }
+      FilterExpression attributeExpression = copy(valuePathExpression.getAttributeExpression(), literals);
+      return attributeExpression != null ? new ValuePathExpression(attributePath, attributeExpression) : null;
+    }
+    log.debug("Unable to copy filter expression of type: {}", expression != null ? expression.getClass() : null);
+    return null;
+  }
+
+  private static AttributeReference copy(AttributeReference attributeReference) {
+    return new AttributeReference(attributeReference.getUrn(), attributeReference.getAttributeName(), attributeReference.getSubAttributeName());
+  }
+}
@@ -0,0 +1,259 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.spec.filter;
+
+import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
+import org.apache.directory.scim.spec.schema.AttributeContainer;
+import org.apache.directory.scim.spec.schema.Schema;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rewrites a {@link FilterExpression} into an equivalent expression that is cheaper to evaluate:
+ * <ul>
+ *   <li>nested {@code and} / {@code or} expressions and plain groups are flattened into {@link NaryLogicalExpression}s,
+ *   duplicate operands are removed</li>
+ *   <li>{@code not} is pushed down to the leaves using De Morgan's laws, double negations are removed</li>
+ *   <li>{@code eq} comparisons of the same attribute joined with {@code or} are merged into an
+ *   {@link AttributeInExpression}</li>
+ *   <li>operands are ordered by their estimated {@link #cost(FilterExpression, AttributeContainer) cost}, so cheap
+ *   equality checks run before substring matches</li>
+ * </ul>
+ * The expression passed in is never modified. Mappers that extend {@link BaseFilterExpressionMapper} handle the
+ * rewritten node types by default, and may override the handlers to take advantage of them.
+ * <p>
+ * Subclasses can override {@link #cost(FilterExpression, AttributeContainer)} to reflect the indexes of their backing
+ * store.
+ */
+public class FilterExpressionOptimizer {
+
+  public static final FilterExpressionOptimizer DEFAULT = new FilterExpressionOptimizer();
+
+  /**
+   * Returns an optimized copy of {@code expression}.
+   *
+   * @param expression the FilterExpression to optimize.
+   * @param attributeContainer the Schema the expression refers to, used to estimate the cost of comparisons, may be null.
+   * @return an equivalent FilterExpression.
+   */
+  public FilterExpression optimize(FilterExpression expression, AttributeContainer attributeContainer) {
+    if (expression == null) {
+      return null;
+    }
+    return rewrite(expression, false, attributeContainer);
+  }
+
+  /**
+   * Estimates the relative cost of testing {@code expression} against a single resource, lower is cheaper.
+   */
+  protected int cost(FilterExpression expression, AttributeContainer attributeContainer) {
+    if (expression instanceof AttributeComparisonExpression) {
+      AttributeComparisonExpression comparisonExpression = (AttributeComparisonExpression) expression;
+      switch (comparisonExpression.getOperation()) {
+        case EQ:
+          return isUnique(attributeContainer, comparisonExpression.getAttributePath()) ? 1 : 2;
+        case GT:
+        case GE:
+        case LT:
+        case LE:
+          return 4;
+        case NE:
+          return 5;
+        case SW:
+          return 6;
+        default:
+          // co, ew, and anything else requires a scan of the value
+          return 8;
+      }
+    } else if (expression instanceof AttributeInExpression) {
+      return 2;
+    } else if (expression instanceof AttributePresentExpression) {
+      return 3;
+    } else if (expression instanceof GroupExpression) {
+      return cost(((GroupExpression) expression).getFilterExpression(), attributeContainer);
+    } else if (expression instanceof NaryLogicalExpression) {
+      int cost = 0;
+      for (FilterExpression operand : ((NaryLogicalExpression) expression).getOperands()) {
+        cost += cost(operand, attributeContainer);
+      }
+      return cost;
+    } else if (expression instanceof LogicalExpression) {
+      LogicalExpression logicalExpression = (LogicalExpression) expression;
+      return cost(logicalExpression.getLeft(), attributeContainer) + cost(logicalExpression.getRight(), attributeContainer);
+    } else if (expression instanceof ValuePathExpression) {
+      ValuePathExpression valuePathExpression = (ValuePathExpression) expression;
+      FilterExpression attributeExpression = valuePathExpression.getAttributeExpression();
+      return 10 + (attributeExpression != null
+        ? cost(attributeExpression, subAttributeContainer(attributeContainer, valuePathExpression.getAttributePath()))
+        : 0);
+    }
+    return 10;
+  }
+
+  private FilterExpression rewrite(FilterExpression expression, boolean negated, AttributeContainer attributeContainer) {
+    if (expression instanceof GroupExpression) {
+      GroupExpression groupExpression = (GroupExpression) expression;
+      return rewrite(groupExpression.getFilterExpression(), negated ^ groupExpression.isNot(), attributeContainer);
+    } else if (expression instanceof LogicalExpression) {
+      LogicalExpression logicalExpression = (LogicalExpression) expression;
+      List<FilterExpression> operands = new ArrayList<>(2);
+      operands.add(logicalExpression.getLeft());
+      operands.add(logicalExpression.getRight());
+      return rewrite(logicalExpression.getOperator(), operands, negated, attributeContainer);
+    } else if (expression instanceof NaryLogicalExpression) {
+      NaryLogicalExpression naryExpression = (NaryLogicalExpression) expression;
+      return rewrite(naryExpression.getOperator(), naryExpression.getOperands(), negated, attributeContainer);
+    } else if (expression instanceof ValuePathExpression) {
+      ValuePathExpression valuePathExpression = (ValuePathExpression) expression;
+      FilterExpression attributeExpression = valuePathExpression.getAttributeExpression();
+      if (attributeExpression != null) {
+        AttributeContainer subAttributeContainer = subAttributeContainer(attributeContainer, valuePathExpression.getAttributePath());
+        expression = new ValuePathExpression(valuePathExpression.getAttributePath(), rewrite(attributeExpression, false, subAttributeContainer));
+      }
+    }
+    return negated ? new GroupExpression(true, expression) : expression;
+  }
+
+  private FilterExpression rewrite(LogicalOperator operator, List<FilterExpression> operands, boolean negated, AttributeContainer attributeContainer) {
+    // De Morgan: not (a and b) == not a or not b
+    LogicalOperator rewrittenOperator = negated ? flip(operator) : operator;
+
+    Set<FilterExpression> rewrittenOperands = new LinkedHashSet<>();
+    for (FilterExpression operand : operands) {
+      FilterExpression rewrittenOperand = rewrite(operand, negated, attributeContainer);
+      if (rewrittenOperand instanceof NaryLogicalExpression && ((NaryLogicalExpression) rewrittenOperand).getOperator() == rewrittenOperator) {
+        rewrittenOperands.addAll(((NaryLogicalExpression) rewrittenOperand).getOperands());
+      } else {
+        rewrittenOperands.add(rewrittenOperand);
+      }
+    }
+
+    List<FilterExpression> result = rewrittenOperator == LogicalOperator.OR
+      ? mergeEqualities(rewrittenOperands)
+      : new ArrayList<>(rewrittenOperands);
+
+    if (result.size() == 1) {
+      return result.get(0);
+    }
+    // stable sort, operands with the same cost keep their original order
+    result.sort(Comparator.comparingInt(operand -> cost(operand, attributeContainer)));
+    return new NaryLogicalExpression(rewrittenOperator, Collections.unmodifiableList(result));
+  }
+
+  /**
+   * Replaces the {@code eq} comparisons of each attribute in a list of {@code or} operands with a single
+   * {@link AttributeInExpression}, placed where the first of the comparisons was.
+   */
+  private static List<FilterExpression> mergeEqualities(Set<FilterExpression> operands) {
+    Map<String, List<FilterExpression>> equalities = new LinkedHashMap<>();
+    for (FilterExpression operand : operands) {
+      AttributeReference attributePath = equalityPath(operand);
+      if (attributePath != null) {
+        equalities.computeIfAbsent(key(attributePath), key -> new ArrayList<>()).add(operand);
+      }
+    }
+
+    List<FilterExpression> result = new ArrayList<>(operands.size());
+    for (FilterExpression operand : operands) {
+      AttributeReference attributePath = equalityPath(operand);
+      if (attributePath == null) {
+        result.add(operand);
+        continue;
+      }
+      List<FilterExpression> sameAttribute = equalities.remove(key(attributePath));
+      if (sameAttribute == null) {
+        // already merged
+        continue;
+      }
+      if (sameAttribute.size() == 1) {
+        result.add(operand);
+        continue;
+      }
+      Set<Object> compareValues = new LinkedHashSet<>();
+      for (FilterExpression equality : sameAttribute) {
+        if (equality instanceof AttributeInExpression) {
+          compareValues.addAll(((AttributeInExpression) equality).getCompareValues());
+        } else {
+          compareValues.add(((AttributeComparisonExpression) equality).getCompareValue());
+        }
+      }
+      // the reference of the new expression may be changed with setAttributePath(), it must not be the operand's
+      AttributeReference copy = new AttributeReference(attributePath.getUrn(), attributePath.getAttributeName(), attributePath.getSubAttributeName());
+      result.add(new AttributeInExpression(copy, Collections.unmodifiableSet(compareValues)));
+    }
+    return result;
+  }
+
+  private static AttributeReference equalityPath(FilterExpression expression) {
+    if (expression instanceof AttributeInExpression) {
+      return ((AttributeInExpression) expression).getAttributePath();
+    }
+    if (expression instanceof AttributeComparisonExpression) {
+      AttributeComparisonExpression comparisonExpression = (AttributeComparisonExpression) expression;
+      // `eq null` never matches, leave it for the mapper to deal with
+      if (comparisonExpression.getOperation() == CompareOperator.EQ && comparisonExpression.getCompareValue() != null) {
+        return comparisonExpression.getAttributePath();
+      }
+    }
+    return null;
+  }
+
+  private static String key(AttributeReference attributePath) {
+    // attribute names are case-insensitive
+    return attributePath.getFullyQualifiedAttributeName().toLowerCase(Locale.ROOT);
+  }
+
+  private static LogicalOperator flip(LogicalOperator operator) {
+    return operator == LogicalOperator.AND ? LogicalOperator.OR : LogicalOperator.AND;
+  }
+
+  private static boolean isUnique(AttributeContainer attributeContainer, AttributeReference attributePath) {
+    Schema.Attribute attribute = attribute(attributeContainer, attributePath);
+    return attribute != null && attribute.getUniqueness() != null && attribute.getUniqueness() != Schema.Attribute.Uniqueness.NONE;
+  }
+
+  private static AttributeContainer subAttributeContainer(AttributeContainer attributeContainer, AttributeReference attributePath) {
+    Schema.Attribute attribute = attribute(attributeContainer, attributePath);
+    return attribute != null ? attribute : attributeContainer;
+  }
+
+  private static Schema.Attribute attribute(AttributeContainer attributeContainer, AttributeReference attributePath) {
+    if (attributeContainer == null) {
+      return null;
+    }
+    Schema.Attribute attribute = attributeContainer.getAttribute(attributePath.getAttributeName());
+    if (attribute == null) {
+      // references in a value path are qualified with the parent attribute, e.g. `emails.type`
+      return attributePath.hasSubAttribute() ? attributeContainer.getAttribute(attributePath.getSubAttributeName()) : null;
+    }
+    if (attributePath.hasSubAttribute()) {
+      return attribute.getAttribute(attributePath.getSubAttributeName());
+    }
+    return attribute;
+  }
+}
@@ -0,0 +1,39 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.spec.filter;
+
+/**
+ * Parses the string representation of a SCIM filter into a {@link FilterExpression} tree.
+ * <p>
+ * The implementation used by {@link Filter} is selected with the {@value Filter#EXPRESSION_PARSER_PROPERTY} system
+ * property, either {@code antlr} (the default), {@code recursive-descent}, or the fully qualified name of a class
+ * implementing this interface with a public no-arg constructor.
+ */
+@FunctionalInterface
+public interface FilterExpressionParser {
+
+  /**
+   * @param filter the filter to parse
+   * @return a newly created expression tree, implementations must not return shared instances as expressions are
+   * mutable.
+   * @throws FilterParseException if the filter is not valid.
+   */
+  FilterExpression parse(String filter) throws FilterParseException;
+}
@@ -23,6 +23,7 @@ import org.apache.directory.scim.spec.resources.ScimResource;
 import org.apache.directory.scim.spec.schema.Schema;
 
 import java.util.Map;
+import java.util.function.Function;
 import java.util.function.Predicate;
 
 
@@ -53,14 +54,59 @@ public final class FilterExpressions {
   }
 
   public static <R> Predicate<R> inMemoryMap(FilterExpression expression, Schema schema) {
-    return new InMemoryMapScimFilterMatcher<R>().apply(expression, schema);
+    return new InMemoryMapScimFilterMatcher<R>().compile(expression, schema);
+  }
+
+  /**
+   * Converts a FilterExpression into a Predicate that tests the elements of a multi-valued attribute, for example the
+   * {@code Email} objects selected by {@code emails[type eq "work"]}.
+   */
+  public static <R> Predicate<R> inMemoryElement(FilterExpression expression, Schema schema) {
+    return new InMemoryElementScimFilterMatcher<R>().compile(expression, schema);
+  }
+
+  /**
+   * Folds the case of a value of a case-insensitive attribute, two values fold to the same string exactly when the
+   * in-memory filter predicates consider them equal with {@code eq}. Indexes and stores of case-insensitive values
+   * key them by this fold so they agree with the predicates, {@link String#toLowerCase} doesn't (e.g. for 'ı').
+   *
+   * @return the folded value, {@code value} itself if it is already folded.
+   */
+  public static String foldCase(String value) {
+    return InMemoryScimFilterMatcher.foldCase(value);
+  }
+
+  /**
+   * Rewrites a FilterExpression into an equivalent one that is cheaper to evaluate, see {@link FilterExpressionOptimizer}.
+   * Custom {@link BaseFilterExpressionMapper}s can call this before mapping an expression.
+   */
+  public static FilterExpression optimize(FilterExpression expression, Schema schema) {
+    return FilterExpressionOptimizer.DEFAULT.optimize(expression, schema);
+  }
+
+  static class InMemoryElementScimFilterMatcher<R> extends InMemoryScimFilterMatcher<R> {
+    @Override
+    protected boolean isElementMatcher() {
+      return true;
+    }
   }
 
   static class InMemoryMapScimFilterMatcher<R> extends InMemoryScimFilterMatcher<R> {
     @Override
-    public <A> A get(Schema.Attribute attribute, A actual) {
-      Map<String, Object> map = (Map<String, Object>) actual;
-      return (A) map.get(attribute.getName());
+    protected Function<Object, Object> accessor(Schema.Attribute attribute) {
+      String name = attribute.getName();
+      return actual -> ((Map<String, Object>) actual).get(name);
+    }
+
+    @Override
+    protected boolean isElementMatcher() {
+      return true;
+    }
+
+    @Override
+    protected Object coerce(Schema.Attribute attribute, Object compareValue) {
+      // map values are plain JSON types, the same as compare values
+      return compareValue;
     }
   }
 }
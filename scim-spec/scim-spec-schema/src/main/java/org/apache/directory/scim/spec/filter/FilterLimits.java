@@ -0,0 +1,245 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.spec.filter;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits on the complexity of filters accepted by {@link Filter}, checked against the raw filter text before it is
+ * parsed, so oversized filters are rejected without paying for a full parse.
+ * <p>
+ * A limit of {@code 0} or less disables that limit. The number of rejected filters is counted per limit.
+ */
+public final class FilterLimits {
+
+  public static final FilterLimits UNLIMITED = new FilterLimits(0, 0, 0, 0);
+
+  public enum Limit {
+    /**
+     * The number of characters in the filter.
+     */
+    LENGTH,
+
+    /**
+     * The nesting of groups and value paths, {@code userName pr} has a depth of 0, {@code not (userName pr)} a depth of 1.
+     */
+    DEPTH,
+
+    /**
+     * The number of nodes in the parsed expression: comparisons, logical operators, groups and value paths.
+     */
+    NODES,
+
+    /**
+     * The nesting of value paths, {@code emails[type eq "work"]} has a value path depth of 1.
+     */
+    VALUE_PATH_DEPTH
+  }
+
+  private final int maxLength;
+
+  private final int maxDepth;
+
+  private final int maxNodes;
+
+  private final int maxValuePathDepth;
+
+  private final Map<Limit, AtomicLong> rejectedCounts = new EnumMap<>(Limit.class);
+
+  public FilterLimits(int maxLength, int maxDepth, int maxNodes, int maxValuePathDepth) {
+    this.maxLength = maxLength;
+    this.maxDepth = maxDepth;
+    this.maxNodes = maxNodes;
+    this.maxValuePathDepth = maxValuePathDepth;
+    for (Limit limit : Limit.values()) {
+      rejectedCounts.put(limit, new AtomicLong());
+    }
+  }
+
+  public int getMaxLength() {
+    return maxLength;
+  }
+
+  public int getMaxDepth() {
+    return maxDepth;
+  }
+
+  public int getMaxNodes() {
+    return maxNodes;
+  }
+
+  public int getMaxValuePathDepth() {
+    return maxValuePathDepth;
+  }
+
+  /**
+   * Returns the number of filters rejected because they exceeded {@code limit}.
+   */
+  public long getRejectedCount(Limit limit) {
+    return rejectedCounts.get(limit).get();
+  }
+
+  /**
+   * Returns the number of filters rejected because they exceeded any limit.
+   */
+  public long getRejectedCount() {
+    long count = 0;
+    for (AtomicLong rejectedCount : rejectedCounts.values()) {
+      count += rejectedCount.get();
+    }
+    return count;
+  }
+
+  public boolean isUnlimited() {
+    return maxLength <= 0 && maxDepth <= 0 && maxNodes <= 0 && maxValuePathDepth <= 0;
+  }
+
+  /**
+   * Checks the filter text against these limits.
+   *
+   * @throws FilterLimitExceededException if the filter exceeds a limit.
+   */
+  void check(String filter) throws FilterLimitExceededException {
+    if (filter == null || isUnlimited()) {
+      return;
+    }
+    if (maxLength > 0 && filter.length() > maxLength) {
+      throw rejected(Limit.LENGTH, filter.length(), maxLength);
+    }
+
+    Scan scan = new Scan(filter);
+    if (maxDepth > 0 && scan.maxDepth > maxDepth) {
+      throw rejected(Limit.DEPTH, scan.maxDepth, maxDepth);
+    }
+    if (maxValuePathDepth > 0 && scan.maxValuePathDepth > maxValuePathDepth) {
+      throw rejected(Limit.VALUE_PATH_DEPTH, scan.maxValuePathDepth, maxValuePathDepth);
+    }
+    int nodes = scan.nodes();
+    if (maxNodes > 0 && nodes > maxNodes) {
+      throw rejected(Limit.NODES, nodes, maxNodes);
+    }
+  }
+
+  private FilterLimitExceededException rejected(Limit limit, int actual, int maximum) {
+    rejectedCounts.get(limit).incrementAndGet();
+    return new FilterLimitExceededException(limit, "Filter exceeds the maximum " + limit.name().toLowerCase(Locale.ROOT).replace('_', ' ') + " of " + maximum + ": " + actual);
+  }
+
+  /**
+   * A single pass over the filter text that tracks nesting and counts the operands and logical operators, following
+   * the filter grammar just far enough to tell the logical operators {@code and} / {@code or} apart from attribute
+   * names and compare values. Malformed filters are left for the parser to reject.
+   */
+  private static final class Scan {
+
+    private static final int ATTRIBUTE = 0;
+    private static final int OPERATOR = 1;
+    private static final int VALUE = 2;
+    private static final int END = 3;
+
+    int maxDepth;
+    int maxValuePathDepth;
+    int logicalOperators;
+    int groups;
+    int valuePaths;
+
+    Scan(String filter) {
+      int length = filter.length();
+      int depth = 0;
+      int valuePathDepth = 0;
+      int state = ATTRIBUTE;
+      int index = 0;
+
+      while (index < length) {
+        char c = filter.charAt(index);
+        if (c == '(' || c == '[') {
+          depth++;
+          maxDepth = Math.max(maxDepth, depth);
+          if (c == '[') {
+            valuePaths++;
+            valuePathDepth++;
+            maxValuePathDepth = Math.max(maxValuePathDepth, valuePathDepth);
+          } else {
+            groups++;
+          }
+          state = ATTRIBUTE;
+          index++;
+        } else if (c == ')' || c == ']') {
+          depth--;
+          if (c == ']') {
+            valuePathDepth--;
+          }
+          state = END;
+          index++;
+        } else if (c == '"') {
+          int end = RecursiveDescentFilterExpressionParser.endOfString(filter, index);
+          if (end < 0) {
+            return;
+          }
+          state = END;
+          index = end;
+        } else if (c == ' ') {
+          index++;
+        } else {
+          int end = index;
+          while (end < length && " ()[]\"".indexOf(filter.charAt(end)) < 0) {
+            end++;
+          }
+          state = next(state, filter, index, end);
+          index = end;
+        }
+      }
+    }
+
+    private int next(int state, String filter, int start, int end) {
+      switch (state) {
+        case ATTRIBUTE:
+          // `not` is always followed by a group
+          return isWord(filter, start, end, "not") ? ATTRIBUTE : OPERATOR;
+        case OPERATOR:
+          return isWord(filter, start, end, "pr") ? END : VALUE;
+        case VALUE:
+          return END;
+        default:
+          if (isWord(filter, start, end, "and") || isWord(filter, start, end, "or")) {
+            logicalOperators++;
+            return ATTRIBUTE;
+          }
+          // the sub-attribute after a value path, e.g. `.value` in `emails[type eq "work"].value`
+          return END;
+      }
+    }
+
+    private static boolean isWord(String filter, int start, int end, String word) {
+      return end - start == word.length() && filter.regionMatches(true, start, word, 0, word.length());
+    }
+
+    /**
+     * Each logical operator joins two operands, so an expression with n operators has n + 1 comparisons, plus a node
+     * for each operator, group and value path.
+     */
+    int nodes() {
+      return 2 * logicalOperators + 1 + groups + valuePaths;
+    }
+  }
+}
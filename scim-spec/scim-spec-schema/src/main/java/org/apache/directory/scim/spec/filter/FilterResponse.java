@@ -33,6 +33,11 @@ public class FilterResponse<T> {
   private Collection<T> resources;
   private PageRequest pageRequest;
   private int totalResults;
+
+  /**
+   * The cursor of the next page of a cursor paged request, or null if this is the last page.
+   */
+  private String nextCursor;
   
   public FilterResponse() {}
   
@@ -42,4 +47,9 @@ public class FilterResponse<T> {
     this.totalResults = totalResults;
   }
 
+  public FilterResponse(Collection<T> resources, PageRequest pageRequest, int totalResults, String nextCursor) {
+    this(resources, pageRequest, totalResults);
+    this.nextCursor = nextCursor;
+  }
+
 }
@@ -19,17 +19,34 @@
 
 package org.apache.directory.scim.spec.filter;
 
-import org.apache.directory.scim.spec.exception.ScimResourceInvalidException;
 import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
 import org.apache.directory.scim.spec.schema.AttributeContainer;
 import org.apache.directory.scim.spec.schema.Schema;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
 import java.util.Collection;
-import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.function.Predicate;
 
+/**
+ * Compiles a FilterExpression into a Predicate that is evaluated against objects in memory.
+ * <p>
+ * All schema lookups happen while the predicate is built: each attribute reference is resolved once into a fixed chain
+ * of accessors, and each compare value is converted to the attribute's type and bound to a single comparison. Testing
+ * a resource only reads the attribute values and compares them. Expressions are first rewritten by the
+ * {@link FilterExpressionOptimizer}, so chains of {@code eq} comparisons become a single set lookup and cheap
+ * comparisons are tested first.
+ */
 class InMemoryScimFilterMatcher<R> extends BaseFilterExpressionMapper<Predicate<R>> {
 
   private static final Logger log = LoggerFactory.getLogger(InMemoryScimFilterMatcher.class);
@@ -48,12 +65,33 @@ class InMemoryScimFilterMatcher<R> extends BaseFilterExpressionMapper<Predicate<
    * @return A Predicate that can be used to later test a ScimResource (or child attribute).
    */
   static <R> Predicate<R> toPredicate(FilterExpression expression, AttributeContainer attributeContainer) {
-    return new InMemoryScimFilterMatcher<R>().apply(expression, attributeContainer);
+    return new InMemoryScimFilterMatcher<R>().compile(expression, attributeContainer);
+  }
+
+  /**
+   * Optimizes {@code expression} with the {@link FilterExpressionOptimizer} and builds a predicate from the result.
+   */
+  Predicate<R> compile(FilterExpression expression, AttributeContainer attributeContainer) {
+    return apply(FilterExpressionOptimizer.DEFAULT.optimize(expression, attributeContainer), attributeContainer);
   }
 
   @Override
   protected Predicate<R> apply(AttributeComparisonExpression expression, AttributeContainer attributeContainer) {
-    return new AttributeComparisonPredicate<>(expression, attributeContainer);
+    ResolvedAttribute resolvedAttribute = resolve(attributeContainer, expression.getAttributePath());
+    if (resolvedAttribute == null) {
+      return never();
+    }
+
+    Schema.Attribute attribute = resolvedAttribute.attribute;
+    if (attribute.isMultiValued()) {
+      log.warn("Invalid expression, target is collection");
+      return never();
+    }
+
+    Predicate<Object> valuePredicate = comparison(attribute, expression.getOperation(), expression.getCompareValue());
+    return valuePredicate != null
+      ? new AttributePredicate<>(resolvedAttribute, valuePredicate)
+      : never();
   }
 
   @Override
@@ -65,6 +103,49 @@ class InMemoryScimFilterMatcher<R> extends BaseFilterExpressionMapper<Predicate<
     }
   }
 
+  @Override
+  protected Predicate<R> apply(NaryLogicalExpression expression, AttributeContainer attributeContainer) {
+    List<FilterExpression> operands = expression.getOperands();
+    @SuppressWarnings("unchecked")
+    Predicate<R>[] predicates = new Predicate[operands.size()];
+    for (int i = 0; i < predicates.length; i++) {
+      predicates[i] = apply(operands.get(i), attributeContainer);
+    }
+    return expression.getOperator() == LogicalOperator.AND
+      ? new AllMatchPredicate<>(predicates)
+      : new AnyMatchPredicate<>(predicates);
+  }
+
+  @Override
+  protected Predicate<R> apply(AttributeInExpression expression, AttributeContainer attributeContainer) {
+    ResolvedAttribute resolvedAttribute = resolve(attributeContainer, expression.getAttributePath());
+    if (resolvedAttribute == null) {
+      return never();
+    }
+
+    Schema.Attribute attribute = resolvedAttribute.attribute;
+    if (attribute.isMultiValued()) {
+      log.warn("Invalid expression, target is collection");
+      return never();
+    }
+
+    boolean ignoreCase = attribute.getType() == Schema.Attribute.Type.STRING && !attribute.isCaseExact();
+    Set<Object> compareValues = new HashSet<>();
+    for (Object compareValue : expression.getCompareValues()) {
+      if (compareValue != null) {
+        compareValues.add(ignoreCase ? foldCase(compareValue.toString()) : coerce(attribute, compareValue));
+      }
+    }
+    if (compareValues.isEmpty()) {
+      return never();
+    }
+
+    Predicate<Object> valuePredicate = ignoreCase
+      ? actual -> compareValues.contains(foldCase(actual.toString()))
+      : compareValues::contains;
+    return new AttributePredicate<>(resolvedAttribute, valuePredicate);
+  }
+
   @Override
   protected Predicate<R> negate(Predicate<R> expression) {
     return expression.negate();
@@ -72,198 +153,357 @@ class InMemoryScimFilterMatcher<R> extends BaseFilterExpressionMapper<Predicate<
 
   @Override
   protected Predicate<R> apply(AttributePresentExpression expression, AttributeContainer attributeContainer) {
-    return new AttributePresentPredicate<>(expression, attributeContainer);
+    ResolvedAttribute resolvedAttribute = resolve(attributeContainer, expression.getAttributePath());
+    if (resolvedAttribute == null) {
+      return never();
+    }
+    if (resolvedAttribute.attribute.isMultiValued()) {
+      log.debug("Invalid expression, target is collection");
+      return never();
+    }
+    // null values are never passed to the value predicate
+    return new AttributePredicate<>(resolvedAttribute, value -> true);
   }
 
   @Override
   protected Predicate<R> apply(ValuePathExpression expression, AttributeContainer attributeContainer) {
-    Predicate<Object> nestedPredicate = new InMemoryScimFilterMatcher<>().apply(expression.getAttributeExpression(), attribute(attributeContainer, expression.getAttributePath()));
-    return new ValuePathPredicate<>(expression, attributeContainer, nestedPredicate);
+    AttributeReference attributePath = expression.getAttributePath();
+    Schema.Attribute attribute = attribute(attributeContainer, attributePath);
+    if (attribute == null || attributePath.hasSubAttribute() || !attribute.isMultiValued()) {
+      return never();
+    }
+
+    Function<Object, Object> accessor = accessor(attribute);
+    if (accessor == null) {
+      return never();
+    }
+
+    @SuppressWarnings("unchecked")
+    Predicate<Object> nestedPredicate = (Predicate<Object>) (Predicate<?>) apply(expression.getAttributeExpression(), attribute);
+    ResolvedAttribute resolvedAttribute = new ResolvedAttribute(attribute, null, accessor, false);
+    return new AttributePredicate<>(resolvedAttribute, values -> anyMatch((Collection<?>) values, nestedPredicate));
   }
 
   @Override
   protected Predicate<R> unhandledExpression(FilterExpression expression, AttributeContainer attributeContainer) {
     log.debug("Unsupported Filter expression of type: " + expression.getClass());
-    return scimResource -> false;
+    return never();
   }
 
-  public <A> A get(Schema.Attribute attribute, A actual) {
-    return attribute.getAccessor().get(actual);
+  /**
+   * Returns a function that reads the value of {@code attribute} from an object, or null if the attribute cannot be read.
+   */
+  protected Function<Object, Object> accessor(Schema.Attribute attribute) {
+    Schema.AttributeAccessor accessor = attribute.getAccessor();
+    if (accessor == null) {
+      log.debug("Attribute '{}' has no accessor", attribute.getName());
+      return null;
+    }
+    return accessor::get;
   }
 
-  private abstract class AbstractAttributePredicate<T extends FilterExpression, R> implements Predicate<R> {
+  /**
+   * Returns true if this matcher tests the elements of a multi-valued attribute rather than resources, a reference to
+   * a sub-attribute of a multi-valued attribute (e.g. {@code members.value}) is then read from the element itself.
+   */
+  protected boolean isElementMatcher() {
+    return false;
+  }
 
-    final T expression;
+  /**
+   * Converts a compare value to the Java type of {@code attribute}, so it can be compared directly to attribute values.
+   */
+  protected Object coerce(Schema.Attribute attribute, Object compareValue) {
+    Schema.AttributeAccessor accessor = attribute.getAccessor();
+    Class<?> type = accessor != null ? accessor.getType() : null;
+    if (type == null) {
+      return compareValue;
+    }
 
-    final AttributeContainer attributeContainer;
+    if (compareValue instanceof Number) {
+      Number number = (Number) compareValue;
+      if ((type == Long.class || type == long.class) && number instanceof Integer) {
+        return number.longValue();
+      } else if (type == Double.class || type == double.class) {
+        return number.doubleValue();
+      } else if (type == Float.class || type == float.class) {
+        return number.floatValue();
+      }
+    } else if (compareValue instanceof String && attribute.getType() == Schema.Attribute.Type.DATE_TIME) {
+      String text = (String) compareValue;
+      try {
+        if (type == LocalDateTime.class) {
+          return LocalDateTime.parse(text);
+        } else if (type == LocalDate.class) {
+          return LocalDate.parse(text);
+        } else if (type == LocalTime.class) {
+          return LocalTime.parse(text);
+        } else if (type == Instant.class) {
+          return Instant.parse(text);
+        } else if (type == Date.class) {
+          return Date.from(Instant.parse(text));
+        }
+      } catch (DateTimeParseException e) {
+        log.debug("Unable to convert '{}' to {}", text, type, e);
+      }
+    }
+    return compareValue;
+  }
 
-    final AttributeReference attributeReference;
+  /**
+   * Resolves the schema attribute and the accessors needed to read {@code attributeReference}, or returns null if the
+   * reference is not valid for this container.
+   */
+  private ResolvedAttribute resolve(AttributeContainer attributeContainer, AttributeReference attributeReference) {
+    Schema.Attribute parentAttribute = null;
+    Schema.Attribute attribute;
+
+    if (isQualifiedWithContainer(attributeContainer, attributeReference)) {
+      // references in a value path are qualified with the parent, e.g. `type` in `emails[type eq "work"]` is `emails.type`
+      attribute = attributeContainer.getAttribute(attributeReference.getSubAttributeName());
+      if (attribute == null || attribute.getReturned() == Schema.Attribute.Returned.NEVER) {
+        log.warn("Invalid filter: attribute '" + attributeReference.getFullyQualifiedAttributeName() + "' is NOT a valid SCIM attribute.");
+        return null;
+      }
+    } else {
+      attribute = attribute(attributeContainer, attributeReference);
+      if (attribute == null) {
+        return null;
+      }
+      if (attributeReference.hasSubAttribute()) {
+        parentAttribute = attributeContainer.getAttribute(attributeReference.getAttributeName());
+      }
+    }
 
-    private AbstractAttributePredicate(T expression, AttributeContainer attributeContainer, AttributeReference attributeReference) {
-      this.expression = expression;
-      this.attributeContainer = attributeContainer;
-      this.attributeReference = attributeReference;
+    Function<Object, Object> accessor = accessor(attribute);
+    if (accessor == null) {
+      return null;
+    }
+    if (parentAttribute == null || (parentAttribute.isMultiValued() && isElementMatcher())) {
+      return new ResolvedAttribute(attribute, null, accessor, false);
     }
 
-    protected abstract boolean test(Schema.Attribute attribute, Object actualValue);
+    Function<Object, Object> parentAccessor = accessor(parentAttribute);
+    if (parentAccessor == null) {
+      return null;
+    }
+    return new ResolvedAttribute(attribute, parentAccessor, accessor, parentAttribute.isMultiValued());
+  }
 
-    @Override
-    public boolean test(R actual) {
+  private static boolean isQualifiedWithContainer(AttributeContainer attributeContainer, AttributeReference attributeReference) {
+    return attributeContainer instanceof Schema.Attribute
+      && attributeReference.hasSubAttribute()
+      && attributeContainer.getAttribute(attributeReference.getAttributeName()) == null
+      && attributeReference.getAttributeName().equalsIgnoreCase(((Schema.Attribute) attributeContainer).getName());
+  }
 
-      try {
-        // get and validate attribute
-        Schema.Attribute resolvedAttribute = attribute(attributeContainer, attributeReference);
-        if (resolvedAttribute != null) {
+  /**
+   * Builds the test for a single non-null attribute value, or returns null if no value can match.
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private Predicate<Object> comparison(Schema.Attribute attribute, CompareOperator op, Object compareValue) {
+    if (compareValue == null) {
+      log.debug("Invalid query, empty value for expression : " + attribute.getType());
+      return null;
+    }
 
-          // now walk the attribute path again to get the accessor and value
-          Schema.Attribute schemaAttribute = attributeContainer.getAttribute(attributeReference.getAttributeName());
+    boolean stringExpression = isStringExpression(attribute, compareValue);
+    String compareString = compareValue.toString();
 
-          // check if the filter is nested such as: `emails[type eq "work"].value`
-          if (!(attributeReference.hasSubAttribute() && schemaAttribute.isMultiValued())) {
-            actual = get(schemaAttribute, actual);
-          }
-          // if the attribute has a sub-level, continue on
-          String subAttribute = attributeReference.getSubAttributeName();
-          if (subAttribute != null) {
-            schemaAttribute = schemaAttribute.getAttribute(subAttribute);
-            actual = get(schemaAttribute, actual);
-          }
-          return test(schemaAttribute, actual);
+    switch (op) {
+      case EQ:
+        if (stringExpression && !attribute.isCaseExact()) {
+          return actual -> actual.toString().equalsIgnoreCase(compareString);
         }
-      } catch (Exception e) {
-        // The SCIM spec states to ignore the query instead of rejecting it - rfc7644 - 3.4.2
-        log.debug("Invalid SCIM filter received", e);
-      }
-
-      return false;
+        Object equalValue = coerce(attribute, compareValue);
+        return equalValue::equals;
+      case NE:
+        if (stringExpression && !attribute.isCaseExact()) {
+          return actual -> !actual.toString().equalsIgnoreCase(compareString);
+        }
+        Object notEqualValue = coerce(attribute, compareValue);
+        return actual -> !notEqualValue.equals(actual);
+      case SW:
+        return stringExpression ? actual -> actual.toString().startsWith(compareString) : null;
+      case EW:
+        return stringExpression ? actual -> actual.toString().endsWith(compareString) : null;
+      case CO:
+        return stringExpression ? actual -> actual.toString().contains(compareString) : null;
+      case GT:
+      case GE:
+      case LT:
+      case LE:
+        Object orderedValue = coerce(attribute, compareValue);
+        if (!(orderedValue instanceof Comparable)) {
+          return null;
+        }
+        Comparable comparable = (Comparable) orderedValue;
+        return actual -> actual instanceof Comparable && matchesOrder(op, ((Comparable) actual).compareTo(comparable));
+      default:
+        log.debug("Unsupported operation in filter: " + op.name());
+        return null;
     }
   }
 
-  private class ValuePathPredicate<R> extends AbstractAttributePredicate<ValuePathExpression, R> {
-
-    final private Predicate<Object> nestedPredicate;
+  /**
+   * Folds {@code value} so that two strings fold to the same key exactly when {@link String#equalsIgnoreCase} considers
+   * them equal, the way this matcher compares the values of case-insensitive attributes with {@code eq}, {@code ne} and
+   * {@code in}, see {@link FilterExpressions#foldCase(String)}.
+   */
+  static String foldCase(String value) {
+    StringBuilder folded = null;
+    for (int index = 0; index < value.length(); ) {
+      int codePoint = value.codePointAt(index);
+      int foldedCodePoint = Character.toLowerCase(Character.toUpperCase(codePoint));
+      if (foldedCodePoint != codePoint && folded == null) {
+        folded = new StringBuilder(value.length()).append(value, 0, index);
+      }
+      if (folded != null) {
+        folded.appendCodePoint(foldedCodePoint);
+      }
+      index += Character.charCount(codePoint);
+    }
+    return folded != null ? folded.toString() : value;
+  }
 
-    ValuePathPredicate(ValuePathExpression expression, AttributeContainer attributeContainer, Predicate<Object> nestedPredicate) {
-      super(expression, attributeContainer, expression.getAttributePath());
-      this.nestedPredicate = nestedPredicate;
+  private static boolean matchesOrder(CompareOperator op, int compareResult) {
+    switch (op) {
+      case LT:
+        return compareResult < 0;
+      case GT:
+        return compareResult > 0;
+      case LE:
+        return compareResult <= 0;
+      case GE:
+        return compareResult >= 0;
+      default:
+        return false;
     }
+  }
 
-    @Override
-    protected boolean test(Schema.Attribute attribute, Object actualValue) {
-      // actualValue must be a Collection
-      if (attribute.isMultiValued()) {
-        return ((Collection<?>) actualValue).stream().anyMatch(nestedPredicate);
+  private static boolean anyMatch(Collection<?> values, Predicate<Object> predicate) {
+    for (Object value : values) {
+      if (predicate.test(value)) {
+        return true;
       }
-
-      return false;
     }
+    return false;
+  }
+
+  private static <T> Predicate<T> never() {
+    return actual -> false;
   }
 
-  private class AttributeComparisonPredicate<R> extends AbstractAttributePredicate<AttributeComparisonExpression, R> {
+  private static final class AllMatchPredicate<R> implements Predicate<R> {
 
-    private AttributeComparisonPredicate(AttributeComparisonExpression expression, AttributeContainer attributeContainer) {
-      super(expression, attributeContainer, expression.getAttributePath());
+    private final Predicate<R>[] predicates;
+
+    private AllMatchPredicate(Predicate<R>[] predicates) {
+      this.predicates = predicates;
     }
 
     @Override
-    protected boolean test(Schema.Attribute attribute, Object actualValue) {
-
-      if (actualValue == null) {
-        return false;
+    public boolean test(R actual) {
+      for (Predicate<R> predicate : predicates) {
+        if (!predicate.test(actual)) {
+          return false;
+        }
       }
+      return true;
+    }
+  }
 
-      if (attribute.isMultiValued()) {
-        log.warn("Invalid expression, target is collection");
-        return false;
-      }
+  private static final class AnyMatchPredicate<R> implements Predicate<R> {
 
-      CompareOperator op = expression.getOperation();
-      Object compareValue = expression.getCompareValue();
+    private final Predicate<R>[] predicates;
 
-      if (op == CompareOperator.EQ) {
+    private AnyMatchPredicate(Predicate<R>[] predicates) {
+      this.predicates = predicates;
+    }
 
-        if (isStringExpression(attribute, compareValue) && !attribute.isCaseExact()) {
-          return actualValue.toString().equalsIgnoreCase(compareValue.toString());
-        }
-        return compareValue.equals(actualValue);
-      }
-      if (op == CompareOperator.NE) {
-        if (isStringExpression(attribute, compareValue) && !attribute.isCaseExact()) {
-          return !actualValue.toString().equalsIgnoreCase(compareValue.toString());
+    @Override
+    public boolean test(R actual) {
+      for (Predicate<R> predicate : predicates) {
+        if (predicate.test(actual)) {
+          return true;
         }
-        return !compareValue.equals(actualValue);
-      }
-      if (op == CompareOperator.SW) {
-        return isStringExpression(attribute, compareValue)
-          && actualValue.toString().startsWith(compareValue.toString());
-      }
-      if (op == CompareOperator.EW) {
-        return isStringExpression(attribute, compareValue)
-          && actualValue.toString().endsWith(compareValue.toString());
-      }
-      if (op == CompareOperator.CO) {
-        return isStringExpression(attribute, compareValue)
-          && actualValue.toString().contains(compareValue.toString());
       }
-
-      if (actualValue instanceof Comparable) {
-        Comparable actual = (Comparable) actualValue;
-        Comparable compare = (Comparable) compareValue;
-        return CompareOperatorPredicate.naturalOrder(op, compare).test(actual);
-      }
-
-      throw new ScimResourceInvalidException("Unsupported operation in filter: " + op.name());
+      return false;
     }
   }
 
-  private static class CompareOperatorPredicate<T> implements Predicate<T> {
-    private final CompareOperator op;
+  /**
+   * A schema attribute resolved to the accessors that read its values.
+   */
+  private static final class ResolvedAttribute {
 
-    private final Comparator<T> comparator;
+    final Schema.Attribute attribute;
 
-    private final T comparedValue;
+    /**
+     * Reads the parent of a sub-attribute, or null if the attribute is read from the object under test.
+     */
+    final Function<Object, Object> parentAccessor;
 
+    final Function<Object, Object> accessor;
 
-    private CompareOperatorPredicate(CompareOperator op, T comparedValue, Comparator<T> comparator) {
-      this.op = op;
-      this.comparator = comparator;
-      this.comparedValue = comparedValue;
+    /**
+     * True if the parent is multi-valued, the attribute is then read from each of its elements.
+     */
+    final boolean multiValuedParent;
+
+    private ResolvedAttribute(Schema.Attribute attribute, Function<Object, Object> parentAccessor, Function<Object, Object> accessor, boolean multiValuedParent) {
+      this.attribute = attribute;
+      this.parentAccessor = parentAccessor;
+      this.accessor = accessor;
+      this.multiValuedParent = multiValuedParent;
     }
+  }
 
-    @Override
-    public boolean test(T actualValue) {
+  private static final class AttributePredicate<R> implements Predicate<R> {
 
-      int compareResult = comparator.compare(actualValue, comparedValue);
+    private final Function<Object, Object> parentAccessor;
 
-      if (op == CompareOperator.LT) {
-        return compareResult < 0;
-      } else if (op == CompareOperator.GT) {
-        return compareResult > 0;
-      } else if (op == CompareOperator.LE) {
-        return compareResult <= 0;
-      } else if (op == CompareOperator.GE) {
-        return compareResult >= 0;
-      }
-      return false;
-    }
+    private final Function<Object, Object> accessor;
 
-    static <T extends Comparable<T>> CompareOperatorPredicate<T> naturalOrder(CompareOperator op, T comparedValue) {
-      return new CompareOperatorPredicate<>(op, comparedValue, Comparator.naturalOrder());
-    }
-  }
+    private final boolean multiValuedParent;
 
-  private class AttributePresentPredicate<R> extends AbstractAttributePredicate<AttributePresentExpression, R> {
-    private AttributePresentPredicate(AttributePresentExpression expression, AttributeContainer attributeContainer) {
-      super(expression, attributeContainer, expression.getAttributePath());
+    private final Predicate<Object> valuePredicate;
+
+    private AttributePredicate(ResolvedAttribute resolvedAttribute, Predicate<Object> valuePredicate) {
+      this.parentAccessor = resolvedAttribute.parentAccessor;
+      this.accessor = resolvedAttribute.accessor;
+      this.multiValuedParent = resolvedAttribute.multiValuedParent;
+      this.valuePredicate = valuePredicate;
     }
 
     @Override
-    protected boolean test(Schema.Attribute attribute, Object actualValue) {
-      if (attribute.isMultiValued()) {
-        log.debug("Invalid expression, target is collection");
+    public boolean test(R actual) {
+      try {
+        Object value = actual;
+        if (parentAccessor != null) {
+          value = parentAccessor.apply(value);
+          if (value == null) {
+            return false;
+          }
+          if (multiValuedParent) {
+            for (Object element : (Collection<?>) value) {
+              if (element != null && testValue(accessor.apply(element))) {
+                return true;
+              }
+            }
+            return false;
+          }
+        }
+        return testValue(accessor.apply(value));
+      } catch (RuntimeException e) {
+        // The SCIM spec states to ignore the query instead of rejecting it - rfc7644 - 3.4.2
+        log.debug("Invalid SCIM filter received", e);
         return false;
       }
-      return actualValue != null;
+    }
+
+    private boolean testValue(Object value) {
+      return value != null && valuePredicate.test(value);
     }
   }
 }
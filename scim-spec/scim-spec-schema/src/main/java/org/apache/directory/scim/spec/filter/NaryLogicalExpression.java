@@ -0,0 +1,62 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.spec.filter;
+
+import lombok.Value;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A logical expression with any number of operands, for example {@code a eq 1 and b eq 2 and c eq 3}. Produced by
+ * {@link FilterExpressionOptimizer} in place of nested {@link LogicalExpression}s that share the same operator.
+ */
+@Value
+public class NaryLogicalExpression implements FilterExpression, ValueFilterExpression {
+  private static final long serialVersionUID = 5016584935563137722L;
+
+  LogicalOperator operator;
+  List<FilterExpression> operands;
+
+  @Override
+  public String toFilter() {
+    return operands.stream()
+      .map(operand -> needsParens(operand) ? "(" + operand.toFilter() + ")" : operand.toFilter())
+      .collect(Collectors.joining(" " + operator + " "));
+  }
+
+  @Override
+  public void setAttributePath(String urn, String parentAttributeName) {
+    operands.forEach(operand -> operand.setAttributePath(urn, parentAttributeName));
+  }
+
+  @Override
+  public String toUnqualifiedFilter() {
+    return operands.stream()
+      .map(operand -> needsParens(operand) ? "(" + operand.toUnqualifiedFilter() + ")" : operand.toUnqualifiedFilter())
+      .collect(Collectors.joining(" " + operator + " "));
+  }
+
+  private static boolean needsParens(FilterExpression operand) {
+    return operand instanceof LogicalExpression
+      || operand instanceof NaryLogicalExpression
+      || operand instanceof AttributeInExpression;
+  }
+}
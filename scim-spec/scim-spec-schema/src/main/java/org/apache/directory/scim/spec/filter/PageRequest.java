@@ -25,4 +25,17 @@ import lombok.Data;
 public class PageRequest {
   private Integer startIndex;
   private Integer count;
+
+  /**
+   * The opaque cursor of the page, see <a href="https://datatracker.ietf.org/doc/html/rfc9865">RFC 9865</a>. An empty
+   * cursor requests the first page, a null cursor requests index-based pagination with {@code startIndex}.
+   */
+  private String cursor;
+
+  /**
+   * Returns true if the page is requested with a cursor, rather than with a {@code startIndex}.
+   */
+  public boolean isCursorPaged() {
+    return cursor != null;
+  }
 }
@@ -0,0 +1,525 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.spec.filter;
+
+import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
+
+import java.util.regex.Pattern;
+
+/**
+ * A hand written, single pass, recursive descent parser for SCIM filters.
+ * <p>
+ * Accepts the same language as the ANTLR grammar ({@code Filter.g4}) and builds the same expression trees as the
+ * {@link AntlrFilterExpressionParser}, but reads the filter text directly instead of creating a token stream, a parse
+ * tree and a listener for every filter. The grammar is ambiguous for {@code and}/{@code or} chains that start with a
+ * plain attribute name, these are grouped the same way the ANTLR parser resolves the ambiguity: the attribute
+ * expression claims every following operand that is itself a plain attribute expression.
+ * <p>
+ * Unlike the ANTLR parser, which ignores input following a complete filter and whose lexer skips characters it
+ * cannot match, any malformed input is rejected.
+ */
+public class RecursiveDescentFilterExpressionParser implements FilterExpressionParser {
+
+  private static final String NAME_PATH = "[a-zA-Z][a-zA-Z0-9_-]*";
+
+  private static final String URN = "urn:[a-zA-Z0-9][a-zA-Z0-9-]+:(?:[a-zA-Z0-9()+,\\-.:=@;$_!*']|%[a-fA-F0-9]{2})+";
+
+  private static final Pattern FULL_ATTRIBUTE_PATH = Pattern.compile(URN + ":" + NAME_PATH + "\\." + NAME_PATH);
+
+  private static final Pattern URN_AND_NAME_ATTRIBUTE_PATH = Pattern.compile(URN + ":" + NAME_PATH);
+
+  private static final CompareOperator[] COMPARE_OPERATORS = {
+    CompareOperator.EQ, CompareOperator.NE, CompareOperator.CO, CompareOperator.SW, CompareOperator.EW,
+    CompareOperator.GT, CompareOperator.LT, CompareOperator.GE, CompareOperator.LE
+  };
+
+  // attribute path kinds, matching the lexer rules in Filter.g4
+  private static final int ATTRIBUTE_NAME = 0;
+  private static final int PARENT_CHILD_ATTRIBUTE_PATH = 1;
+  private static final int URN_AND_NAME_ATTRIBUTE_PATH_KIND = 2;
+  private static final int FULL_ATTRIBUTE_PATH_KIND = 3;
+
+  @Override
+  public FilterExpression parse(String filter) throws FilterParseException {
+    try {
+      Cursor cursor = new Cursor(filter);
+      FilterExpression expression = cursor.filterExpression();
+      cursor.expectEnd();
+      return expression;
+    } catch (SyntaxException | IllegalStateException e) {
+      throw new FilterParseException("Failed to parse filter: " + filter, e);
+    }
+  }
+
+  /**
+   * Returns the index after the JSON string starting at {@code start}, or -1 if the string is not terminated or
+   * contains characters not allowed by the grammar.
+   */
+  static int endOfString(String text, int start) {
+    int length = text.length();
+    int index = start + 1;
+    while (index < length) {
+      char c = text.charAt(index);
+      if (c == '"') {
+        return index + 1;
+      }
+      if (c == '\\') {
+        if (index + 1 >= length || "\"\\/bfnrt".indexOf(text.charAt(index + 1)) < 0) {
+          return -1;
+        }
+        index += 2;
+      } else if (c < ' ' || c > '~') {
+        return -1;
+      } else {
+        index++;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the index after the longest JSON number starting at {@code start}, or -1 if there is no number.
+   */
+  static int endOfNumber(String text, int start) {
+    int length = text.length();
+    int index = start;
+    if (index < length && text.charAt(index) == '-') {
+      index++;
+    }
+    if (index >= length || !isDigit(text.charAt(index))) {
+      return -1;
+    }
+    if (text.charAt(index) == '0') {
+      index++;
+    } else {
+      index = endOfDigits(text, index);
+    }
+    if (index + 1 < length && text.charAt(index) == '.' && isDigit(text.charAt(index + 1))) {
+      index = endOfDigits(text, index + 1);
+    }
+    if (index < length && (text.charAt(index) == 'e' || text.charAt(index) == 'E')) {
+      int exponent = index + 1;
+      if (exponent < length && (text.charAt(exponent) == '+' || text.charAt(exponent) == '-')) {
+        exponent++;
+      }
+      if (exponent < length && isDigit(text.charAt(exponent))) {
+        index = endOfDigits(text, exponent);
+      }
+    }
+    return index;
+  }
+
+  /**
+   * Unescapes the content of a JSON string already validated by {@link #endOfString(String, int)}. Like
+   * {@link ExpressionBuildingListener}, an escaped {@code /} is kept as {@code \/}.
+   */
+  static String unescape(String text, int start, int end) {
+    int escape = text.indexOf('\\', start);
+    if (escape < 0 || escape >= end) {
+      return text.substring(start, end);
+    }
+
+    StringBuilder builder = new StringBuilder(end - start);
+    builder.append(text, start, escape);
+    int index = escape;
+    while (index < end) {
+      char c = text.charAt(index++);
+      if (c != '\\') {
+        builder.append(c);
+        continue;
+      }
+      char escaped = text.charAt(index++);
+      switch (escaped) {
+        case 'b':
+          builder.append('\b');
+          break;
+        case 'f':
+          builder.append('\f');
+          break;
+        case 'n':
+          builder.append('\n');
+          break;
+        case 'r':
+          builder.append('\r');
+          break;
+        case 't':
+          builder.append('\t');
+          break;
+        case '/':
+          builder.append('\\').append('/');
+          break;
+        default:
+          // '"' and '\\'
+          builder.append(escaped);
+      }
+    }
+    return builder.toString();
+  }
+
+  private static int endOfDigits(String text, int index) {
+    while (index < text.length() && isDigit(text.charAt(index))) {
+      index++;
+    }
+    return index;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isAlpha(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+  }
+
+  private static boolean isNameChar(char c) {
+    return isAlpha(c) || isDigit(c) || c == '-' || c == '_';
+  }
+
+  private static boolean isUrnChar(char c) {
+    return isAlpha(c) || isDigit(c) || "()+,-.:=@;$_!*'%".indexOf(c) >= 0;
+  }
+
+  /**
+   * Holds the position while parsing a single filter.
+   */
+  private static final class Cursor {
+
+    private final String input;
+
+    private final int length;
+
+    private int position;
+
+    private Cursor(String input) {
+      this.input = input;
+      this.length = input.length();
+    }
+
+    // filterExpression: filterPrimary (SP LogicOp SP filterPrimary)*
+    FilterExpression filterExpression() {
+      FilterExpression expression = filterPrimary();
+      while (atLogicalOperator()) {
+        LogicalOperator operator = logicalOperator();
+        expression = new LogicalExpression(expression, operator, filterPrimary());
+      }
+      return expression;
+    }
+
+    private FilterExpression filterPrimary() {
+      if (atGroup()) {
+        return group(true);
+      }
+
+      int start = position;
+      int kind = attributePath();
+      if (peek() == '[' && (kind == ATTRIBUTE_NAME || kind == URN_AND_NAME_ATTRIBUTE_PATH_KIND)) {
+        return valuePath(input.substring(start, position));
+      }
+      if (kind == ATTRIBUTE_NAME) {
+        // a plain attribute name can only start an attribute expression
+        position = start;
+        return attributeExpression();
+      }
+      return presentOrComparison(input.substring(start, position));
+    }
+
+    // attributeExpression: attributePrimary (SP LogicOp SP attributePrimary)*
+    private FilterExpression attributeExpression() {
+      FilterExpression expression = attributePrimary();
+      while (atLogicalOperator()) {
+        int mark = position;
+        LogicalOperator operator = logicalOperator();
+        FilterExpression right = attributeOperand();
+        if (right == null) {
+          // not an attribute expression, leave the operand to the enclosing filter expression
+          position = mark;
+          break;
+        }
+        expression = new LogicalExpression(expression, operator, right);
+      }
+      return expression;
+    }
+
+    /**
+     * Parses the right hand side of an attribute logic expression, or returns null if the operand is only valid as
+     * a filter expression.
+     */
+    private FilterExpression attributeOperand() {
+      int start = position;
+      if (atGroup()) {
+        try {
+          return group(false);
+        } catch (SyntaxException e) {
+          position = start;
+          return null;
+        }
+      }
+      boolean plainName = attributePath() == ATTRIBUTE_NAME && peek() != '[';
+      position = start;
+      return plainName ? attributePrimary() : null;
+    }
+
+    private FilterExpression attributePrimary() {
+      if (atGroup()) {
+        return group(false);
+      }
+      int start = position;
+      if (attributePath() != ATTRIBUTE_NAME) {
+        throw error("expected attribute name", start);
+      }
+      return presentOrComparison(input.substring(start, position));
+    }
+
+    // NotOp? SP? '(' expression ')'
+    private GroupExpression group(boolean filterExpression) {
+      boolean not = input.regionMatches(true, position, "not", 0, 3);
+      if (not) {
+        position += 3;
+      }
+      skipSpaces();
+      expect('(');
+      FilterExpression expression = filterExpression ? filterExpression() : attributeExpression();
+      expect(')');
+      return new GroupExpression(not, expression);
+    }
+
+    private ValuePathExpression valuePath(String attributePath) {
+      expect('[');
+      FilterExpression attributeExpression = attributeExpression();
+      expect(']');
+
+      AttributeReference attributeReference = new AttributeReference(attributePath);
+      ValuePathExpression valuePathExpression = new ValuePathExpression(attributeReference, attributeExpression);
+      attributeExpression.setAttributePath(attributeReference.getUrn(), attributeReference.getAttributeName());
+      return valuePathExpression;
+    }
+
+    private FilterExpression presentOrComparison(String attributePath) {
+      expectSpaces();
+      int start = position;
+      int end = endOfName(start);
+      if (end - start == 2) {
+        if (input.regionMatches(true, start, "pr", 0, 2)) {
+          position = end;
+          return new AttributePresentExpression(new AttributeReference(attributePath));
+        }
+        for (CompareOperator operator : COMPARE_OPERATORS) {
+          if (input.regionMatches(true, start, operator.name(), 0, 2)) {
+            position = end;
+            expectSpaces();
+            Object compareValue = compareValue();
+            return new AttributeComparisonExpression(new AttributeReference(attributePath), operator, compareValue);
+          }
+        }
+      }
+      throw error("expected comparison operator", start);
+    }
+
+    private Object compareValue() {
+      int start = position;
+      char c = peek();
+      int end;
+      if (c == '"') {
+        end = endOfString(input, start);
+        if (end < 0) {
+          throw error("expected compare value", start);
+        }
+        position = end;
+        return unescape(input, start + 1, end - 1);
+      } else if (c == '-' || isDigit(c)) {
+        end = endOfNumber(input, start);
+      } else {
+        end = endOfName(start);
+        if (isLiteral(start, end, "true")) {
+          position = end;
+          return Boolean.TRUE;
+        } else if (isLiteral(start, end, "false")) {
+          position = end;
+          return Boolean.FALSE;
+        } else if (isLiteral(start, end, "null")) {
+          position = end;
+          return null;
+        }
+        end = -1;
+      }
+      if (end < 0) {
+        throw error("expected compare value", start);
+      }
+      position = end;
+      return ExpressionBuildingListener.parseJsonType(input.substring(start, end));
+    }
+
+    /**
+     * Reads an attribute path and returns its kind.
+     */
+    private int attributePath() {
+      int start = position;
+      if (input.startsWith("urn:", start)) {
+        int end = start;
+        while (end < length && isUrnChar(input.charAt(end))) {
+          end++;
+        }
+        position = end;
+        if (FULL_ATTRIBUTE_PATH.matcher(input).region(start, end).matches()) {
+          return FULL_ATTRIBUTE_PATH_KIND;
+        }
+        if (URN_AND_NAME_ATTRIBUTE_PATH.matcher(input).region(start, end).matches()) {
+          return URN_AND_NAME_ATTRIBUTE_PATH_KIND;
+        }
+        throw error("invalid attribute path", start);
+      }
+
+      int end = endOfName(start);
+      if (end == start) {
+        throw error("expected attribute path", start);
+      }
+      if (end + 1 < length && input.charAt(end) == '.' && isAlpha(input.charAt(end + 1))) {
+        position = endOfName(end + 1);
+        return PARENT_CHILD_ATTRIBUTE_PATH;
+      }
+      if (isKeyword(start, end)) {
+        throw error("expected attribute path", start);
+      }
+      position = end;
+      return ATTRIBUTE_NAME;
+    }
+
+    private boolean atGroup() {
+      int index = position;
+      if (input.regionMatches(true, index, "not", 0, 3)) {
+        index += 3;
+      }
+      while (index < length && input.charAt(index) == ' ') {
+        index++;
+      }
+      return index < length && input.charAt(index) == '(';
+    }
+
+    private boolean atLogicalOperator() {
+      int index = position;
+      if (index >= length || input.charAt(index) != ' ') {
+        return false;
+      }
+      while (index < length && input.charAt(index) == ' ') {
+        index++;
+      }
+      int end = endOfName(index);
+      return isLogicalOperator(index, end) && end < length && input.charAt(end) == ' ';
+    }
+
+    private LogicalOperator logicalOperator() {
+      skipSpaces();
+      int end = endOfName(position);
+      LogicalOperator operator = end - position == 3 ? LogicalOperator.AND : LogicalOperator.OR;
+      position = end;
+      skipSpaces();
+      return operator;
+    }
+
+    private boolean isLogicalOperator(int start, int end) {
+      return (end - start == 3 && input.regionMatches(true, start, "and", 0, 3))
+        || (end - start == 2 && input.regionMatches(true, start, "or", 0, 2));
+    }
+
+    /**
+     * Returns true if the text would be lexed as a keyword rather than an attribute name.
+     */
+    private boolean isKeyword(int start, int end) {
+      int size = end - start;
+      if (size == 2) {
+        if (input.regionMatches(true, start, "pr", 0, 2)) {
+          return true;
+        }
+        for (CompareOperator operator : COMPARE_OPERATORS) {
+          if (input.regionMatches(true, start, operator.name(), 0, 2)) {
+            return true;
+          }
+        }
+      }
+      return isLogicalOperator(start, end)
+        || (size == 3 && input.regionMatches(true, start, "not", 0, 3))
+        || isLiteral(start, end, "true")
+        || isLiteral(start, end, "false")
+        || isLiteral(start, end, "null");
+    }
+
+    private boolean isLiteral(int start, int end, String literal) {
+      // literals are case-sensitive
+      return end - start == literal.length() && input.startsWith(literal, start);
+    }
+
+    private int endOfName(int start) {
+      if (start >= length || !isAlpha(input.charAt(start))) {
+        return start;
+      }
+      int end = start + 1;
+      while (end < length && isNameChar(input.charAt(end))) {
+        end++;
+      }
+      return end;
+    }
+
+    private char peek() {
+      return position < length ? input.charAt(position) : 0;
+    }
+
+    private void skipSpaces() {
+      while (position < length && input.charAt(position) == ' ') {
+        position++;
+      }
+    }
+
+    private void expectSpaces() {
+      if (peek() != ' ') {
+        throw error("expected ' '", position);
+      }
+      skipSpaces();
+    }
+
+    private void expect(char c) {
+      if (peek() != c) {
+        throw error("expected '" + c + "'", position);
+      }
+      position++;
+    }
+
+    void expectEnd() {
+      if (position != length) {
+        throw error("unexpected input", position);
+      }
+    }
+
+    private SyntaxException error(String message, int index) {
+      return new SyntaxException("failed to parse at position " + index + " due to " + message);
+    }
+  }
+
+  /**
+   * Thrown while parsing, without a stack trace, as it is also used to backtrack.
+   */
+  private static final class SyntaxException extends RuntimeException {
+
+    private static final long serialVersionUID = -4120716587342287012L;
+
+    private SyntaxException(String message) {
+      super(message, null, false, false);
+    }
+  }
+}
@@ -29,6 +29,7 @@ import org.antlr.v4.runtime.Recognizer;
 import org.antlr.v4.runtime.tree.ParseTree;
 import org.antlr.v4.runtime.tree.ParseTreeWalker;
 
+import org.apache.directory.scim.spec.filter.FilterExpressionCache;
 import org.apache.directory.scim.spec.filter.FilterLexer;
 import org.apache.directory.scim.spec.filter.FilterParser;
 import org.apache.directory.scim.spec.filter.FilterParseException;
@@ -36,6 +37,7 @@ import org.apache.directory.scim.spec.filter.ValuePathExpression;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.Serializable;
+import java.util.Objects;
 
 @Slf4j
 @EqualsAndHashCode
@@ -43,6 +45,15 @@ public class PatchOperationPath implements Serializable {
 
   private static final long serialVersionUID = 449365558879593512L;
 
+  /**
+   * System property used to configure the maximum size of the shared cache of parsed paths, a value of {@code 0}
+   * disables caching.
+   */
+  public static final String PATH_CACHE_SIZE_PROPERTY = "scim.patch.path.cache.size";
+
+  private static volatile FilterExpressionCache pathCache = new FilterExpressionCache(
+    Integer.getInteger(PATH_CACHE_SIZE_PROPERTY, FilterExpressionCache.DEFAULT_MAXIMUM_SIZE));
+
   @Getter
   private final ValuePathExpression valuePathExpression;
 
@@ -78,8 +89,26 @@ public class PatchOperationPath implements Serializable {
     return valuePathExpression.toFilter();
   }
 
+  /**
+   * Parses a PATCH path, paths with the same shape as a previously parsed one, e.g. {@code members[value eq "1234"]}
+   * and {@code members[value eq "5678"]}, are copied from the cached parse tree instead of being parsed again.
+   */
   public static PatchOperationPath fromString(String patchPath) throws FilterParseException {
-    return new PatchOperationPath(parsePatchPath(patchPath));
+    return new PatchOperationPath((ValuePathExpression) pathCache.get(patchPath, PatchOperationPath::parsePatchPath));
+  }
+
+  /**
+   * Returns the cache of parsed paths shared by {@link #fromString(String)}.
+   */
+  public static FilterExpressionCache getPathCache() {
+    return pathCache;
+  }
+
+  /**
+   * Replaces the cache of parsed paths shared by {@link #fromString(String)}, for example to change its size at runtime.
+   */
+  public static void setPathCache(FilterExpressionCache pathCache) {
+    PatchOperationPath.pathCache = Objects.requireNonNull(pathCache, "pathCache must not be null");
   }
 
 }
@@ -29,7 +29,11 @@ import org.apache.directory.scim.spec.validator.Urn;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.util.*;
 
 /**
@@ -278,15 +282,31 @@ public class Schema implements AttributeContainer {
 
     Class<?> getType();
 
+    /**
+     * Returns the declared type of the attribute including type arguments, e.g. {@code List<Email>}.
+     */
+    default java.lang.reflect.Type getGenericType() {
+      return getType();
+    }
+
+    /**
+     * Returns an accessor for {@code field} backed by method handles that are bound once, falling back to reflection
+     * when the field's class cannot be looked up privately (for example when its package is not opened to this module).
+     */
     static AttributeAccessor forField(Field field) {
-      return new FieldAttributeAccessor(field);
+      try {
+        return MethodHandleAttributeAccessor.create(field);
+      } catch (IllegalAccessException | RuntimeException e) {
+        LOG.debug("Unable to create method handles for field '{}', falling back to reflection", field, e);
+        return new FieldAttributeAccessor(field);
+      }
     }
 
     boolean isAccessible(Object resource);
   }
 
   @EqualsAndHashCode
-  private static class FieldAttributeAccessor implements AttributeAccessor {
+  static class FieldAttributeAccessor implements AttributeAccessor {
 
     private final Field field;
 
@@ -319,6 +339,11 @@ public class Schema implements AttributeContainer {
       return field.getType();
     }
 
+    @Override
+    public java.lang.reflect.Type getGenericType() {
+      return field.getGenericType();
+    }
+
     @Override
     public boolean isAccessible(Object resource)
     {
@@ -330,4 +355,114 @@ public class Schema implements AttributeContainer {
       }
     }
   }
+
+  /**
+   * Reads and writes a field through method handles adapted to {@code Object} signatures, so each access is a single
+   * {@code invokeExact} call instead of a reflective lookup and access check. The handles are instance fields, so the
+   * JIT can't constant-fold them as it would {@code static final} ones, the gain is the skipped access check.
+   * <p>
+   * The adapted handles throw {@link ClassCastException}s for resources or values of the wrong type, and
+   * {@link NullPointerException}s for nulls written to primitive fields. These are rethrown as
+   * {@link IllegalArgumentException}s, as {@link Field#get(Object)} and {@link Field#set(Object, Object)} do.
+   */
+  @EqualsAndHashCode(onlyExplicitlyIncluded = true)
+  static class MethodHandleAttributeAccessor implements AttributeAccessor {
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    @EqualsAndHashCode.Include
+    private final Field field;
+
+    private final MethodHandle getter;
+
+    /**
+     * Null for final fields, which can only be written with reflection.
+     */
+    private final MethodHandle setter;
+
+    private MethodHandleAttributeAccessor(Field field, MethodHandle getter, MethodHandle setter) {
+      this.field = field;
+      this.getter = getter;
+      this.setter = setter;
+    }
+
+    static MethodHandleAttributeAccessor create(Field field) throws IllegalAccessException {
+      MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(field.getDeclaringClass(), MethodHandles.lookup());
+      MethodHandle getter = lookup.unreflectGetter(field).asType(GETTER_TYPE);
+      MethodHandle setter = Modifier.isFinal(field.getModifiers())
+        ? null
+        : lookup.unreflectSetter(field).asType(SETTER_TYPE);
+      return new MethodHandleAttributeAccessor(field, getter, setter);
+    }
+
+    @Override
+    public <T> T get(Object resource) {
+      try {
+        return (T) (Object) getter.invokeExact(resource);
+      } catch (ClassCastException e) {
+        throw illegalArgument(resource, null, e);
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable e) {
+        throw new ScimResourceInvalidException("Schema definition is invalid", e);
+      }
+    }
+
+    @Override
+    public void set(Object resource, Object value) {
+      if (setter == null) {
+        setReflectively(resource, value);
+        return;
+      }
+      try {
+        setter.invokeExact(resource, value);
+      } catch (ClassCastException e) {
+        throw illegalArgument(resource, value, e);
+      } catch (NullPointerException e) {
+        if (resource == null) {
+          throw e;
+        }
+        throw illegalArgument(resource, null, e);
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable e) {
+        throw new ScimResourceInvalidException("Schema definition is invalid", e);
+      }
+    }
+
+    private IllegalArgumentException illegalArgument(Object resource, Object value, RuntimeException cause) {
+      String message = field.getDeclaringClass().isInstance(resource)
+        ? "Can not set " + field.getType().getName() + " field " + field.getDeclaringClass().getName() + "." + field.getName()
+          + " to " + (value != null ? value.getClass().getName() : "null value")
+        : "Can not access field " + field.getDeclaringClass().getName() + "." + field.getName() + " of "
+          + (resource != null ? resource.getClass().getName() : "null");
+      return new IllegalArgumentException(message, cause);
+    }
+
+    private void setReflectively(Object resource, Object value) {
+      try {
+        field.setAccessible(true);
+        field.set(resource, value);
+      } catch (IllegalAccessException e) {
+        throw new ScimResourceInvalidException("Schema definition is invalid", e);
+      }
+    }
+
+    @Override
+    public Class<?> getType() {
+      return field.getType();
+    }
+
+    @Override
+    public java.lang.reflect.Type getGenericType() {
+      return field.getGenericType();
+    }
+
+    @Override
+    public boolean isAccessible(Object resource) {
+      return field.getDeclaringClass().isInstance(resource);
+    }
+  }
 }
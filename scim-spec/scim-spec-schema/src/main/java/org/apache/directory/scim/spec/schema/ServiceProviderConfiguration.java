@@ -161,6 +161,22 @@ public class ServiceProviderConfiguration extends ScimResourceWithOptionalId {
     int maxResults;
   }
 
+  /**
+   * The pagination methods of the service provider, see
+   * <a href="https://datatracker.ietf.org/doc/html/rfc9865#section-4">RFC 9865, section 4</a>.
+   */
+  @Data
+  public static class PaginationConfiguration implements Serializable {
+    private static final long serialVersionUID = -2040365516591564581L;
+
+    public static final String CURSOR = "cursor";
+    public static final String INDEX = "index";
+
+    boolean cursor;
+    boolean index;
+    String defaultPaginationMethod;
+  }
+
   @XmlElement
   String documentationUrl;
 
@@ -182,6 +198,9 @@ public class ServiceProviderConfiguration extends ScimResourceWithOptionalId {
   @XmlElement
   SupportedConfiguration etag;
 
+  @XmlElement
+  PaginationConfiguration pagination;
+
   @XmlElement
   List<AuthenticationSchema> authenticationSchemes;
 
@@ -0,0 +1,139 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.spec.filter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class FilterExpressionCacheTest extends AbstractLexerParserTest {
+
+  private static final FilterExpressionParser PARSER = new AntlrFilterExpressionParser();
+
+  @SuppressWarnings("unused")
+  private static String[] getAllFilters() {
+    return ALL;
+  }
+
+  @ParameterizedTest
+  @MethodSource("getAllFilters")
+  public void cachedExpressionMatchesParsedExpression(String filterText) throws Exception {
+    FilterExpressionCache cache = new FilterExpressionCache(10);
+    FilterExpression expected = PARSER.parse(filterText);
+
+    assertThat(cache.get(filterText, PARSER)).isEqualTo(expected);
+    assertThat(cache.get(filterText, PARSER)).isEqualTo(expected);
+  }
+
+  @Test
+  public void sameShapeSharesTemplate() throws Exception {
+    FilterExpressionCache cache = new FilterExpressionCache(10);
+
+    cache.get("userName eq \"bjensen\"", PARSER);
+    FilterExpression expression = cache.get("userName eq \"jsmith\"", PARSER);
+
+    assertThat(expression).isEqualTo(PARSER.parse("userName eq \"jsmith\""));
+    assertThat(cache.size()).isEqualTo(1);
+    assertThat(cache.getMissCount()).isEqualTo(1);
+    assertThat(cache.getHitCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void literalTypesAreParsedPerFilter() throws Exception {
+    FilterExpressionCache cache = new FilterExpressionCache(10);
+
+    cache.get("x eq 1 and y eq \"a\"", PARSER);
+    LogicalExpression expression = (LogicalExpression) cache.get("x eq \"1\" and y eq 2.5", PARSER);
+
+    assertThat(((AttributeComparisonExpression) expression.getLeft()).getCompareValue()).isEqualTo("1");
+    assertThat(((AttributeComparisonExpression) expression.getRight()).getCompareValue()).isEqualTo(2.5);
+    assertThat(cache.getHitCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void returnedExpressionsAreCopies() throws Exception {
+    FilterExpressionCache cache = new FilterExpressionCache(10);
+
+    LogicalExpression first = (LogicalExpression) cache.get("title pr and userType eq \"Employee\"", PARSER);
+    first.setOperator(LogicalOperator.OR);
+    ((AttributePresentExpression) first.getLeft()).getAttributePath().setAttributeName("changed");
+
+    assertThat(cache.get("title pr and userType eq \"Employee\"", PARSER))
+      .isEqualTo(PARSER.parse("title pr and userType eq \"Employee\""));
+  }
+
+  @Test
+  public void leastRecentlyUsedShapeIsEvicted() throws Exception {
+    FilterExpressionCache cache = new FilterExpressionCache(2);
+
+    cache.get("userName eq \"a\"", PARSER);
+    cache.get("displayName eq \"a\"", PARSER);
+    cache.get("userName eq \"b\"", PARSER);
+    cache.get("title pr", PARSER);
+
+    assertThat(cache.size()).isEqualTo(2);
+    assertThat(cache.getEvictionCount()).isEqualTo(1);
+
+    cache.get("userName eq \"c\"", PARSER);
+    assertThat(cache.getHitCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void invalidLiteralIsRejectedOnCacheHit() throws Exception {
+    FilterExpressionCache cache = new FilterExpressionCache(10);
+
+    cache.get("age eq 1", PARSER);
+
+    assertThatThrownBy(() -> cache.get("age eq 99999999999", PARSER))
+      .isInstanceOf(FilterParseException.class);
+  }
+
+  @Test
+  public void disabledCacheAlwaysParses() throws Exception {
+    FilterExpressionCache cache = new FilterExpressionCache(0);
+
+    cache.get("userName eq \"a\"", PARSER);
+    cache.get("userName eq \"a\"", PARSER);
+
+    assertThat(cache.size()).isEqualTo(0);
+    assertThat(cache.getHitCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void shapeReplacesLiterals() {
+    List<String> literals = new ArrayList<>();
+    String shape = FilterExpressionCache.shapeOf("emails[type eq \"work\" and primary eq true] or age gt -1.5e3", literals);
+
+    assertThat(shape).isEqualTo("emails[type eq ? and primary eq ?] or age gt ?");
+    assertThat(literals).containsExactly("\"work\"", "true", "-1.5e3");
+  }
+
+  @Test
+  public void malformedLiteralSkipsCache() {
+    assertThat(FilterExpressionCache.shapeOf("age eq 01", new ArrayList<>())).isNull();
+    assertThat(FilterExpressionCache.shapeOf("userName eq \"\\q\"", new ArrayList<>())).isNull();
+  }
+}
@@ -0,0 +1,138 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.spec.filter;
+
+import org.apache.directory.scim.spec.filter.attribute.AttributeReference;
+import org.apache.directory.scim.spec.resources.ScimUser;
+import org.apache.directory.scim.spec.schema.Schema;
+import org.apache.directory.scim.spec.schema.Schemas;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FilterExpressionOptimizerTest {
+
+  private static final Schema SCHEMA = Schemas.schemaFor(ScimUser.class);
+
+  @Test
+  public void nestedLogicalExpressionsAreFlattened() throws Exception {
+    FilterExpression expression = optimize("(title pr and nickName pr) and (displayName pr and userType pr)");
+
+    assertThat(expression).isEqualTo(new NaryLogicalExpression(LogicalOperator.AND, List.of(
+      present("title"), present("nickName"), present("displayName"), present("userType"))));
+  }
+
+  @Test
+  public void duplicateOperandsAreRemoved() throws Exception {
+    assertThat(optimize("title pr and (title pr)")).isEqualTo(present("title"));
+  }
+
+  @Test
+  public void equalityChainIsMergedIntoSet() throws Exception {
+    FilterExpression expression = optimize("title eq \"a\" or nickName pr or TITLE eq \"b\" or (title eq \"c\" or title eq \"a\")");
+
+    assertThat(expression).isEqualTo(new NaryLogicalExpression(LogicalOperator.OR, List.of(
+      new AttributeInExpression(new AttributeReference("title"), Set.of("a", "b", "c")),
+      present("nickName"))));
+    assertThat(((AttributeInExpression) ((NaryLogicalExpression) expression).getOperands().get(0)).getCompareValues())
+      .containsExactly("a", "b", "c");
+  }
+
+  @Test
+  public void mergedEqualitiesDoNotShareTheOperandsAttributePath() throws Exception {
+    Filter filter = new Filter("title eq \"a\" or title eq \"b\"");
+    String original = filter.getExpression().toFilter();
+
+    AttributeInExpression in = (AttributeInExpression) FilterExpressions.optimize(filter.getExpression(), SCHEMA);
+    in.setAttributePath("urn:example", "parent");
+
+    assertThat(in.getAttributePath().getFullyQualifiedAttributeName()).isEqualTo("urn:example:parent.title");
+    assertThat(filter.getExpression().toFilter()).isEqualTo(original);
+  }
+
+  @Test
+  public void equalitiesJoinedWithAndAreNotMerged() throws Exception {
+    FilterExpression expression = optimize("title eq \"a\" and title eq \"b\"");
+
+    assertThat(expression).isEqualTo(new NaryLogicalExpression(LogicalOperator.AND, List.of(
+      equal("title", "a"), equal("title", "b"))));
+  }
+
+  @Test
+  public void notIsPushedDown() throws Exception {
+    FilterExpression expression = optimize("not (title pr and not (nickName pr or displayName pr))");
+
+    assertThat(expression).isEqualTo(new NaryLogicalExpression(LogicalOperator.OR, List.of(
+      new GroupExpression(true, present("title")), present("nickName"), present("displayName"))));
+  }
+
+  @Test
+  public void doubleNegationIsRemoved() throws Exception {
+    assertThat(optimize("not (not (title pr))")).isEqualTo(present("title"));
+  }
+
+  @Test
+  public void operandsAreOrderedByCost() throws Exception {
+    FilterExpression expression = optimize("displayName co \"x\" and title pr and nickName eq \"y\" and userName eq \"z\"");
+
+    assertThat(expression).isEqualTo(new NaryLogicalExpression(LogicalOperator.AND, List.of(
+      equal("userName", "z"), equal("nickName", "y"), present("title"), new AttributeComparisonExpression(new AttributeReference("displayName"), CompareOperator.CO, "x"))));
+  }
+
+  @Test
+  public void valuePathIsOptimized() throws Exception {
+    FilterExpression expression = optimize("emails[type eq \"work\" or type eq \"home\"]");
+
+    assertThat(expression).isInstanceOf(ValuePathExpression.class);
+    assertThat(((ValuePathExpression) expression).getAttributeExpression()).isInstanceOf(AttributeInExpression.class);
+  }
+
+  @Test
+  public void originalExpressionIsNotModified() throws Exception {
+    Filter filter = new Filter("not (title eq \"a\" or title eq \"b\")");
+    String before = filter.getExpression().toFilter();
+
+    FilterExpressions.optimize(filter.getExpression(), SCHEMA);
+
+    assertThat(filter.getExpression().toFilter()).isEqualTo(before);
+  }
+
+  @Test
+  public void optimizedExpressionIsValidFilter() throws Exception {
+    FilterExpression expression = optimize("(title eq \"a\" or title eq \"b\") and not (nickName pr or displayName sw \"c\")");
+
+    assertThat(optimize(expression.toFilter())).isEqualTo(expression);
+  }
+
+  private static FilterExpression optimize(String filter) throws FilterParseException {
+    return FilterExpressions.optimize(new Filter(filter).getExpression(), SCHEMA);
+  }
+
+  private static AttributePresentExpression present(String attribute) {
+    return new AttributePresentExpression(new AttributeReference(attribute));
+  }
+
+  private static AttributeComparisonExpression equal(String attribute, Object value) {
+    return new AttributeComparisonExpression(new AttributeReference(attribute), CompareOperator.EQ, value);
+  }
+}
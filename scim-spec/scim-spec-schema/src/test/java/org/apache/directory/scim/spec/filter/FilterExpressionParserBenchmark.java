@@ -0,0 +1,77 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.spec.filter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the ANTLR and recursive descent filter parsers, caching is bypassed so every invocation parses.
+ * <p>
+ * Run from the module directory after {@code mvn test-compile} with:
+ * <pre>
+ * java -cp target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout) \
+ *   org.openjdk.jmh.Main FilterExpressionParserBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterExpressionParserBenchmark {
+
+  private static final FilterExpressionParser ANTLR = new AntlrFilterExpressionParser();
+
+  private static final FilterExpressionParser RECURSIVE_DESCENT = new RecursiveDescentFilterExpressionParser();
+
+  @Param({
+    "userName eq \"bjensen\"",
+    "userType eq \"Employee\" and (emails co \"example.com\" or emails co \"example.org\")",
+    "emails[type eq \"work\" and value co \"@example.com\"] or ims[type eq \"xmpp\" and value co \"@foo.com\"]",
+    "urn:ietf:params:scim:schemas:extension:enterprise:2.0:User:employeeNumber eq \"701984\" and meta.lastModified gt \"2011-05-13T04:42:34Z\""
+  })
+  public String filter;
+
+  @Benchmark
+  public FilterExpression antlr() throws FilterParseException {
+    return ANTLR.parse(filter);
+  }
+
+  @Benchmark
+  public FilterExpression recursiveDescent() throws FilterParseException {
+    return RECURSIVE_DESCENT.parse(filter);
+  }
+
+  public static void main(String[] args) throws Exception {
+    org.openjdk.jmh.Main.main(args);
+  }
+}
@@ -0,0 +1,121 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.spec.filter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class FilterLimitsTest extends AbstractLexerParserTest {
+
+  @SuppressWarnings("unused")
+  private static String[] getAllFilters() {
+    return ALL;
+  }
+
+  @ParameterizedTest
+  @MethodSource("getAllFilters")
+  public void nodeCountMatchesParsedExpression(String filterText) throws Exception {
+    int nodes = countNodes(new AntlrFilterExpressionParser().parse(filterText));
+
+    assertThatCode(() -> new FilterLimits(0, 0, nodes, 0).check(filterText)).doesNotThrowAnyException();
+    if (nodes > 1) {
+      assertThatThrownBy(() -> new FilterLimits(0, 0, nodes - 1, 0).check(filterText))
+        .isInstanceOf(FilterLimitExceededException.class)
+        .extracting("limit").isEqualTo(FilterLimits.Limit.NODES);
+    }
+  }
+
+  @Test
+  public void longFilterIsRejected() {
+    FilterLimits limits = new FilterLimits(10, 0, 0, 0);
+
+    assertThatThrownBy(() -> limits.check("userName eq \"bjensen\""))
+      .isInstanceOf(FilterLimitExceededException.class)
+      .hasMessage("Filter exceeds the maximum length of 10: 21");
+    assertThat(limits.getRejectedCount(FilterLimits.Limit.LENGTH)).isEqualTo(1);
+    assertThat(limits.getRejectedCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void deepFilterIsRejected() throws Exception {
+    FilterLimits limits = new FilterLimits(0, 2, 0, 0);
+
+    limits.check("not (emails[type eq \"work\"])");
+    assertThatThrownBy(() -> limits.check("((not (title pr)))"))
+      .isInstanceOf(FilterLimitExceededException.class)
+      .extracting("limit").isEqualTo(FilterLimits.Limit.DEPTH);
+    assertThat(limits.getRejectedCount(FilterLimits.Limit.DEPTH)).isEqualTo(1);
+  }
+
+  @Test
+  public void nestedValuePathIsRejected() throws Exception {
+    FilterLimits limits = new FilterLimits(0, 0, 0, 1);
+
+    limits.check("emails[type eq \"[work]\"] and addresses[type eq \"home\"]");
+    assertThatThrownBy(() -> limits.check("groups[members[value eq \"1\"]]"))
+      .isInstanceOf(FilterLimitExceededException.class)
+      .extracting("limit").isEqualTo(FilterLimits.Limit.VALUE_PATH_DEPTH);
+  }
+
+  @Test
+  public void keywordsInValuesAreNotCounted() throws Exception {
+    FilterLimits limits = new FilterLimits(0, 0, 3, 0);
+
+    limits.check("title eq \"a or b or c\" and nickName eq or");
+  }
+
+  @Test
+  public void filterEnforcesLimits() throws Exception {
+    FilterLimits previous = Filter.getLimits();
+    try {
+      Filter.setLimits(new FilterLimits(0, 0, 5, 0));
+
+      new Filter("a eq 1 or b eq 2 or c eq 3");
+      assertThatThrownBy(() -> new Filter("a eq 1 or b eq 2 or c eq 3 or d eq 4"))
+        .isInstanceOf(FilterLimitExceededException.class);
+      assertThat(Filter.getLimits().getRejectedCount(FilterLimits.Limit.NODES)).isEqualTo(1);
+    } finally {
+      Filter.setLimits(previous);
+    }
+  }
+
+  @Test
+  public void unlimitedAcceptsEverything() throws Exception {
+    FilterLimits.UNLIMITED.check("a eq 1 or ".repeat(10_000) + "a eq 1");
+  }
+
+  private static int countNodes(FilterExpression expression) {
+    if (expression instanceof LogicalExpression) {
+      LogicalExpression logicalExpression = (LogicalExpression) expression;
+      return 1 + countNodes(logicalExpression.getLeft()) + countNodes(logicalExpression.getRight());
+    } else if (expression instanceof GroupExpression) {
+      return 1 + countNodes(((GroupExpression) expression).getFilterExpression());
+    } else if (expression instanceof ValuePathExpression) {
+      FilterExpression attributeExpression = ((ValuePathExpression) expression).getAttributeExpression();
+      return attributeExpression != null ? 1 + countNodes(attributeExpression) : 1;
+    }
+    return 1;
+  }
+}
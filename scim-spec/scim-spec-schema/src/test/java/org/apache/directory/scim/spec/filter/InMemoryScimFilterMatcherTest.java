@@ -22,12 +22,16 @@ package org.apache.directory.scim.spec.filter;
 import org.apache.directory.scim.spec.LuckyNumberExtension;
 import org.apache.directory.scim.spec.resources.*;
 import org.apache.directory.scim.spec.schema.Meta;
+import org.apache.directory.scim.spec.schema.Schema;
 import org.apache.directory.scim.spec.schema.Schemas;
 import org.assertj.core.api.AbstractAssert;
 import org.junit.jupiter.api.Test;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
 
 public class InMemoryScimFilterMatcherTest {
 
@@ -151,6 +155,95 @@ public class InMemoryScimFilterMatcherTest {
       .notMatches(USER2);
   }
 
+  @Test
+  public void parsedValuePathExpressionMatches() throws FilterParseException {
+    FilterAssert.assertThat(new Filter("addresses[type eq \"work\"]"))
+      .matches(USER1)
+      .notMatches(USER2);
+  }
+
+  @Test
+  public void multiValuedSubAttributeMatches() {
+    FilterAssert.assertThat(FilterBuilder.create().contains("emails.value", "user1@"))
+      .matches(USER1)
+      .notMatches(USER2);
+
+    FilterAssert.assertThat(FilterBuilder.create().equalTo("emails.type", "personal"))
+      .matches(USER1)
+      .matches(USER2);
+  }
+
+  @Test
+  public void parsedFilterMatches() throws FilterParseException {
+    FilterAssert.assertThat(new Filter("userName eq \"USER1\" and not(nickName pr) or name.familyName sw \"Tw\""))
+      .matches(USER2)
+      .notMatches(USER1);
+  }
+
+  @Test
+  public void unknownAttributeNeverMatches() throws FilterParseException {
+    FilterAssert.assertThat(new Filter("unknown eq \"user1\" or name.unknown pr"))
+      .notMatches(USER1)
+      .notMatches(USER2);
+  }
+
+  @Test
+  public void equalityChainMatches() throws FilterParseException {
+    FilterAssert.assertThat(new Filter("userName eq \"nobody\" or userName eq \"USER2\" or userName eq \"other\""))
+      .matches(USER2)
+      .notMatches(USER1);
+
+    FilterAssert.assertThat(new Filter("addresses[type eq \"office\" or type eq \"work\"]"))
+      .matches(USER1)
+      .notMatches(USER2);
+  }
+
+  @Test
+  public void optimizedEqualityChainMatchesLikeUnoptimized() {
+    // 'ſ' (long s) and 'K' (Kelvin sign) are equal to 's' and 'k' ignoring case, but not after toLowerCase
+    List<Filter> filters = List.of(
+      FilterBuilder.create().equalTo("userName", "USER1").or(f -> f.equalTo("userName", "nobody")).build(),
+      FilterBuilder.create().equalTo("userName", "u\u017Fer1").or(f -> f.equalTo("userName", "nobody")).build(),
+      FilterBuilder.create().equalTo("userName", "USER\u017F").or(f -> f.equalTo("userName", "u\u017FER2")).build(),
+      FilterBuilder.create().equalTo("name.givenName", "u\u017Fer").or(f -> f.equalTo("name.givenName", "\u212Aid")).build());
+    Schema schema = Schemas.schemaFor(ScimUser.class);
+    for (Filter filter : filters) {
+      Predicate<ScimUser> unoptimized = new InMemoryScimFilterMatcher<ScimUser>().apply(filter.getExpression(), schema);
+      Predicate<ScimUser> optimized = FilterExpressions.inMemory(filter.getExpression(), schema);
+      for (ScimUser user : List.of(USER1, USER2)) {
+        assertThat(optimized.test(user))
+          .as("filter '%s' on %s", filter, user.getUserName())
+          .isEqualTo(unoptimized.test(user));
+      }
+    }
+    FilterAssert.assertThat(filters.get(1)).matches(USER1).notMatches(USER2);
+  }
+
+  @Test
+  public void foldCaseAgreesWithEqualsIgnoreCase() {
+    // 'ı' (dotless i), 'ſ' (long s) and 'K' (Kelvin sign) are equal to 'I', 's' and 'k' ignoring case, but not after
+    // toLowerCase
+    List<String> values = List.of("user", "USER", "u\u017Fer", "\u0131", "I", "i", "\u212Aid", "kid", "\u00DF", "SS");
+    for (String left : values) {
+      for (String right : values) {
+        assertThat(FilterExpressions.foldCase(left).equals(FilterExpressions.foldCase(right)))
+          .as("'%s' and '%s'", left, right)
+          .isEqualTo(left.equalsIgnoreCase(right));
+      }
+    }
+    // surrogate pairs are folded as code points, '𐐀' (Deseret long i) folds to '𐐨'
+    assertThat(FilterExpressions.foldCase("\uD801\uDC00")).isEqualTo("\uD801\uDC28");
+    String folded = "already folded";
+    assertThat(FilterExpressions.foldCase(folded)).isSameAs(folded);
+  }
+
+  @Test
+  public void negatedGroupMatches() throws FilterParseException {
+    FilterAssert.assertThat(new Filter("not (userName eq \"user1\" or not (name.familyName eq \"Two\"))"))
+      .matches(USER2)
+      .notMatches(USER1);
+  }
+
 //  @Test
 //  public void extensionValueMatches() {
 //    assertThat(FilterBuilder.create().equalTo("luckyNumber", 111))
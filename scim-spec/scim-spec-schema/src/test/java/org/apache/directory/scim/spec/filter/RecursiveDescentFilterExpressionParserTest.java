@@ -0,0 +1,157 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.directory.scim.spec.filter;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Differential tests, every filter is parsed by both the ANTLR and the recursive descent parser and the results must
+ * be the same.
+ */
+public class RecursiveDescentFilterExpressionParserTest extends AbstractLexerParserTest {
+
+  private static final FilterExpressionParser ANTLR = new AntlrFilterExpressionParser();
+
+  private static final FilterExpressionParser RECURSIVE_DESCENT = new RecursiveDescentFilterExpressionParser();
+
+  private static final String[] CORPUS = {
+    "userName Pr",
+    "USERNAME PR",
+    "x-y_z eq 1",
+    "active eq true",
+    "active eq false",
+    "manager eq null",
+    "age gt 42",
+    "age lt -7",
+    "x eq 0",
+    "score ge 1.5",
+    "score le 2.5e3",
+    "score ne -0.25E-2",
+    "displayName eq \"a \\\"quoted\\\" \\\\ \\/ \\t value\"",
+    "displayName eq \"\"",
+    "displayName eq \"a\\/b\"",
+    "displayName eq \"a\\\\/b\"",
+    "displayName eq \"a\\\\\\/b\"",
+    "displayName eq \"\\\\'\"",
+    "displayName eq \"\\b\\f\\n\\r\\t\"",
+    "meta.resourceType eq \"User\"",
+    "a eq 1 and b eq 2 or c eq 3",
+    "a eq 1 or b eq 2 and c eq 3",
+    "a eq 1  and  b eq 2",
+    "name.givenName eq \"x\" or a eq 1 and b eq 2",
+    "z eq 1 or a eq 1 and name.givenName eq \"x\"",
+    "(a eq 1) and b eq 2 or c eq 3",
+    "a eq 1 and (b eq 2 or c eq 3) or d pr",
+    "a eq 1 and (b.c eq 2 or d eq 3)",
+    "a eq 1 and (b.c eq 2 or d eq 3) and e eq 4",
+    "a eq 1 and emails[type eq \"work\"] or b eq 2",
+    "a eq 1 and not(b eq 2) or name.familyName pr",
+    "not (a eq 1)",
+    "NoT(a eq 1)",
+    "  (a eq 1)",
+    "((a eq 1 or b eq 2) and (c eq 3))",
+    "emails[type eq \"work\" and not(value ew \".org\")]",
+    "emails[ (type eq \"work\")]",
+    "emails[type eq \"work\" or primary eq true and value pr]",
+    "members[value eq \"2819c223-7f76-453a-919d-413861904646\"]",
+    "andy eq 1 or notes pr",
+    "prize eq 1",
+    "urn:ietf:params:scim:schemas:core:2.0:User:userName eq \"bjensen\"",
+    "urn:ietf:params:scim:schemas:core:2.0:User:name.familyName pr",
+    "urn:ietf:params:scim:schemas:core:2.0:User:emails[type eq \"work\"]",
+    "urn:ietf:params:scim:schemas:extension:enterprise:2.0:User:employeeNumber eq \"701984\" and userName sw \"b\"",
+    "userName sw \"b\" and urn:ietf:params:scim:schemas:extension:enterprise:2.0:User:manager.value eq \"26118915-6090-4610-87e4-49d8ca9f808d\""
+  };
+
+  private static final String[] INVALID = {
+    "",
+    "userName",
+    "userName eq",
+    "userName xx \"a\"",
+    "userName eq bjensen",
+    "userName eq \"unterminated",
+    "userName eq -",
+    "(userName eq \"a\"",
+    "( userName eq \"a\")",
+    "emails[type eq \"work\"",
+    "emails[name.givenName eq \"a\"]",
+    "name.givenName[value eq 1]",
+    "not userName eq \"a\"",
+    "and eq 1",
+    "true eq 1",
+    "urn:x:y eq 1"
+  };
+
+  @SuppressWarnings("unused")
+  private static String[] getValidFilters() {
+    return ArrayUtils.addAll(ArrayUtils.addAll(ALL, MIXED_CASE), CORPUS);
+  }
+
+  @SuppressWarnings("unused")
+  private static String[] getInvalidFilters() {
+    return INVALID;
+  }
+
+  @ParameterizedTest
+  @MethodSource("getValidFilters")
+  public void buildsSameExpressionAsAntlr(String filterText) throws Exception {
+    FilterExpression expected = ANTLR.parse(filterText);
+
+    assertThat(RECURSIVE_DESCENT.parse(filterText)).isEqualTo(expected);
+  }
+
+  @ParameterizedTest
+  @MethodSource("getInvalidFilters")
+  public void rejectsSameFiltersAsAntlr(String filterText) {
+    assertThatThrownBy(() -> ANTLR.parse(filterText)).isInstanceOf(FilterParseException.class);
+    assertThatThrownBy(() -> RECURSIVE_DESCENT.parse(filterText)).isInstanceOf(FilterParseException.class);
+  }
+
+  @Test
+  public void invalidNumberIsRejected() {
+    assertThatThrownBy(() -> ANTLR.parse("age eq 99999999999")).isInstanceOf(FilterParseException.class);
+    assertThatThrownBy(() -> RECURSIVE_DESCENT.parse("age eq 99999999999")).isInstanceOf(FilterParseException.class);
+  }
+
+  @Test
+  public void malformedInputIsRejected() {
+    // the ANTLR parser ignores trailing input, and its lexer skips unrecognized characters, so it accepts these
+    assertThatThrownBy(() -> RECURSIVE_DESCENT.parse("emails[type eq \"work\"].value")).isInstanceOf(FilterParseException.class);
+    assertThatThrownBy(() -> RECURSIVE_DESCENT.parse("userName eq 01")).isInstanceOf(FilterParseException.class);
+    assertThatThrownBy(() -> RECURSIVE_DESCENT.parse("userName eq \"\\u0041\"")).isInstanceOf(FilterParseException.class);
+    assertThatThrownBy(() -> RECURSIVE_DESCENT.parse("userName eq \"a\" and")).isInstanceOf(FilterParseException.class);
+  }
+
+  @Test
+  public void parserIsSelectedByName() {
+    assertThat(Filter.createExpressionParser(null)).isInstanceOf(AntlrFilterExpressionParser.class);
+    assertThat(Filter.createExpressionParser("antlr")).isInstanceOf(AntlrFilterExpressionParser.class);
+    assertThat(Filter.createExpressionParser("recursive-descent")).isInstanceOf(RecursiveDescentFilterExpressionParser.class);
+    assertThat(Filter.createExpressionParser(RecursiveDescentFilterExpressionParser.class.getName())).isInstanceOf(RecursiveDescentFilterExpressionParser.class);
+    assertThat(Filter.createExpressionParser("java.lang.String")).isInstanceOf(AntlrFilterExpressionParser.class);
+    assertThat(Filter.createExpressionParser("does.not.Exist")).isInstanceOf(AntlrFilterExpressionParser.class);
+  }
+}
@@ -19,7 +19,9 @@
 
 package org.apache.directory.scim.spec.patch;
 
+import org.apache.directory.scim.spec.filter.FilterExpressionCache;
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 
@@ -48,4 +50,24 @@ public class PatchOperationPathTest {
     Assertions.assertEquals(value.toLowerCase(), result.toLowerCase());
   }
 
+  @Test
+  public void pathsWithTheSameShapeAreCopiedFromTheCache() throws Exception {
+    FilterExpressionCache original = PatchOperationPath.getPathCache();
+    try {
+      FilterExpressionCache cache = new FilterExpressionCache(10);
+      PatchOperationPath.setPathCache(cache);
+
+      PatchOperationPath first = PatchOperationPath.fromString("members[value eq \"1234\"].display");
+      PatchOperationPath second = PatchOperationPath.fromString("members[value eq \"5678\"].display");
+
+      Assertions.assertEquals(1, cache.getMissCount());
+      Assertions.assertEquals(1, cache.getHitCount());
+      Assertions.assertEquals("members[value EQ \"1234\"].display", first.toString());
+      Assertions.assertEquals("members[value EQ \"5678\"].display", second.toString());
+      Assertions.assertNotSame(first.getValuePathExpression(), PatchOperationPath.fromString("members[value eq \"1234\"].display").getValuePathExpression());
+    } finally {
+      PatchOperationPath.setPathCache(original);
+    }
+  }
+
 }
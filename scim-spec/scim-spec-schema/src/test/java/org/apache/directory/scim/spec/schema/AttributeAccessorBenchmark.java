@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.directory.scim.spec.schema;
+
+import org.apache.directory.scim.spec.resources.Name;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the method handle and reflective {@link Schema.AttributeAccessor} strategies.
+ * <p>
+ * Run from the module directory after {@code mvn test-compile} with:
+ * <pre>
+ * java -cp target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout) \
+ *   org.openjdk.jmh.Main AttributeAccessorBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AttributeAccessorBenchmark {
+
+  private Schema.AttributeAccessor methodHandle;
+
+  private Schema.AttributeAccessor reflection;
+
+  private Name name;
+
+  @Setup
+  public void setup() throws Exception {
+    Field field = Name.class.getDeclaredField("givenName");
+    methodHandle = Schema.MethodHandleAttributeAccessor.create(field);
+    reflection = new Schema.FieldAttributeAccessor(field);
+    name = new Name().setGivenName("Barbara");
+  }
+
+  @Benchmark
+  public Object methodHandleGet() {
+    return methodHandle.get(name);
+  }
+
+  @Benchmark
+  public Object reflectionGet() {
+    return reflection.get(name);
+  }
+
+  @Benchmark
+  public void methodHandleSet() {
+    methodHandle.set(name, "Babs");
+  }
+
+  @Benchmark
+  public void reflectionSet() {
+    reflection.set(name, "Babs");
+  }
+
+  public static void main(String[] args) throws Exception {
+    org.openjdk.jmh.Main.main(args);
+  }
+}
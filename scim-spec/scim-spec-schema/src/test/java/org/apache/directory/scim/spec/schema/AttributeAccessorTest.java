@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.directory.scim.spec.schema;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.lang.reflect.Field;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class AttributeAccessorTest {
+
+  @Test
+  public void forFieldUsesMethodHandles() throws Exception {
+    assertThat(Schema.AttributeAccessor.forField(Sample.class.getDeclaredField("text")))
+      .isInstanceOf(Schema.MethodHandleAttributeAccessor.class);
+  }
+
+  @ParameterizedTest
+  @MethodSource("strategies")
+  public void readsAndWritesPrivateField(Strategy strategy) throws Exception {
+    Schema.AttributeAccessor accessor = strategy.create(Sample.class.getDeclaredField("text"));
+    Sample sample = new Sample();
+
+    accessor.set(sample, "value");
+
+    assertThat(sample.text).isEqualTo("value");
+    assertThat((String) accessor.get(sample)).isEqualTo("value");
+    assertThat(accessor.getType()).isEqualTo(String.class);
+    assertThat(accessor.isAccessible(sample)).isTrue();
+  }
+
+  @ParameterizedTest
+  @MethodSource("strategies")
+  public void boxesPrimitiveField(Strategy strategy) throws Exception {
+    Schema.AttributeAccessor accessor = strategy.create(Sample.class.getDeclaredField("number"));
+    Sample sample = new Sample();
+
+    accessor.set(sample, 42);
+
+    assertThat(sample.number).isEqualTo(42);
+    assertThat((Integer) accessor.get(sample)).isEqualTo(42);
+  }
+
+  @ParameterizedTest
+  @MethodSource("strategies")
+  public void writesFinalField(Strategy strategy) throws Exception {
+    Schema.AttributeAccessor accessor = strategy.create(Sample.class.getDeclaredField("constant"));
+    Sample sample = new Sample();
+
+    accessor.set(sample, "changed");
+
+    assertThat((String) accessor.get(sample)).isEqualTo("changed");
+  }
+
+  @ParameterizedTest
+  @MethodSource("strategies")
+  public void rejectsOtherTypes(Strategy strategy) throws Exception {
+    Schema.AttributeAccessor accessor = strategy.create(Sample.class.getDeclaredField("text"));
+
+    assertThat(accessor.isAccessible("not a sample")).isFalse();
+    assertThatThrownBy(() -> accessor.get("not a sample")).isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> accessor.set("not a sample", "value")).isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @ParameterizedTest
+  @MethodSource("strategies")
+  public void rejectsValuesOfOtherTypes(Strategy strategy) throws Exception {
+    Schema.AttributeAccessor text = strategy.create(Sample.class.getDeclaredField("text"));
+    Schema.AttributeAccessor number = strategy.create(Sample.class.getDeclaredField("number"));
+    Sample sample = new Sample();
+
+    assertThatThrownBy(() -> text.set(sample, 42)).isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> number.set(sample, "42")).isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> number.set(sample, null)).isInstanceOf(IllegalArgumentException.class);
+    assertThat(sample.number).isZero();
+  }
+
+  @Test
+  public void equalForSameField() throws Exception {
+    Field field = Sample.class.getDeclaredField("text");
+
+    assertThat(Schema.AttributeAccessor.forField(field)).isEqualTo(Schema.AttributeAccessor.forField(field));
+  }
+
+  static Stream<Strategy> strategies() {
+    return Stream.of(Strategy.values());
+  }
+
+  enum Strategy {
+    METHOD_HANDLE {
+      @Override
+      Schema.AttributeAccessor create(Field field) throws Exception {
+        return Schema.MethodHandleAttributeAccessor.create(field);
+      }
+    },
+    REFLECTION {
+      @Override
+      Schema.AttributeAccessor create(Field field) {
+        return new Schema.FieldAttributeAccessor(field);
+      }
+    };
+
+    abstract Schema.AttributeAccessor create(Field field) throws Exception;
+  }
+
+  static class Sample {
+    private String text;
+    private int number;
+    private final String constant = "constant";
+  }
+}
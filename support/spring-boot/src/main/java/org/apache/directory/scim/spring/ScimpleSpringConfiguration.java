@@ -28,21 +28,25 @@ import org.apache.directory.scim.core.repository.PatchHandler;
 import org.apache.directory.scim.core.repository.Repository;
 import org.apache.directory.scim.core.repository.RepositoryRegistry;
 import org.apache.directory.scim.core.repository.SelfIdResolver;
+import org.apache.directory.scim.core.repository.TypedPatchHandler;
 import org.apache.directory.scim.core.schema.SchemaRegistry;
 import org.apache.directory.scim.protocol.UserResource;
 import org.apache.directory.scim.server.configuration.ServerConfiguration;
 import org.apache.directory.scim.server.rest.EtagGenerator;
 import org.apache.directory.scim.server.rest.ScimResourceHelper;
 import org.apache.directory.scim.server.rest.UserResourceImpl;
+import org.apache.directory.scim.spec.filter.Filter;
 import org.apache.directory.scim.spec.resources.ScimResource;
 import org.glassfish.hk2.utilities.binding.AbstractBinder;
 import org.glassfish.jersey.server.ResourceConfig;
+import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.boot.autoconfigure.AutoConfigureBefore;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.jersey.JerseyAutoConfiguration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 
 import java.lang.annotation.Annotation;
 import java.util.Arrays;
@@ -63,6 +67,14 @@ public class ScimpleSpringConfiguration {
     return new ServerConfiguration();
   }
 
+  /**
+   * Applies the filter limits from the ServerConfiguration, filters are parsed before they reach a resource.
+   */
+  @Bean
+  SmartInitializingSingleton scimpleFilterLimits(ServerConfiguration serverConfiguration) {
+    return () -> Filter.setLimits(serverConfiguration.getFilterLimits());
+  }
+
   @Bean
   @ConditionalOnMissingBean
   EtagGenerator etagGenerator() {
@@ -75,9 +87,16 @@ public class ScimpleSpringConfiguration {
     return new SchemaRegistry();
   }
 
+  /**
+   * Set {@code scimple.patch-handler=typed} to apply patches with the {@link TypedPatchHandler}, which changes resources
+   * directly instead of converting them to a map and back.
+   */
   @Bean
   @ConditionalOnMissingBean
-  PatchHandler patchHandler(SchemaRegistry schemaRegistry) {
+  PatchHandler patchHandler(SchemaRegistry schemaRegistry, Environment environment) {
+    if ("typed".equalsIgnoreCase(environment.getProperty("scimple.patch-handler"))) {
+      return new TypedPatchHandler(schemaRegistry);
+    }
     return new DefaultPatchHandler(schemaRegistry);
   }
 